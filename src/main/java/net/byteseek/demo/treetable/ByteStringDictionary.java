@@ -0,0 +1,252 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assigns a dense int code to each distinct byte string added to it, starting at zero.
+ * <p>
+ * The bytes of each distinct string are copied once into a single shared array, and codes are found with an
+ * open-addressing hash table of ints, so adding a string which is already in the dictionary creates no objects.
+ * It is not thread-safe.
+ */
+public final class ByteStringDictionary {
+
+    public static final int NOT_FOUND = -1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int EMPTY_SLOT = 0; // slots hold the code plus one.
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY * 8];
+    private int bytesUsed;
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+    private int size;
+
+    /**
+     * @return The number of distinct strings in the dictionary.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the code for a byte string, adding it to the dictionary if it isn't already in it.
+     *
+     * @param buffer The buffer containing the string.
+     * @param start The start of the string in the buffer.
+     * @param length The length of the string.
+     * @return The code for the string.
+     */
+    public int getOrAdd(final byte[] buffer, final int start, final int length) {
+        return getOrAdd(buffer, start, length, hash(buffer, start, length));
+    }
+
+    /**
+     * Returns the code for a string in another dictionary, adding it to this dictionary if it isn't already in it.
+     * The hash the other dictionary has for the string is used, so the string is not hashed again.
+     *
+     * @param other The other dictionary.
+     * @param otherCode The code of the string in the other dictionary.
+     * @return The code for the string in this dictionary.
+     */
+    int getOrAdd(final ByteStringDictionary other, final int otherCode) {
+        return getOrAdd(other.bytes, other.starts[otherCode], other.lengths[otherCode], other.hashes[otherCode]);
+    }
+
+    /**
+     * @param code A code in the dictionary.
+     * @return The hash of the string for the code.
+     */
+    int getHash(final int code) {
+        return hashes[code];
+    }
+
+    /**
+     * Concatenates dictionaries which have no strings in common, so the codes of the strings in each dictionary
+     * are the codes of the dictionaries before it plus their size.  Strings are copied without being hashed or compared.
+     *
+     * @param dictionaries The dictionaries to concatenate, which must not have any strings in common.
+     * @return A dictionary containing all the strings in the dictionaries.
+     */
+    static ByteStringDictionary concat(final List<ByteStringDictionary> dictionaries) {
+        final ByteStringDictionary result = new ByteStringDictionary();
+        int totalSize = 0;
+        int totalBytes = 0;
+        for (ByteStringDictionary dictionary : dictionaries) {
+            totalSize += dictionary.size;
+            totalBytes += dictionary.bytesUsed;
+        }
+        final int capacity = Math.max(INITIAL_CAPACITY, totalSize);
+        result.bytes = new byte[Math.max(INITIAL_CAPACITY * 8, totalBytes)];
+        result.starts = new int[capacity];
+        result.lengths = new int[capacity];
+        result.hashes = new int[capacity];
+        for (ByteStringDictionary dictionary : dictionaries) {
+            final int size = dictionary.size;
+            final int bytesUsed = result.bytesUsed;
+            System.arraycopy(dictionary.bytes, 0, result.bytes, bytesUsed, dictionary.bytesUsed);
+            for (int code = 0; code < size; code++) {
+                result.starts[result.size + code] = dictionary.starts[code] + bytesUsed;
+            }
+            System.arraycopy(dictionary.lengths, 0, result.lengths, result.size, size);
+            System.arraycopy(dictionary.hashes, 0, result.hashes, result.size, size);
+            result.size += size;
+            result.bytesUsed += dictionary.bytesUsed;
+        }
+        result.rehash(Math.max(INITIAL_CAPACITY * 2, Integer.highestOneBit(Math.max(1, totalSize)) * 4));
+        return result;
+    }
+
+    private int getOrAdd(final byte[] buffer, final int start, final int length, final int hash) {
+        final int mask = slots.length - 1;
+        int slot = hash & mask;
+        int entry;
+        while ((entry = slots[slot]) != EMPTY_SLOT) {
+            final int code = entry - 1;
+            if (hashes[code] == hash && matches(code, buffer, start, length)) {
+                return code;
+            }
+            slot = (slot + 1) & mask;
+        }
+        final int code = addBytes(buffer, start, length, hash);
+        slots[slot] = code + 1;
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return code;
+    }
+
+    /**
+     * Returns the code for a string, adding it to the dictionary if it isn't already in it.
+     *
+     * @param string The string.
+     * @return The code for the string.
+     */
+    public int getOrAdd(final String string) {
+        final byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+        return getOrAdd(encoded, 0, encoded.length);
+    }
+
+    /**
+     * Returns the code for a byte string, or {@link #NOT_FOUND} if it isn't in the dictionary.
+     *
+     * @param buffer The buffer containing the string.
+     * @param start The start of the string in the buffer.
+     * @param length The length of the string.
+     * @return The code for the string, or {@link #NOT_FOUND}.
+     */
+    public int get(final byte[] buffer, final int start, final int length) {
+        final int hash = hash(buffer, start, length);
+        final int mask = slots.length - 1;
+        int slot = hash & mask;
+        int entry;
+        while ((entry = slots[slot]) != EMPTY_SLOT) {
+            final int code = entry - 1;
+            if (hashes[code] == hash && matches(code, buffer, start, length)) {
+                return code;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * @param code A code in the dictionary.
+     * @return The string for the code, decoded as UTF-8.
+     */
+    public String getString(final int code) {
+        return new String(bytes, starts[code], lengths[code], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compares the bytes of the strings for two codes as unsigned values, which orders UTF-8 strings by code point.
+     *
+     * @param code1 The first code.
+     * @param code2 The second code.
+     * @return The result of comparing the strings for the codes.
+     */
+    public int compare(final int code1, final int code2) {
+        return Arrays.compareUnsigned(bytes, starts[code1], starts[code1] + lengths[code1],
+                                      bytes, starts[code2], starts[code2] + lengths[code2]);
+    }
+
+    private int addBytes(final byte[] buffer, final int start, final int length, final int hash) {
+        if (size == starts.length) {
+            final int newLength = size * 2;
+            starts = Arrays.copyOf(starts, newLength);
+            lengths = Arrays.copyOf(lengths, newLength);
+            hashes = Arrays.copyOf(hashes, newLength);
+        }
+        if (bytesUsed + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytesUsed + length, bytes.length * 2));
+        }
+        System.arraycopy(buffer, start, bytes, bytesUsed, length);
+        starts[size] = bytesUsed;
+        lengths[size] = length;
+        hashes[size] = hash;
+        bytesUsed += length;
+        return size++;
+    }
+
+    private boolean matches(final int code, final byte[] buffer, final int start, final int length) {
+        final int codeStart = starts[code];
+        return lengths[code] == length && Arrays.equals(bytes, codeStart, codeStart + length, buffer, start, start + length);
+    }
+
+    private void rehash(final int newCapacity) {
+        final int[] newSlots = new int[newCapacity];
+        final int mask = newCapacity - 1;
+        for (int code = 0; code < size; code++) {
+            int slot = hashes[code] & mask;
+            while (newSlots[slot] != EMPTY_SLOT) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = code + 1;
+        }
+        slots = newSlots;
+    }
+
+    private static int hash(final byte[] buffer, final int start, final int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        return hash ^ (hash >>> 16); // spread the high bits into the low bits used to find a slot.
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Selects which columns of a tab separated file are read, by name, so that wide files can be loaded with only the
+ * columns that are needed.  Readers given a projection only store the selected fields of each row, in file order,
+ * and report a header containing only the selected columns.
+ * <p>
+ * Columns can be selected by a list of names, or by a regular expression which matches the whole name.
+ * Columns which must always be read, such as the id and parent id columns of a tree, can be added with
+ * {@link #withRequired(String...)}.  Projections are immutable.
+ */
+public final class ColumnProjection {
+
+    /**
+     * A projection which selects all the columns.
+     */
+    public static final ColumnProjection ALL = new ColumnProjection(null, Collections.emptySet(), "*");
+
+    private final Predicate<String> selected; // null if all columns are selected.
+    private final Set<String> required;
+    private final String description;
+
+    private ColumnProjection(final Predicate<String> selected, final Set<String> required, final String description) {
+        this.selected = selected;
+        this.required = required;
+        this.description = description;
+    }
+
+    /**
+     * Creates a projection selecting the columns with the given names.
+     *
+     * @param names The names of the columns to select.
+     * @return A projection selecting the named columns.
+     * @throws IllegalArgumentException if the names are null.
+     */
+    public static ColumnProjection include(final String... names) {
+        if (names == null) {
+            throw new IllegalArgumentException("Object cannot be null: names");
+        }
+        final Set<String> included = new LinkedHashSet<>(Arrays.asList(names));
+        return new ColumnProjection(new Included(included), Collections.emptySet(), "include:" + String.join(",", included));
+    }
+
+    /**
+     * Creates a projection selecting the columns whose whole names match a regular expression.
+     *
+     * @param pattern The pattern the names of the selected columns must match.
+     * @return A projection selecting the matching columns.
+     * @throws IllegalArgumentException if the pattern is null.
+     */
+    public static ColumnProjection matching(final Pattern pattern) {
+        if (pattern == null) {
+            throw new IllegalArgumentException("Object cannot be null: pattern");
+        }
+        return new ColumnProjection(name -> pattern.matcher(name).matches(), Collections.emptySet(), "matching:" + pattern.pattern());
+    }
+
+    /**
+     * Returns a projection which also selects some columns which must always be read.
+     * Required columns which are not in a header are not an error, so the reader of the columns can report them.
+     *
+     * @param names The names of the columns which must be selected.
+     * @return A projection which selects the columns of this projection and the required columns.
+     * @throws IllegalArgumentException if the names are null.
+     */
+    public ColumnProjection withRequired(final String... names) {
+        if (names == null) {
+            throw new IllegalArgumentException("Object cannot be null: names");
+        }
+        if (selected == null) {
+            return this;
+        }
+        final Set<String> allRequired = new LinkedHashSet<>(required);
+        allRequired.addAll(Arrays.asList(names));
+        return new ColumnProjection(selected, allRequired, description);
+    }
+
+    /**
+     * @return Whether the projection selects all columns.
+     */
+    public boolean isAll() {
+        return selected == null;
+    }
+
+    /**
+     * Selects columns from a header.
+     *
+     * @param header The names of the columns in a file.
+     * @return The indexes of the selected columns in increasing order, or null if all the columns are selected.
+     * @throws IllegalArgumentException if columns selected by name are not in the header.
+     */
+    public int[] select(final String[] header) {
+        final Predicate<String> localSelected = selected; // avoid repeated getfield.
+        if (localSelected == null) {
+            return null;
+        }
+        if (localSelected instanceof Included) {
+            final List<String> missing = new ArrayList<>(((Included) localSelected).names);
+            missing.removeAll(Arrays.asList(header));
+            if (!missing.isEmpty()) {
+                throw new IllegalArgumentException("Columns not found in TSV header: " + missing);
+            }
+        }
+        final int[] columns = new int[header.length];
+        int count = 0;
+        for (int column = 0; column < header.length; column++) {
+            final String name = header[column];
+            if (localSelected.test(name) || required.contains(name)) {
+                columns[count++] = column;
+            }
+        }
+        return Arrays.copyOf(columns, count);
+    }
+
+    /**
+     * Returns the names of the selected columns in a header.
+     *
+     * @param header The names of the columns in a file.
+     * @param columns The selected columns, or null if all columns are selected.
+     * @return The names of the selected columns.
+     */
+    public static String[] project(final String[] header, final int[] columns) {
+        if (columns == null) {
+            return header.clone();
+        }
+        final String[] projected = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            projected[i] = header[columns[i]];
+        }
+        return projected;
+    }
+
+    /**
+     * Describes the columns selected, not including the required columns,
+     * so projections which select the same columns have the same description.
+     */
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    /**
+     * Selects columns by name, keeping the names so any which are not in a header can be reported.
+     */
+    private static final class Included implements Predicate<String> {
+        final Set<String> names;
+
+        Included(final Set<String> names) {
+            this.names = names;
+        }
+
+        @Override
+        public boolean test(final String name) {
+            return names.contains(name);
+        }
+    }
+
+}
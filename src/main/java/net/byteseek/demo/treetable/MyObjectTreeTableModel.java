@@ -38,6 +38,7 @@ import javax.swing.table.DefaultTableColumnModel;
 import javax.swing.table.TableColumnModel;
 import javax.swing.tree.TreeNode;
 import net.byteseek.swing.treetable.Comparators;
+import net.byteseek.swing.treetable.SubtreeAggregate;
 import net.byteseek.swing.treetable.TreeTableModel;
 import net.byteseek.swing.treetable.TreeUtils;
 
@@ -51,12 +52,13 @@ public final class MyObjectTreeTableModel extends TreeTableModel {
         super(rootNode, showRoot);
         setIcons();
         setGroupingComparator(Comparators.ALLOWS_CHILDREN);
+        setAggregateColumn(4, SubtreeAggregate.sum(1));
         leafIcon = null;
     }
 
     @Override
     public boolean isCellEditable(final int rowIndex, final int columnIndex) {
-        return columnIndex < 3; // can't edit the "num children" column as that is calculated, not stored.
+        return columnIndex < 3; // can't edit the "children" or "total size" columns as they are calculated, not stored.
     }
 
     @Override
@@ -66,6 +68,7 @@ public final class MyObjectTreeTableModel extends TreeTableModel {
             case 1: return Long.class;
             case 2: return Boolean.class;
             case 3: return Integer.class;
+            case 4: return Long.class;
         }
         return Object.class;
     }
@@ -90,6 +93,7 @@ public final class MyObjectTreeTableModel extends TreeTableModel {
         result.addColumn(createColumn(1, "size"));
         result.addColumn(createColumn(2, "enabled"));
         result.addColumn(createColumn(3, "children"));
+        result.addColumn(createColumn(4, "total size"));
         return result;
     }
 
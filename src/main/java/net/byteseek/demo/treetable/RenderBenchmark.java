@@ -0,0 +1,261 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import javax.swing.JTable;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.SwingUtilities;
+import javax.swing.table.JTableHeader;
+import javax.swing.tree.DefaultMutableTreeNode;
+import net.byteseek.swing.treetable.TreeTableHeaderRenderer;
+import net.byteseek.swing.treetable.TreeTableMetricsRecorder;
+import net.byteseek.swing.treetable.TreeTableModel;
+
+/**
+ * A headless benchmark of painting a JTable bound to a TreeTableModel, while scrolling through a large tree.
+ * <p>
+ * For each combination of a shallow, balanced or deep tree, sorted or unsorted, and with or without icons, it binds the tree
+ * to a JTable and paints viewport-sized regions of the table and its header into a BufferedImage, scrolling down
+ * the table in even steps.  It reports the time and bytes allocated per frame, how many frames went over the frame
+ * budget, and how many column values and tree cells were rendered per frame.
+ * <p>
+ * Usage: <code>RenderBenchmark [nodes] [frames] [budgetMillis]</code>, which default to
+ * a million nodes, 500 frames and 16 milliseconds.  It runs with java.awt.headless=true unless set otherwise.
+ */
+public final class RenderBenchmark {
+
+    private static final int DEFAULT_NODES = 1_000_000;
+    private static final int DEFAULT_FRAMES = 500;
+    private static final int DEFAULT_BUDGET_MILLIS = 16;
+    private static final int WARMUP_FRAMES = 200;
+    private static final int VIEWPORT_WIDTH = 1024;
+    private static final int VIEWPORT_HEIGHT = 768;
+    private static final int DEEP_LEVELS = 10_000;
+
+    /**
+     * The shapes of tree benchmarked.
+     */
+    private enum TreeShape {
+        SHALLOW, BALANCED, DEEP;
+
+        DefaultMutableTreeNode build(final int nodes) {
+            switch (this) {
+                case SHALLOW:
+                    return buildShallowTree(nodes);
+                case BALANCED:
+                    return buildBalancedTree(nodes);
+                default:
+                    return buildDeepTree(nodes);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private RenderBenchmark() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        final int nodes = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NODES;
+        final int frames = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_FRAMES;
+        final long budgetNanos = TimeUnit.MILLISECONDS.toNanos(args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BUDGET_MILLIS);
+
+        System.out.printf("%-8s %-8s %-6s %9s %9s %9s %9s %8s %12s %9s %9s%n",
+                "tree", "sorted", "icons", "mean ms", "p50 ms", "p99 ms", "max ms", "over", "bytes/frame", "values/f", "cells/f");
+        for (TreeShape shape : TreeShape.values()) {
+            final DefaultMutableTreeNode root = shape.build(nodes);
+            for (boolean sorted : new boolean[] {false, true}) {
+                for (boolean icons : new boolean[] {true, false}) {
+                    SwingUtilities.invokeAndWait(() -> System.out.println(
+                            runScenario(root, shape, sorted, icons, frames, budgetNanos)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Binds a tree to a JTable and paints frames of it while scrolling, returning a line of results.
+     */
+    private static String runScenario(final DefaultMutableTreeNode root, final TreeShape shape, final boolean sorted,
+                                      final boolean icons, final int frames, final long budgetNanos) {
+        final MyObjectTreeTableModel model = new MyObjectTreeTableModel(root, true);
+        if (!icons) {
+            model.setLeafIcon(null);
+            model.setOpenIcon(null);
+            model.setClosedIcon(null);
+        }
+        final JTable table = new JTable();
+        model.bindTable(table, new TreeTableHeaderRenderer());
+        model.expandTree();
+        if (sorted) {
+            model.setSortKeys(new RowSorter.SortKey(1, SortOrder.DESCENDING));
+        }
+
+        final JTableHeader header = table.getTableHeader();
+        final int headerHeight = header.getPreferredSize().height;
+        header.setSize(VIEWPORT_WIDTH, headerHeight);
+        header.doLayout();
+        table.setSize(VIEWPORT_WIDTH, table.getRowHeight() * table.getRowCount());
+        table.doLayout();
+
+        final BufferedImage image = new BufferedImage(VIEWPORT_WIDTH, VIEWPORT_HEIGHT + headerHeight, BufferedImage.TYPE_INT_ARGB);
+        final int maxY = Math.max(0, table.getHeight() - VIEWPORT_HEIGHT);
+        for (int frame = 0; frame < WARMUP_FRAMES; frame++) {
+            paintFrame(image, header, table, (int) ((long) maxY * frame / WARMUP_FRAMES));
+        }
+
+        final TreeTableMetricsRecorder recorder = TreeTableMetricsRecorder.recordMetrics(model);
+        final TreeTableMetricsRecorder.Histogram frameTimes = new TreeTableMetricsRecorder.Histogram();
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final long allocatedBefore = getAllocatedBytes(threads);
+        int overBudget = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            final int y = frames > 1 ? (int) ((long) maxY * frame / (frames - 1)) : 0;
+            final long startTime = System.nanoTime();
+            paintFrame(image, header, table, y);
+            final long duration = System.nanoTime() - startTime;
+            frameTimes.record(duration, 0);
+            if (duration > budgetNanos) {
+                overBudget++;
+            }
+        }
+        final long allocatedAfter = getAllocatedBytes(threads);
+        model.removeMetricsListener(recorder);
+        model.unbindTable();
+
+        final long bytesPerFrame = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : (allocatedAfter - allocatedBefore) / frames;
+        return String.format("%-8s %-8s %-6s %9.3f %9.3f %9.3f %9.3f %8d %12d %9d %9d",
+                shape, sorted, icons,
+                toMillis(frameTimes.getMeanNanos()), toMillis(frameTimes.getPercentileNanos(50)),
+                toMillis(frameTimes.getPercentileNanos(99)), toMillis(frameTimes.getMaxNanos()),
+                overBudget, bytesPerFrame,
+                recorder.getCount(TreeTableModel.MetricsListener.Counter.COLUMN_VALUES) / frames,
+                recorder.getCount(TreeTableModel.MetricsListener.Counter.CELLS_RENDERED) / frames);
+    }
+
+    /**
+     * Paints the header and a viewport of the table starting at y into the image.
+     */
+    private static void paintFrame(final BufferedImage image, final JTableHeader header, final JTable table, final int y) {
+        final Graphics2D graphics = image.createGraphics();
+        try {
+            final int headerHeight = header.getHeight();
+            graphics.setClip(0, 0, VIEWPORT_WIDTH, headerHeight);
+            header.paint(graphics);
+            graphics.translate(0, headerHeight - y);
+            graphics.setClip(new Rectangle(0, y, VIEWPORT_WIDTH, VIEWPORT_HEIGHT));
+            table.paint(graphics);
+        } finally {
+            graphics.dispose();
+        }
+    }
+
+    /**
+     * A root with all other nodes as direct children.
+     */
+    private static DefaultMutableTreeNode buildShallowTree(final int nodes) {
+        final DefaultMutableTreeNode root = createNode("root", 0, true);
+        for (int i = 1; i < nodes; i++) {
+            root.add(createNode("leaf " + i, i, false));
+        }
+        return root;
+    }
+
+    /**
+     * A complete binary tree, so nodes are spread over about log2(nodes) levels.
+     */
+    private static DefaultMutableTreeNode buildBalancedTree(final int nodes) {
+        final DefaultMutableTreeNode[] created = new DefaultMutableTreeNode[nodes];
+        for (int i = 0; i < nodes; i++) {
+            final boolean hasChildren = i * 2 + 1 < nodes;
+            created[i] = createNode("node " + i, i, hasChildren);
+            if (i > 0) {
+                created[(i - 1) / 2].add(created[i]);
+            }
+        }
+        return created[0];
+    }
+
+    /**
+     * A narrow fan up to DEEP_LEVELS levels deep: each level has one node which continues the chain down,
+     * and the rest of the nodes on that level are leaves.
+     */
+    private static DefaultMutableTreeNode buildDeepTree(final int nodes) {
+        final int levels = Math.max(1, Math.min(nodes, DEEP_LEVELS));
+        final DefaultMutableTreeNode root = createNode("node 0", 0, levels > 1);
+        DefaultMutableTreeNode parent = root;
+        int created = 1;
+        for (int level = 1; level < levels; level++) {
+            final int levelEnd = (int) ((long) nodes * (level + 1) / levels);
+            final DefaultMutableTreeNode chain = createNode("node " + created, created, true);
+            parent.add(chain);
+            for (created++; created < levelEnd; created++) {
+                parent.add(createNode("leaf " + created, created, false));
+            }
+            parent = chain;
+        }
+        return root;
+    }
+
+    private static DefaultMutableTreeNode createNode(final String description, final long size, final boolean allowsChildren) {
+        return new DefaultMutableTreeNode(new MyObject(description, size * 31 % 10007, size % 3 == 0), allowsChildren);
+    }
+
+    private static long getAllocatedBytes(final ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean hotspotThreads = (com.sun.management.ThreadMXBean) threads;
+            if (hotspotThreads.isThreadAllocatedMemorySupported() && hotspotThreads.isThreadAllocatedMemoryEnabled()) {
+                return hotspotThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    private static double toMillis(final long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+}
@@ -0,0 +1,419 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a gzip compressed tab separated file as a pipeline, without decompressing it to disk first.
+ * <p>
+ * One thread decompresses the file into a fixed ring of buffers, and another splits the buffers on line boundaries
+ * and parses the lines into {@link TSVRow}s, while the consumer of the rows, usually a {@link TSVTreeBuilder},
+ * takes batches of rows as they are parsed.  The stages are joined by bounded queues: decompression waits for a
+ * buffer to be free, and parsing waits for the consumer to take a batch, so the memory used by the pipeline is
+ * proportional to the buffer size and the number of buffers, whatever the size of the file.
+ * <p>
+ * Each batch of lines is copied into a byte array shared by the rows parsed from it, as {@link TSVReader} does,
+ * so the buffers themselves can be reused as soon as they are parsed.  If a {@link ColumnProjection} is given,
+ * only the selected fields are copied, so the rows don't keep the other columns.
+ */
+public class TSVGzipReader implements TSVRowSource {
+
+    public static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+    public static final int DEFAULT_BUFFER_COUNT = 4;
+
+    private static final byte NEWLINE = '\n';
+    private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+    private static final Block END_OF_DATA = new Block(new byte[0], 0);
+    private static final List<TSVRow> END_OF_ROWS = Collections.unmodifiableList(new ArrayList<>());
+
+    private final FileChannel channel;
+    private final InputStream input;
+    private final int bufferSize;
+    private final int bufferCount;
+    private final String[] header;
+    private final int[] columns;    // the columns selected from each line, or null if all of them are.
+    private final byte[] dataStart; // the bytes read after the header line, which start the data rows.
+    private final long fileSize;
+    private volatile long compressedRead; // the number of compressed bytes decompressed so far.
+    private Pipeline pipeline;
+
+    /**
+     * Opens a gzip compressed TSV file to read, with the default buffer size and number of buffers.
+     *
+     * @param path The path of the file to read.
+     * @throws IOException If the file can't be read or is not in gzip format, or has no header line.
+     */
+    public TSVGzipReader(final Path path) throws IOException {
+        this(path, ColumnProjection.ALL);
+    }
+
+    /**
+     * Opens a gzip compressed TSV file to read only some of its columns, with the default buffer size and number of buffers.
+     *
+     * @param path The path of the file to read.
+     * @param projection The columns to read.
+     * @throws IOException If the file can't be read or is not in gzip format, or has no header line.
+     * @throws IllegalArgumentException if the projection is null, or selects columns by name which are not in the header.
+     */
+    public TSVGzipReader(final Path path, final ColumnProjection projection) throws IOException {
+        this(path, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT, projection);
+    }
+
+    /**
+     * Opens a gzip compressed TSV file to read.
+     *
+     * @param path The path of the file to read.
+     * @param bufferSize The size in bytes of each buffer the file is decompressed into.
+     * @param bufferCount The number of buffers, and the number of batches of rows which can wait for the consumer.
+     * @throws IOException If the file can't be read or is not in gzip format, or has no header line.
+     * @throws IllegalArgumentException if the buffer size or buffer count is less than one.
+     */
+    public TSVGzipReader(final Path path, final int bufferSize, final int bufferCount) throws IOException {
+        this(path, bufferSize, bufferCount, ColumnProjection.ALL);
+    }
+
+    /**
+     * Opens a gzip compressed TSV file to read only some of its columns.
+     *
+     * @param path The path of the file to read.
+     * @param bufferSize The size in bytes of each buffer the file is decompressed into.
+     * @param bufferCount The number of buffers, and the number of batches of rows which can wait for the consumer.
+     * @param projection The columns to read.
+     * @throws IOException If the file can't be read or is not in gzip format, or has no header line.
+     * @throws IllegalArgumentException if the buffer size or buffer count is less than one, the projection is null,
+     *                                  or it selects columns by name which are not in the header.
+     */
+    public TSVGzipReader(final Path path, final int bufferSize, final int bufferCount,
+                         final ColumnProjection projection) throws IOException {
+        if (bufferSize < 1 || bufferCount < 1) {
+            throw new IllegalArgumentException("Buffer size and count must be positive: " + bufferSize + ", " + bufferCount);
+        }
+        if (projection == null) {
+            throw new IllegalArgumentException("Object cannot be null: projection");
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.bufferSize = bufferSize;
+        this.bufferCount = bufferCount;
+        try {
+            this.fileSize = channel.size();
+            this.input = new GZIPInputStream(Channels.newInputStream(channel), INPUT_BUFFER_SIZE);
+            // Read until the end of the header line.  Anything read after it is the start of the data rows.
+            byte[] bytes = new byte[Math.min(bufferSize, INPUT_BUFFER_SIZE)];
+            int length = 0;
+            int headerEnd = -1;
+            while (headerEnd < 0) {
+                if (length == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, length * 2);
+                }
+                final int read = input.read(bytes, length, bytes.length - length);
+                if (read < 0) {
+                    headerEnd = length;
+                } else {
+                    for (int i = length; i < length + read; i++) {
+                        if (bytes[i] == NEWLINE) {
+                            headerEnd = i + 1;
+                            break;
+                        }
+                    }
+                    length += read;
+                }
+            }
+            if (headerEnd == 0) {
+                throw new IOException("No header line in TSV file: " + path);
+            }
+            final String[] fileHeader = TSVReader.parseLines(Arrays.copyOf(bytes, headerEnd)).get(0).getFields();
+            this.columns = projection.select(fileHeader);
+            this.header = ColumnProjection.project(fileHeader, columns);
+            this.dataStart = Arrays.copyOfRange(bytes, headerEnd, length);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public String[] getHeader() {
+        return header.clone();
+    }
+
+    /**
+     * {@inheritDoc}
+     * Rows are decompressed and parsed on two other threads ahead of the stream consumer.
+     * Closing the stream stops the pipeline.
+     *
+     * @throws IllegalStateException if the rows have already been read.
+     */
+    @Override
+    public Stream<TSVRow> rows() {
+        if (pipeline != null) {
+            throw new IllegalStateException("The rows of a compressed file can only be read once.");
+        }
+        pipeline = new Pipeline();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pipeline, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                            .onClose(pipeline::stop);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Progress is measured by the compressed bytes decompressed, which the parser and the consumer may not have caught up with.
+     */
+    @Override
+    public double getProgress() {
+        return fileSize == 0 ? 1.0 : (double) compressedRead / fileSize;
+    }
+
+    /**
+     * Closes the file, and stops the pipeline threads if the rows have not been read to the end.
+     * Reading the rows afterwards throws an UncheckedIOException.
+     */
+    @Override
+    public void close() throws IOException {
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+        input.close();
+    }
+
+    /**
+     * A buffer and the number of bytes decompressed into it.
+     */
+    private static final class Block {
+        final byte[] bytes;
+        final int length;
+
+        Block(final byte[] bytes, final int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Decompresses and parses the file on two threads, and iterates over the batches of rows they produce in order.
+     * Each thread marks the end of its output with a sentinel, after recording any failure for the consumer to throw.
+     * Stopping the pipeline interrupts both threads, and marks the end of the rows itself, so a consumer waiting for
+     * a batch on another thread is not left waiting for threads which have stopped.
+     */
+    private final class Pipeline implements Iterator<TSVRow> {
+
+        private final BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(bufferCount);
+        private final BlockingQueue<Block> filledBuffers = new ArrayBlockingQueue<>(bufferCount);
+        private final BlockingQueue<List<TSVRow>> batches = new ArrayBlockingQueue<>(bufferCount);
+        private final Thread decompressor;
+        private final Thread parser;
+        private volatile Throwable failure;
+        private volatile boolean stopped;
+        private Iterator<TSVRow> current = Collections.emptyIterator();
+        private boolean finished;
+
+        Pipeline() {
+            for (int buffer = 0; buffer < bufferCount; buffer++) {
+                freeBuffers.add(new byte[bufferSize]);
+            }
+            decompressor = startThread(this::decompress, "TSVGzipReader-decompress");
+            parser = startThread(this::parse, "TSVGzipReader-parse");
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (finished) {
+                    return false;
+                }
+                if (stopped) {
+                    throw new UncheckedIOException(new ClosedChannelException());
+                }
+                final List<TSVRow> batch = takeBatch();
+                if (batch == END_OF_ROWS) {
+                    if (stopped) {
+                        throw new UncheckedIOException(new ClosedChannelException());
+                    }
+                    finished = true;
+                    stop(); // the decompressor may still be waiting for a buffer if parsing failed.
+                    throwFailure();
+                    return false;
+                }
+                current = batch.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public TSVRow next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        /**
+         * Stops both threads.  This can be called on any thread, and more than once.
+         */
+        void stop() {
+            if (!stopped) {
+                stopped = true;
+                decompressor.interrupt();
+                parser.interrupt();
+                batches.clear();
+                batches.offer(END_OF_ROWS);
+            }
+        }
+
+        private List<TSVRow> takeBatch() {
+            try {
+                return batches.take();
+            } catch (InterruptedException e) {
+                stop();
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("Interrupted while reading TSV rows"));
+            }
+        }
+
+        private void throwFailure() {
+            final Throwable cause = failure;
+            if (cause instanceof IOException) {
+                throw new UncheckedIOException((IOException) cause);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+        }
+
+        /**
+         * Fills each free buffer with decompressed data and passes it on, until the end of the file.
+         */
+        private void decompress() {
+            try {
+                try {
+                    final InputStream localInput = input; // avoid repeated getfield on the outer class.
+                    int length;
+                    do {
+                        final byte[] buffer = freeBuffers.take();
+                        length = 0;
+                        int read;
+                        while (length < buffer.length && (read = localInput.read(buffer, length, buffer.length - length)) >= 0) {
+                            length += read;
+                        }
+                        compressedRead = channel.position();
+                        if (length > 0) {
+                            filledBuffers.put(new Block(buffer, length));
+                        }
+                    } while (length == bufferSize);
+                } catch (IOException | RuntimeException | Error e) {
+                    failure = e;
+                }
+                filledBuffers.put(END_OF_DATA);
+            } catch (InterruptedException e) {
+                // The pipeline was stopped; there is no consumer waiting for the end of the data.
+            }
+        }
+
+        /**
+         * Copies the complete lines in each filled buffer, after any partial line left from the buffer before,
+         * into a new array which the rows parsed from it share, and frees the buffer to be filled again.
+         */
+        private void parse() {
+            try {
+                try {
+                    byte[] partialLine = dataStart;
+                    int partialLength = partialLine.length;
+                    Block block;
+                    while ((block = filledBuffers.take()) != END_OF_DATA) {
+                        final byte[] bytes = block.bytes;
+                        final int length = block.length;
+                        int linesEnd = length;
+                        while (linesEnd > 0 && bytes[linesEnd - 1] != NEWLINE) {
+                            linesEnd--;
+                        }
+                        byte[] lines = null;
+                        if (linesEnd > 0) {
+                            lines = Arrays.copyOf(partialLine, partialLength + linesEnd);
+                            System.arraycopy(bytes, 0, lines, partialLength, linesEnd);
+                            partialLine = Arrays.copyOfRange(bytes, linesEnd, length);
+                            partialLength = partialLine.length;
+                        } else { // no line ends in this buffer, so it all belongs to the partial line.
+                            if (partialLength + length > partialLine.length) {
+                                partialLine = Arrays.copyOf(partialLine, Math.max(partialLength + length, partialLine.length * 2));
+                            }
+                            System.arraycopy(bytes, 0, partialLine, partialLength, length);
+                            partialLength += length;
+                        }
+                        freeBuffers.put(bytes);
+                        if (lines != null) {
+                            batches.put(TSVReader.parseLines(lines, columns));
+                        }
+                    }
+                    if (partialLength > 0 && failure == null) { // the last line has no newline.
+                        batches.put(TSVReader.parseLines(Arrays.copyOf(partialLine, partialLength), columns));
+                    }
+                } catch (RuntimeException | Error e) {
+                    failure = e;
+                }
+                batches.put(END_OF_ROWS);
+            } catch (InterruptedException e) {
+                // The pipeline was stopped; there is no consumer waiting for the end of the rows.
+            }
+        }
+
+        private Thread startThread(final Runnable runnable, final String name) {
+            final Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            thread.start();
+            return thread;
+        }
+    }
+
+}
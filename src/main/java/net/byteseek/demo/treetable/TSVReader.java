@@ -0,0 +1,427 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads a tab separated file by memory mapping it and parsing line-aligned chunks of it in parallel.
+ * <p>
+ * The first line of the file is the header.  The rest of the file is split into chunks which end on a line boundary,
+ * and each chunk is mapped and parsed on a pool of worker threads.  Fields are split on tab bytes directly, without
+ * regular expressions.  Each chunk is copied into a byte array shared by the {@link TSVRow}s parsed from it,
+ * which only record where their fields are, so fields are decoded as UTF-8 only when they are asked for.
+ * Rows are returned as a stream in file order.  Only a bounded window of chunks is parsed ahead of the consumer,
+ * so the heap needed to parse is proportional to the chunk size and the number of threads, not to the size of the file.
+ * <p>
+ * Each stream of rows parses on threads of its own, which stop when all the rows have been read, when the stream is
+ * closed, or when the reader is closed.  A stream which may not be read to the end should be closed, or read before
+ * the reader is closed.
+ * <p>
+ * If a {@link ColumnProjection} is given, only the selected fields of each row are copied out of a chunk, so the
+ * memory used by the rows is proportional to the size of the selected columns rather than the width of the file.
+ */
+public class TSVReader implements TSVRowSource {
+
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private static final byte NEWLINE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+    private static final byte TAB = '\t';
+    private static final int SCAN_BUFFER_SIZE = 8192;
+
+    private final FileChannel channel;
+    private final int parallelism;
+    private final String[] header;
+    private final int[] columns;       // the columns selected from each line, or null if all of them are.
+    private final List<long[]> chunks; // start and end positions of each chunk of data rows.
+    private final long fileSize;
+    private final Set<RowIterator> liveIterators = ConcurrentHashMap.newKeySet(); // iterators with parsing threads.
+    private volatile long rowsRead;    // the position in the file up to which rows have been returned.
+
+    /**
+     * Opens a TSV file to read with a thread per available processor.
+     *
+     * @param path The path of the file to read.
+     * @throws IOException If the file can't be read, or has no header line.
+     */
+    public TSVReader(final Path path) throws IOException {
+        this(path, ColumnProjection.ALL);
+    }
+
+    /**
+     * Opens a TSV file to read only some of its columns, with a thread per available processor.
+     *
+     * @param path The path of the file to read.
+     * @param projection The columns to read.
+     * @throws IOException If the file can't be read, or has no header line.
+     * @throws IllegalArgumentException if the projection is null, or selects columns by name which are not in the header.
+     */
+    public TSVReader(final Path path, final ColumnProjection projection) throws IOException {
+        this(path, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE, projection);
+    }
+
+    /**
+     * Opens a TSV file to read.
+     *
+     * @param path The path of the file to read.
+     * @param parallelism The number of threads to parse chunks with.
+     * @param chunkSize The approximate size in bytes of each chunk parsed.
+     * @throws IOException If the file can't be read, or has no header line.
+     * @throws IllegalArgumentException if the parallelism or chunk size is less than one.
+     */
+    public TSVReader(final Path path, final int parallelism, final int chunkSize) throws IOException {
+        this(path, parallelism, chunkSize, ColumnProjection.ALL);
+    }
+
+    /**
+     * Opens a TSV file to read only some of its columns.
+     *
+     * @param path The path of the file to read.
+     * @param parallelism The number of threads to parse chunks with.
+     * @param chunkSize The approximate size in bytes of each chunk parsed.
+     * @param projection The columns to read.
+     * @throws IOException If the file can't be read, or has no header line.
+     * @throws IllegalArgumentException if the parallelism or chunk size is less than one, the projection is null,
+     *                                  or it selects columns by name which are not in the header.
+     */
+    public TSVReader(final Path path, final int parallelism, final int chunkSize,
+                     final ColumnProjection projection) throws IOException {
+        if (parallelism < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("Parallelism and chunk size must be positive: " + parallelism + ", " + chunkSize);
+        }
+        if (projection == null) {
+            throw new IllegalArgumentException("Object cannot be null: projection");
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.parallelism = parallelism;
+        try {
+            final long headerEnd = findLineEnd(0);
+            if (headerEnd == 0) {
+                throw new IOException("No header line in TSV file: " + path);
+            }
+            final String[] fileHeader = parseLines(channel.map(FileChannel.MapMode.READ_ONLY, 0, headerEnd), null).get(0).getFields();
+            this.columns = projection.select(fileHeader);
+            this.header = ColumnProjection.project(fileHeader, columns);
+            this.fileSize = channel.size();
+            this.rowsRead = headerEnd;
+            this.chunks = findChunks(headerEnd, chunkSize);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public String[] getHeader() {
+        return header.clone();
+    }
+
+    /**
+     * {@inheritDoc}
+     * Chunks of rows are parsed in parallel ahead of the stream consumer.
+     * Closing the stream stops the threads parsing them.
+     */
+    @Override
+    public Stream<TSVRow> rows() {
+        final RowIterator iterator = new RowIterator();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                            .onClose(iterator::close);
+    }
+
+    @Override
+    public double getProgress() {
+        return fileSize == 0 ? 1.0 : (double) rowsRead / fileSize;
+    }
+
+    /**
+     * Closes the file, and stops the threads parsing any streams of rows which have not been read to the end.
+     * Reading those streams afterwards throws an UncheckedIOException.
+     */
+    @Override
+    public void close() throws IOException {
+        for (RowIterator iterator : liveIterators) {
+            iterator.close();
+        }
+        channel.close();
+    }
+
+    /**
+     * Splits the data rows into chunks of about the chunk size, each ending just after a newline or at the end of the file.
+     */
+    private List<long[]> findChunks(final long dataStart, final int chunkSize) throws IOException {
+        final long size = channel.size();
+        final List<long[]> result = new ArrayList<>();
+        long start = dataStart;
+        while (start < size) {
+            final long end = findLineEnd(Math.min(size, start + chunkSize));
+            result.add(new long[] {start, end});
+            start = end;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the position just after the next newline at or after a position, or the size of the file if there is none.
+     */
+    private long findLineEnd(final long from) throws IOException {
+        final long size = channel.size();
+        final ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = from;
+        while (position < size) {
+            buffer.clear();
+            final int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == NEWLINE) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Copies a buffer into a byte array, and parses all the lines in it into rows.
+     */
+    private static List<TSVRow> parseLines(final ByteBuffer buffer, final int[] columns) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return parseLines(bytes, columns);
+    }
+
+    /**
+     * Parses all the lines in a byte array into rows, keeping only some of the fields of each line.
+     * The selected fields are copied into a new array shared by the rows, so the original array is not kept.
+     * Lines which end before a selected column have only the selected fields they contain.
+     *
+     * @param bytes The lines to parse.
+     * @param columns The columns to keep in increasing order, or null to keep all the fields in the original array.
+     * @return The rows parsed from the lines.
+     */
+    static List<TSVRow> parseLines(final byte[] bytes, final int[] columns) {
+        if (columns == null) {
+            return parseLines(bytes);
+        }
+        final List<int[]> rowStarts = new ArrayList<>();
+        final byte[] projected = new byte[bytes.length + 1]; // a last line with no newline gains a tab after its last field.
+        final int limit = bytes.length;
+        final int lastColumn = columns.length == 0 ? -1 : columns[columns.length - 1];
+        int length = 0;
+        int position = 0;
+        while (position < limit) {
+            final int[] fieldStarts = new int[columns.length + 1];
+            int selected = 0;
+            int field = 0;
+            int fieldStart = position;
+            // Copy each selected field followed by a tab, until the last selected column or the end of the line:
+            while (field <= lastColumn) {
+                while (position < limit && bytes[position] != TAB && bytes[position] != NEWLINE) {
+                    position++;
+                }
+                if (field == columns[selected]) {
+                    final int fieldEnd = (position == limit || bytes[position] == NEWLINE) && position > fieldStart
+                                         && bytes[position - 1] == CARRIAGE_RETURN ? position - 1 : position;
+                    fieldStarts[selected++] = length;
+                    System.arraycopy(bytes, fieldStart, projected, length, fieldEnd - fieldStart);
+                    length += fieldEnd - fieldStart;
+                    projected[length++] = TAB;
+                }
+                if (position >= limit || bytes[position] == NEWLINE) {
+                    break;
+                }
+                fieldStart = ++position;
+                field++;
+            }
+            while (position < limit && bytes[position] != NEWLINE) {
+                position++;
+            }
+            position++;
+            fieldStarts[selected] = length;
+            rowStarts.add(selected == columns.length ? fieldStarts : Arrays.copyOf(fieldStarts, selected + 1));
+        }
+        final byte[] buffer = Arrays.copyOf(projected, length);
+        final List<TSVRow> rows = new ArrayList<>(rowStarts.size());
+        for (int[] fieldStarts : rowStarts) {
+            rows.add(new TSVRow(buffer, fieldStarts));
+        }
+        return rows;
+    }
+
+    /**
+     * Parses all the lines in a byte array into rows sharing that array.
+     */
+    static List<TSVRow> parseLines(final byte[] bytes) {
+        final List<TSVRow> rows = new ArrayList<>();
+        final int limit = bytes.length;
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && bytes[lineEnd] != NEWLINE) {
+                lineEnd++;
+            }
+            final int fieldsEnd = lineEnd > lineStart && bytes[lineEnd - 1] == CARRIAGE_RETURN ? lineEnd - 1 : lineEnd;
+            rows.add(TSVRow.parse(bytes, lineStart, fieldsEnd));
+            lineStart = lineEnd + 1;
+        }
+        return rows;
+    }
+
+    /**
+     * Iterates over the rows of each chunk in order, keeping a window of chunks being parsed ahead of it.
+     * The window is a concurrent deque, as closing the iterator from another thread cancels the chunks in it.
+     */
+    private final class RowIterator implements Iterator<TSVRow> {
+
+        private final ExecutorService executor;
+        private final ConcurrentLinkedDeque<CompletableFuture<List<TSVRow>>> window = new ConcurrentLinkedDeque<>();
+        private int nextChunk;
+        private Iterator<TSVRow> current = Collections.emptyIterator();
+        private volatile boolean closed;
+
+        RowIterator() {
+            executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+                final Thread thread = new Thread(runnable, "TSVReader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            liveIterators.add(this);
+            fillWindow();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (closed) {
+                    throw new UncheckedIOException(new ClosedChannelException());
+                }
+                if (window.isEmpty()) {
+                    close();
+                    return false;
+                }
+                current = takeChunk().iterator();
+                fillWindow();
+            }
+            return true;
+        }
+
+        @Override
+        public TSVRow next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        /**
+         * Stops the parsing threads and cancels any chunks waiting to be parsed.  This can be called on any thread,
+         * and more than once.
+         */
+        void close() {
+            if (!closed) {
+                closed = true;
+                liveIterators.remove(this);
+                executor.shutdownNow();
+                for (CompletableFuture<List<TSVRow>> chunk : window) {
+                    chunk.cancel(true);
+                }
+            }
+        }
+
+        private void fillWindow() {
+            try {
+                while (window.size() < parallelism * 2 && nextChunk < chunks.size() && !closed) {
+                    final long[] chunk = chunks.get(nextChunk++);
+                    window.add(CompletableFuture.supplyAsync(() -> parseChunk(chunk[0], chunk[1]), executor));
+                }
+            } catch (RejectedExecutionException e) { // closed on another thread while filling the window.
+                throw new UncheckedIOException(new ClosedChannelException());
+            }
+        }
+
+        private List<TSVRow> takeChunk() {
+            try {
+                final List<TSVRow> rows = window.poll().join();
+                rowsRead = chunks.get(nextChunk - window.size() - 1)[1];
+                return rows;
+            } catch (CancellationException e) {
+                throw new UncheckedIOException(new ClosedChannelException());
+            } catch (CompletionException e) {
+                close();
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        private List<TSVRow> parseChunk(final long start, final long end) {
+            try {
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                return parseLines(buffer, columns);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+}
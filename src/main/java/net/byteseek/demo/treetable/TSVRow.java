@@ -0,0 +1,201 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.StringJoiner;
+
+/**
+ * A row of a tab separated file, stored as the raw UTF-8 bytes of its line and the offsets of each field in them.
+ * <p>
+ * The bytes are usually a buffer shared by all the rows parsed from the same chunk of a file, so a row costs little
+ * more than its field offsets.  Fields are only decoded into Strings when they are asked for.
+ */
+public final class TSVRow {
+
+    private static final byte TAB = '\t';
+
+    private final byte[] buffer;
+    private final int[] fieldStarts; // the start of each field in the buffer, followed by the end of the last field plus one.
+    private int index = -1;          // the index of the row in the TSVTable it belongs to, or -1 if it isn't in one.
+
+    /**
+     * Constructs a row over a buffer.
+     *
+     * @param buffer The buffer containing the bytes of the row, which may be shared with other rows.
+     * @param fieldStarts The offset of each field in the buffer, followed by one past the end of the last field.
+     */
+    public TSVRow(final byte[] buffer, final int[] fieldStarts) {
+        this.buffer = buffer;
+        this.fieldStarts = fieldStarts;
+    }
+
+    /**
+     * Creates a row from field values, which are encoded into a buffer of their own.
+     *
+     * @param fields The values of the fields.  Null values are stored as empty fields.
+     * @return A row containing the fields.
+     */
+    public static TSVRow of(final String... fields) {
+        final StringJoiner joiner = new StringJoiner("\t");
+        for (String field : fields) {
+            joiner.add(field == null ? "" : field);
+        }
+        final byte[] bytes = joiner.toString().getBytes(StandardCharsets.UTF_8);
+        return parse(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parses a line in a buffer into a row, splitting fields on tabs.
+     *
+     * @param buffer The buffer containing the line, which will be shared by the row.
+     * @param start The start of the line in the buffer.
+     * @param end The end of the line in the buffer, excluding any line terminator.
+     * @return A row for the line.
+     */
+    public static TSVRow parse(final byte[] buffer, final int start, final int end) {
+        int numFields = 1;
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == TAB) {
+                numFields++;
+            }
+        }
+        final int[] fieldStarts = new int[numFields + 1];
+        int field = 0;
+        fieldStarts[field++] = start;
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == TAB) {
+                fieldStarts[field++] = i + 1;
+            }
+        }
+        fieldStarts[field] = end + 1;
+        return new TSVRow(buffer, fieldStarts);
+    }
+
+    /**
+     * @return The number of fields in the row.
+     */
+    public int getFieldCount() {
+        return fieldStarts.length - 1;
+    }
+
+    /**
+     * Decodes a field of the row.
+     *
+     * @param field The index of the field.
+     * @return The value of the field, or null if the row has no such field.
+     */
+    public String getField(final int field) {
+        if (field < 0 || field >= fieldStarts.length - 1) {
+            return null;
+        }
+        final int start = fieldStarts[field];
+        return new String(buffer, start, fieldStarts[field + 1] - 1 - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param field The index of the field.
+     * @return The length of the field in bytes, or zero if the row has no such field.
+     */
+    public int getFieldLength(final int field) {
+        return field < 0 || field >= fieldStarts.length - 1 ? 0 : fieldStarts[field + 1] - 1 - fieldStarts[field];
+    }
+
+    /**
+     * @param field The index of the field.
+     * @return The offset of the start of the field in the buffer.
+     */
+    int getFieldStart(final int field) {
+        return fieldStarts[field];
+    }
+
+    /**
+     * @return The buffer holding the bytes of the row.
+     */
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return The index of the row in the TSVTable it belongs to, or -1 if it doesn't belong to one.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    void setIndex(final int index) {
+        this.index = index;
+    }
+
+    /**
+     * Compares the bytes of this row with another row, without decoding any fields.
+     *
+     * @param other The row to compare with.
+     * @return Whether the rows have the same fields with the same bytes.
+     */
+    public boolean contentEquals(final TSVRow other) {
+        final int[] localStarts = fieldStarts; // avoid repeated getfield.
+        final int[] otherStarts = other.fieldStarts;
+        if (localStarts.length != otherStarts.length) {
+            return false;
+        }
+        final int offset = otherStarts[0] - localStarts[0];
+        for (int field = 1; field < localStarts.length; field++) {
+            if (otherStarts[field] - localStarts[field] != offset) {
+                return false;
+            }
+        }
+        final int start = localStarts[0];
+        final int end = localStarts[localStarts.length - 1] - 1;
+        return Arrays.equals(buffer, start, end, other.buffer, start + offset, end + offset);
+    }
+
+    /**
+     * Decodes all the fields of the row.
+     *
+     * @return The values of all the fields in the row.
+     */
+    public String[] getFields() {
+        final String[] fields = new String[getFieldCount()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = getField(i);
+        }
+        return fields;
+    }
+
+    @Override
+    public String toString() {
+        return String.join("\t", getFields());
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * A source of the rows of a tab separated file, whose first line is the header.
+ */
+public interface TSVRowSource extends Closeable {
+
+    /**
+     * The file name extension of gzip compressed files.
+     */
+    String GZIP_EXTENSION = ".gz";
+
+    /**
+     * Opens a TSV file to read, decompressing it as it is read if its name ends in {@link #GZIP_EXTENSION}.
+     *
+     * @param path The path of the file to read.
+     * @return A source of the rows of the file.
+     * @throws IOException If the file can't be read, or has no header line.
+     */
+    static TSVRowSource open(final Path path) throws IOException {
+        return open(path, ColumnProjection.ALL);
+    }
+
+    /**
+     * Opens a TSV file to read only some of its columns, decompressing it as it is read if its name ends in
+     * {@link #GZIP_EXTENSION}.  The header and the rows of the source contain only the selected columns.
+     *
+     * @param path The path of the file to read.
+     * @param projection The columns to read.
+     * @return A source of the selected columns of the rows of the file.
+     * @throws IOException If the file can't be read, or has no header line.
+     * @throws IllegalArgumentException if the projection is null, or selects columns by name which are not in the header.
+     */
+    static TSVRowSource open(final Path path, final ColumnProjection projection) throws IOException {
+        final Path fileName = path.getFileName();
+        if (fileName != null && fileName.toString().endsWith(GZIP_EXTENSION)) {
+            return new TSVGzipReader(path, projection);
+        }
+        return new TSVReader(path, projection);
+    }
+
+    /**
+     * @return The fields of the header line.
+     */
+    String[] getHeader();
+
+    /**
+     * Returns the data rows of the file in file order.
+     * The stream should be consumed sequentially, and can only be consumed once.
+     *
+     * @return A stream of the data rows in the file.
+     * @throws UncheckedIOException if the file can't be read.
+     */
+    Stream<TSVRow> rows();
+
+    /**
+     * Returns how much of the file the rows returned so far were read from.  This can be called on any thread.
+     *
+     * @return The fraction of the file read, from 0 to 1.
+     */
+    double getProgress();
+
+}
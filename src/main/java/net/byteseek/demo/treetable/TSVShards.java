@@ -0,0 +1,228 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Loads a tree from a TSV file which has been written as many shards, such as part-0000.tsv to part-0127.tsv.
+ * <p>
+ * Shards are found from a directory or a glob over file names, and are ordered by file name.  Each shard is read and
+ * parsed on a pool of threads into a {@link TSVTreeBuilder} of its own, which indexes the ids of the rows in the shard.
+ * The builders are then merged by {@link TSVTreeBuilder#merge(List, ExecutorService)}, which resolves parent ids
+ * across the shards, so the tree is the same as if the shards were one file.  Every shard must have the same header.
+ */
+public final class TSVShards {
+
+    private static final String TSV_EXTENSION = ".tsv";
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    private TSVShards() {
+    }
+
+    /**
+     * @param path A path given for a TSV file.
+     * @return Whether the path names shards: it is a directory, or its file name is a glob and it isn't a file.
+     */
+    public static boolean isSharded(final Path path) {
+        return Files.isDirectory(path) || !Files.exists(path) && isGlob(path);
+    }
+
+    /**
+     * Finds the shards named by a path: the TSV files in a directory, or the files matching a glob over file names
+     * in a directory, such as data/part-*.tsv.  TSV files are files whose names end in .tsv, or .tsv.gz if compressed.
+     *
+     * @param path A directory, or a glob over the names of the files in a directory.
+     * @return The paths of the shards, ordered by file name.
+     * @throws IOException if the directory can't be read, or there are no shards in it.
+     */
+    public static List<Path> find(final Path path) throws IOException {
+        final boolean glob = !Files.isDirectory(path) && isGlob(path);
+        final Path directory = glob ? getDirectory(path) : path;
+        final List<Path> shards = new ArrayList<>();
+        try (DirectoryStream<Path> files = glob ? Files.newDirectoryStream(directory, path.getFileName().toString())
+                                                : Files.newDirectoryStream(directory, TSVShards::isTSVFile)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    shards.add(file);
+                }
+            }
+        }
+        if (shards.isEmpty()) {
+            throw new IOException("No TSV shards found in " + path);
+        }
+        shards.sort((path1, path2) -> path1.getFileName().toString().compareTo(path2.getFileName().toString()));
+        return shards;
+    }
+
+    /**
+     * Reads the shards in parallel with a thread per available processor, and merges them into one builder.
+     *
+     * @param shards The paths of the shards, in the order their rows should be in.
+     * @param idColumn The name of the id column.
+     * @param parentIdColumn The name of the parent id column.
+     * @param projection The columns to read from each shard.
+     * @return A builder containing the rows of all the shards, which can build the tree.
+     * @throws IOException if a shard can't be read, or doesn't have the same header as the first shard.
+     * @throws IllegalArgumentException if the id or parent id columns are not in the header.
+     */
+    public static TSVTreeBuilder load(final List<Path> shards, final String idColumn, final String parentIdColumn,
+                                      final ColumnProjection projection) throws IOException {
+        return load(shards, idColumn, parentIdColumn, projection, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Reads the shards in parallel, and merges them into one builder.
+     *
+     * @param shards The paths of the shards, in the order their rows should be in.
+     * @param idColumn The name of the id column.
+     * @param parentIdColumn The name of the parent id column.
+     * @param projection The columns to read from each shard.
+     * @param parallelism The number of threads to read shards and merge them with.
+     * @return A builder containing the rows of all the shards, which can build the tree.
+     * @throws IOException if a shard can't be read, or doesn't have the same header as the first shard.
+     * @throws IllegalArgumentException if there are no shards, the parallelism is less than one,
+     *                                  or the id or parent id columns are not in the header.
+     */
+    public static TSVTreeBuilder load(final List<Path> shards, final String idColumn, final String parentIdColumn,
+                                      final ColumnProjection projection, final int parallelism) throws IOException {
+        if (shards == null || shards.isEmpty() || projection == null) {
+            throw new IllegalArgumentException("Object cannot be null or empty: shards or projection");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        final ColumnProjection columns = projection.withRequired(idColumn, parentIdColumn);
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            final Thread thread = new Thread(runnable, "TSVShards");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final List<Future<TSVTreeBuilder>> futures = new ArrayList<>(shards.size());
+            for (Path shard : shards) {
+                futures.add(executor.submit(() -> readShard(shard, idColumn, parentIdColumn, columns)));
+            }
+            final List<TSVTreeBuilder> builders = new ArrayList<>(shards.size());
+            for (int shard = 0; shard < shards.size(); shard++) {
+                final TSVTreeBuilder builder = getShard(futures.get(shard));
+                final String[] header = builder.getTSVTable().getHeader();
+                if (!builders.isEmpty() && !Arrays.equals(header, builders.get(0).getTSVTable().getHeader())) {
+                    throw new IOException("Shard " + shards.get(shard) + " has a different header to " + shards.get(0));
+                }
+                builders.add(builder);
+            }
+            return TSVTreeBuilder.merge(builders, executor);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading TSV shards", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads a shard into a builder of its own.  Each shard is parsed by a single reader thread, as the shards are
+     * already read in parallel.
+     */
+    private static TSVTreeBuilder readShard(final Path shard, final String idColumn, final String parentIdColumn,
+                                            final ColumnProjection projection) throws IOException {
+        final Path fileName = shard.getFileName();
+        try (TSVRowSource reader = fileName != null && fileName.toString().endsWith(TSVRowSource.GZIP_EXTENSION)
+                                   ? new TSVGzipReader(shard, projection)
+                                   : new TSVReader(shard, 1, TSVReader.DEFAULT_CHUNK_SIZE, projection);
+             Stream<TSVRow> rows = reader.rows()) {
+            final TSVTreeBuilder builder = new TSVTreeBuilder(new TSVTable(reader.getHeader()), idColumn, parentIdColumn);
+            rows.forEachOrdered(builder::add);
+            builder.getTSVTable().finish();
+            return builder;
+        }
+    }
+
+    private static TSVTreeBuilder getShard(final Future<TSVTreeBuilder> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static boolean isGlob(final Path path) {
+        final Path fileName = path.getFileName();
+        if (fileName == null) {
+            return false;
+        }
+        final String name = fileName.toString();
+        for (int i = 0; i < GLOB_CHARACTERS.length(); i++) {
+            if (name.indexOf(GLOB_CHARACTERS.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Path getDirectory(final Path path) {
+        final Path parent = path.toAbsolutePath().getParent();
+        return parent == null ? path.toAbsolutePath().getRoot() : parent;
+    }
+
+    private static boolean isTSVFile(final Path path) {
+        final String name = path.getFileName().toString();
+        return name.endsWith(TSV_EXTENSION) || name.endsWith(TSV_EXTENSION + TSVRowSource.GZIP_EXTENSION);
+    }
+
+}
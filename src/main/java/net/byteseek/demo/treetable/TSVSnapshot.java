@@ -0,0 +1,346 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Set;
+import javax.swing.tree.TreeNode;
+
+import net.byteseek.swing.treetable.CompactTreeStore;
+import net.byteseek.swing.treetable.MappedTreeStore;
+import net.byteseek.swing.treetable.TreeTableModel;
+
+/**
+ * Reads and writes binary snapshots of trees loaded from TSV files, so a tree can be displayed on later launches
+ * without parsing the TSV or building the tree again.
+ * <p>
+ * A snapshot is a {@link MappedTreeStore} file next to the TSV file.  It contains the linked tree structure,
+ * the typed column values (strings with many repeated values are dictionary encoded), and optionally the nodes
+ * which were expanded.  It is mapped into memory when it is opened, so nothing is parsed, and only the nodes
+ * which are displayed are read.  Booleans and dates are stored as longs, and the TSV column types are recorded
+ * so {@link TSVSnapshotTreeTableModel} can display them as they were.  Rows which are not in the TSV table, such as
+ * the virtual root and placeholders for missing parents, can have values which are not of the type of a typed
+ * column, such as the label of the virtual root in a numeric id column.  These values are stored in an extra
+ * label column for the typed column.
+ * <p>
+ * The size and last modified time of the TSV file, the id columns the tree was built with, and the
+ * {@link ColumnProjection} it was read with are recorded.
+ * A snapshot which doesn't match the TSV file any more is ignored, so the tree is built again.
+ */
+public final class TSVSnapshot {
+
+    /**
+     * The extension added to the TSV file name to give the snapshot file name.
+     */
+    public static final String SNAPSHOT_EXTENSION = ".snapshot";
+
+    /**
+     * The name of the node set of expanded nodes.
+     */
+    public static final String EXPANDED_NODES = "expanded";
+
+    private static final String SOURCE_SIZE = "source.size";
+    private static final String SOURCE_MODIFIED = "source.modified";
+    private static final String ID_COLUMN = "tree.idColumn";
+    private static final String PARENT_ID_COLUMN = "tree.parentIdColumn";
+    private static final String PROJECTION = "tsv.projection";
+    private static final String COLUMN_COUNT = "tsv.columnCount";
+    private static final String COLUMN_TYPE = "column.type.";
+    private static final String LABEL_COLUMN = "column.labels.";
+
+    private TSVSnapshot() {
+    }
+
+    /**
+     * @param tsvPath The path of a TSV file.
+     * @return The path of the snapshot for the TSV file.
+     */
+    public static Path getSnapshotPath(final Path tsvPath) {
+        return tsvPath.resolveSibling(tsvPath.getFileName() + SNAPSHOT_EXTENSION);
+    }
+
+    /**
+     * Opens the snapshot of a TSV file, if there is one which is up to date.
+     *
+     * @param tsvPath The path of the TSV file.
+     * @param idColumn The name of the id column the tree is built with.
+     * @param parentIdColumn The name of the parent id column the tree is built with.
+     * @return The snapshot, or null if there is no snapshot, it can't be read, or it doesn't match the TSV file.
+     */
+    public static MappedTreeStore open(final Path tsvPath, final String idColumn, final String parentIdColumn) {
+        return open(tsvPath, idColumn, parentIdColumn, ColumnProjection.ALL);
+    }
+
+    /**
+     * Opens the snapshot of some of the columns of a TSV file, if there is one which is up to date.
+     *
+     * @param tsvPath The path of the TSV file.
+     * @param idColumn The name of the id column the tree is built with.
+     * @param parentIdColumn The name of the parent id column the tree is built with.
+     * @param projection The columns the tree is read with.
+     * @return The snapshot, or null if there is no snapshot, it can't be read, or it doesn't match the TSV file.
+     */
+    public static MappedTreeStore open(final Path tsvPath, final String idColumn, final String parentIdColumn,
+                                       final ColumnProjection projection) {
+        final Path snapshotPath = getSnapshotPath(tsvPath);
+        if (!Files.isRegularFile(snapshotPath)) {
+            return null;
+        }
+        try {
+            final MappedTreeStore snapshot = MappedTreeStore.open(snapshotPath);
+            final boolean current = Objects.equals(snapshot.getProperty(SOURCE_SIZE), String.valueOf(Files.size(tsvPath)))
+                    && Objects.equals(snapshot.getProperty(SOURCE_MODIFIED), String.valueOf(Files.getLastModifiedTime(tsvPath).toMillis()))
+                    && Objects.equals(snapshot.getProperty(ID_COLUMN), idColumn)
+                    && Objects.equals(snapshot.getProperty(PARENT_ID_COLUMN), parentIdColumn)
+                    && Objects.equals(getProjection(snapshot), projection.toString());
+            return current ? snapshot : null;
+        } catch (IOException | RuntimeException e) {
+            return null; // an unreadable snapshot is rebuilt, like a stale one.
+        }
+    }
+
+    /**
+     * Writes a snapshot of a tree built from a TSV file.  The snapshot is written to a temporary file which then
+     * replaces any existing snapshot, so a snapshot which is only partly written is never opened.
+     * A snapshot which is open can't be replaced on some platforms.
+     *
+     * @param tsvPath The path of the TSV file the tree was built from.
+     * @param idColumn The name of the id column the tree was built with.
+     * @param parentIdColumn The name of the parent id column the tree was built with.
+     * @param tree The tree built from the TSV file, whose user objects are the rows of the table.
+     * @param tsvTable The table of rows in the TSV file.
+     * @param expandedNodes The numbers of the nodes in the tree which are expanded, or null to record none.
+     * @throws IOException if the snapshot could not be written.
+     */
+    public static void write(final Path tsvPath, final String idColumn, final String parentIdColumn,
+                             final CompactTreeStore tree, final TSVTable tsvTable, final int[] expandedNodes) throws IOException {
+        write(tsvPath, idColumn, parentIdColumn, ColumnProjection.ALL, tree, tsvTable, expandedNodes);
+    }
+
+    /**
+     * Writes a snapshot of a tree built from some of the columns of a TSV file.
+     *
+     * @param tsvPath The path of the TSV file the tree was built from.
+     * @param idColumn The name of the id column the tree was built with.
+     * @param parentIdColumn The name of the parent id column the tree was built with.
+     * @param projection The columns the tree was read with.
+     * @param tree The tree built from the TSV file, whose user objects are the rows of the table.
+     * @param tsvTable The table of rows in the TSV file.
+     * @param expandedNodes The numbers of the nodes in the tree which are expanded, or null to record none.
+     * @throws IOException if the snapshot could not be written.
+     */
+    public static void write(final Path tsvPath, final String idColumn, final String parentIdColumn, final ColumnProjection projection,
+                             final CompactTreeStore tree, final TSVTable tsvTable, final int[] expandedNodes) throws IOException {
+        final MappedTreeStore.Writer writer = new MappedTreeStore.Writer(tree)
+                .setProperty(SOURCE_SIZE, String.valueOf(Files.size(tsvPath)))
+                .setProperty(SOURCE_MODIFIED, String.valueOf(Files.getLastModifiedTime(tsvPath).toMillis()))
+                .setProperty(ID_COLUMN, idColumn)
+                .setProperty(PARENT_ID_COLUMN, parentIdColumn)
+                .setProperty(PROJECTION, projection.toString());
+        final String[] header = tsvTable.getHeader();
+        writer.setProperty(COLUMN_COUNT, String.valueOf(header.length));
+        for (int column = 0; column < header.length; column++) {
+            final TSVTable.ColumnType type = tsvTable.getColumnType(column);
+            final int col = column;
+            writer.setProperty(COLUMN_TYPE + column, type.name());
+            writer.addColumn(header[column], getStoreType(type),
+                             item -> toStoreValue(type, tsvTable.getValue(getRow(tree, item), col)),
+                             type == TSVTable.ColumnType.STRING);
+        }
+        int labelColumn = header.length;
+        for (int column = 0; column < header.length; column++) {
+            if (hasLabels(tree, tsvTable, column)) {
+                final TSVTable.ColumnType type = tsvTable.getColumnType(column);
+                final int col = column;
+                writer.setProperty(LABEL_COLUMN + column, String.valueOf(labelColumn++));
+                writer.addColumn(header[column] + " labels", MappedTreeStore.ColumnType.STRING,
+                                 item -> getLabel(type, getRow(tree, item), tsvTable, col), false);
+            }
+        }
+        if (expandedNodes != null) {
+            writer.addNodeSet(EXPANDED_NODES, expandedNodes);
+        }
+
+        final Path snapshotPath = getSnapshotPath(tsvPath);
+        final Path tempPath = Files.createTempFile(snapshotPath.toAbsolutePath().getParent(),
+                                                   snapshotPath.getFileName().toString(), ".tmp");
+        try {
+            writer.write(tempPath);
+            try {
+                Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * @param snapshot A snapshot.
+     * @param column A column in the snapshot.
+     * @return The type the column had in the TSV table.
+     */
+    public static TSVTable.ColumnType getColumnType(final MappedTreeStore snapshot, final int column) {
+        final String type = snapshot.getProperty(COLUMN_TYPE + column);
+        return type == null ? TSVTable.ColumnType.STRING : TSVTable.ColumnType.valueOf(type);
+    }
+
+    /**
+     * @param snapshot A snapshot.
+     * @return The number of columns in the TSV table, not including any label columns.
+     */
+    public static int getColumnCount(final MappedTreeStore snapshot) {
+        final String count = snapshot.getProperty(COLUMN_COUNT);
+        return count == null ? snapshot.getColumnCount() : Integer.parseInt(count);
+    }
+
+    /**
+     * @param snapshot A snapshot.
+     * @param column A column in the TSV table.
+     * @return The column in the snapshot holding values of the column which aren't of the column type,
+     *         or -1 if there are none.
+     */
+    public static int getLabelColumn(final MappedTreeStore snapshot, final int column) {
+        final String labelColumn = snapshot.getProperty(LABEL_COLUMN + column);
+        return labelColumn == null ? -1 : Integer.parseInt(labelColumn);
+    }
+
+    /**
+     * Converts a value stored in a snapshot back to the type of the TSV column.
+     *
+     * @param type The type of the TSV column.
+     * @param value The value stored in the snapshot.
+     * @return The value as the type of the TSV column.
+     */
+    public static Object fromStoreValue(final TSVTable.ColumnType type, final Object value) {
+        if (value == null) {
+            return null;
+        }
+        switch (type) {
+            case BOOLEAN: return (Long) value != 0;
+            case DATE:    return LocalDate.ofEpochDay((Long) value);
+            default:      return value;
+        }
+    }
+
+    /**
+     * Gets the numbers of the nodes which are expanded in a model displaying a CompactTreeStore or MappedTreeStore.
+     *
+     * @param model The model.
+     * @return The numbers of the expanded nodes, in ascending order.
+     */
+    public static int[] getExpandedNodeNumbers(final TreeTableModel model) {
+        final Set<TreeNode> expanded = model.getExpandedNodes();
+        final int[] nodeNumbers = new int[expanded.size()];
+        int count = 0;
+        for (TreeNode node : expanded) {
+            if (node instanceof CompactTreeStore.Node) {
+                nodeNumbers[count++] = ((CompactTreeStore.Node) node).getNodeNumber();
+            } else if (node instanceof MappedTreeStore.Node) {
+                nodeNumbers[count++] = ((MappedTreeStore.Node) node).getNodeNumber();
+            }
+        }
+        final int[] result = Arrays.copyOf(nodeNumbers, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns the projection a snapshot was read with.  Snapshots written before projections were recorded read all the columns.
+     */
+    private static String getProjection(final MappedTreeStore snapshot) {
+        final String projection = snapshot.getProperty(PROJECTION);
+        return projection == null ? ColumnProjection.ALL.toString() : projection;
+    }
+
+    private static TSVRow getRow(final CompactTreeStore tree, final int item) {
+        return (TSVRow) tree.getItemUserObject(item);
+    }
+
+    /**
+     * Only rows which are not in the table can have values which are not of the type of a typed column,
+     * as the table makes a column a string column if any of its rows don't parse.
+     */
+    private static boolean hasLabels(final CompactTreeStore tree, final TSVTable tsvTable, final int column) {
+        final TSVTable.ColumnType type = tsvTable.getColumnType(column);
+        if (type != TSVTable.ColumnType.STRING) {
+            for (int item = 0; item < tree.getItemCount(); item++) {
+                if (getLabel(type, getRow(tree, item), tsvTable, column) != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String getLabel(final TSVTable.ColumnType type, final TSVRow row, final TSVTable tsvTable,
+                                   final int column) {
+        if (row.getIndex() < 0) {
+            final Object value = tsvTable.getValue(row, column);
+            if (value != null && toStoreValue(type, value) == null) {
+                return value.toString();
+            }
+        }
+        return null;
+    }
+
+    private static MappedTreeStore.ColumnType getStoreType(final TSVTable.ColumnType type) {
+        switch (type) {
+            case DOUBLE: return MappedTreeStore.ColumnType.DOUBLE;
+            case STRING: return MappedTreeStore.ColumnType.STRING;
+            default:     return MappedTreeStore.ColumnType.LONG; // longs, booleans and dates.
+        }
+    }
+
+    /**
+     * Converts a TSV table value to the value stored in a snapshot.  Values which don't have the type of a typed
+     * column, such as the labels of placeholder rows, are stored as null.
+     */
+    private static Object toStoreValue(final TSVTable.ColumnType type, final Object value) {
+        switch (type) {
+            case LONG:    return value instanceof Long ? value : null;
+            case DOUBLE:  return value instanceof Double ? value : null;
+            case BOOLEAN: return value instanceof Boolean ? ((Boolean) value ? 1L : 0L) : null;
+            case DATE:    return value instanceof LocalDate ? ((LocalDate) value).toEpochDay() : null;
+            default:      return value;
+        }
+    }
+
+}
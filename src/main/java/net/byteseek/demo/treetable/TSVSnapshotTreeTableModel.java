@@ -0,0 +1,154 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.util.Comparator;
+import javax.swing.RowSorter;
+import javax.swing.table.DefaultTableColumnModel;
+import javax.swing.table.TableColumnModel;
+import javax.swing.tree.TreeNode;
+
+import net.byteseek.swing.treetable.MappedTreeStore;
+import net.byteseek.swing.treetable.MappedTreeTableModel;
+import net.byteseek.swing.treetable.TreeNodeComparator;
+import net.byteseek.swing.treetable.TreeTableRowSorter;
+
+/**
+ * A TreeTableModel which displays a tree from a {@link TSVSnapshot}, with the column types of the TSV table.
+ */
+public class TSVSnapshotTreeTableModel extends MappedTreeTableModel {
+
+    private final TSVTable.ColumnType[] columnTypes;
+    private final int[] labelColumns;
+
+    /**
+     * Constructs a TSVSnapshotTreeTableModel displaying a snapshot.
+     *
+     * @param snapshot The snapshot to display.
+     */
+    public TSVSnapshotTreeTableModel(final MappedTreeStore snapshot) {
+        super(snapshot, true);
+        final int columnCount = TSVSnapshot.getColumnCount(snapshot);
+        columnTypes = new TSVTable.ColumnType[columnCount];
+        labelColumns = new int[columnCount];
+        for (int column = 0; column < columnCount; column++) {
+            columnTypes[column] = TSVSnapshot.getColumnType(snapshot, column);
+            labelColumns[column] = TSVSnapshot.getLabelColumn(snapshot, column);
+        }
+    }
+
+    @Override
+    public Object getColumnValue(final TreeNode node, final int column) {
+        final Object value = super.getColumnValue(node, column);
+        if (value == null) {
+            return getLabel(node, column);
+        }
+        return TSVSnapshot.fromStoreValue(columnTypes[column], value);
+    }
+
+    @Override
+    public Class<?> getColumnClass(final int columnIndex) {
+        return columnTypes[columnIndex].getColumnClass();
+    }
+
+    @Override
+    public Comparator<?> getColumnComparator(final int column) {
+        return columnTypes[column] == TSVTable.ColumnType.STRING ? null : TSVTable.TYPED_VALUE_COMPARATOR;
+    }
+
+    /**
+     * Expands nodes in the snapshot, such as the nodes which were expanded when it was written.
+     * Nodes are expanded from the bottom of the tree up, so nodes which are not visible yet are expanded
+     * before their parents, and only the visible rows of each parent are added to the table when it is expanded.
+     *
+     * @param nodeNumbers The numbers of the nodes to expand, in ascending order.
+     */
+    public void expandNodes(final int[] nodeNumbers) {
+        for (int index = nodeNumbers.length - 1; index >= 0; index--) {
+            expandNode(store.getNode(nodeNumbers[index]));
+        }
+    }
+
+    /**
+     * Creates columns for the TSV table columns, leaving out the label columns.
+     */
+    @Override
+    protected TableColumnModel createTableColumnModel() {
+        final TableColumnModel result = new DefaultTableColumnModel();
+        for (int column = 0; column < columnTypes.length; column++) {
+            result.addColumn(createColumn(column, store.getColumnName(column)));
+        }
+        return result;
+    }
+
+    /**
+     * Creates the default row sorter, with a node comparator that compares values in the snapshot directly,
+     * unless a node has a label.
+     */
+    @Override
+    protected TreeTableRowSorter createDefaultRowSorter() {
+        final TreeTableRowSorter rowSorter = super.createDefaultRowSorter();
+        rowSorter.setNodeComparator(new LabelledColumnComparator(this));
+        return rowSorter;
+    }
+
+    private String getLabel(final TreeNode node, final int column) {
+        final int labelColumn = labelColumns[column];
+        return labelColumn < 0 ? null : (String) store.getValue(labelColumn, ((MappedTreeStore.Node) node).getNodeNumber());
+    }
+
+    /**
+     * A node comparator which compares values in the snapshot directly, and compares values as a TreeNodeComparator
+     * does if either node has a label instead of a value.
+     */
+    protected static class LabelledColumnComparator extends TreeNodeComparator {
+
+        private final TSVSnapshotTreeTableModel snapshotModel;
+
+        public LabelledColumnComparator(final TSVSnapshotTreeTableModel model) {
+            super(model);
+            this.snapshotModel = model;
+        }
+
+        @Override
+        protected int compareValues(final TreeNode node1, final TreeNode node2, final RowSorter.SortKey sortKey) {
+            final int column = sortKey.getColumn();
+            if (snapshotModel.labelColumns[column] >= 0
+                    && (snapshotModel.getLabel(node1, column) != null || snapshotModel.getLabel(node2, column) != null)) {
+                return super.compareValues(node1, node2, sortKey);
+            }
+            return snapshotModel.store.compare(column, ((MappedTreeStore.Node) node1).getNodeNumber(),
+                                               ((MappedTreeStore.Node) node2).getNodeNumber());
+        }
+    }
+
+}
@@ -0,0 +1,988 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The rows of a tab separated file, with the type of each column inferred from a sample of its values.
+ * <p>
+ * Columns whose sampled values are all longs, doubles, booleans or ISO dates (yyyy-MM-dd) are parsed once as rows
+ * are added, and stored in primitive arrays indexed by row.  Empty values in a typed column are null.  If a value
+ * later in the file doesn't parse as the type inferred, the column falls back to being a string column.
+ * Numbers with leading zeros, such as codes like 007, are not parsed as numbers, as they would lose the zeros.
+ * <p>
+ * String columns whose sampled values repeat are dictionary encoded: each row stores an int code,
+ * each distinct value is decoded once into a String shared by all the rows with that value, and the distinct values
+ * are ranked in order so rows are sorted by comparing ranks rather than strings.  If a column turns out to have more
+ * than {@link #MAX_DICTIONARY_SIZE} distinct values, it stops being encoded.
+ * Other string columns are decoded from the rows whenever they are asked for.
+ * <p>
+ * Rows must be added from a single thread.
+ */
+public class TSVTable {
+
+    /**
+     * The types a column can be inferred to have.
+     */
+    public enum ColumnType {
+        LONG(Long.class),
+        DOUBLE(Double.class),
+        BOOLEAN(Boolean.class),
+        DATE(LocalDate.class),
+        STRING(String.class);
+
+        private final Class<?> columnClass;
+
+        ColumnType(final Class<?> columnClass) {
+            this.columnClass = columnClass;
+        }
+
+        /**
+         * @return The class of values in a column of this type.
+         */
+        public Class<?> getColumnClass() {
+            return columnClass;
+        }
+    }
+
+    /**
+     * Compares values of a typed column, which are comparable values of the column type.
+     * Values of rows which don't belong to the table, such as placeholder rows, may be strings, which are compared
+     * as strings with any other value.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static final Comparator<Object> TYPED_VALUE_COMPARATOR = (value1, value2) ->
+            value1.getClass() == value2.getClass() ? ((Comparable) value1).compareTo(value2)
+                                                  : value1.toString().compareTo(value2.toString());
+
+    public static final int DEFAULT_SAMPLE_SIZE = 1000;
+
+    /**
+     * The most distinct values a dictionary encoded string column can have before it stops being encoded.
+     */
+    public static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+    // The most distinct values a sample can have, as a fraction of its size, for its column to be dictionary encoded.
+    // A sample of 1000 values from a column with up to about 10000 distinct values has enough repeats to be encoded.
+    private static final double MAX_SAMPLE_DISTINCT_FRACTION = 0.95;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final String[] header;
+    private final int sampleSize;
+    private final List<TSVRow> sample = new ArrayList<>();
+    private ColumnType[] columnTypes;
+    private TypedColumn[] columns;
+    private TSVRow[] rows = new TSVRow[INITIAL_CAPACITY];
+    private int rowCount;
+
+    /**
+     * Constructs an empty TSVTable which infers column types from the first {@link #DEFAULT_SAMPLE_SIZE} rows.
+     *
+     * @param header The names of the columns.
+     */
+    public TSVTable(final String[] header) {
+        this(header, DEFAULT_SAMPLE_SIZE);
+    }
+
+    /**
+     * Constructs an empty TSVTable.
+     *
+     * @param header The names of the columns.
+     * @param sampleSize The number of rows to sample to infer column types.
+     * @throws IllegalArgumentException if the sample size is less than one.
+     */
+    public TSVTable(final String[] header, final int sampleSize) {
+        if (sampleSize < 1) {
+            throw new IllegalArgumentException("Sample size must be positive: " + sampleSize);
+        }
+        this.header = header.clone();
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * Adds a row to the table.  Rows are sampled until the sample size is reached, then column types are inferred,
+     * and typed values are parsed from each row as it is added.
+     *
+     * @param row The row to add.
+     */
+    public void add(final TSVRow row) {
+        if (rowCount == rows.length) {
+            rows = Arrays.copyOf(rows, rowCount * 2);
+        }
+        row.setIndex(rowCount);
+        rows[rowCount++] = row;
+        if (columns == null) {
+            sample.add(row);
+            if (sample.size() == sampleSize) {
+                inferColumns();
+            }
+        } else {
+            parseValues(row);
+        }
+    }
+
+    /**
+     * Concatenates tables with the same columns, such as tables of the rows of each shard of a file, into one table
+     * whose rows are the rows of each table in order.  The rows are moved to the new table, and the tables must not
+     * be used afterwards.  Column types are those inferred by the first table with rows, as if the rows had all been
+     * added to it.  Typed values which other tables stored in the same way are copied rather than parsed again.
+     *
+     * @param tables The tables to concatenate, which must all have finished adding rows.
+     * @return A table containing the rows of all the tables, to which more rows can be added.
+     * @throws IllegalArgumentException if there are no tables, or they don't all have the same header.
+     */
+    public static TSVTable concat(final List<TSVTable> tables) {
+        if (tables == null || tables.isEmpty()) {
+            throw new IllegalArgumentException("There must be at least one table to concatenate.");
+        }
+        final TSVTable first = tables.get(0);
+        final TSVTable result = new TSVTable(first.header, first.sampleSize);
+        int totalRows = 0;
+        final List<TSVTable> withRows = new ArrayList<>();
+        for (TSVTable table : tables) {
+            if (!Arrays.equals(table.header, first.header)) {
+                throw new IllegalArgumentException("Tables have different headers: " + Arrays.toString(first.header)
+                                                   + " and " + Arrays.toString(table.header));
+            }
+            if (table.rowCount > 0) {
+                totalRows += table.rowCount;
+                withRows.add(table);
+            }
+        }
+        if (withRows.isEmpty()) {
+            return result;
+        }
+        result.rows = new TSVRow[Math.max(INITIAL_CAPACITY, totalRows)];
+        for (TSVTable table : withRows) {
+            table.finish();
+            for (int index = 0; index < table.rowCount; index++) {
+                final TSVRow row = table.rows[index];
+                row.setIndex(result.rowCount);
+                result.rows[result.rowCount++] = row;
+            }
+        }
+        final int numColumns = first.header.length;
+        result.columnTypes = new ColumnType[numColumns];
+        result.columns = new TypedColumn[numColumns];
+        for (int column = 0; column < numColumns; column++) {
+            result.columnTypes[column] = ColumnType.STRING;
+            final TypedColumn merged = concatColumn(withRows, column, totalRows);
+            if (merged != null) {
+                result.columns[column] = merged;
+                result.columnTypes[column] = withRows.get(0).columnTypes[column];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finishes adding rows, inferring the column types from the rows sampled if there were fewer than the sample size.
+     */
+    public void finish() {
+        if (columns == null) {
+            inferColumns();
+        }
+    }
+
+    /**
+     * @return The names of the columns.
+     */
+    public String[] getHeader() {
+        return header.clone();
+    }
+
+    /**
+     * @return The number of columns in the header.
+     */
+    public int getColumnCount() {
+        return header.length;
+    }
+
+    /**
+     * @return The number of rows in the table.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @param index The index of the row.
+     * @return The row at the index.
+     */
+    public TSVRow getRow(final int index) {
+        return rows[index];
+    }
+
+    /**
+     * @param column The column.
+     * @return The type of the column, or STRING if types have not been inferred yet.
+     */
+    public ColumnType getColumnType(final int column) {
+        return columnTypes == null || column >= columnTypes.length ? ColumnType.STRING : columnTypes[column];
+    }
+
+    /**
+     * @param column The column.
+     * @return Whether the values of the column are stored in primitive arrays: the column has a type other than STRING,
+     *         or it is a dictionary encoded string column.
+     */
+    public boolean isTyped(final int column) {
+        return columns != null && column < columns.length && columns[column] != null;
+    }
+
+    /**
+     * @param column The column.
+     * @return Whether the column is a string column whose values are dictionary encoded.
+     */
+    public boolean isDictionaryEncoded(final int column) {
+        return isTyped(column) && columns[column] instanceof DictionaryColumn;
+    }
+
+    /**
+     * @param column The column.
+     * @return The number of distinct values in a dictionary encoded column, or -1 if the column is not encoded.
+     */
+    public int getDistinctValueCount(final int column) {
+        return isDictionaryEncoded(column) ? ((DictionaryColumn) columns[column]).size() : -1;
+    }
+
+    /**
+     * Returns the value of a column in a row, as the type of the column.
+     * Rows which don't belong to the table are parsed on the fly, and return a string if they don't parse.
+     *
+     * @param row The row.
+     * @param column The column.
+     * @return The value of the column in the row, which is null for empty values in typed columns.
+     */
+    public Object getValue(final TSVRow row, final int column) {
+        if (!isTyped(column)) {
+            return row.getField(column);
+        }
+        final int index = row.getIndex();
+        if (index >= 0) {
+            return columns[column].getValue(index);
+        }
+        if (columnTypes[column] == ColumnType.STRING) {
+            return row.getField(column);
+        }
+        if (row.getFieldLength(column) == 0) {
+            return null;
+        }
+        final TypedColumn parser = createColumn(columnTypes[column], 1);
+        return parser.parse(row, column, 0) ? parser.getValue(0) : row.getField(column);
+    }
+
+    /**
+     * Compares the values of a typed column in two rows of the table, without creating any objects.
+     * Null values are smaller than other values.  Dictionary encoded values are compared by their rank,
+     * which orders them as Strings are ordered.
+     *
+     * @param index1 The index of the first row.
+     * @param index2 The index of the second row.
+     * @param column A typed column.
+     * @return The result of comparing the values.
+     */
+    public int compare(final int index1, final int index2, final int column) {
+        return columns[column].compare(index1, index2);
+    }
+
+    /**
+     * Infers the column types from the sample, then parses the sample rows into typed columns.
+     */
+    private void inferColumns() {
+        final int numColumns = header.length;
+        columnTypes = new ColumnType[numColumns];
+        columns = new TypedColumn[numColumns];
+        final int capacity = Math.max(INITIAL_CAPACITY, rows.length);
+        for (int column = 0; column < numColumns; column++) {
+            columnTypes[column] = inferType(column);
+            if (columnTypes[column] != ColumnType.STRING) {
+                columns[column] = createColumn(columnTypes[column], capacity);
+            } else if (hasFewValues(column)) {
+                columns[column] = new DictionaryColumn(capacity);
+            }
+        }
+        for (TSVRow row : sample) {
+            parseValues(row);
+        }
+        sample.clear();
+    }
+
+    /**
+     * Infers the type of a column from the sample: the first type that all non-empty sampled values parse as.
+     */
+    private ColumnType inferType(final int column) {
+        final TypedColumn[] parsers = {new LongColumn(1, false), new DoubleColumn(1), new BooleanColumn(1), new LongColumn(1, true)};
+        final boolean[] possible = {true, true, true, true};
+        boolean anyValues = false;
+        for (TSVRow row : sample) {
+            if (row.getFieldLength(column) > 0) {
+                anyValues = true;
+                for (int type = 0; type < parsers.length; type++) {
+                    possible[type] &= parsers[type].parse(row, column, 0);
+                }
+            }
+        }
+        if (anyValues) {
+            for (int type = 0; type < parsers.length; type++) {
+                if (possible[type]) {
+                    return ColumnType.values()[type];
+                }
+            }
+        }
+        return ColumnType.STRING;
+    }
+
+    /**
+     * Concatenates a typed column of each table, or returns null if it isn't typed.  As in a single table, the type is
+     * the type inferred by the first table, and the values of tables which stored the column differently are parsed
+     * as that type.  If they don't parse, or a dictionary encoded column would have too many values, it isn't typed.
+     */
+    private static TypedColumn concatColumn(final List<TSVTable> tables, final int column, final int totalRows) {
+        final TSVTable first = tables.get(0);
+        final ColumnType type = first.columnTypes[column];
+        final TypedColumn firstColumn = first.columns[column];
+        if (firstColumn == null) {
+            return null;
+        }
+        final boolean dictionary = firstColumn instanceof DictionaryColumn;
+        final TypedColumn result = dictionary ? new DictionaryColumn(totalRows) : createColumn(type, totalRows);
+        int offset = 0;
+        for (TSVTable table : tables) {
+            final TypedColumn tableColumn = table.columns[column];
+            if (tableColumn != null && table.columnTypes[column] == type && tableColumn instanceof DictionaryColumn == dictionary) {
+                if (!result.append(tableColumn, offset, table.rowCount)) {
+                    return null;
+                }
+            } else {
+                for (int index = 0; index < table.rowCount; index++) {
+                    final TSVRow row = table.rows[index];
+                    if (row.getFieldLength(column) == 0) {
+                        result.setEmpty(row, column, offset + index);
+                    } else if (!result.parse(row, column, offset + index)) {
+                        return null;
+                    }
+                }
+            }
+            offset += table.rowCount;
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the sampled values of a column have few enough distinct values for it to be dictionary encoded.
+     */
+    private boolean hasFewValues(final int column) {
+        final ByteStringDictionary distinct = new ByteStringDictionary();
+        for (TSVRow row : sample) {
+            final int length = row.getFieldLength(column);
+            distinct.getOrAdd(row.getBuffer(), length == 0 ? 0 : row.getFieldStart(column), length);
+        }
+        return !sample.isEmpty() && distinct.size() <= sample.size() * MAX_SAMPLE_DISTINCT_FRACTION;
+    }
+
+    /**
+     * Returns whether a number starts with a zero followed by another digit, such as 007 or 00.5.
+     * Parsing it as a number would lose the leading zeros, so it isn't parsed as one.
+     */
+    private static boolean hasLeadingZero(final byte[] buffer, final int start, final int end) {
+        return end - start > 1 && buffer[start] == '0' && buffer[start + 1] >= '0' && buffer[start + 1] <= '9';
+    }
+
+    private static TypedColumn createColumn(final ColumnType type, final int capacity) {
+        switch (type) {
+            case LONG:    return new LongColumn(capacity, false);
+            case DOUBLE:  return new DoubleColumn(capacity);
+            case BOOLEAN: return new BooleanColumn(capacity);
+            case DATE:    return new LongColumn(capacity, true);
+            default: throw new IllegalArgumentException("No typed column for " + type);
+        }
+    }
+
+    /**
+     * Parses the typed values of a row into their columns.  A column whose value doesn't parse falls back to strings.
+     */
+    private void parseValues(final TSVRow row) {
+        final TypedColumn[] localColumns = columns; // avoid repeated getfield.
+        final int index = row.getIndex();
+        for (int column = 0; column < localColumns.length; column++) {
+            final TypedColumn typedColumn = localColumns[column];
+            if (typedColumn != null) {
+                typedColumn.ensureCapacity(index + 1);
+                if (row.getFieldLength(column) == 0) {
+                    typedColumn.setEmpty(row, column, index);
+                } else if (!typedColumn.parse(row, column, index)) {
+                    localColumns[column] = null;
+                    columnTypes[column] = ColumnType.STRING;
+                }
+            }
+        }
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                          Typed column storage
+     */
+
+    /**
+     * A column of values stored in primitive arrays, with a set of the rows which are null.
+     */
+    private abstract static class TypedColumn {
+
+        protected final BitSet nulls = new BitSet();
+
+        /**
+         * Parses the field of a row and stores it at an index.
+         *
+         * @return false if the field doesn't parse as the type of the column.
+         */
+        abstract boolean parse(TSVRow row, int field, int index);
+
+        abstract Object getTypedValue(int index);
+
+        abstract int compareValues(int index1, int index2);
+
+        abstract void ensureCapacity(int capacity);
+
+        /**
+         * Copies values from another column of the same kind to an index in this column, which must have the capacity.
+         *
+         * @return false if the values can't be stored in this column.
+         */
+        abstract boolean appendValues(TypedColumn other, int offset, int count);
+
+        final boolean append(final TypedColumn other, final int offset, final int count) {
+            final BitSet otherNulls = other.nulls;
+            for (int index = otherNulls.nextSetBit(0); index >= 0 && index < count; index = otherNulls.nextSetBit(index + 1)) {
+                nulls.set(offset + index);
+            }
+            return appendValues(other, offset, count);
+        }
+
+        /**
+         * Stores an empty field, which is null unless the column stores empty values.
+         */
+        void setEmpty(final TSVRow row, final int field, final int index) {
+            nulls.set(index);
+        }
+
+        final Object getValue(final int index) {
+            return nulls.get(index) ? null : getTypedValue(index);
+        }
+
+        final int compare(final int index1, final int index2) {
+            final boolean null1 = nulls.get(index1);
+            final boolean null2 = nulls.get(index2);
+            if (null1 || null2) {
+                return null1 == null2 ? 0 : null1 ? -1 : 1;
+            }
+            return compareValues(index1, index2);
+        }
+
+        static int grow(final int length, final int capacity) {
+            return Math.max(capacity, length + (length >> 1));
+        }
+    }
+
+    /**
+     * Longs, or dates stored as the number of days since the epoch.
+     */
+    private static final class LongColumn extends TypedColumn {
+
+        private final boolean dates;
+        private long[] values;
+
+        LongColumn(final int capacity, final boolean dates) {
+            this.values = new long[capacity];
+            this.dates = dates;
+        }
+
+        @Override
+        boolean parse(final TSVRow row, final int field, final int index) {
+            final byte[] buffer = row.getBuffer();
+            final int start = row.getFieldStart(field);
+            final int length = row.getFieldLength(field);
+            return dates ? parseDate(buffer, start, length, index) : parseLong(buffer, start, length, index);
+        }
+
+        private boolean parseLong(final byte[] buffer, final int start, final int length, final int index) {
+            final int end = start + length;
+            int position = start;
+            final boolean negative = buffer[position] == '-';
+            if (negative || buffer[position] == '+') {
+                position++;
+            }
+            if (position == end || end - position > 19 || hasLeadingZero(buffer, position, end)) {
+                return false;
+            }
+            long value = 0;
+            for (; position < end; position++) {
+                final int digit = buffer[position] - '0';
+                if (digit < 0 || digit > 9) {
+                    return false;
+                }
+                value = value * 10 - digit; // accumulate negatively, so Long.MIN_VALUE can be parsed.
+                if (value > 0) {
+                    return false; // overflowed.
+                }
+            }
+            if (!negative) {
+                if (value == Long.MIN_VALUE) {
+                    return false;
+                }
+                value = -value;
+            }
+            values[index] = value;
+            return true;
+        }
+
+        private boolean parseDate(final byte[] buffer, final int start, final int length, final int index) {
+            if (length != 10 || buffer[start + 4] != '-' || buffer[start + 7] != '-') {
+                return false;
+            }
+            final int year = parseDigits(buffer, start, 4);
+            final int month = parseDigits(buffer, start + 5, 2);
+            final int day = parseDigits(buffer, start + 8, 2);
+            if (year < 0 || month < 0 || day < 0) {
+                return false;
+            }
+            try {
+                values[index] = LocalDate.of(year, month, day).toEpochDay();
+                return true;
+            } catch (DateTimeException e) {
+                return false;
+            }
+        }
+
+        private static int parseDigits(final byte[] buffer, final int start, final int length) {
+            int value = 0;
+            for (int position = start; position < start + length; position++) {
+                final int digit = buffer[position] - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        @Override
+        Object getTypedValue(final int index) {
+            return dates ? LocalDate.ofEpochDay(values[index]) : (Object) values[index];
+        }
+
+        @Override
+        int compareValues(final int index1, final int index2) {
+            return Long.compare(values[index1], values[index2]);
+        }
+
+        @Override
+        boolean appendValues(final TypedColumn other, final int offset, final int count) {
+            System.arraycopy(((LongColumn) other).values, 0, values, offset, count);
+            return true;
+        }
+
+        @Override
+        void ensureCapacity(final int capacity) {
+            if (capacity > values.length) {
+                values = Arrays.copyOf(values, grow(values.length, capacity));
+            }
+        }
+    }
+
+    /**
+     * Doubles, in plain or scientific decimal notation.
+     */
+    private static final class DoubleColumn extends TypedColumn {
+
+        // Integers up to 15 digits and powers of ten up to 22 are exact doubles, so dividing or multiplying one by
+        // the other is a single correctly rounded operation, giving the same result as Double.parseDouble.
+        private static final int MAX_EXACT_DIGITS = 15;
+        private static final double[] EXACT_POWERS_OF_TEN = {
+                1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+                1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+        private static final int MAX_EXPONENT_DIGITS = 5; // exponents which need more are far outside double range.
+
+        private double[] values;
+
+        DoubleColumn(final int capacity) {
+            this.values = new double[capacity];
+        }
+
+        @Override
+        boolean parse(final TSVRow row, final int field, final int index) {
+            final byte[] buffer = row.getBuffer();
+            final int start = row.getFieldStart(field);
+            final int length = row.getFieldLength(field);
+            if (!isDecimal(buffer, start, start + length)) {
+                return false;
+            }
+            values[index] = parseDecimal(buffer, start, start + length);
+            return true;
+        }
+
+        /**
+         * Checks the syntax is a decimal number, as Double.parseDouble also accepts hex, NaN, Infinity and type suffixes.
+         * Numbers with leading zeros before other digits are not accepted.
+         */
+        private static boolean isDecimal(final byte[] buffer, final int start, final int end) {
+            int position = start;
+            if (buffer[position] == '-' || buffer[position] == '+') {
+                position++;
+            }
+            if (hasLeadingZero(buffer, position, end)) {
+                return false;
+            }
+            int digits = 0;
+            boolean point = false;
+            for (; position < end; position++) {
+                final byte b = buffer[position];
+                if (b >= '0' && b <= '9') {
+                    digits++;
+                } else if (b == '.' && !point) {
+                    point = true;
+                } else {
+                    break;
+                }
+            }
+            if (digits == 0) {
+                return false;
+            }
+            if (position < end && (buffer[position] == 'e' || buffer[position] == 'E')) {
+                position++;
+                if (position < end && (buffer[position] == '-' || buffer[position] == '+')) {
+                    position++;
+                }
+                final int exponentStart = position;
+                while (position < end && buffer[position] >= '0' && buffer[position] <= '9') {
+                    position++;
+                }
+                if (position == exponentStart) {
+                    return false;
+                }
+            }
+            return position == end;
+        }
+
+        /**
+         * Parses a decimal number whose syntax has been checked, straight from the bytes.  Numbers with more
+         * significant digits or larger exponents than can be converted exactly, which are rare in tables,
+         * are parsed by Double.parseDouble.
+         */
+        private static double parseDecimal(final byte[] buffer, final int start, final int end) {
+            int position = start;
+            final boolean negative = buffer[position] == '-';
+            if (negative || buffer[position] == '+') {
+                position++;
+            }
+            long mantissa = 0;
+            int digits = 0;   // the significant digits in the mantissa, after any leading zeros.
+            int exponent = 0;
+            boolean point = false;
+            for (; position < end; position++) {
+                final byte b = buffer[position];
+                if (b == '.') {
+                    point = true;
+                } else if (b == 'e' || b == 'E') {
+                    break;
+                } else {
+                    if (mantissa > 0 || b != '0') {
+                        if (++digits > MAX_EXACT_DIGITS) {
+                            return parseString(buffer, start, end);
+                        }
+                        mantissa = mantissa * 10 + (b - '0');
+                    }
+                    if (point) {
+                        exponent--;
+                    }
+                }
+            }
+            if (position < end) { // an exponent follows.
+                position++;
+                final boolean negativeExponent = buffer[position] == '-';
+                if (negativeExponent || buffer[position] == '+') {
+                    position++;
+                }
+                if (end - position > MAX_EXPONENT_DIGITS) {
+                    return parseString(buffer, start, end);
+                }
+                int exponentValue = 0;
+                for (; position < end; position++) {
+                    exponentValue = exponentValue * 10 + (buffer[position] - '0');
+                }
+                exponent += negativeExponent ? -exponentValue : exponentValue;
+            }
+            if (mantissa == 0) {
+                return negative ? -0.0 : 0.0;
+            }
+            final double value;
+            if (exponent >= 0 && exponent < EXACT_POWERS_OF_TEN.length) {
+                value = mantissa * EXACT_POWERS_OF_TEN[exponent];
+            } else if (exponent < 0 && -exponent < EXACT_POWERS_OF_TEN.length) {
+                value = mantissa / EXACT_POWERS_OF_TEN[-exponent];
+            } else {
+                return parseString(buffer, start, end);
+            }
+            return negative ? -value : value;
+        }
+
+        private static double parseString(final byte[] buffer, final int start, final int end) {
+            return Double.parseDouble(new String(buffer, start, end - start, StandardCharsets.ISO_8859_1));
+        }
+
+        @Override
+        Object getTypedValue(final int index) {
+            return values[index];
+        }
+
+        @Override
+        int compareValues(final int index1, final int index2) {
+            return Double.compare(values[index1], values[index2]);
+        }
+
+        @Override
+        boolean appendValues(final TypedColumn other, final int offset, final int count) {
+            System.arraycopy(((DoubleColumn) other).values, 0, values, offset, count);
+            return true;
+        }
+
+        @Override
+        void ensureCapacity(final int capacity) {
+            if (capacity > values.length) {
+                values = Arrays.copyOf(values, grow(values.length, capacity));
+            }
+        }
+    }
+
+    /**
+     * Booleans, written as true or false in any case.
+     */
+    private static final class BooleanColumn extends TypedColumn {
+
+        private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+        private final BitSet values;
+
+        BooleanColumn(final int capacity) {
+            this.values = new BitSet(capacity);
+        }
+
+        @Override
+        boolean parse(final TSVRow row, final int field, final int index) {
+            final byte[] buffer = row.getBuffer();
+            final int start = row.getFieldStart(field);
+            final int length = row.getFieldLength(field);
+            if (matches(buffer, start, length, TRUE)) {
+                values.set(index);
+                return true;
+            }
+            if (matches(buffer, start, length, FALSE)) {
+                values.clear(index);
+                return true;
+            }
+            return false;
+        }
+
+        private static boolean matches(final byte[] buffer, final int start, final int length, final byte[] word) {
+            if (length != word.length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if ((buffer[start + i] | 0x20) != word[i]) { // lower case ASCII letters.
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        Object getTypedValue(final int index) {
+            return values.get(index);
+        }
+
+        @Override
+        int compareValues(final int index1, final int index2) {
+            return Boolean.compare(values.get(index1), values.get(index2));
+        }
+
+        @Override
+        boolean appendValues(final TypedColumn other, final int offset, final int count) {
+            final BitSet otherValues = ((BooleanColumn) other).values;
+            for (int index = otherValues.nextSetBit(0); index >= 0 && index < count; index = otherValues.nextSetBit(index + 1)) {
+                values.set(offset + index);
+            }
+            return true;
+        }
+
+        @Override
+        void ensureCapacity(final int capacity) {
+            // BitSets grow as needed.
+        }
+    }
+
+    /**
+     * Strings stored as a code for each row in a dictionary of the distinct values.  Each distinct value is decoded
+     * into a single String when it is first asked for.  The codes are ranked in String order when rows are compared
+     * after values have been added, so comparing two rows only compares two ints.
+     * Empty fields are stored as empty strings, and only fields missing from a row are null.
+     */
+    private static final class DictionaryColumn extends TypedColumn {
+
+        private final ByteStringDictionary dictionary = new ByteStringDictionary();
+        private int[] codes;
+        private String[] strings = new String[0]; // the decoded string for each code, or null if not decoded yet.
+        private int[] ranks = new int[0];         // the rank of each code in String order, for the codes ranked so far.
+
+        DictionaryColumn(final int capacity) {
+            this.codes = new int[capacity];
+        }
+
+        int size() {
+            return dictionary.size();
+        }
+
+        /**
+         * @return false if the column has too many distinct values to encode.
+         */
+        @Override
+        boolean parse(final TSVRow row, final int field, final int index) {
+            return setCode(row.getBuffer(), row.getFieldStart(field), row.getFieldLength(field), index);
+        }
+
+        @Override
+        void setEmpty(final TSVRow row, final int field, final int index) {
+            if (field < row.getFieldCount()) {
+                setCode(row.getBuffer(), 0, 0, index);
+            } else {
+                nulls.set(index);
+            }
+        }
+
+        private boolean setCode(final byte[] buffer, final int start, final int length, final int index) {
+            final int code = dictionary.getOrAdd(buffer, start, length);
+            if (code >= MAX_DICTIONARY_SIZE) {
+                return false;
+            }
+            codes[index] = code;
+            return true;
+        }
+
+        @Override
+        Object getTypedValue(final int index) {
+            return getString(codes[index]);
+        }
+
+        private String getString(final int code) {
+            if (code >= strings.length) {
+                strings = Arrays.copyOf(strings, dictionary.size());
+            }
+            String string = strings[code];
+            if (string == null) {
+                string = dictionary.getString(code);
+                strings[code] = string;
+            }
+            return string;
+        }
+
+        @Override
+        int compareValues(final int index1, final int index2) {
+            final int[] localCodes = codes; // avoid repeated getfield.
+            final int code1 = localCodes[index1];
+            final int code2 = localCodes[index2];
+            int[] localRanks = ranks;
+            if (code1 >= localRanks.length || code2 >= localRanks.length) {
+                localRanks = rankCodes();
+            }
+            return Integer.compare(localRanks[code1], localRanks[code2]);
+        }
+
+        /**
+         * Adds the distinct values of the other column to this one, and copies its codes mapped to the codes of this column.
+         */
+        @Override
+        boolean appendValues(final TypedColumn other, final int offset, final int count) {
+            final DictionaryColumn otherColumn = (DictionaryColumn) other;
+            final ByteStringDictionary otherDictionary = otherColumn.dictionary;
+            final int[] codeMap = new int[otherDictionary.size()];
+            for (int code = 0; code < codeMap.length; code++) {
+                codeMap[code] = dictionary.getOrAdd(otherDictionary, code);
+                if (codeMap[code] >= MAX_DICTIONARY_SIZE) {
+                    return false;
+                }
+            }
+            final int[] otherCodes = otherColumn.codes;
+            final int[] localCodes = codes; // avoid repeated getfield.
+            for (int index = 0; index < count; index++) {
+                localCodes[offset + index] = codeMap[otherCodes[index]];
+            }
+            return true;
+        }
+
+        /**
+         * Ranks all the codes in the dictionary by sorting their strings.
+         */
+        private int[] rankCodes() {
+            final int size = dictionary.size();
+            final Integer[] order = new Integer[size];
+            for (int code = 0; code < size; code++) {
+                order[code] = code;
+                getString(code);
+            }
+            final String[] localStrings = strings;
+            Arrays.sort(order, (code1, code2) -> localStrings[code1].compareTo(localStrings[code2]));
+            final int[] newRanks = new int[size];
+            for (int rank = 0; rank < size; rank++) {
+                newRanks[order[rank]] = rank;
+            }
+            ranks = newRanks;
+            return newRanks;
+        }
+
+        @Override
+        void ensureCapacity(final int capacity) {
+            if (capacity > codes.length) {
+                codes = Arrays.copyOf(codes, grow(codes.length, capacity));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,539 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+import javax.swing.tree.DefaultMutableTreeNode;
+import net.byteseek.swing.treetable.CompactTreeStore;
+
+/**
+ * Builds a tree from TSV rows which have an id column and a parent id column, in a single pass over the rows.
+ * <p>
+ * As each row is added, its id and parent id are encoded as int codes in a {@link ByteStringDictionary} directly from
+ * the row bytes, so no Strings or map entries are created per row.  A parent may appear after its children.
+ * Once all rows are added, each row's parent is resolved from the codes, and children are grouped by parent with a
+ * counting sort, so every node's children are allocated exactly once, at their final size, in file order.
+ * <p>
+ * Rows with an empty parent id are children of a virtual root.  Parent ids that no row has are dangling:
+ * a placeholder row is created for each one, as a child of the virtual root.  If there are no other children of the
+ * virtual root and only one dangling parent, the placeholder for it is the root.
+ * Rows whose parents form a cycle can't be reached from the root, and are left out of the tree.
+ * <p>
+ * Rows can also be added to a builder for each shard of a file in parallel, and the builders merged into one
+ * with {@link #merge(List, ExecutorService)}, which resolves parent ids across shards as if the rows had all been
+ * added to one builder in shard order.
+ */
+public class TSVTreeBuilder {
+
+    private static final int NO_PARENT = -1;
+    static final int EMPTY_PARENT = -1;    // the parent row of a row with an empty parent id.
+    static final int DANGLING_PARENT = -2; // the parent row of a row whose parent id no row has.
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int PARTITION_BITS = 6; // ids are merged in 64 partitions by hash.
+    private static final int PARTITIONS = 1 << PARTITION_BITS;
+
+    private final TSVTable tsvTable;
+    private final int idIndex;
+    private final int parentIdIndex;
+    private final int columnCount;
+    private ByteStringDictionary ids = new ByteStringDictionary();
+    private int[] rowIdCodes = new int[INITIAL_CAPACITY];
+    private int[] rowParentCodes = new int[INITIAL_CAPACITY];
+    private int[] codeRows = new int[INITIAL_CAPACITY]; // the row for each id code, or NO_PARENT if no row has the id yet.
+    private int rowCount;
+    private int[] placeholderCodes;
+    private int unreachableRows;
+    private int danglingParents;
+    private boolean virtualRoot;
+
+    /**
+     * Constructs a TSVTreeBuilder which adds the rows it is given to a table.
+     *
+     * @param tsvTable The table to add rows to.
+     * @param idColumn The name of the id column.
+     * @param parentIdColumn The name of the parent id column.
+     * @throws IllegalArgumentException if the id or parent id columns are not in the table header.
+     */
+    public TSVTreeBuilder(final TSVTable tsvTable, final String idColumn, final String parentIdColumn) {
+        final String[] header = tsvTable.getHeader();
+        this.tsvTable = tsvTable;
+        this.idIndex = Arrays.asList(header).indexOf(idColumn);
+        this.parentIdIndex = Arrays.asList(header).indexOf(parentIdColumn);
+        this.columnCount = header.length;
+        if (idIndex == -1 || parentIdIndex == -1) {
+            throw new IllegalArgumentException("idColumnName or parentIdColumnName not found in TSV header");
+        }
+        Arrays.fill(codeRows, NO_PARENT);
+    }
+
+    /**
+     * Adds a row to the table, and records its id and parent id.
+     *
+     * @param row The row to add.
+     */
+    public void add(final TSVRow row) {
+        tsvTable.add(row);
+        if (rowCount == rowIdCodes.length) {
+            rowIdCodes = Arrays.copyOf(rowIdCodes, rowCount * 2);
+            rowParentCodes = Arrays.copyOf(rowParentCodes, rowCount * 2);
+        }
+        final byte[] buffer = row.getBuffer();
+        final int idCode = ids.getOrAdd(buffer, row.getFieldStart(idIndex), row.getFieldLength(idIndex));
+        final int parentLength = row.getFieldLength(parentIdIndex);
+        final int parentCode = parentLength == 0 ? NO_PARENT : ids.getOrAdd(buffer, row.getFieldStart(parentIdIndex), parentLength);
+        if (ids.size() > codeRows.length) {
+            final int oldLength = codeRows.length;
+            codeRows = Arrays.copyOf(codeRows, Math.max(ids.size(), oldLength * 2));
+            Arrays.fill(codeRows, oldLength, codeRows.length, NO_PARENT);
+        }
+        codeRows[idCode] = rowCount; // if ids are duplicated, children are linked to the last row with the id.
+        rowIdCodes[rowCount] = idCode;
+        rowParentCodes[rowCount] = parentCode;
+        rowCount++;
+    }
+
+    /**
+     * Merges builders which rows have been added to, such as a builder for each shard of a file, into one builder
+     * which has all their rows in order, as if they had been added to it.  The id index of each builder is partitioned
+     * by the hashes of the ids, and each partition is merged on the executor, so parent ids are resolved across
+     * the builders in parallel.  The builders must not be used afterwards.
+     *
+     * @param builders The builders to merge, whose tables have the same columns, and which have the same id columns.
+     * @param executor The executor to merge partitions on.
+     * @return A builder with all the rows of the builders.
+     * @throws IllegalArgumentException if there are no builders, or their tables or id columns are different.
+     * @throws InterruptedException if the thread is interrupted while waiting for the partitions to merge.
+     */
+    public static TSVTreeBuilder merge(final List<TSVTreeBuilder> builders, final ExecutorService executor) throws InterruptedException {
+        if (builders == null || builders.isEmpty() || executor == null) {
+            throw new IllegalArgumentException("Object cannot be null or empty: builders or executor");
+        }
+        final TSVTreeBuilder first = builders.get(0);
+        final List<TSVTable> tables = new ArrayList<>();
+        for (TSVTreeBuilder builder : builders) {
+            if (builder.idIndex != first.idIndex || builder.parentIdIndex != first.parentIdIndex) {
+                throw new IllegalArgumentException("Builders have different id or parent id columns.");
+            }
+            tables.add(builder.tsvTable);
+        }
+        final String[] header = first.tsvTable.getHeader();
+        final TSVTreeBuilder result = new TSVTreeBuilder(TSVTable.concat(tables), header[first.idIndex], header[first.parentIdIndex]);
+        final int numBuilders = builders.size();
+        final int[] rowOffsets = new int[numBuilders + 1];
+        for (int builder = 0; builder < numBuilders; builder++) {
+            rowOffsets[builder + 1] = rowOffsets[builder] + builders.get(builder).rowCount;
+        }
+
+        // Group the id codes of each builder by partition, and merge the codes in each partition across the builders.
+        // The code maps of the builders are written by each partition, which map different codes.
+        final int[][] partitionCodes = new int[numBuilders][];
+        final int[][] partitionStarts = new int[numBuilders][];
+        final int[][] codeMaps = new int[numBuilders][];
+        invokeAll(executor, numBuilders, builder -> {
+            final ByteStringDictionary builderIds = builders.get(builder).ids;
+            final int[] starts = new int[PARTITIONS + 1];
+            final int[] codes = new int[builderIds.size()];
+            for (int code = 0; code < codes.length; code++) {
+                starts[partition(builderIds.getHash(code)) + 1]++;
+            }
+            for (int partition = 0; partition < PARTITIONS; partition++) {
+                starts[partition + 1] += starts[partition];
+            }
+            final int[] next = Arrays.copyOf(starts, PARTITIONS);
+            for (int code = 0; code < codes.length; code++) {
+                codes[next[partition(builderIds.getHash(code))]++] = code;
+            }
+            partitionCodes[builder] = codes;
+            partitionStarts[builder] = starts;
+            codeMaps[builder] = new int[codes.length];
+        });
+        final ByteStringDictionary[] partitionIds = new ByteStringDictionary[PARTITIONS];
+        final int[][] partitionCodeRows = new int[PARTITIONS][];
+        invokeAll(executor, PARTITIONS, partition -> {
+            final ByteStringDictionary mergedIds = new ByteStringDictionary();
+            int[] codeRows = new int[INITIAL_CAPACITY];
+            for (int builder = 0; builder < numBuilders; builder++) {
+                final TSVTreeBuilder source = builders.get(builder);
+                final int[] codes = partitionCodes[builder];
+                final int[] codeMap = codeMaps[builder];
+                final int end = partitionStarts[builder][partition + 1];
+                for (int i = partitionStarts[builder][partition]; i < end; i++) {
+                    final int code = codes[i];
+                    final int newCode = mergedIds.size();
+                    final int mergedCode = mergedIds.getOrAdd(source.ids, code);
+                    if (mergedCode == newCode) {
+                        if (newCode == codeRows.length) {
+                            codeRows = Arrays.copyOf(codeRows, newCode * 2);
+                        }
+                        codeRows[newCode] = NO_PARENT;
+                    }
+                    codeMap[code] = mergedCode;
+                    final int row = source.codeRows[code];
+                    if (row != NO_PARENT) { // rows of later builders replace rows of earlier ones, as later rows do.
+                        codeRows[mergedCode] = rowOffsets[builder] + row;
+                    }
+                }
+            }
+            partitionIds[partition] = mergedIds;
+            partitionCodeRows[partition] = codeRows;
+        });
+
+        // The merged codes are the codes of each partition after the codes of the partitions before it:
+        final int[] codeOffsets = new int[PARTITIONS + 1];
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            codeOffsets[partition + 1] = codeOffsets[partition] + partitionIds[partition].size();
+        }
+        result.ids = ByteStringDictionary.concat(Arrays.asList(partitionIds));
+        result.codeRows = new int[Math.max(INITIAL_CAPACITY, codeOffsets[PARTITIONS])];
+        Arrays.fill(result.codeRows, codeOffsets[PARTITIONS], result.codeRows.length, NO_PARENT);
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            System.arraycopy(partitionCodeRows[partition], 0, result.codeRows, codeOffsets[partition], partitionIds[partition].size());
+        }
+
+        // Translate the id and parent codes of the rows of each builder into merged codes:
+        final int numRows = rowOffsets[numBuilders];
+        result.rowIdCodes = new int[Math.max(INITIAL_CAPACITY, numRows)];
+        result.rowParentCodes = new int[result.rowIdCodes.length];
+        invokeAll(executor, numBuilders, builder -> {
+            final TSVTreeBuilder source = builders.get(builder);
+            final int[] codeMap = codeMaps[builder];
+            for (int code = 0; code < codeMap.length; code++) {
+                codeMap[code] += codeOffsets[partition(source.ids.getHash(code))];
+            }
+            final int offset = rowOffsets[builder];
+            for (int row = 0; row < source.rowCount; row++) {
+                final int parentCode = source.rowParentCodes[row];
+                result.rowIdCodes[offset + row] = codeMap[source.rowIdCodes[row]];
+                result.rowParentCodes[offset + row] = parentCode == NO_PARENT ? NO_PARENT : codeMap[parentCode];
+            }
+        });
+        result.rowCount = numRows;
+        return result;
+    }
+
+    /**
+     * Finishes the table and links the rows added into a tree of DefaultMutableTreeNodes, which can be modified.
+     *
+     * @return The root of the tree.
+     */
+    public DefaultMutableTreeNode build() {
+        final int[] parents = resolveParents();
+        final int numRows = rowCount;
+        final int numNodes = numRows + danglingParents;
+
+        // Count the children of each node (the virtual root is node zero, the rest are shifted by one):
+        final int[] childStarts = new int[numNodes + 2];
+        for (int node = 1; node <= numNodes; node++) {
+            childStarts[parents[node] + 1]++;
+        }
+        for (int node = 1; node < childStarts.length; node++) {
+            childStarts[node] += childStarts[node - 1];
+        }
+
+        // Place each child in its parent's group, in node order: rows in file order, then placeholders.
+        final int[] children = new int[numNodes];
+        final int[] nextChild = Arrays.copyOf(childStarts, numNodes + 1);
+        for (int node = 1; node <= numNodes; node++) {
+            children[nextChild[parents[node]]++] = node;
+        }
+
+        // Create the nodes from the root down, so each node's children are added to a vector of exactly the right size.
+        final int rootNode = getRootNode(childStarts[1] - childStarts[0]);
+        virtualRoot = rootNode == 0;
+        final LinkedNode[] nodes = new LinkedNode[numNodes + 1];
+        nodes[rootNode] = createNode(rootNode, childStarts[rootNode + 1] - childStarts[rootNode]);
+        final int[] queue = new int[numNodes + 1];
+        int queueEnd = 0;
+        queue[queueEnd++] = rootNode;
+        for (int queueStart = 0; queueStart < queueEnd; queueStart++) {
+            final int parent = queue[queueStart];
+            final LinkedNode parentNode = nodes[parent];
+            for (int child = childStarts[parent]; child < childStarts[parent + 1]; child++) {
+                final int childNode = children[child];
+                nodes[childNode] = createNode(childNode, childStarts[childNode + 1] - childStarts[childNode]);
+                parentNode.addLinkedChild(nodes[childNode]);
+                queue[queueEnd++] = childNode;
+            }
+        }
+        unreachableRows = numNodes + 1 - queueEnd - (rootNode == 0 ? 0 : 1);
+        return nodes[rootNode];
+    }
+
+    /**
+     * Finishes the table and links the rows added into a read-only {@link CompactTreeStore},
+     * which needs far less memory than a tree of DefaultMutableTreeNodes.
+     *
+     * @return The store containing the tree.
+     */
+    public CompactTreeStore buildCompact() {
+        final int[] parents = resolveParents();
+        int rootChildren = 0;
+        for (int node = 1; node < parents.length; node++) {
+            if (parents[node] == 0) {
+                rootChildren++;
+            }
+        }
+        final int rootNode = getRootNode(rootChildren);
+        virtualRoot = rootNode == 0;
+        parents[0] = CompactTreeStore.NO_PARENT;
+        final TSVRow virtualRootRow = createRow(0);
+        final TSVRow[] placeholderRows = new TSVRow[danglingParents];
+        for (int placeholder = 0; placeholder < placeholderRows.length; placeholder++) {
+            placeholderRows[placeholder] = createRow(rowCount + placeholder + 1);
+        }
+        final TSVTable localTable = tsvTable;
+        final int numRows = rowCount;
+        final CompactTreeStore store = CompactTreeStore.build(parents, rootNode, node ->
+                node == 0 ? virtualRootRow : node <= numRows ? localTable.getRow(node - 1) : placeholderRows[node - numRows - 1]);
+        unreachableRows = store.getUnreachableCount() - (rootNode == 0 ? 0 : 1);
+        return store;
+    }
+
+    /**
+     * @return The number of dangling parent ids which placeholders were created for by the last build.
+     */
+    public int getDanglingParentCount() {
+        return danglingParents;
+    }
+
+    /**
+     * @return The number of rows whose parents form a cycle, which were left out of the tree by the last build.
+     */
+    public int getUnreachableRowCount() {
+        return unreachableRows;
+    }
+
+    /**
+     * @return Whether the root of the last tree built was the virtual root, rather than a placeholder.
+     */
+    public boolean hasVirtualRoot() {
+        return virtualRoot;
+    }
+
+    /**
+     * @return The table rows are added to.
+     */
+    public TSVTable getTSVTable() {
+        return tsvTable;
+    }
+
+    /**
+     * @return The index of the id column.
+     */
+    public int getIdIndex() {
+        return idIndex;
+    }
+
+    /**
+     * @return The index of the parent id column.
+     */
+    public int getParentIdIndex() {
+        return parentIdIndex;
+    }
+
+    /**
+     * @return The number of rows added.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the id of the dangling parent which would be the root of a tree built from the rows added so far,
+     * rather than the virtual root.
+     *
+     * @return The id of the placeholder which would be the root, or null if the root would be the virtual root.
+     */
+    public String getPlaceholderRootId() {
+        int rootChildren = 0;
+        final int[] parents = resolveParents();
+        for (int node = 1; node < parents.length; node++) {
+            if (parents[node] == 0) {
+                rootChildren++;
+            }
+        }
+        return getRootNode(rootChildren) == 0 ? null : ids.getString(placeholderCodes[0]);
+    }
+
+    /**
+     * Returns the row which has the parent id of a row.  If ids are duplicated, it is the last row with the id.
+     *
+     * @param row The index of the row.
+     * @return The index of the parent row, {@link #EMPTY_PARENT} if the parent id is empty,
+     *         or {@link #DANGLING_PARENT} if no row has the parent id.
+     */
+    int getParentRow(final int row) {
+        final int parentCode = rowParentCodes[row];
+        if (parentCode == NO_PARENT) {
+            return EMPTY_PARENT;
+        }
+        final int parentRow = codeRows[parentCode];
+        return parentRow == NO_PARENT ? DANGLING_PARENT : parentRow;
+    }
+
+    /**
+     * Resolves the parent of each row, numbering nodes so that zero is the virtual root, then the rows from one,
+     * then a placeholder for each dangling parent id in the order they are first seen.
+     *
+     * @return The parent node of each node.  The virtual root is its own parent.
+     */
+    private int[] resolveParents() {
+        tsvTable.finish();
+        final int numRows = rowCount;
+        final int[] localCodeRows = codeRows; // avoid repeated getfield.
+        final int[] placeholderOfCode = new int[ids.size()];
+        int[] localPlaceholderCodes = new int[16];
+        int numPlaceholders = 0;
+        int[] parents = new int[numRows + 1];
+        for (int row = 0; row < numRows; row++) {
+            final int parentCode = rowParentCodes[row];
+            final int parent;
+            if (parentCode == NO_PARENT) {
+                parent = 0;
+            } else if (localCodeRows[parentCode] != NO_PARENT) {
+                parent = localCodeRows[parentCode] + 1;
+            } else {
+                if (placeholderOfCode[parentCode] == 0) {
+                    if (numPlaceholders == localPlaceholderCodes.length) {
+                        localPlaceholderCodes = Arrays.copyOf(localPlaceholderCodes, numPlaceholders * 2);
+                    }
+                    localPlaceholderCodes[numPlaceholders++] = parentCode;
+                    placeholderOfCode[parentCode] = numRows + numPlaceholders;
+                }
+                parent = placeholderOfCode[parentCode];
+            }
+            parents[row + 1] = parent;
+        }
+        parents = Arrays.copyOf(parents, numRows + numPlaceholders + 1); // placeholders are children of the virtual root.
+        placeholderCodes = localPlaceholderCodes;
+        danglingParents = numPlaceholders;
+        return parents;
+    }
+
+    /**
+     * Returns the partition of an id from its hash, using its high bits after multiplying them by the golden ratio,
+     * as the low bits are used to find slots in the dictionaries of the partitions.
+     */
+    private static int partition(final int hash) {
+        return (hash * 0x9E3779B9) >>> (Integer.SIZE - PARTITION_BITS);
+    }
+
+    /**
+     * Runs a task for each index from zero to a count on an executor, and waits for them all to finish.
+     */
+    private static void invokeAll(final ExecutorService executor, final int count, final IntConsumer task) throws InterruptedException {
+        final List<Callable<Void>> tasks = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            final int taskIndex = index;
+            tasks.add(() -> {
+                task.accept(taskIndex);
+                return null;
+            });
+        }
+        for (Future<Void> future : executor.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * The root is the virtual root, unless it would have no row children and a single placeholder child,
+     * in which case that placeholder is the root.
+     */
+    private int getRootNode(final int virtualRootChildren) {
+        return virtualRootChildren == 1 && danglingParents == 1 && rowCount > 0 ? rowCount + 1 : 0;
+    }
+
+    private LinkedNode createNode(final int node, final int childCount) {
+        return new LinkedNode(createRow(node), node == 0 || childCount > 0, childCount);
+    }
+
+    /**
+     * Returns the row for a node number: zero is the virtual root, then the rows, then the placeholders.
+     */
+    private TSVRow createRow(final int node) {
+        if (node > 0 && node <= rowCount) {
+            return tsvTable.getRow(node - 1);
+        }
+        final String[] fields = new String[columnCount];
+        fields[idIndex] = node == 0 ? "Virtual Root" : ids.getString(placeholderCodes[node - rowCount - 1]);
+        return TSVRow.of(fields);
+    }
+
+    /**
+     * A DefaultMutableTreeNode whose children vector can be created at its final size, and which can have children
+     * added without the checks made by insert().
+     */
+    static final class LinkedNode extends DefaultMutableTreeNode {
+
+        LinkedNode(final TSVRow row, final boolean allowsChildren, final int childCount) {
+            super(row, allowsChildren);
+            if (childCount > 0) {
+                children = new Vector<>(childCount);
+            }
+        }
+
+        /**
+         * Adds a child after the existing children, without the checks made by insert(), which walks up all the ancestors
+         * of this node to check the child isn't one of them.  The builder creates each node once, from the root down,
+         * so it can't be, and other callers must check it isn't.  The child must not have a parent.
+         *
+         * @return The index of the child.
+         */
+        int addLinkedChild(final LinkedNode child) {
+            if (children == null) {
+                children = new Vector<>();
+            }
+            children.add(child);
+            child.setParent(this);
+            return children.size() - 1;
+        }
+    }
+
+}
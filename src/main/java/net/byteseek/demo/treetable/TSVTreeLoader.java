@@ -0,0 +1,521 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.swing.SwingWorker;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeNode;
+
+import net.byteseek.demo.treetable.TSVTreeBuilder.LinkedNode;
+
+/**
+ * Loads the rows of a TSV file into a tree in the background, adding them to the tree as they are read,
+ * so the tree can be displayed and browsed while the rest of the file loads.
+ * <p>
+ * Rows are read on a worker thread, where their ids and parent ids are encoded in a {@link ByteStringDictionary}.
+ * The rows read are handed to the Event Dispatch Thread in batches, where they are added to the table and linked
+ * into the tree, and the tree model is notified of the children inserted into each parent.  The first batch is
+ * handed over as soon as there are enough rows to infer the column types, so the top level nodes appear at once.
+ * After that, a batch is handed over at most once per publish interval, and only once the previous batch has been
+ * applied and twice as long again has passed.  Batches have a maximum size, and reading waits for a full batch to be
+ * handed over, so the Event Dispatch Thread always has time to respond to the user whatever the size of the file.
+ * The progress property of the worker is the percentage of the file read.  As for a {@link TSVTreeReloader},
+ * if a batch changes many parents, or more than a few whose children are visible in the table, the tree is changed
+ * silently and the model refreshed once.
+ * <p>
+ * Rows are linked as they arrive, so a parent can appear after its children: a placeholder is added under the root
+ * for a parent id which no row has yet, and moved into place with its children when its row is read.
+ * Rows with duplicate ids share a node, which has the last of the rows.  Unlike a {@link TSVTreeBuilder},
+ * the root is always the virtual root, and new children are added after the existing children of their parent.
+ * Rows whose parents form a cycle are left out of the tree.
+ * <p>
+ * The loader must be constructed on the Event Dispatch Thread.
+ */
+public class TSVTreeLoader extends SwingWorker<Integer, TSVTreeLoader.Batch> {
+
+    public static final int DEFAULT_PUBLISH_INTERVAL = 250; // milliseconds between batches handed to the Event Dispatch Thread.
+
+    private static final int PUBLISH_TIME_FACTOR = 2; // batches are handed over no faster than this multiple of the time to apply one.
+    private static final int TIME_CHECK_ROWS = 256;   // the number of rows read between checks on the time since the last batch.
+    private static final int MAX_BATCH_SIZE = 16384;  // the most rows in a batch, so applying a batch doesn't block the user.
+    private static final int MAX_NOTIFICATIONS = 16;        // the most notifications of changes visible in the table.
+    private static final int MAX_TREE_NOTIFICATIONS = 1024; // the most notifications of changes to the tree.
+    private static final int MAX_SORTED_NOTIFICATIONS = 2;
+    private static final int NO_PARENT = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final TSVRowSource source;
+    private final TSVTable tsvTable;
+    private final int idIndex;
+    private final int parentIdIndex;
+    private final LinkedNode root;
+    private final DefaultTreeModel treeModel;
+    private final TSVTreeTableModel treeTableModel;
+    private final long publishInterval;
+    private final Semaphore publishPermit = new Semaphore(1); // taken when a batch is published, and released once it is applied.
+    private volatile long lastApplyTime; // the nanoseconds the last batch took to apply.
+    private volatile long lastApplied;   // the nano time the last batch was applied.
+    private LinkedNode[] nodes = new LinkedNode[INITIAL_CAPACITY]; // the node for each id code.
+
+    /**
+     * Constructs a TSVTreeLoader which loads the rows of a source, publishing batches at the default interval.
+     *
+     * @param source The source of the rows, which is closed when they have all been read.
+     * @param idColumn The name of the id column.
+     * @param parentIdColumn The name of the parent id column.
+     * @throws IllegalArgumentException if the id or parent id columns are not in the header of the source.
+     */
+    public TSVTreeLoader(final TSVRowSource source, final String idColumn, final String parentIdColumn) {
+        this(source, idColumn, parentIdColumn, DEFAULT_PUBLISH_INTERVAL);
+    }
+
+    /**
+     * Constructs a TSVTreeLoader which loads the rows of a source.
+     *
+     * @param source The source of the rows, which is closed when they have all been read.
+     * @param idColumn The name of the id column.
+     * @param parentIdColumn The name of the parent id column.
+     * @param publishInterval The minimum number of milliseconds between batches of rows added to the tree.
+     * @throws IllegalArgumentException if the source is null, the id or parent id columns are not in its header,
+     *                                  or the publish interval is negative.
+     */
+    public TSVTreeLoader(final TSVRowSource source, final String idColumn, final String parentIdColumn,
+                         final int publishInterval) {
+        if (source == null) {
+            throw new IllegalArgumentException("Object cannot be null: source");
+        }
+        if (publishInterval < 0) {
+            throw new IllegalArgumentException("Publish interval cannot be negative: " + publishInterval);
+        }
+        final String[] header = source.getHeader();
+        this.idIndex = Arrays.asList(header).indexOf(idColumn);
+        this.parentIdIndex = Arrays.asList(header).indexOf(parentIdColumn);
+        if (idIndex == -1 || parentIdIndex == -1) {
+            throw new IllegalArgumentException("idColumnName or parentIdColumnName not found in TSV header");
+        }
+        this.source = source;
+        this.publishInterval = publishInterval * NANOS_PER_MILLI;
+        this.tsvTable = new TSVTable(header);
+        final String[] rootFields = new String[header.length];
+        rootFields[idIndex] = "Virtual Root";
+        this.root = new LinkedNode(TSVRow.of(rootFields), true, 0);
+        this.treeModel = new DefaultTreeModel(root);
+        this.treeTableModel = new TSVTreeTableModel(root, tsvTable);
+        treeModel.addTreeModelListener(treeTableModel);
+        treeTableModel.expandNode(root);
+    }
+
+    /**
+     * @return The tree model of the tree being loaded.  Changes to the tree are notified to its listeners.
+     */
+    public DefaultTreeModel getTreeModel() {
+        return treeModel;
+    }
+
+    /**
+     * @return The tree table model displaying the tree being loaded.
+     */
+    public TSVTreeTableModel getTreeTableModel() {
+        return treeTableModel;
+    }
+
+    /**
+     * @return The table of the rows added to the tree so far.
+     */
+    public TSVTable getTSVTable() {
+        return tsvTable;
+    }
+
+    /**
+     * Counts the placeholders in the tree for parent ids which no row has.  This must be called on the Event Dispatch Thread.
+     *
+     * @return The number of parent ids which no row loaded so far has.
+     */
+    public int getDanglingParentCount() {
+        int count = 0;
+        for (LinkedNode node : nodes) {
+            if (node != null && ((TSVRow) node.getUserObject()).getIndex() < 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the nodes with rows which are not in the tree.  This must be called on the Event Dispatch Thread.
+     *
+     * @return The number of rows loaded so far which are in parent id cycles, and are not in the tree.
+     */
+    public int getUnreachableRowCount() {
+        int count = 0;
+        for (LinkedNode node : nodes) {
+            if (node != null && node.getRoot() != root && ((TSVRow) node.getUserObject()).getIndex() >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads the rows of the source, encoding their ids, and hands them to the Event Dispatch Thread in batches.
+     *
+     * @return The number of rows read.
+     * @throws Exception if the rows can't be read.
+     */
+    @Override
+    protected Integer doInBackground() throws Exception {
+        final ByteStringDictionary ids = new ByteStringDictionary();
+        final int localIdIndex = idIndex; // avoid repeated getfield in the loop.
+        final int localParentIdIndex = parentIdIndex;
+        Batch batch = new Batch();
+        boolean first = true;
+        long lastPublished = System.nanoTime();
+        int rowCount = 0;
+        try (TSVRowSource rowSource = source; Stream<TSVRow> rows = rowSource.rows()) {
+            for (Iterator<TSVRow> iterator = rows.iterator(); iterator.hasNext(); ) {
+                final TSVRow row = iterator.next();
+                final byte[] buffer = row.getBuffer();
+                final int idCode = ids.getOrAdd(buffer, row.getFieldStart(localIdIndex), row.getFieldLength(localIdIndex));
+                final int parentLength = row.getFieldLength(localParentIdIndex);
+                final int parentCode = parentLength == 0 ? NO_PARENT : ids.getOrAdd(buffer, row.getFieldStart(localParentIdIndex), parentLength);
+                batch.add(row, idCode, parentCode);
+                rowCount++;
+                if (batch.size % TIME_CHECK_ROWS == 0 && readyToPublish(batch, first, lastPublished)) {
+                    publishBatch(batch);
+                    batch = new Batch();
+                    first = false;
+                    lastPublished = System.nanoTime();
+                }
+            }
+        }
+        if (batch.size > 0) {
+            publishPermit.acquire();
+            publishBatch(batch);
+        }
+        setProgress(100);
+        return rowCount;
+    }
+
+    /**
+     * Adds the batches of rows to the table and links them into the tree.  The permit taken to publish each batch
+     * is released even if applying it fails, so reading is never left waiting for a batch that won't be applied.
+     *
+     * @param batches The batches of rows read since the last were processed.
+     */
+    @Override
+    protected void process(final List<Batch> batches) {
+        for (Batch batch : batches) {
+            try {
+                final long startTime = System.nanoTime();
+                final TSVTable.ColumnType[] typesBefore = getColumnTypes();
+                addBatch(batch);
+                if (!Arrays.equals(typesBefore, getColumnTypes())) {
+                    treeTableModel.columnTypesChanged();
+                }
+                lastApplied = System.nanoTime();
+                lastApplyTime = lastApplied - startTime;
+            } finally {
+                publishPermit.release();
+            }
+        }
+    }
+
+    /**
+     * Finishes the table once all the rows are added, which infers the column types if there were too few rows to
+     * infer them from before.
+     */
+    @Override
+    protected void done() {
+        final TSVTable.ColumnType[] typesBefore = getColumnTypes();
+        tsvTable.finish();
+        if (!Arrays.equals(typesBefore, getColumnTypes())) {
+            treeTableModel.columnTypesChanged();
+        }
+    }
+
+    /**
+     * Returns whether a batch can be published: the first batch once it has enough rows to infer the column types,
+     * and later batches once the publish interval has passed, if the last batch has been applied and a multiple of the
+     * time it took to apply has passed since.  A full batch waits for that, holding up reading, so batches stay small
+     * enough to apply without blocking the user.
+     */
+    private boolean readyToPublish(final Batch batch, final boolean first, final long lastPublished) throws InterruptedException {
+        if (batch.size >= MAX_BATCH_SIZE) {
+            publishPermit.acquire();
+            TimeUnit.NANOSECONDS.sleep(getApplyDelay());
+            return true;
+        }
+        return (first && batch.size >= TSVTable.DEFAULT_SAMPLE_SIZE ||
+                System.nanoTime() - lastPublished >= publishInterval && getApplyDelay() <= 0) && publishPermit.tryAcquire();
+    }
+
+    /**
+     * @return The nanoseconds until the Event Dispatch Thread has been free for a multiple of the time the last batch took to apply.
+     */
+    private long getApplyDelay() {
+        return lastApplied + lastApplyTime * PUBLISH_TIME_FACTOR - System.nanoTime();
+    }
+
+    private void publishBatch(final Batch batch) {
+        setProgress((int) Math.min(100, source.getProgress() * 100));
+        publish(batch);
+    }
+
+    /**
+     * Adds the rows of a batch to the table, and links their nodes into the tree.  Nodes are created for new ids,
+     * and placeholders for parent ids which have no node yet.  Nodes whose parent changes are moved from their
+     * current parent, if they have one, to their new parent.  Changes to the tree model are notified grouped by parent,
+     * or by refreshing the whole tree if there would be too many notifications of changes visible in the table.
+     */
+    private void addBatch(final Batch batch) {
+        final LinkedNode localRoot = root; // avoid repeated getfield in the loops.
+        final Map<LinkedNode, LinkedNode> pendingParents = new LinkedHashMap<>();
+        final Set<LinkedNode> changed = new LinkedHashSet<>();
+        for (int rowIndex = 0; rowIndex < batch.size; rowIndex++) {
+            final TSVRow row = batch.rows[rowIndex];
+            tsvTable.add(row);
+            LinkedNode node = getNode(batch.idCodes[rowIndex]);
+            if (node == null) {
+                node = new LinkedNode(row, false, 0);
+                setNode(batch.idCodes[rowIndex], node);
+            } else { // a placeholder gets its row, or a duplicate id replaces the row of the node.
+                node.setUserObject(row);
+                changed.add(node);
+            }
+            final int parentCode = batch.parentCodes[rowIndex];
+            LinkedNode parent = localRoot;
+            if (parentCode != NO_PARENT) {
+                parent = getNode(parentCode);
+                if (parent == null) {
+                    parent = new LinkedNode(createPlaceholderRow(row.getField(parentIdIndex)), false, 0);
+                    setNode(parentCode, parent);
+                    pendingParents.put(parent, localRoot);
+                }
+            }
+            if (node.getParent() != parent) {
+                pendingParents.put(node, parent);
+            } else {
+                pendingParents.remove(node); // a duplicate id in the batch may have given another parent before.
+            }
+        }
+
+        // Each notification walks up the tree from the parent notified, so a batch which changes many parents is applied
+        // silently and refreshed once, as it is if it changes more than a few parents whose children are visible.
+        final boolean notifyEach = pendingParents.size() + changed.size() <= MAX_TREE_NOTIFICATIONS &&
+                countVisibleChanges(pendingParents, changed) <= (treeTableModel.isSorting() ? MAX_SORTED_NOTIFICATIONS : MAX_NOTIFICATIONS);
+
+        // Detach the nodes which are moving from their current parents:
+        final Map<LinkedNode, Set<LinkedNode>> detached = new LinkedHashMap<>();
+        for (LinkedNode node : pendingParents.keySet()) {
+            final LinkedNode parent = (LinkedNode) node.getParent();
+            if (parent != null) {
+                detached.computeIfAbsent(parent, key -> new HashSet<>()).add(node);
+            }
+        }
+        for (Map.Entry<LinkedNode, Set<LinkedNode>> entry : detached.entrySet()) {
+            final LinkedNode parent = entry.getKey();
+            final int[] childIndices = TSVTreeReloader.getChildIndices(parent, entry.getValue());
+            final Object[] children = new Object[childIndices.length];
+            for (int child = childIndices.length - 1; child >= 0; child--) {
+                children[child] = parent.getChildAt(childIndices[child]);
+                parent.remove(childIndices[child]);
+            }
+            if (notifyEach && parent.getRoot() == localRoot) {
+                treeModel.nodesWereRemoved(parent, childIndices, children);
+            }
+        }
+
+        // Link nodes whose parents are also moving silently, as they are added to the tree with them, then add the rest
+        // to their parents.  Nodes which would be their own ancestors are in a cycle and stay out of the tree.
+        final Map<LinkedNode, List<LinkedNode>> attached = new LinkedHashMap<>();
+        for (Map.Entry<LinkedNode, LinkedNode> entry : pendingParents.entrySet()) {
+            final LinkedNode node = entry.getKey();
+            final LinkedNode parent = entry.getValue();
+            if (!pendingParents.containsKey(parent)) {
+                attached.computeIfAbsent(parent, key -> new ArrayList<>()).add(node);
+            } else if (!isCycle(node, parent)) {
+                addChild(parent, node, changed);
+            }
+        }
+        for (Map.Entry<LinkedNode, List<LinkedNode>> entry : attached.entrySet()) {
+            final LinkedNode parent = entry.getKey();
+            final List<LinkedNode> children = entry.getValue();
+            final int[] childIndices = new int[children.size()];
+            int numAdded = 0;
+            for (LinkedNode child : children) {
+                if (!isCycle(child, parent)) {
+                    childIndices[numAdded++] = addChild(parent, child, changed);
+                }
+            }
+            if (notifyEach && numAdded > 0 && parent.getRoot() == localRoot) {
+                treeModel.nodesWereInserted(parent, numAdded == childIndices.length ? childIndices : Arrays.copyOf(childIndices, numAdded));
+            }
+        }
+
+        // Parents which lost all their children no longer allow them:
+        for (LinkedNode parent : detached.keySet()) {
+            if (parent != localRoot && parent.getChildCount() == 0 && parent.getAllowsChildren()) {
+                parent.setAllowsChildren(false);
+                changed.add(parent);
+            }
+        }
+
+        if (notifyEach) {
+            // Notify the nodes which changed but didn't move, grouped by parent:
+            final Map<LinkedNode, Set<LinkedNode>> changedByParent = new LinkedHashMap<>();
+            for (LinkedNode node : changed) {
+                final LinkedNode parent = (LinkedNode) node.getParent();
+                if (parent != null && !pendingParents.containsKey(node) && parent.getRoot() == localRoot) {
+                    changedByParent.computeIfAbsent(parent, key -> new HashSet<>()).add(node);
+                }
+            }
+            for (Map.Entry<LinkedNode, Set<LinkedNode>> entry : changedByParent.entrySet()) {
+                treeModel.nodesChanged(entry.getKey(), TSVTreeReloader.getChildIndices(entry.getKey(), entry.getValue()));
+            }
+        } else {
+            TSVTreeReloader.refreshTree(treeModel, treeTableModel);
+        }
+    }
+
+    /**
+     * Counts the parents whose children visible in the table would be notified as removed, inserted or changed,
+     * before the changes are made.  Notifying changes to parents whose children aren't visible costs little.
+     */
+    private int countVisibleChanges(final Map<LinkedNode, LinkedNode> pendingParents,
+                                    final Set<LinkedNode> changed) {
+        final TSVTreeTableModel localModel = treeTableModel; // avoid repeated getfield in the loops.
+        final Set<TreeNode> visibleParents = new HashSet<>();
+        for (Map.Entry<LinkedNode, LinkedNode> entry : pendingParents.entrySet()) {
+            final TreeNode oldParent = entry.getKey().getParent();
+            if (oldParent != null && localModel.childrenWillBeVisible(oldParent)) {
+                visibleParents.add(oldParent);
+            }
+            final LinkedNode newParent = entry.getValue();
+            if (!pendingParents.containsKey(newParent)) {
+                if (localModel.childrenWillBeVisible(newParent)) {
+                    visibleParents.add(newParent);
+                }
+                final TreeNode grandParent = newParent.getParent();
+                if (!newParent.getAllowsChildren() && grandParent != null && localModel.childrenWillBeVisible(grandParent)) {
+                    visibleParents.add(grandParent);
+                }
+            }
+        }
+        for (LinkedNode node : changed) {
+            final TreeNode parent = node.getParent();
+            if (parent != null && !pendingParents.containsKey(node) && localModel.childrenWillBeVisible(parent)) {
+                visibleParents.add(parent);
+            }
+        }
+        return visibleParents.size();
+    }
+
+    /**
+     * Adds a child after the existing children of a parent, allowing the parent to have children if it didn't.
+     */
+    private static int addChild(final LinkedNode parent, final LinkedNode child, final Set<LinkedNode> changed) {
+        if (!parent.getAllowsChildren()) {
+            parent.setAllowsChildren(true);
+            changed.add(parent);
+        }
+        return parent.addLinkedChild(child);
+    }
+
+    /**
+     * Returns whether adding a node to a parent would make the node its own ancestor.  A leaf can only be an ancestor
+     * of itself, so only nodes with children need their descendants checked, which walks up the ancestors of the parent.
+     */
+    private static boolean isCycle(final LinkedNode node, final LinkedNode parent) {
+        return node == parent || node.getChildCount() > 0 && node.isNodeDescendant(parent);
+    }
+
+    private TSVTable.ColumnType[] getColumnTypes() {
+        final TSVTable.ColumnType[] types = new TSVTable.ColumnType[tsvTable.getColumnCount()];
+        for (int column = 0; column < types.length; column++) {
+            types[column] = tsvTable.getColumnType(column);
+        }
+        return types;
+    }
+
+    private LinkedNode getNode(final int code) {
+        return code < nodes.length ? nodes[code] : null;
+    }
+
+    private void setNode(final int code, final LinkedNode node) {
+        if (code >= nodes.length) {
+            nodes = Arrays.copyOf(nodes, Math.max(code + 1, nodes.length * 2));
+        }
+        nodes[code] = node;
+    }
+
+    private TSVRow createPlaceholderRow(final String id) {
+        final String[] fields = new String[tsvTable.getColumnCount()];
+        fields[idIndex] = id;
+        return TSVRow.of(fields);
+    }
+
+    /**
+     * A batch of rows read, with the codes of their ids and parent ids.
+     */
+    static final class Batch {
+
+        private TSVRow[] rows = new TSVRow[INITIAL_CAPACITY];
+        private int[] idCodes = new int[INITIAL_CAPACITY];
+        private int[] parentCodes = new int[INITIAL_CAPACITY];
+        private int size;
+
+        void add(final TSVRow row, final int idCode, final int parentCode) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+                idCodes = Arrays.copyOf(idCodes, size * 2);
+                parentCodes = Arrays.copyOf(parentCodes, size * 2);
+            }
+            rows[size] = row;
+            idCodes[size] = idCode;
+            parentCodes[size++] = parentCode;
+        }
+    }
+
+}
@@ -0,0 +1,588 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import javax.swing.ListSelectionModel;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeNode;
+
+import net.byteseek.swing.treetable.TreeTableModel;
+import net.byteseek.swing.treetable.TreeTableSelectionModel;
+
+/**
+ * Reloads a TSV file into a live tree built by a {@link TSVTreeBuilder}, by matching the rows of the file to the
+ * nodes of the tree by their ids and applying only the differences to the tree.
+ * <p>
+ * Nodes whose rows changed are notified as changed, nodes for new rows are inserted, nodes whose rows were deleted
+ * are removed, and nodes whose parent id changed are moved, by removing them from their old parent and inserting
+ * them into their new parent.  The changes to the children of each parent are notified in a single event.
+ * The nodes which are kept are the same node objects, so their expansion and selection in a TreeTableModel
+ * are preserved, and the model keeps its sort keys, so inserted and moved nodes are placed in sorted order.
+ * <p>
+ * The file still has to be read, and each row is matched to its node by looking up the bytes of its id, but rows
+ * are only compared byte for byte, and only the nodes which changed are notified, so the work done by the model
+ * scales with the number of rows which changed, not the size of the file.  A sorted table sorts all its rows again
+ * on each notification, so if there would be more than a few, the model is told the whole tree changed instead,
+ * and rebuilds and sorts its rows once.  Reading can be done on a background thread with {@link #read(Path)},
+ * and the differences applied on the Event Dispatch Thread with {@link #reload(TSVTreeBuilder)}.
+ * <p>
+ * Changes are applied in the same way the builder builds a tree: rows with an empty parent id are children of the
+ * virtual root, parent ids which no row has get a placeholder under the virtual root, and rows whose parents form
+ * a cycle are not in the tree.  New children are added after the existing children of their parent.
+ * If the columns of the file change, or a different root would be built for it (a placeholder rather than the
+ * virtual root, or the other way around), the tree is built again and its root replaced.
+ * Rows with duplicate ids share a single node, which has the last of the rows.
+ */
+public class TSVTreeReloader {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_NOTIFICATIONS = 16;       // the most notifications sent before the whole tree is refreshed,
+    private static final int MAX_SORTED_NOTIFICATIONS = 2; // or the most if the model is sorting.
+
+    private final DefaultTreeModel treeModel;
+    private final TSVTreeTableModel treeTableModel;
+    private final String idColumn;
+    private final String parentIdColumn;
+    private final ColumnProjection projection;
+    private ByteStringDictionary ids;      // the ids of the nodes, including ids of nodes which have been removed.
+    private DefaultMutableTreeNode[] nodes; // the node for each id code, or null if it has been removed.
+    private String placeholderRootId;       // the id of the root if it is a placeholder, or null for the virtual root.
+    private TSVTable tsvTable;
+
+    /**
+     * Constructs a TSVTreeReloader for a tree built by a builder.
+     *
+     * @param builder The builder which built the tree with {@link TSVTreeBuilder#build()}.
+     * @param treeModel The tree model whose root is the root of the tree, which notifies the tree table model of changes.
+     * @param treeTableModel The tree table model displaying the tree.
+     * @throws IllegalArgumentException if any of the parameters are null.
+     */
+    public TSVTreeReloader(final TSVTreeBuilder builder, final DefaultTreeModel treeModel, final TSVTreeTableModel treeTableModel) {
+        this(builder, treeModel, treeTableModel, ColumnProjection.ALL);
+    }
+
+    /**
+     * Constructs a TSVTreeReloader for a tree built by a builder from only some of the columns of a file.
+     *
+     * @param builder The builder which built the tree with {@link TSVTreeBuilder#build()}.
+     * @param treeModel The tree model whose root is the root of the tree, which notifies the tree table model of changes.
+     * @param treeTableModel The tree table model displaying the tree.
+     * @param projection The columns the tree was read with, which the file is read with again when it is reloaded.
+     * @throws IllegalArgumentException if any of the parameters are null.
+     */
+    public TSVTreeReloader(final TSVTreeBuilder builder, final DefaultTreeModel treeModel, final TSVTreeTableModel treeTableModel,
+                           final ColumnProjection projection) {
+        if (builder == null || treeModel == null || treeTableModel == null || projection == null) {
+            throw new IllegalArgumentException("Object cannot be null: builder, treeModel, treeTableModel or projection");
+        }
+        final String[] header = builder.getTSVTable().getHeader();
+        this.treeModel = treeModel;
+        this.treeTableModel = treeTableModel;
+        this.idColumn = header[builder.getIdIndex()];
+        this.parentIdColumn = header[builder.getParentIdIndex()];
+        this.projection = projection.withRequired(idColumn, parentIdColumn);
+        this.tsvTable = builder.getTSVTable();
+        indexNodes(builder.hasVirtualRoot());
+    }
+
+    /**
+     * Reads a TSV file into a new builder, without changing the tree.  This can be called on any thread.
+     *
+     * @param path The path of the TSV file.
+     * @return A builder containing the rows of the file.
+     * @throws IOException if the file can't be read.
+     * @throws IllegalArgumentException if the file doesn't have the id or parent id columns.
+     */
+    public TSVTreeBuilder read(final Path path) throws IOException {
+        try (TSVRowSource reader = TSVRowSource.open(path, projection)) {
+            final TSVTreeBuilder builder = new TSVTreeBuilder(new TSVTable(reader.getHeader()), idColumn, parentIdColumn);
+            reader.rows().forEachOrdered(builder::add);
+            builder.getTSVTable().finish();
+            return builder;
+        }
+    }
+
+    /**
+     * Applies the differences between the rows read into a builder and the tree to the tree, notifying the tree model
+     * listeners of each change.  This must be called on the Event Dispatch Thread once the tree is displayed.
+     *
+     * @param rows A builder containing the rows read from the file, which must not have built a tree.
+     * @return A summary of the changes made to the tree.
+     */
+    public Changes reload(final TSVTreeBuilder rows) {
+        final TSVTable newTable = rows.getTSVTable();
+        newTable.finish();
+        final String newRootId = rows.getPlaceholderRootId();
+        if (!hasSameColumns(newTable) || !Objects.equals(newRootId, placeholderRootId)) {
+            return rebuild(rows);
+        }
+        treeTableModel.setTSVTable(newTable);
+        tsvTable = newTable;
+
+        final DefaultMutableTreeNode root = (DefaultMutableTreeNode) treeModel.getRoot();
+        final ByteStringDictionary localIds = ids; // avoid repeated getfield.
+        final int idIndex = rows.getIdIndex();
+        final int parentIdIndex = rows.getParentIdIndex();
+        final int numRows = newTable.getRowCount();
+
+        // Match each row to a node by its id, giving existing nodes their new rows and creating nodes for new ids:
+        final Set<DefaultMutableTreeNode> changed = new HashSet<>();
+        final Set<DefaultMutableTreeNode> created = new HashSet<>();
+        final DefaultMutableTreeNode[] rowNodes = new DefaultMutableTreeNode[numRows];
+        int newRows = 0;
+        for (int rowIndex = 0; rowIndex < numRows; rowIndex++) {
+            final TSVRow row = newTable.getRow(rowIndex);
+            final int code = localIds.getOrAdd(row.getBuffer(), row.getFieldStart(idIndex), row.getFieldLength(idIndex));
+            DefaultMutableTreeNode node = getNode(code);
+            if (node == null) {
+                node = new DefaultMutableTreeNode(row, false);
+                setNode(code, node);
+                created.add(node);
+                newRows++;
+            } else {
+                final TSVRow oldRow = (TSVRow) node.getUserObject();
+                if (oldRow.getIndex() < 0 || !oldRow.contentEquals(row)) { // placeholders for new rows have changed.
+                    changed.add(node);
+                }
+                node.setUserObject(row); // unchanged rows are replaced silently, as they display the same values.
+            }
+            rowNodes[rowIndex] = node;
+        }
+
+        // Find the nodes which need a new parent.  Parent ids which no row has have a placeholder under the root,
+        // unless the root is the placeholder for the only one.  If ids are duplicated, the last row gives the parent.
+        final Map<DefaultMutableTreeNode, DefaultMutableTreeNode> pendingParents = new LinkedHashMap<>();
+        final Set<DefaultMutableTreeNode> placeholders = new LinkedHashSet<>();
+        for (int rowIndex = 0; rowIndex < numRows; rowIndex++) {
+            final DefaultMutableTreeNode node = rowNodes[rowIndex];
+            final TSVRow row = newTable.getRow(rowIndex);
+            if (node.getUserObject() == row) {
+                final int parentRow = rows.getParentRow(rowIndex);
+                final DefaultMutableTreeNode parent;
+                if (parentRow >= 0) {
+                    parent = rowNodes[parentRow];
+                } else if (parentRow == TSVTreeBuilder.EMPTY_PARENT) {
+                    parent = root;
+                } else {
+                    final int code = localIds.getOrAdd(row.getBuffer(), row.getFieldStart(parentIdIndex), row.getFieldLength(parentIdIndex));
+                    DefaultMutableTreeNode placeholder = getNode(code);
+                    if (placeholder == null) {
+                        placeholder = new DefaultMutableTreeNode(createPlaceholderRow(row.getField(parentIdIndex)), false);
+                        setNode(code, placeholder);
+                        created.add(placeholder);
+                    }
+                    placeholders.add(placeholder);
+                    parent = placeholder;
+                }
+                if (node.getParent() != parent) {
+                    pendingParents.put(node, parent);
+                }
+            }
+        }
+
+        // Nodes without a row become placeholders if they are still a parent, or are removed if not:
+        final Set<DefaultMutableTreeNode> removed = new HashSet<>();
+        int liveNodes = 0;
+        for (int code = 0; code < localIds.size(); code++) {
+            final DefaultMutableTreeNode node = getNode(code);
+            if (node != null && node != root) {
+                final TSVRow row = (TSVRow) node.getUserObject();
+                final int rowIndex = row.getIndex();
+                if (rowIndex < 0 || rowIndex >= numRows || newTable.getRow(rowIndex) != row) {
+                    if (placeholders.contains(node)) {
+                        if (rowIndex >= 0) {
+                            node.setUserObject(createPlaceholderRow(localIds.getString(code)));
+                            changed.add(node);
+                        }
+                        if (node.getParent() != root) {
+                            pendingParents.put(node, root);
+                        }
+                    } else {
+                        removed.add(node);
+                        setNode(code, null);
+                        continue;
+                    }
+                }
+                liveNodes++;
+            }
+        }
+
+        // Remove the nodes which are deleted or have to move from their parents:
+        final Set<DefaultMutableTreeNode> affectedParents = new HashSet<>();
+        final Map<DefaultMutableTreeNode, Set<DefaultMutableTreeNode>> detached = new HashMap<>();
+        for (DefaultMutableTreeNode node : removed) {
+            final DefaultMutableTreeNode parent = (DefaultMutableTreeNode) node.getParent();
+            if (parent != null && !removed.contains(parent)) { // descendants of removed nodes are removed with them.
+                detached.computeIfAbsent(parent, key -> new HashSet<>()).add(node);
+            }
+        }
+        final Map<DefaultMutableTreeNode, DefaultMutableTreeNode> oldParents = new HashMap<>(); // of nodes in the tree.
+        for (DefaultMutableTreeNode node : pendingParents.keySet()) {
+            final DefaultMutableTreeNode parent = (DefaultMutableTreeNode) node.getParent();
+            if (parent != null) {
+                detached.computeIfAbsent(parent, key -> new HashSet<>()).add(node);
+                if (node.getRoot() == root) {
+                    oldParents.put(node, parent);
+                }
+            }
+        }
+
+        // Each notification makes a sorted table sort all its rows again, so if there would be many of them,
+        // the tree is changed silently and the model is told the structure of the whole tree changed instead.
+        // It then rebuilds the visible rows once from the nodes it has expanded, and sorts them once.
+        final int maxNotifications = treeTableModel.isSorting() ? MAX_SORTED_NOTIFICATIONS : MAX_NOTIFICATIONS;
+        final boolean notifyEach = detached.size() + new HashSet<>(pendingParents.values()).size() + changed.size() <= maxNotifications;
+        removeChildren(root, detached, affectedParents, notifyEach);
+
+        // Link pending nodes whose new parents are also pending silently, as they are added to the tree with them,
+        // then add the rest to their parents.  Nodes which would be their own ancestors are in a cycle and stay out.
+        final Map<DefaultMutableTreeNode, List<DefaultMutableTreeNode>> attached = new LinkedHashMap<>();
+        for (Map.Entry<DefaultMutableTreeNode, DefaultMutableTreeNode> entry : pendingParents.entrySet()) {
+            final DefaultMutableTreeNode node = entry.getKey();
+            final DefaultMutableTreeNode parent = entry.getValue();
+            if (!pendingParents.containsKey(parent)) {
+                attached.computeIfAbsent(parent, key -> new ArrayList<>()).add(node);
+            } else if (!node.isNodeDescendant(parent)) {
+                addChild(parent, node, changed);
+            }
+        }
+        for (Map.Entry<DefaultMutableTreeNode, List<DefaultMutableTreeNode>> entry : attached.entrySet()) {
+            final DefaultMutableTreeNode parent = entry.getKey();
+            final List<DefaultMutableTreeNode> children = entry.getValue();
+            final int[] childIndices = new int[children.size()];
+            int numAdded = 0;
+            for (DefaultMutableTreeNode child : children) {
+                if (!child.isNodeDescendant(parent)) {
+                    childIndices[numAdded++] = addChild(parent, child, changed);
+                }
+            }
+            if (notifyEach && numAdded > 0 && parent.getRoot() == root) {
+                treeModel.nodesWereInserted(parent, numAdded == childIndices.length ? childIndices : Arrays.copyOf(childIndices, numAdded));
+            }
+        }
+
+        // Parents which lost all their children no longer allow them:
+        for (DefaultMutableTreeNode parent : affectedParents) {
+            if (parent != root && parent.getChildCount() == 0 && parent.getAllowsChildren()) {
+                parent.setAllowsChildren(false);
+                changed.add(parent);
+            }
+        }
+
+        // Notify the nodes which changed but didn't move, grouped by parent:
+        final Map<DefaultMutableTreeNode, Set<DefaultMutableTreeNode>> changedByParent = new HashMap<>();
+        for (DefaultMutableTreeNode node : changed) {
+            final DefaultMutableTreeNode parent = (DefaultMutableTreeNode) node.getParent();
+            if (parent != null && !pendingParents.containsKey(node) && !removed.contains(node) && parent.getRoot() == root) {
+                changedByParent.computeIfAbsent(parent, key -> new HashSet<>()).add(node);
+            }
+        }
+        int changedCount = 0;
+        for (Map.Entry<DefaultMutableTreeNode, Set<DefaultMutableTreeNode>> entry : changedByParent.entrySet()) {
+            final int[] childIndices = getChildIndices(entry.getKey(), entry.getValue());
+            if (notifyEach) {
+                treeModel.nodesChanged(entry.getKey(), childIndices);
+            }
+            changedCount += childIndices.length;
+        }
+        if (!notifyEach) {
+            refreshTree(treeModel, treeTableModel);
+        }
+
+        // Count the pending nodes which are out of the tree in a cycle, which moved within the tree,
+        // and which were out of the tree in a cycle before and are back in it:
+        int unreachable = 0;
+        int moved = 0;
+        int rejoined = 0;
+        for (DefaultMutableTreeNode node : pendingParents.keySet()) {
+            if (node.getRoot() != root) {
+                if (((TSVRow) node.getUserObject()).getIndex() >= 0) {
+                    unreachable++;
+                }
+            } else if (oldParents.containsKey(node)) {
+                if (node.getParent() != oldParents.get(node)) {
+                    moved++;
+                }
+            } else if (!created.contains(node)) {
+                rejoined++;
+            }
+        }
+
+        // Ids of removed nodes stay in the dictionary, so index the tree again if most of them are no longer used:
+        if (localIds.size() > liveNodes * 2 + INITIAL_CAPACITY) {
+            indexNodes(placeholderRootId == null);
+        }
+        return new Changes(changedCount, newRows + rejoined, removed.size(), moved, unreachable, false);
+    }
+
+    /**
+     * @return The table of rows in the tree.
+     */
+    public TSVTable getTSVTable() {
+        return tsvTable;
+    }
+
+    /**
+     * Builds the tree again from the rows, and replaces the root of the tree model with it.
+     */
+    private Changes rebuild(final TSVTreeBuilder rows) {
+        final DefaultMutableTreeNode newRoot = rows.build();
+        tsvTable = rows.getTSVTable();
+        treeTableModel.setTSVTable(tsvTable);
+        treeModel.setRoot(newRoot);
+        indexNodes(rows.hasVirtualRoot());
+        return new Changes(0, rows.getRowCount(), 0, 0, rows.getUnreachableRowCount(), true);
+    }
+
+    /**
+     * Indexes the nodes in the tree by their ids.  The root is indexed if it is a placeholder, rather than the virtual root.
+     */
+    private void indexNodes(final boolean virtualRoot) {
+        ids = new ByteStringDictionary();
+        nodes = new DefaultMutableTreeNode[INITIAL_CAPACITY];
+        final int idIndex = Arrays.asList(tsvTable.getHeader()).indexOf(idColumn);
+        final DefaultMutableTreeNode root = (DefaultMutableTreeNode) treeModel.getRoot();
+        placeholderRootId = virtualRoot ? null : ((TSVRow) root.getUserObject()).getField(idIndex);
+        final Deque<TreeNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            final DefaultMutableTreeNode node = (DefaultMutableTreeNode) stack.pop();
+            if (node != root || placeholderRootId != null) {
+                final TSVRow row = (TSVRow) node.getUserObject();
+                setNode(ids.getOrAdd(row.getBuffer(), row.getFieldStart(idIndex), row.getFieldLength(idIndex)), node);
+            }
+            for (Enumeration<TreeNode> children = node.children(); children.hasMoreElements(); ) {
+                stack.push(children.nextElement());
+            }
+        }
+    }
+
+    private DefaultMutableTreeNode getNode(final int code) {
+        return code < nodes.length ? nodes[code] : null;
+    }
+
+    private void setNode(final int code, final DefaultMutableTreeNode node) {
+        if (code >= nodes.length) {
+            nodes = Arrays.copyOf(nodes, Math.max(code + 1, nodes.length * 2));
+        }
+        nodes[code] = node;
+    }
+
+    private boolean hasSameColumns(final TSVTable newTable) {
+        if (!Arrays.equals(tsvTable.getHeader(), newTable.getHeader())) {
+            return false;
+        }
+        for (int column = 0; column < newTable.getColumnCount(); column++) {
+            if (tsvTable.getColumnType(column) != newTable.getColumnType(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private TSVRow createPlaceholderRow(final String id) {
+        final String[] fields = new String[tsvTable.getColumnCount()];
+        fields[Arrays.asList(tsvTable.getHeader()).indexOf(idColumn)] = id;
+        return TSVRow.of(fields);
+    }
+
+    /**
+     * Notifies the model that the structure of the whole tree changed.  The table clears its selection when all its
+     * rows change, so the selected nodes which are still in the tree are selected again afterwards.
+     */
+    static void refreshTree(final DefaultTreeModel treeModel, final TreeTableModel treeTableModel) {
+        final DefaultMutableTreeNode root = (DefaultMutableTreeNode) treeModel.getRoot();
+        final ListSelectionModel selectionModel = treeTableModel.getSelectionModel();
+        if (selectionModel instanceof TreeTableSelectionModel) {
+            final TreeTableSelectionModel treeSelectionModel = (TreeTableSelectionModel) selectionModel;
+            final List<TreeNode> selectedNodes = treeSelectionModel.getSelectedNodes();
+            treeModel.nodeStructureChanged(root);
+            treeSelectionModel.setValueIsAdjusting(true);
+            for (TreeNode node : selectedNodes) {
+                if (((DefaultMutableTreeNode) node).getRoot() == root) {
+                    treeSelectionModel.addSelectedNode(node);
+                }
+            }
+            treeSelectionModel.setValueIsAdjusting(false);
+        } else {
+            treeModel.nodeStructureChanged(root);
+        }
+    }
+
+    /**
+     * Removes children from their parents, notifying the tree model of the children removed from each parent which
+     * is in the tree if required.  Deeper parents are processed first, so children of nodes which are removed are removed
+     * from them while they are still in the tree.
+     */
+    private void removeChildren(final DefaultMutableTreeNode root,
+                                final Map<DefaultMutableTreeNode, Set<DefaultMutableTreeNode>> childrenByParent,
+                                final Set<DefaultMutableTreeNode> affectedParents, final boolean notify) {
+        final List<DefaultMutableTreeNode> parentNodes = new ArrayList<>(childrenByParent.keySet());
+        final Map<DefaultMutableTreeNode, Integer> levels = new HashMap<>();
+        for (DefaultMutableTreeNode parent : parentNodes) {
+            levels.put(parent, parent.getLevel());
+        }
+        parentNodes.sort((parent1, parent2) -> Integer.compare(levels.get(parent2), levels.get(parent1)));
+        for (DefaultMutableTreeNode parent : parentNodes) {
+            final int[] childIndices = getChildIndices(parent, childrenByParent.get(parent));
+            final Object[] children = new Object[childIndices.length];
+            for (int child = childIndices.length - 1; child >= 0; child--) {
+                children[child] = parent.getChildAt(childIndices[child]);
+                parent.remove(childIndices[child]);
+            }
+            if (notify && parent.getRoot() == root) {
+                treeModel.nodesWereRemoved(parent, childIndices, children);
+            }
+            affectedParents.add(parent);
+        }
+    }
+
+    /**
+     * Adds a child after the existing children of a parent, allowing the parent to have children if it didn't.
+     */
+    private static int addChild(final DefaultMutableTreeNode parent, final DefaultMutableTreeNode child,
+                                final Set<DefaultMutableTreeNode> changed) {
+        if (!parent.getAllowsChildren()) {
+            parent.setAllowsChildren(true);
+            changed.add(parent);
+        }
+        final int childIndex = parent.getChildCount();
+        parent.insert(child, childIndex);
+        return childIndex;
+    }
+
+    /**
+     * Returns the indices of some children of a parent in ascending order, looking at each child of the parent once.
+     */
+    static int[] getChildIndices(final DefaultMutableTreeNode parent, final Set<? extends TreeNode> children) {
+        final int[] childIndices = new int[children.size()];
+        int found = 0;
+        final int childCount = parent.getChildCount();
+        for (int childIndex = 0; childIndex < childCount && found < childIndices.length; childIndex++) {
+            if (children.contains(parent.getChildAt(childIndex))) {
+                childIndices[found++] = childIndex;
+            }
+        }
+        return found == childIndices.length ? childIndices : Arrays.copyOf(childIndices, found);
+    }
+
+    /**
+     * A summary of the changes made to a tree by a reload.
+     */
+    public static final class Changes {
+
+        private final int changed;
+        private final int inserted;
+        private final int removed;
+        private final int moved;
+        private final int unreachable;
+        private final boolean rebuilt;
+
+        Changes(final int changed, final int inserted, final int removed, final int moved,
+                final int unreachable, final boolean rebuilt) {
+            this.changed = changed;
+            this.inserted = inserted;
+            this.removed = removed;
+            this.moved = moved;
+            this.unreachable = unreachable;
+            this.rebuilt = rebuilt;
+        }
+
+        /**
+         * @return The number of nodes in the tree whose rows changed, which were not moved.
+         */
+        public int getChangedCount() {
+            return changed;
+        }
+
+        /**
+         * @return The number of nodes created for new rows, plus any nodes which were out of the tree in a parent id
+         *         cycle and are back in it, or all the rows if the tree was rebuilt.  A row for the id of a placeholder
+         *         takes over the placeholder node, so it is counted as changed or moved rather than inserted.
+         */
+        public int getInsertedCount() {
+            return inserted;
+        }
+
+        /**
+         * @return The number of nodes removed, including placeholders which are no longer needed.
+         */
+        public int getRemovedCount() {
+            return removed;
+        }
+
+        /**
+         * @return The number of nodes which were in the tree and are still in it, under a different parent.
+         */
+        public int getMovedCount() {
+            return moved;
+        }
+
+        /**
+         * @return The number of moved or new rows which are in parent id cycles, and are not in the tree.
+         */
+        public int getUnreachableCount() {
+            return unreachable;
+        }
+
+        /**
+         * @return Whether the tree was built again, rather than changed.
+         */
+        public boolean isRebuilt() {
+            return rebuilt;
+        }
+
+        @Override
+        public String toString() {
+            return rebuilt ? "Rebuilt tree with " + inserted + " rows" :
+                   changed + " changed, " + inserted + " inserted, " + removed + " removed, " + moved + " moved, " +
+                   unreachable + " unreachable";
+        }
+    }
+
+}
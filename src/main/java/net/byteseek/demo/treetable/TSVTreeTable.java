@@ -3,157 +3,275 @@ package net.byteseek.demo.treetable;
 import javax.swing.*;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
-import javax.swing.tree.TreeNode;
 
+import net.byteseek.swing.treetable.CompactTreeStore;
+import net.byteseek.swing.treetable.MappedTreeStore;
 import net.byteseek.swing.treetable.TreeTableHeaderRenderer;
 import net.byteseek.swing.treetable.TreeTableModel;
-import net.byteseek.swing.treetable.TreeUtils;
 
-import java.io.File;
+import java.awt.BorderLayout;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
 
 public class TSVTreeTable {
 
+    private static final String RELOAD_OPTION = "--reload";
+    private static final String PROGRESSIVE_OPTION = "--progressive";
+    private static final String COLUMNS_OPTION = "--columns=";
+    private static final String COLUMNS_MATCHING_OPTION = "--columns-matching=";
+    private static final int RELOAD_CHECK_INTERVAL = 1000; // milliseconds between checks for changes to the file.
+
     public static void main(String[] args) {
         MyObjectForm.setSystemLookAndFeel();
         if (args.length < 3) {
-            System.err.println("Usage: java TSVTreeTable <tsv-file> <id-column> <parent-id-column>");
+            System.err.println("Usage: java TSVTreeTable <tsv-file> <id-column> <parent-id-column> [" + RELOAD_OPTION + " | " + PROGRESSIVE_OPTION + "]"
+                    + " [" + COLUMNS_OPTION + "<name>,<name>... | " + COLUMNS_MATCHING_OPTION + "<regex>]");
+            System.err.println("  The TSV file is decompressed as it is read if its name ends in " + TSVRowSource.GZIP_EXTENSION);
+            System.err.println("  A directory or a glob such as data/part-*.tsv reads the shards of a file in parallel as one tree,");
+            System.err.println("  which can't be reloaded or loaded progressively.");
+            System.err.println("  " + RELOAD_OPTION + " watches the file and applies any changes to the tree when it is saved.");
+            System.err.println("  " + PROGRESSIVE_OPTION + " shows the tree at once, and adds rows to it as the rest of the file loads.");
+            System.err.println("  " + COLUMNS_OPTION + " and " + COLUMNS_MATCHING_OPTION + " read only the named columns, or the columns whose names match,");
+            System.err.println("  as well as the id and parent id columns.");
             System.err.println("mvn clean compile package -q -e");
             System.err.println("java -cp ./target/treetable-1.0-SNAPSHOT.jar net.byteseek.demo.treetable.TSVTreeTable fileTree.tsv id parentId");
             System.exit(1);
         }
 
-        String tsvFile = args[0];
+        Path tsvPath = Paths.get(args[0]);
         String idColumn = args[1];
         String parentIdColumn = args[2];
+        List<String> options = Arrays.asList(args).subList(3, args.length);
+        ColumnProjection projection = getProjection(options).withRequired(idColumn, parentIdColumn);
+        if (TSVShards.isSharded(tsvPath)) {
+            if (options.contains(RELOAD_OPTION) || options.contains(PROGRESSIVE_OPTION)) {
+                System.err.println(RELOAD_OPTION + " and " + PROGRESSIVE_OPTION + " can't be used with shards, as they are not one file: " + tsvPath);
+                System.exit(1);
+            }
+            showShardedTree(tsvPath, idColumn, parentIdColumn, projection);
+            return;
+        }
+        if (options.contains(RELOAD_OPTION)) {
+            showReloadingTree(tsvPath, idColumn, parentIdColumn, projection);
+            return;
+        }
+        if (options.contains(PROGRESSIVE_OPTION)) {
+            showProgressiveTree(tsvPath, idColumn, parentIdColumn, projection);
+            return;
+        }
 
-        try {
-            List<String[]> rows = parseTSV(tsvFile);
-            DefaultMutableTreeNode root = buildTree(rows, idColumn, parentIdColumn);
-            
-            /* DefaultMutableTreeNode rootNode = TreeUtils.buildTree(root, (node) -> {
-                return Collections.list(node.children());
-                
-            }, node -> node); */
-
-            // Display the tree in a JFrame
+        // Map the snapshot of the tree in if it's up to date, so nothing needs to be parsed:
+        long startTime = System.nanoTime();
+        MappedTreeStore snapshot = TSVSnapshot.open(tsvPath, idColumn, parentIdColumn, projection);
+        if (snapshot != null) {
+            System.out.println("Opened snapshot " + TSVSnapshot.getSnapshotPath(tsvPath) + " in " +
+                    (System.nanoTime() - startTime) / 1000000 + " ms");
             SwingUtilities.invokeLater(() -> {
-                JFrame frame = new JFrame("TSV TreeTable");
-                frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+                TSVSnapshotTreeTableModel treeTableModel = new TSVSnapshotTreeTableModel(snapshot);
+                int[] expandedNodes = snapshot.getNodeSet(TSVSnapshot.EXPANDED_NODES);
+                if (expandedNodes != null) {
+                    treeTableModel.expandNodes(expandedNodes);
+                }
+                showTable(treeTableModel, null);
+            });
+            return;
+        }
+
+        try (TSVRowSource reader = TSVRowSource.open(tsvPath, projection)) {
+            TSVTable tsvTable = new TSVTable(reader.getHeader());
+            TSVTreeBuilder builder = new TSVTreeBuilder(tsvTable, idColumn, parentIdColumn);
+            reader.rows().forEachOrdered(builder::add);
+            CompactTreeStore tree = builder.buildCompact();
+            if (builder.getDanglingParentCount() > 0) {
+                System.out.println("Parent nodes not found for " + builder.getDanglingParentCount() + " parent IDs");
+            }
+            if (builder.getUnreachableRowCount() > 0) {
+                System.out.println(builder.getUnreachableRowCount() + " rows are in parent ID cycles and are not shown");
+            }
 
-                TreeTableModel treeTableModel = new TSVTreeTableModel(root,rows.get(0));
-                JTable table = new JTable();
-                treeTableModel.bindTable(table, new TreeTableHeaderRenderer());
+            // Write a snapshot so the next launch doesn't need to parse the TSV file.  It is written before the table is
+            // handed to the Event Dispatch Thread, as the table decodes and ranks its values lazily without locking.
+            writeSnapshot(tsvPath, idColumn, parentIdColumn, projection, tree, tsvTable, null);
 
-                frame.add(new JScrollPane(table));
-                frame.pack();
-                frame.setLocationRelativeTo(null);
-                frame.setVisible(true);
+            // Display the tree in a JFrame, and write the snapshot again with the expanded nodes when it closes.
+            SwingUtilities.invokeLater(() -> {
+                TreeTableModel treeTableModel = new TSVTreeTableModel(tree.getRoot(), tsvTable);
+                showTable(treeTableModel, () -> writeSnapshot(tsvPath, idColumn, parentIdColumn, projection, tree, tsvTable,
+                        TSVSnapshot.getExpandedNodeNumbers(treeTableModel)));
             });
         } catch (IOException e) {
             System.err.println("Error reading TSV file: " + e.getMessage());
         }
     }
-    
-    private static List<String[]> parseTSV(String filePath) throws IOException {
-        return Files.readAllLines(Paths.get(filePath))
-            .stream()
-            .map(s -> s.split("\t",-1))
-            .collect(Collectors.toList());
-    }
 
     /**
-     * Builds a tree structure from the TSV records using the specified id and parentId columns.
+     * Displays a modifiable tree, and checks the file for changes, reloading it in the background when it changes.
+     * Only the differences are applied to the displayed tree, so expansion, selection and sorting are preserved.
      */
-    private static DefaultMutableTreeNode buildTree(List<String[]> rows, String idColumn, String parentIdColumn) {
-        Map<String, DefaultMutableTreeNode> nodeMap = new HashMap<>();
-        
-    
-        List<String> headers = List.of(rows.get(0));
-        int idIndex = headers.indexOf(idColumn);
-        int parentIdIndex = headers.indexOf(parentIdColumn);
-
-        if (idIndex == -1 || parentIdIndex == -1) {
-            throw new IllegalArgumentException("idColumnName or parentIdColumnName not found in TSV header");
-        }
-        
-        String[] rootRow = new String[headers.size()];
-        rootRow[idIndex] = "Virtual Root";
-        DefaultMutableTreeNode virtualRoot = new DefaultMutableTreeNode(rootRow);
-    
-        // Create nodes for all records
-        for (int i = 1; i < rows.size(); i++) {
-            String[] row = rows.get(i);
-            String id = row[idIndex];
-            String parentId = row[parentIdIndex];
-    
-            DefaultMutableTreeNode node = new DefaultMutableTreeNode(row);
-            nodeMap.put(id, node);
-    
-            if (parentId == null || parentId.isEmpty()) {
-                virtualRoot.add(node); // Add to virtual root if no parent
-            }
+    private static void showReloadingTree(Path tsvPath, String idColumn, String parentIdColumn, ColumnProjection projection) {
+        try (TSVRowSource reader = TSVRowSource.open(tsvPath, projection)) {
+            TSVTable tsvTable = new TSVTable(reader.getHeader());
+            TSVTreeBuilder builder = new TSVTreeBuilder(tsvTable, idColumn, parentIdColumn);
+            reader.rows().forEachOrdered(builder::add);
+            DefaultMutableTreeNode root = builder.build();
+            long[] lastModified = {getModifiedTime(tsvPath)};
+            SwingUtilities.invokeLater(() -> {
+                TSVTreeTableModel treeTableModel = new TSVTreeTableModel(root, tsvTable);
+                DefaultTreeModel treeModel = new DefaultTreeModel(root);
+                treeModel.addTreeModelListener(treeTableModel);
+                TSVTreeReloader reloader = new TSVTreeReloader(builder, treeModel, treeTableModel, projection);
+                showTable(treeTableModel, null);
+                boolean[] reloading = {false};
+                new javax.swing.Timer(RELOAD_CHECK_INTERVAL, e -> {
+                    long modified = getModifiedTime(tsvPath);
+                    if (!reloading[0] && modified != lastModified[0]) {
+                        reloading[0] = true;
+                        lastModified[0] = modified;
+                        new SwingWorker<TSVTreeBuilder, Void>() {
+                            @Override
+                            protected TSVTreeBuilder doInBackground() throws IOException {
+                                return reloader.read(tsvPath);
+                            }
+
+                            @Override
+                            protected void done() {
+                                reloading[0] = false;
+                                try {
+                                    System.out.println("Reloaded " + tsvPath + ": " + reloader.reload(get()));
+                                } catch (InterruptedException | ExecutionException ex) {
+                                    System.err.println("Error reloading TSV file: " + ex.getCause());
+                                }
+                            }
+                        }.execute();
+                    }
+                }).start();
+            });
+        } catch (IOException e) {
+            System.err.println("Error reading TSV file: " + e.getMessage());
         }
-    
-        // Build the tree structure
-        Set<String> danglingParentIds = new HashSet<>();
-        for (int i = 1; i < rows.size(); i++) {
-            String[] row = rows.get(i);
-            String parentId = row[parentIdIndex];
-            if (parentId != null && !parentId.isEmpty()) {
-                DefaultMutableTreeNode parentNode = nodeMap.get(parentId);
-                if (parentNode != null) {
-                    parentNode.add(nodeMap.get(row[idIndex]));
-                } else {
-                    System.out.println("Parent node not found for ID: " + parentId);
-                    danglingParentIds.add(parentId);
-    
-                    // Create a placeholder row for the missing parent
-                    String[] placeholderRow = new String[headers.size()];
-                    placeholderRow[idIndex] = parentId; // Set the ID
-                    placeholderRow[parentIdIndex] = "";  // Assume it has no parent
-                    for (int j = 0; j < placeholderRow.length; j++) {
-                        if (placeholderRow[j] == null) {
-                            placeholderRow[j] = ""; // Fill empty values
+    }
+
+    /**
+     * Displays the tree as soon as the file is opened, and adds rows to it in batches as they are loaded in the background,
+     * with a progress bar showing how much of the file has been read.
+     */
+    private static void showProgressiveTree(Path tsvPath, String idColumn, String parentIdColumn, ColumnProjection projection) {
+        try {
+            TSVRowSource source = TSVRowSource.open(tsvPath, projection);
+            long startTime = System.nanoTime();
+            SwingUtilities.invokeLater(() -> {
+                TSVTreeLoader loader = new TSVTreeLoader(source, idColumn, parentIdColumn);
+                JFrame frame = showTable(loader.getTreeTableModel(), null);
+                JProgressBar progressBar = new JProgressBar(0, 100);
+                progressBar.setStringPainted(true);
+                frame.add(progressBar, BorderLayout.SOUTH);
+                frame.validate();
+                loader.addPropertyChangeListener(e -> {
+                    if ("progress".equals(e.getPropertyName())) {
+                        progressBar.setValue((Integer) e.getNewValue());
+                        progressBar.setString("Loaded " + loader.getTSVTable().getRowCount() + " rows");
+                    } else if (loader.isDone() && progressBar.getParent() != null) {
+                        frame.remove(progressBar);
+                        frame.validate();
+                        try {
+                            System.out.println("Loaded " + loader.get() + " rows in " + (System.nanoTime() - startTime) / 1000000 + " ms");
+                            if (loader.getDanglingParentCount() > 0) {
+                                System.out.println("Parent nodes not found for " + loader.getDanglingParentCount() + " parent IDs");
+                            }
+                            if (loader.getUnreachableRowCount() > 0) {
+                                System.out.println(loader.getUnreachableRowCount() + " rows are in parent ID cycles and are not shown");
+                            }
+                        } catch (InterruptedException | ExecutionException ex) {
+                            System.err.println("Error reading TSV file: " + ex.getCause());
                         }
                     }
-    
-                    // Create a new node for the placeholder parent
-                    DefaultMutableTreeNode placeholderNode = new DefaultMutableTreeNode(placeholderRow);
-                    nodeMap.put(parentId, placeholderNode);
-    
-                    // Add the current node as a child of the placeholder parent
-                    placeholderNode.add(nodeMap.get(row[idIndex]));
-                }
+                });
+                loader.execute();
+            });
+        } catch (IOException e) {
+            System.err.println("Error reading TSV file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Displays the tree built from the shards of a file, which are read in parallel.
+     * Shards are not reloaded or snapshotted, as they are not one file.
+     */
+    private static void showShardedTree(Path shardsPath, String idColumn, String parentIdColumn, ColumnProjection projection) {
+        try {
+            long startTime = System.nanoTime();
+            List<Path> shards = TSVShards.find(shardsPath);
+            TSVTreeBuilder builder = TSVShards.load(shards, idColumn, parentIdColumn, projection);
+            CompactTreeStore tree = builder.buildCompact();
+            System.out.println("Loaded " + builder.getRowCount() + " rows from " + shards.size() + " shards in " +
+                    (System.nanoTime() - startTime) / 1000000 + " ms");
+            if (builder.getDanglingParentCount() > 0) {
+                System.out.println("Parent nodes not found for " + builder.getDanglingParentCount() + " parent IDs");
             }
+            if (builder.getUnreachableRowCount() > 0) {
+                System.out.println(builder.getUnreachableRowCount() + " rows are in parent ID cycles and are not shown");
+            }
+            TSVTable tsvTable = builder.getTSVTable();
+            SwingUtilities.invokeLater(() -> showTable(new TSVTreeTableModel(tree.getRoot(), tsvTable), null));
+        } catch (IOException e) {
+            System.err.println("Error reading TSV shards: " + e.getMessage());
         }
-		// Don't display expansion button if there's no children
-        for (DefaultMutableTreeNode node : nodeMap.values()) {
-            boolean allows = node.getChildCount() > 0;
-            node.setAllowsChildren(allows);
+    }
+
+    /**
+     * Returns the columns selected by the options, or all of them if no columns are selected.
+     */
+    private static ColumnProjection getProjection(List<String> options) {
+        for (String option : options) {
+            if (option.startsWith(COLUMNS_OPTION)) {
+                return ColumnProjection.include(option.substring(COLUMNS_OPTION.length()).split(","));
+            }
+            if (option.startsWith(COLUMNS_MATCHING_OPTION)) {
+                return ColumnProjection.matching(Pattern.compile(option.substring(COLUMNS_MATCHING_OPTION.length())));
+            }
         }
-    
-        // Add dangling parent nodes to the virtual root
-        if (danglingParentIds.size() == 1 && virtualRoot.isLeaf()) {
-            DefaultMutableTreeNode danglingNode = nodeMap.get(danglingParentIds.toArray()[0]);
-            virtualRoot = danglingNode;
-        } else {
-            for (String id : danglingParentIds) {
-                DefaultMutableTreeNode danglingNode = nodeMap.get(id);
-                if (danglingNode != null) {
-                    virtualRoot.add(danglingNode); // Add to the virtual root
+        return ColumnProjection.ALL;
+    }
+
+    private static long getModifiedTime(Path path) {
+        return path.toFile().lastModified();
+    }
+
+    private static JFrame showTable(TreeTableModel treeTableModel, Runnable onClose) {
+        JFrame frame = new JFrame("TSV TreeTable");
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        if (onClose != null) {
+            frame.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosing(WindowEvent e) {
+                    onClose.run();
                 }
-            }
+            });
+        }
+
+        JTable table = new JTable();
+        treeTableModel.bindTable(table, new TreeTableHeaderRenderer());
+
+        frame.add(new JScrollPane(table));
+        frame.pack();
+        frame.setLocationRelativeTo(null);
+        frame.setVisible(true);
+        return frame;
+    }
+
+    private static void writeSnapshot(Path tsvPath, String idColumn, String parentIdColumn, ColumnProjection projection,
+                                      CompactTreeStore tree, TSVTable tsvTable, int[] expandedNodes) {
+        try {
+            TSVSnapshot.write(tsvPath, idColumn, parentIdColumn, projection, tree, tsvTable, expandedNodes);
+        } catch (IOException e) {
+            System.err.println("Error writing snapshot: " + e.getMessage());
         }
-    
-        return virtualRoot;
     }
 
-    
 }
\ No newline at end of file
@@ -1,29 +1,149 @@
 package net.byteseek.demo.treetable;
 
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.swing.RowSorter;
 import javax.swing.table.DefaultTableColumnModel;
 import javax.swing.table.TableColumnModel;
+import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.TreeNode;
 
+import net.byteseek.swing.treetable.CompactTreeStore;
+import net.byteseek.swing.treetable.MoreChildrenNode;
+import net.byteseek.swing.treetable.TreeNodeComparator;
 import net.byteseek.swing.treetable.TreeTableModel;
-import net.byteseek.swing.treetable.TreeUtils;
+import net.byteseek.swing.treetable.TreeTableRowSorter;
 
+/**
+ * A TreeTableModel for nodes whose user objects are {@link TSVRow}s in a {@link TSVTable}.
+ * Columns have the types inferred by the table, and typed columns are sorted by comparing their primitive values
+ * directly.  String cells are decoded from the rows when asked for.  The values of the most recently displayed rows
+ * are cached, so repainting the visible rows doesn't decode them again.
+ */
 public class TSVTreeTableModel extends TreeTableModel  {
-    private String[] columnNames;
-    public TSVTreeTableModel(TreeNode root, String[] columnNames) {
+
+    public static final int DEFAULT_CACHE_SIZE = 512;
+
+    private TSVTable tsvTable;
+    private final String[] columnNames;
+    private int cacheSize;
+    private final Map<TSVRow, Object[]> displayedValues = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<TSVRow, Object[]> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    public TSVTreeTableModel(TreeNode root, TSVTable tsvTable) {
         super(root, true);
-        this.columnNames = columnNames;
+        this.tsvTable = tsvTable;
+        this.columnNames = tsvTable.getHeader();
+        this.cacheSize = DEFAULT_CACHE_SIZE;
     }
 
     @Override
     public Object getColumnValue(TreeNode node, int column) {
-        try {
-            String[] row = TreeUtils.getUserObject(node);
-            return row[column];
-        } catch (Exception e) {
-            System.out.println(node);
-            throw e;
+        return tsvTable.getValue(getRow(node), column);
+    }
+
+    /**
+     * Gets values for the table to display, caching the values of recently displayed rows.
+     * Sorting gets values with {@link #getColumnValue(TreeNode, int)}, which does not use the cache, so sorting many
+     * rows doesn't evict the rows being displayed.
+     */
+    @Override
+    public Object getValueAt(final int row, final int column) {
+        final TreeNode node = getNodeAtModelIndex(row);
+        if (cacheSize == 0 || isAggregateColumn(column) || node instanceof MoreChildrenNode) {
+            // aggregate values are already stored by the model, and a row showing more children has no TSV row.
+            return super.getValueAt(row, column);
+        }
+        countMetric(MetricsListener.Counter.COLUMN_VALUES, 1);
+        final TSVRow tsvRow = getRow(node);
+        Object[] values = displayedValues.get(tsvRow);
+        if (values == null) {
+            values = new Object[columnNames.length];
+            displayedValues.put(tsvRow, values);
+        }
+        if (column >= values.length) {
+            return tsvTable.getValue(tsvRow, column);
+        }
+        Object value = values[column];
+        if (value == null) {
+            value = tsvTable.getValue(tsvRow, column); // null values are not cached, but are cheap to get again.
+            values[column] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public Class<?> getColumnClass(final int columnIndex) {
+        return tsvTable.getColumnType(columnIndex).getColumnClass();
+    }
+
+    @Override
+    public Comparator<?> getColumnComparator(final int column) {
+        return tsvTable.isTyped(column) ? TSVTable.TYPED_VALUE_COMPARATOR : null;
+    }
+
+    /**
+     * @return The table of rows this model displays.
+     */
+    public TSVTable getTSVTable() {
+        return tsvTable;
+    }
+
+    /**
+     * Sets the table of rows this model displays, when the rows of the nodes are replaced by rows of another table
+     * with the same columns.  Listeners are not notified: the tree model the rows came from should notify the model
+     * of the nodes which changed.
+     *
+     * @param tsvTable The table of rows this model displays.
+     * @throws IllegalArgumentException if the table is null or has a different number of columns.
+     */
+    public void setTSVTable(final TSVTable tsvTable) {
+        if (tsvTable == null) {
+            throw new IllegalArgumentException("Object cannot be null: tsvTable");
+        }
+        if (tsvTable.getColumnCount() != columnNames.length) {
+            throw new IllegalArgumentException("Table has " + tsvTable.getColumnCount() + " columns, but the model has " + columnNames.length);
         }
-        
+        this.tsvTable = tsvTable;
+        displayedValues.clear();
+    }
+
+    /**
+     * Notifies the model that the types of some columns in its table changed as rows were added to it,
+     * so the cached values of displayed rows are cleared, and all the rows are updated.
+     */
+    public void columnTypesChanged() {
+        displayedValues.clear();
+        final int rowCount = getRowCount();
+        if (rowCount > 0) {
+            fireTableRowsUpdated(0, rowCount - 1);
+        }
+    }
+
+    /**
+     * @return The number of rows whose displayed values are cached.
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Sets the number of rows whose displayed values are cached.  Zero disables the cache.
+     *
+     * @param cacheSize The number of rows to cache displayed values for.
+     * @throws IllegalArgumentException if the cache size is negative.
+     */
+    public void setCacheSize(final int cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Cache size cannot be negative: " + cacheSize);
+        }
+        this.cacheSize = cacheSize;
+        displayedValues.clear();
     }
 
     @Override
@@ -34,5 +154,57 @@ public class TSVTreeTableModel extends TreeTableModel  {
         }
         return result;
     }
-    
+
+    /**
+     * Creates the default row sorter, with a node comparator that compares typed columns without boxing their values.
+     */
+    @Override
+    protected TreeTableRowSorter createDefaultRowSorter() {
+        final TreeTableRowSorter rowSorter = super.createDefaultRowSorter();
+        rowSorter.setNodeComparator(new TypedColumnComparator(this));
+        return rowSorter;
+    }
+
+    /**
+     * Returns the TSV row of a node.  Trees of TSV rows are either compact read-only trees, or mutable trees of
+     * DefaultMutableTreeNodes which can be reloaded, and both have the row as their user object.
+     *
+     * @param node A node in a tree of TSV rows.
+     * @return The TSV row of the node.
+     */
+    protected static TSVRow getRow(final TreeNode node) {
+        if (node instanceof CompactTreeStore.Node) {
+            return (TSVRow) ((CompactTreeStore.Node) node).getUserObject();
+        }
+        return (TSVRow) ((DefaultMutableTreeNode) node).getUserObject();
+    }
+
+    /**
+     * A node comparator which compares the primitive values of typed columns for rows in the table directly,
+     * and otherwise compares values as a TreeNodeComparator does.
+     */
+    protected static class TypedColumnComparator extends TreeNodeComparator {
+
+        private final TSVTreeTableModel tsvModel;
+
+        public TypedColumnComparator(final TSVTreeTableModel model) {
+            super(model);
+            this.tsvModel = model;
+        }
+
+        @Override
+        protected int compareValues(final TreeNode node1, final TreeNode node2, final RowSorter.SortKey sortKey) {
+            final int column = sortKey.getColumn();
+            final TSVTable tsvTable = tsvModel.getTSVTable(); // the table can be replaced when the file is reloaded.
+            if (tsvTable.isTyped(column)) {
+                final int index1 = getRow(node1).getIndex();
+                final int index2 = getRow(node2).getIndex();
+                if (index1 >= 0 && index2 >= 0) {
+                    return tsvTable.compare(index1, index2, column);
+                }
+            }
+            return super.compareValues(node1, node2, sortKey);
+        }
+    }
+
 }
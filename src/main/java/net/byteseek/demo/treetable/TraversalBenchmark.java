@@ -0,0 +1,287 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import javax.swing.table.DefaultTableColumnModel;
+import javax.swing.table.TableColumnModel;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.TreeNode;
+import net.byteseek.swing.treetable.TreeTableModel;
+import net.byteseek.swing.treetable.TreeUtils;
+
+/**
+ * A headless benchmark of walking trees with explicit stacks, against the recursive walks they replaced.
+ * <p>
+ * For a shallow tree, a complete binary tree, and a chain of nodes shallow enough to walk recursively, it times
+ * walking the tree, building a mirror of the tree, expanding and collapsing the whole tree in a TreeTableModel,
+ * and rebuilding the visible nodes of the expanded tree.  The recursive versions are copies of the previous code.
+ * It reports the mean time of each, and the time of the stack version relative to the recursive version.
+ * <p>
+ * Usage: <code>TraversalBenchmark [nodes] [iterations]</code>, which default to 200,000 nodes and 20 iterations,
+ * after as many warm up iterations.
+ */
+public final class TraversalBenchmark {
+
+    private static final int DEFAULT_NODES = 200_000;
+    private static final int DEFAULT_ITERATIONS = 20;
+    private static final int CHAIN_DEPTH = 2_000; // shallow enough not to overflow the call stack recursively.
+
+    private static volatile int blackHole; // stops results being optimised away.
+
+    private TraversalBenchmark() {
+    }
+
+    public static void main(final String[] args) {
+        final int nodes = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NODES;
+        final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+        System.out.printf("%-8s %-16s %14s %14s %8s%n", "tree", "operation", "recursive ms", "stack ms", "ratio");
+        runScenarios("shallow", buildShallowTree(nodes), iterations);
+        runScenarios("binary", buildBinaryTree(nodes), iterations);
+        runScenarios("chain", buildChain(CHAIN_DEPTH), iterations);
+    }
+
+    /**
+     * Times each operation on a tree recursively and with a stack, printing a line of results for each.
+     */
+    private static void runScenarios(final String treeName, final DefaultMutableTreeNode root, final int iterations) {
+        final int[] count = new int[1];
+        final Consumer<TreeNode> counter = node -> count[0]++;
+        printResult(treeName, "walk", iterations,
+                () -> recursiveWalk(root, counter),
+                () -> TreeUtils.walk(root, counter));
+
+        final Function<TreeNode, List<TreeNode>> childProvider = TreeUtils::getChildren;
+        final Predicate<TreeNode> allowsChildren = TreeNode::getAllowsChildren;
+        printResult(treeName, "buildTree", iterations,
+                () -> blackHole += recursiveBuildTree(root, childProvider, allowsChildren).getChildCount(),
+                () -> blackHole += TreeUtils.buildTree(root, childProvider, allowsChildren).getChildCount());
+
+        final TraversalModel recursiveModel = new RecursiveModel(root);
+        final TraversalModel stackModel = new TraversalModel(root);
+        printResult(treeName, "expand/collapse", iterations,
+                () -> expandAndCollapse(recursiveModel),
+                () -> expandAndCollapse(stackModel));
+
+        recursiveModel.expandTree();
+        stackModel.expandTree();
+        printResult(treeName, "rebuild visible", iterations,
+                recursiveModel::refreshTree,
+                stackModel::refreshTree);
+        blackHole += count[0];
+    }
+
+    private static void expandAndCollapse(final TreeTableModel model) {
+        model.expandTree();
+        blackHole += model.getRowCount();
+        model.collapseChildren(model.getRoot());
+    }
+
+    /**
+     * Warms up and times a recursive and a stack version of an operation, alternating between them, and prints the mean
+     * time of each.
+     */
+    private static void printResult(final String treeName, final String operation, final int iterations,
+                                    final Runnable recursive, final Runnable stack) {
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            recursive.run();
+            stack.run();
+        }
+        long recursiveNanos = 0;
+        long stackNanos = 0;
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            recursiveNanos += time(recursive);
+            stackNanos += time(stack);
+        }
+        System.out.printf("%-8s %-16s %14.3f %14.3f %8.2f%n", treeName, operation,
+                toMillis(recursiveNanos / iterations), toMillis(stackNanos / iterations),
+                (double) stackNanos / Math.max(1, recursiveNanos));
+    }
+
+    private static long time(final Runnable operation) {
+        final long startTime = System.nanoTime();
+        operation.run();
+        return System.nanoTime() - startTime;
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                           Recursive versions
+     */
+
+    private static void recursiveWalk(final TreeNode node, final Consumer<TreeNode> method) {
+        method.accept(node);
+        TreeUtils.forEachChild(node, child -> recursiveWalk(child, method));
+    }
+
+    private static <T> DefaultMutableTreeNode recursiveBuildTree(final T parent, final Function<T, List<T>> childProvider,
+                                                                 final Predicate<T> allowChildrenTest) {
+        final boolean allowsChildren = allowChildrenTest.test(parent);
+        final DefaultMutableTreeNode parentNode = new DefaultMutableTreeNode(parent, allowsChildren);
+        if (allowsChildren) {
+            final List<T> children = childProvider.apply(parent);
+            int indexToInsert = 0;
+            for (T child : children) {
+                final DefaultMutableTreeNode childNode = recursiveBuildTree(child, childProvider, allowChildrenTest);
+                parentNode.insert(childNode, indexToInsert++);
+            }
+        }
+        return parentNode;
+    }
+
+    /**
+     * A model which expands, collapses and builds its visible nodes recursively, as the TreeTableModel did before.
+     * It doesn't page children.
+     */
+    private static final class RecursiveModel extends TraversalModel {
+
+        private RecursiveModel(final TreeNode rootNode) {
+            super(rootNode);
+        }
+
+        @Override
+        public void expandChildren(final TreeNode parentNode) {
+            if (parentNode.getAllowsChildren()) {
+                TreeUtils.forEachChild(parentNode, this::expandChildren);
+                expandNode(parentNode);
+            }
+        }
+
+        @Override
+        public void collapseChildren(final TreeNode parentNode) {
+            collapseNode(parentNode);
+            TreeUtils.forEachChild(parentNode, this::collapseChildren);
+        }
+
+        @Override
+        protected List<TreeNode> buildVisibleChildren(final TreeNode node) {
+            final List<TreeNode> children = new ArrayList<>();
+            TreeUtils.forEachChild(node, child -> !isFiltered(child), child -> {
+                children.add(child);
+                buildVisibleChildren(child, children);
+            });
+            return children;
+        }
+
+        @Override
+        protected int buildVisibleChildren(final TreeNode parentNode, final List<TreeNode> visibleNodes) {
+            if (isExpanded(parentNode)) {
+                int totalVisibleChildren = 0;
+                for (int childIndex = 0; childIndex < parentNode.getChildCount(); childIndex++) {
+                    final TreeNode child = parentNode.getChildAt(childIndex);
+                    if (!isFiltered(child)) {
+                        visibleNodes.add(child);
+                        totalVisibleChildren += (1 + buildVisibleChildren(child, visibleNodes));
+                    }
+                }
+                expandedNodeCounts.put(parentNode, totalVisibleChildren);
+                return totalVisibleChildren;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * A model with a single column showing the user object of each node.
+     */
+    private static class TraversalModel extends TreeTableModel {
+
+        private TraversalModel(final TreeNode rootNode) {
+            super(rootNode, true);
+        }
+
+        @Override
+        public Object getColumnValue(final TreeNode node, final int column) {
+            return TreeUtils.getUserObject(node);
+        }
+
+        @Override
+        protected TableColumnModel createTableColumnModel() {
+            final TableColumnModel result = new DefaultTableColumnModel();
+            result.addColumn(createColumn(0, "node"));
+            return result;
+        }
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                  Trees
+     */
+
+    /**
+     * A root with all other nodes as direct children.
+     */
+    private static DefaultMutableTreeNode buildShallowTree(final int nodes) {
+        final DefaultMutableTreeNode root = new DefaultMutableTreeNode(0, true);
+        for (int i = 1; i < nodes; i++) {
+            root.add(new DefaultMutableTreeNode(i, false));
+        }
+        return root;
+    }
+
+    /**
+     * A complete binary tree, so nodes are spread over about log2(nodes) levels.
+     */
+    private static DefaultMutableTreeNode buildBinaryTree(final int nodes) {
+        final DefaultMutableTreeNode[] created = new DefaultMutableTreeNode[nodes];
+        for (int i = 0; i < nodes; i++) {
+            created[i] = new DefaultMutableTreeNode(i, i * 2 + 1 < nodes);
+            if (i > 0) {
+                created[(i - 1) / 2].add(created[i]);
+            }
+        }
+        return created[0];
+    }
+
+    /**
+     * A chain of nodes, each the only child of the one before.  It is built from the deepest node up, as adding a child
+     * to a deep parent checks all of the parent's ancestors.
+     */
+    private static DefaultMutableTreeNode buildChain(final int depth) {
+        DefaultMutableTreeNode node = new DefaultMutableTreeNode(depth, false);
+        for (int level = depth - 1; level >= 0; level--) {
+            final DefaultMutableTreeNode parent = new DefaultMutableTreeNode(level, true);
+            parent.add(node);
+            node = parent;
+        }
+        return node;
+    }
+
+    private static double toMillis(final long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+}
@@ -0,0 +1,372 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+import javax.swing.tree.TreeNode;
+
+/**
+ * A read-only tree stored in int arrays, for very large trees which are built once from flat data and then browsed.
+ * <p>
+ * A tree is built from an array giving the index of the parent of each item in the flat data, in time linear in the
+ * number of items.  Nodes are numbered in breadth-first order, so the children of a node are numbered consecutively.
+ * Each node then needs only its parent, its first child, its number of children, and the index of the item it
+ * was built from: four ints per node, instead of a DefaultMutableTreeNode with a Vector of children.
+ * <p>
+ * TreeNode views of the nodes are created lazily when asked for, and the same view is always returned for a node,
+ * so views have a stable identity and can be used with a TreeTableModel like any other TreeNode.
+ * The user object of a node is obtained from a function of its item index, and can be obtained with
+ * {@link Node#getUserObject()}.
+ * <p>
+ * The store is not thread-safe.  Views are created on the thread asking for them, which should be the
+ * Event Dispatch Thread once the tree is in use.
+ */
+public final class CompactTreeStore {
+
+    /* *****************************************************************************************************************
+     *                                                Constants
+     */
+
+    /**
+     * The parent index of an item which has no parent.
+     */
+    public static final int NO_PARENT = -1;
+
+    private static final int ROOT_NODE = 0;
+
+
+    /* *****************************************************************************************************************
+     *                                                Variables
+     */
+
+    private final int[] parents;       // the parent node of each node.
+    private final int[] firstChildren; // the first child node of each node.
+    private final int[] childCounts;   // the number of children of each node.
+    private final int[] itemIndexes;   // the index of the item each node was built from.
+    private final IntFunction<?> userObjects;
+    private final int unreachableCount;
+    private final Node[] views;
+
+
+    /* *****************************************************************************************************************
+     *                                                Constructors
+     */
+
+    private CompactTreeStore(final int[] parents, final int[] firstChildren, final int[] childCounts,
+                             final int[] itemIndexes, final IntFunction<?> userObjects, final int unreachableCount) {
+        this.parents = parents;
+        this.firstChildren = firstChildren;
+        this.childCounts = childCounts;
+        this.itemIndexes = itemIndexes;
+        this.userObjects = userObjects;
+        this.unreachableCount = unreachableCount;
+        this.views = new Node[parents.length];
+    }
+
+    /**
+     * Builds a tree from the parent index of each item.  The children of each item are in the order of their indexes.
+     * Items which can't be reached from the root, because their parents are not valid or form a cycle, or because
+     * they have no parent and are not the root, are left out of the tree.
+     *
+     * @param parentIndexes The index of the parent of each item, or {@link #NO_PARENT}.
+     * @param rootIndex The index of the item which is the root of the tree.
+     * @param userObjects A function giving the user object for an item index.  It can be null if there are none.
+     * @return A CompactTreeStore containing the tree.
+     * @throws IllegalArgumentException if the parent indexes are null or the root index is not valid.
+     */
+    public static CompactTreeStore build(final int[] parentIndexes, final int rootIndex, final IntFunction<?> userObjects) {
+        if (parentIndexes == null) {
+            throw new IllegalArgumentException("Object cannot be null: parentIndexes");
+        }
+        final int numItems = parentIndexes.length;
+        if (rootIndex < 0 || rootIndex >= numItems) {
+            throw new IllegalArgumentException("Invalid root index: " + rootIndex + " for " + numItems + " items.");
+        }
+
+        // Count the children of each item, then group them by parent in item order with a counting sort:
+        final int[] childStarts = new int[numItems + 1];
+        for (int item = 0; item < numItems; item++) {
+            final int parent = parentIndexes[item];
+            if (parent >= 0 && parent < numItems && item != rootIndex) {
+                childStarts[parent + 1]++;
+            }
+        }
+        for (int item = 1; item <= numItems; item++) {
+            childStarts[item] += childStarts[item - 1];
+        }
+        final int[] childItems = new int[childStarts[numItems]];
+        final int[] nextChild = new int[numItems];
+        System.arraycopy(childStarts, 0, nextChild, 0, numItems);
+        for (int item = 0; item < numItems; item++) {
+            final int parent = parentIndexes[item];
+            if (parent >= 0 && parent < numItems && item != rootIndex) {
+                childItems[nextChild[parent]++] = item;
+            }
+        }
+
+        // Number the nodes breadth first from the root, so the children of each node are consecutive.
+        // Nodes are numbered in the order they are reached, so the node numbers themselves form the queue.
+        final int[] itemIndexes = new int[numItems];
+        final int[] parents = new int[numItems];
+        final int[] firstChildren = new int[numItems];
+        final int[] childCounts = new int[numItems];
+        itemIndexes[ROOT_NODE] = rootIndex;
+        parents[ROOT_NODE] = NO_PARENT;
+        int numNodes = 1;
+        for (int node = 0; node < numNodes; node++) {
+            final int item = itemIndexes[node];
+            final int start = childStarts[item];
+            final int count = childStarts[item + 1] - start;
+            firstChildren[node] = numNodes;
+            childCounts[node] = count;
+            for (int child = start; child < start + count; child++) {
+                itemIndexes[numNodes] = childItems[child];
+                parents[numNodes++] = node;
+            }
+        }
+
+        return new CompactTreeStore(trim(parents, numNodes), trim(firstChildren, numNodes), trim(childCounts, numNodes),
+                                    trim(itemIndexes, numNodes), userObjects, numItems - numNodes);
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Public methods
+     */
+
+    /**
+     * @return The root node of the tree.
+     */
+    public Node getRoot() {
+        return getNode(ROOT_NODE);
+    }
+
+    /**
+     * @return The number of nodes in the tree.
+     */
+    public int getNodeCount() {
+        return parents.length;
+    }
+
+    /**
+     * @return The number of items the tree was built from, including any which are not in the tree.
+     */
+    public int getItemCount() {
+        return parents.length + unreachableCount;
+    }
+
+    /**
+     * @return The number of items which couldn't be reached from the root, and are not in the tree.
+     */
+    public int getUnreachableCount() {
+        return unreachableCount;
+    }
+
+    /**
+     * @param itemIndex The index of an item.
+     * @return The user object for the item, or null if there are no user objects.
+     */
+    public Object getItemUserObject(final int itemIndex) {
+        return userObjects == null ? null : userObjects.apply(itemIndex);
+    }
+
+    /**
+     * Returns the view of a node, creating it if it doesn't exist yet.  The same view is always returned for a node.
+     *
+     * @param node The number of the node.
+     * @return The view of the node.
+     * @throws IndexOutOfBoundsException if the node number is not valid.
+     */
+    public Node getNode(final int node) {
+        Node view = views[node];
+        if (view == null) {
+            view = new Node(this, node);
+            views[node] = view;
+        }
+        return view;
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Package methods
+     */
+
+    int getParentNumber(final int node) {
+        return parents[node];
+    }
+
+    int getFirstChildNumber(final int node) {
+        return firstChildren[node];
+    }
+
+    int getChildCount(final int node) {
+        return childCounts[node];
+    }
+
+    int getItemIndex(final int node) {
+        return itemIndexes[node];
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Private methods
+     */
+
+    private static int[] trim(final int[] array, final int length) {
+        if (array.length == length) {
+            return array;
+        }
+        final int[] trimmed = new int[length];
+        System.arraycopy(array, 0, trimmed, 0, length);
+        return trimmed;
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Node views
+     */
+
+    /**
+     * A lightweight TreeNode view of a node in a CompactTreeStore.
+     */
+    public static final class Node implements TreeNode {
+
+        private final CompactTreeStore store;
+        private final int node;
+
+        private Node(final CompactTreeStore store, final int node) {
+            this.store = store;
+            this.node = node;
+        }
+
+        /**
+         * @return The number of the node in its store.
+         */
+        public int getNodeNumber() {
+            return node;
+        }
+
+        /**
+         * @return The index of the item the node was built from.
+         */
+        public int getItemIndex() {
+            return store.itemIndexes[node];
+        }
+
+        /**
+         * @return The user object for the item the node was built from, or null if there are no user objects.
+         */
+        public Object getUserObject() {
+            final IntFunction<?> userObjects = store.userObjects;
+            return userObjects == null ? null : userObjects.apply(store.itemIndexes[node]);
+        }
+
+        /**
+         * @return The store the node belongs to.
+         */
+        public CompactTreeStore getStore() {
+            return store;
+        }
+
+        @Override
+        public TreeNode getChildAt(final int childIndex) {
+            if (childIndex < 0 || childIndex >= store.childCounts[node]) {
+                throw new ArrayIndexOutOfBoundsException("Node " + this + " has no child at index " + childIndex);
+            }
+            return store.getNode(store.firstChildren[node] + childIndex);
+        }
+
+        @Override
+        public int getChildCount() {
+            return store.childCounts[node];
+        }
+
+        @Override
+        public TreeNode getParent() {
+            final int parent = store.parents[node];
+            return parent == NO_PARENT ? null : store.getNode(parent);
+        }
+
+        @Override
+        public int getIndex(final TreeNode child) {
+            if (child instanceof Node) {
+                final Node childNode = (Node) child;
+                if (childNode.store == store && store.parents[childNode.node] == node) {
+                    return childNode.node - store.firstChildren[node];
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * The root and any node with children allow children.
+         */
+        @Override
+        public boolean getAllowsChildren() {
+            return node == ROOT_NODE || store.childCounts[node] > 0;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return store.childCounts[node] == 0;
+        }
+
+        @Override
+        public Enumeration<? extends TreeNode> children() {
+            return new Enumeration<>() {
+                private int next;
+
+                @Override
+                public boolean hasMoreElements() {
+                    return next < store.childCounts[node];
+                }
+
+                @Override
+                public TreeNode nextElement() {
+                    if (!hasMoreElements()) {
+                        throw new NoSuchElementException();
+                    }
+                    return store.getNode(store.firstChildren[node] + next++);
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            final Object userObject = getUserObject();
+            return userObject == null ? "Node " + node : userObject.toString();
+        }
+    }
+
+}
@@ -0,0 +1,394 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import javax.swing.tree.TreeNode;
+import net.byteseek.utils.collections.BlockModifyArrayList;
+
+/**
+ * The list of nodes displayed by a TreeTableModel, which keeps parallel arrays of metadata for each row:
+ * the depth of the node in the tree, the model index of its parent, and the number of visible rows in its subtree.
+ * <p>
+ * The metadata is updated by the same block operations that insert or remove nodes, so the renderer, row sorter
+ * and navigation actions can obtain the depth and parent of a row in constant time, rather than walking up the tree
+ * for every row painted or compared.
+ * <p>
+ * Inserting or removing a block of rows costs the same as shifting the rows after it, plus walking up the ancestors
+ * of the block to update their visible subtree sizes.
+ * The list must always contain nodes in the order they are displayed in the tree: a parent followed by all its
+ * visible descendants.
+ */
+public class DisplayedNodeList extends BlockModifyArrayList<TreeNode> {
+
+    /* *****************************************************************************************************************
+     *                                                Constants
+     */
+
+    /**
+     * The parent index of a row whose parent is not displayed (the root, or children of a hidden root).
+     */
+    public static final int NO_PARENT = -1;
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+
+    /* *****************************************************************************************************************
+     *                                                Variables
+     */
+
+    protected int[] depths = new int[DEFAULT_CAPACITY];       // depth in the tree of the node on each row.
+    protected int[] parentIndexes = new int[DEFAULT_CAPACITY]; // index of the parent of the node on each row.
+    protected int[] subtreeSizes = new int[DEFAULT_CAPACITY];  // number of visible descendants of the node on each row.
+    protected int[] ancestorStack = new int[16];               // working stack used to calculate metadata for a block.
+
+
+    /* *****************************************************************************************************************
+     *                                           Metadata access
+     */
+
+    /**
+     * @param index The index of the row.
+     * @return The depth in the tree of the node on the row.  The root of the tree has a depth of zero.
+     */
+    public int getDepth(final int index) {
+        checkMetadataIndex(index);
+        return depths[index];
+    }
+
+    /**
+     * @param index The index of the row.
+     * @return The index of the row of the parent of the node, or {@link #NO_PARENT} if the parent is not displayed.
+     */
+    public int getParentIndex(final int index) {
+        checkMetadataIndex(index);
+        return parentIndexes[index];
+    }
+
+    /**
+     * @param index The index of the row.
+     * @return The number of visible descendants of the node on the row, which are the rows directly following it.
+     */
+    public int getSubtreeSize(final int index) {
+        checkMetadataIndex(index);
+        return subtreeSizes[index];
+    }
+
+    /**
+     * Returns the index of the ancestor of a row a number of levels up the tree.
+     *
+     * @param index The index of the row.
+     * @param levelsUp How many levels up the tree to go.
+     * @return The index of the ancestor row, or {@link #NO_PARENT} if it is not displayed.
+     */
+    public int getAncestorIndex(final int index, final int levelsUp) {
+        checkMetadataIndex(index);
+        int ancestor = index;
+        for (int level = 0; level < levelsUp && ancestor != NO_PARENT; level++) {
+            ancestor = parentIndexes[ancestor];
+        }
+        return ancestor;
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                     List modification methods
+     */
+
+    @Override
+    public boolean add(final TreeNode element) {
+        super.add(element);
+        rowsInserted(size() - 1, 1);
+        return true;
+    }
+
+    @Override
+    public void add(final int index, final TreeNode element) {
+        if (index == size()) {
+            add(element);
+        } else {
+            super.add(index, element);
+            rowsInserted(index, 1);
+        }
+    }
+
+    @Override
+    public void addAll(final List<? extends TreeNode> elements) {
+        final int index = size();
+        super.addAll(elements);
+        rowsInserted(index, elements.size());
+    }
+
+    @Override
+    public void addAll(final int index, final List<? extends TreeNode> elements) {
+        if (index == size()) {
+            addAll(elements);
+        } else {
+            super.addAll(index, elements);
+            rowsInserted(index, elements.size());
+        }
+    }
+
+    @Override
+    public boolean addAll(final int index, final Collection<? extends TreeNode> c) {
+        super.addAll(index, c);
+        rowsInserted(index, c.size());
+        return true;
+    }
+
+    @Override
+    public TreeNode set(final int index, final TreeNode element) {
+        final TreeNode previous = super.set(index, element);
+        rebuildMetadata();
+        return previous;
+    }
+
+    @Override
+    public TreeNode remove(final int index) {
+        final TreeNode removed = super.remove(index);
+        rowsRemoved(index, 1);
+        return removed;
+    }
+
+    @Override
+    public void remove(final int from, final int to) {
+        final int oldSize = size();
+        super.remove(from, to);
+        rowsRemoved(from, oldSize - size());
+    }
+
+    @Override
+    public void replace(final int from, final int to, final List<? extends TreeNode> newValues) {
+        super.replace(from, to, newValues);
+        rebuildMetadata();
+    }
+
+    @Override
+    public void replace(final int from, final int to, final Enumeration<? extends TreeNode> newValues, final int numNewValues) {
+        super.replace(from, to, newValues, numNewValues);
+        rebuildMetadata();
+    }
+
+    /**
+     * Recalculates the metadata for all rows.
+     */
+    public void rebuildMetadata() {
+        final int size = size();
+        ensureMetadataCapacity(size);
+        calculateBlock(0, size);
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                          Private methods
+     */
+
+    /**
+     * Updates the metadata after a block of rows was inserted into the list.
+     *
+     * @param first The index of the first row inserted.
+     * @param count The number of rows inserted.
+     */
+    protected void rowsInserted(final int first, final int count) {
+        if (count > 0) {
+            final int size = size();
+            ensureMetadataCapacity(size);
+
+            // Shift the rows after the block up, and update the parent indexes which moved with them.
+            final int end = first + count;
+            final int numToShift = size - end;
+            System.arraycopy(depths, first, depths, end, numToShift);
+            System.arraycopy(parentIndexes, first, parentIndexes, end, numToShift);
+            System.arraycopy(subtreeSizes, first, subtreeSizes, end, numToShift);
+            final int[] localParents = parentIndexes; // avoid repeated getfield.
+            for (int row = end; row < size; row++) {
+                if (localParents[row] >= first) {
+                    localParents[row] += count;
+                }
+            }
+
+            calculateBlock(first, end);
+        }
+    }
+
+    /**
+     * Updates the metadata after a block of rows was removed from the list.
+     *
+     * @param first The index of the first row removed.
+     * @param count The number of rows removed.
+     */
+    protected void rowsRemoved(final int first, final int count) {
+        if (count > 0) {
+            final int end = first + count;
+
+            // Walk the roots of the removed block, reducing the subtree sizes of their ancestors.
+            int groupParent = NO_PARENT;
+            int groupRows = 0;
+            int row = first;
+            while (row < end) {
+                final int parent = parentIndexes[row];
+                final int rowsInSubtree = Math.min(subtreeSizes[row] + 1, end - row);
+                if (parent != groupParent) {
+                    adjustAncestorSizes(groupParent, -groupRows);
+                    groupParent = parent;
+                    groupRows = 0;
+                }
+                groupRows += rowsInSubtree;
+                row += rowsInSubtree;
+            }
+            adjustAncestorSizes(groupParent, -groupRows);
+
+            // Shift the rows after the block down, and update the parent indexes which moved with them.
+            // If a parent was removed without its descendants (e.g. hiding the root), they no longer have a parent.
+            final int size = size(); // size after removal.
+            final int numToShift = size - first;
+            System.arraycopy(depths, end, depths, first, numToShift);
+            System.arraycopy(parentIndexes, end, parentIndexes, first, numToShift);
+            System.arraycopy(subtreeSizes, end, subtreeSizes, first, numToShift);
+            final int[] localParents = parentIndexes; // avoid repeated getfield.
+            for (int shiftedRow = first; shiftedRow < size; shiftedRow++) {
+                final int parent = localParents[shiftedRow];
+                if (parent >= end) {
+                    localParents[shiftedRow] = parent - count;
+                } else if (parent >= first) {
+                    localParents[shiftedRow] = NO_PARENT;
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates the metadata for a block of rows in pre-order, and adds the rows in the block to the subtree sizes
+     * of any ancestors outside the block.  Rows before the block must already have correct metadata.
+     *
+     * @param first The index of the first row in the block.
+     * @param end The index one after the last row in the block.
+     */
+    protected void calculateBlock(final int first, final int end) {
+        final int[] localDepths = depths;   // avoid repeated getfield.
+        final int[] localParents = parentIndexes;
+        final int[] localSizes = subtreeSizes;
+        int[] stack = ancestorStack;
+        int stackSize = 0;
+        int groupParent = NO_PARENT;
+        int groupRows = 0;
+        for (int row = first; row < end; row++) {
+            final TreeNode node = get(row);
+            final TreeNode parentNode = node.getParent();
+
+            // Pop any nodes off the stack which are not the parent - their subtrees end before this row.
+            while (stackSize > 0 && get(stack[stackSize - 1]) != parentNode) {
+                final int finished = stack[--stackSize];
+                localSizes[finished] = row - finished - 1;
+            }
+
+            if (stackSize > 0) { // parent is in the block.
+                final int parent = stack[stackSize - 1];
+                localParents[row] = parent;
+                localDepths[row] = localDepths[parent] + 1;
+            } else { // parent is outside the block - find it by walking up the ancestors of the row before the block.
+                final int parent = findParentBefore(first, parentNode);
+                localParents[row] = parent;
+                localDepths[row] = parent == NO_PARENT ? TreeUtils.getLevel(node) : localDepths[parent] + 1;
+                if (parent != groupParent) {
+                    adjustAncestorSizes(groupParent, groupRows);
+                    groupParent = parent;
+                    groupRows = 0;
+                }
+            }
+            groupRows++;
+
+            if (stackSize == stack.length) {
+                stack = Arrays.copyOf(stack, stackSize * 2);
+                ancestorStack = stack;
+            }
+            stack[stackSize++] = row;
+        }
+        while (stackSize > 0) {
+            final int finished = stack[--stackSize];
+            localSizes[finished] = end - finished - 1;
+        }
+        adjustAncestorSizes(groupParent, groupRows);
+    }
+
+    /**
+     * Finds the row of a parent node which is displayed before a block, by walking up the parents of the row before
+     * the block.  As the rows are in pre-order, the parent of the first row in the block must be an ancestor of the
+     * row just before it.
+     *
+     * @param first The first row of the block.
+     * @param parentNode The parent node to find.
+     * @return The index of the row of the parent node, or {@link #NO_PARENT} if it is not displayed.
+     */
+    protected int findParentBefore(final int first, final TreeNode parentNode) {
+        int row = first - 1;
+        while (row != NO_PARENT && get(row) != parentNode) {
+            row = parentIndexes[row];
+        }
+        return row;
+    }
+
+    /**
+     * Adds a number of rows to the subtree sizes of a row and all of its ancestors.
+     *
+     * @param row The first row to adjust, or {@link #NO_PARENT} to do nothing.
+     * @param delta The number of rows to add (or remove, if negative).
+     */
+    protected void adjustAncestorSizes(final int row, final int delta) {
+        if (delta != 0) {
+            final int[] localParents = parentIndexes; // avoid repeated getfield.
+            final int[] localSizes = subtreeSizes;
+            for (int ancestor = row; ancestor != NO_PARENT; ancestor = localParents[ancestor]) {
+                localSizes[ancestor] += delta;
+            }
+        }
+    }
+
+    protected void ensureMetadataCapacity(final int size) {
+        if (size > depths.length) {
+            final int newLength = Math.max(size, depths.length + (depths.length >> 1));
+            depths = Arrays.copyOf(depths, newLength);
+            parentIndexes = Arrays.copyOf(parentIndexes, newLength);
+            subtreeSizes = Arrays.copyOf(subtreeSizes, newLength);
+        }
+    }
+
+    private void checkMetadataIndex(final int index) {
+        if (index >= size() || index < 0) {
+            throw new IndexOutOfBoundsException("Index = " + index + " size = " + size());
+        }
+    }
+
+}
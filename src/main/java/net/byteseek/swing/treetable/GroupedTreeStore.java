@@ -0,0 +1,678 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeNode;
+
+/**
+ * A tree which groups flat rows by the values of an ordered list of columns, such as region, then host, then process.
+ * <p>
+ * The root groups all the rows.  Each level below it has a group for each distinct value of a group column in its
+ * parent group, and the groups of the last group column contain the rows themselves.  Groups are found by hashing
+ * their values, so the tree is built in a single pass over the rows, which can be split over several threads.
+ * Groups and rows are in the order they are first seen in the rows.
+ * <p>
+ * Rows can be added, removed, or moved to other groups when their values change, without rebuilding the tree.
+ * Each change is notified to TreeModelListeners, such as a {@link GroupedTreeTableModel}, with as few events as
+ * possible: a row which moves is removed with its highest group that becomes empty, and inserted with its highest
+ * group that is new.
+ * <p>
+ * The store is not thread-safe.  Once the tree is in use, it should only be changed on the Event Dispatch Thread.
+ *
+ * @param <R> The type of row grouped.
+ */
+public final class GroupedTreeStore<R> {
+
+    /**
+     * Gets the value of a column of a row.
+     *
+     * @param <R> The type of row.
+     */
+    @FunctionalInterface
+    public interface ColumnValues<R> {
+
+        /**
+         * @param row The row to get a value of.
+         * @param column The model index of the column.
+         * @return The value of the column for the row.
+         */
+        Object getValue(R row, int column);
+    }
+
+    /* *****************************************************************************************************************
+     *                                                Variables
+     */
+
+    private final ColumnValues<? super R> values;
+    private final int[] groupColumns;
+    private final GroupNode root;
+    private final Map<R, RowNode<R>> rowNodes = new IdentityHashMap<>();
+    private final List<TreeModelListener> listeners = new ArrayList<>(2);
+
+
+    /* *****************************************************************************************************************
+     *                                                Constructors
+     */
+
+    private GroupedTreeStore(final ColumnValues<? super R> values, final int[] groupColumns) {
+        this.values = values;
+        this.groupColumns = groupColumns;
+        this.root = new GroupNode(null, null, -1, groupColumns.length > 0);
+    }
+
+    /**
+     * Builds a tree grouping rows by the values of the group columns, in a single pass over the rows.
+     *
+     * @param rows The rows to group.
+     * @param values Gets the value of a column of a row.
+     * @param groupColumns The model indexes of the columns to group by, from the top level down.
+     * @param <R> The type of row grouped.
+     * @return A GroupedTreeStore containing the tree.
+     * @throws IllegalArgumentException if any parameter is null, a group column is negative, or a row is null or
+     *                                  appears more than once.
+     */
+    public static <R> GroupedTreeStore<R> build(final List<? extends R> rows, final ColumnValues<? super R> values,
+                                                final int... groupColumns) {
+        return build(rows, values, groupColumns, 1);
+    }
+
+    /**
+     * Builds a tree grouping rows by the values of the group columns.  The rows are split into consecutive chunks
+     * which are grouped in parallel, then the groups of each chunk are merged in order.
+     *
+     * @param rows The rows to group.
+     * @param values Gets the value of a column of a row.  It must be safe to call from several threads.
+     * @param groupColumns The model indexes of the columns to group by, from the top level down.
+     * @param parallelism The number of threads to group the rows with.
+     * @param <R> The type of row grouped.
+     * @return A GroupedTreeStore containing the tree.
+     * @throws IllegalArgumentException if any parameter is null, a group column is negative, the parallelism is less
+     *                                  than one, or a row is null or appears more than once.
+     * @throws IllegalStateException if the thread is interrupted while waiting for the rows to be grouped.
+     */
+    public static <R> GroupedTreeStore<R> build(final List<? extends R> rows, final ColumnValues<? super R> values,
+                                                final int[] groupColumns, final int parallelism) {
+        if (rows == null || values == null || groupColumns == null) {
+            throw new IllegalArgumentException("Object cannot be null: rows, values or groupColumns");
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        for (int groupColumn : groupColumns) {
+            if (groupColumn < 0) {
+                throw new IllegalArgumentException("Group column cannot be negative: " + groupColumn);
+            }
+        }
+        final GroupedTreeStore<R> store = new GroupedTreeStore<>(values, groupColumns.clone());
+        final int numChunks = Math.min(parallelism, Math.max(1, rows.size()));
+        if (numChunks == 1) {
+            store.group(rows, store.root);
+        } else {
+            store.groupInParallel(rows, numChunks);
+        }
+        store.indexRows(store.root);
+        return store;
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Public methods
+     */
+
+    /**
+     * @return The root group, which contains all the rows.
+     */
+    public GroupNode getRoot() {
+        return root;
+    }
+
+    /**
+     * @return The model indexes of the columns grouped by, from the top level down.
+     */
+    public int[] getGroupColumns() {
+        return groupColumns.clone();
+    }
+
+    /**
+     * @return The number of rows in the tree.
+     */
+    public int getRowCount() {
+        return rowNodes.size();
+    }
+
+    /**
+     * @param row The row to get a value of.
+     * @param column The model index of the column.
+     * @return The value of the column for the row.
+     */
+    public Object getValue(final R row, final int column) {
+        return values.getValue(row, column);
+    }
+
+    /**
+     * @param row A row in the tree.
+     * @return The node of the row, or null if the row is not in the tree.
+     */
+    public RowNode<R> getRowNode(final R row) {
+        return rowNodes.get(row);
+    }
+
+    /**
+     * Adds a row to the end of its group, creating any groups it needs.
+     *
+     * @param row The row to add.
+     * @return The node of the row.
+     * @throws IllegalArgumentException if the row is null or is already in the tree.
+     */
+    public RowNode<R> addRow(final R row) {
+        checkNewRow(row);
+        final RowNode<R> rowNode = new RowNode<>(row);
+        rowNodes.put(row, rowNode);
+        insert(rowNode);
+        return rowNode;
+    }
+
+    /**
+     * Removes a row from the tree, and any groups which become empty.
+     *
+     * @param row The row to remove.
+     * @return true if the row was in the tree.
+     */
+    public boolean removeRow(final R row) {
+        final RowNode<R> rowNode = rowNodes.remove(row);
+        if (rowNode == null) {
+            return false;
+        }
+        remove(rowNode);
+        return true;
+    }
+
+    /**
+     * Tells the store the values of a row have changed.  If the values of its group columns changed, the row moves
+     * to the end of its new group, otherwise listeners are told that the row node changed.
+     *
+     * @param row The row which changed.
+     * @return true if the row moved to another group.
+     * @throws IllegalArgumentException if the row is not in the tree.
+     */
+    public boolean rowChanged(final R row) {
+        final RowNode<R> rowNode = rowNodes.get(row);
+        if (rowNode == null) {
+            throw new IllegalArgumentException("Row is not in the tree: " + row);
+        }
+        if (isInGroup(rowNode)) {
+            final GroupNode parent = rowNode.parent;
+            fireTreeNodesChanged(parent, rowNode.index, rowNode);
+            return false;
+        }
+        remove(rowNode);
+        insert(rowNode);
+        return true;
+    }
+
+    /**
+     * @param listener A listener to tell about rows added, removed, changed or moved.
+     */
+    public void addTreeModelListener(final TreeModelListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Object cannot be null: listener");
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener A listener to remove.
+     */
+    public void removeTreeModelListener(final TreeModelListener listener) {
+        listeners.remove(listener);
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Private methods
+     */
+
+    /**
+     * Adds rows to the groups under a root, creating the groups as they are first seen.
+     */
+    private void group(final List<? extends R> rows, final GroupNode groupRoot) {
+        final ColumnValues<? super R> localValues = values; // avoid repeated getfield.
+        final int[] localColumns = groupColumns;
+        for (R row : rows) {
+            if (row == null) {
+                throw new IllegalArgumentException("Rows cannot contain null");
+            }
+            GroupNode group = groupRoot;
+            for (int level = 0; level < localColumns.length; level++) {
+                group = group.getOrAddGroup(localValues.getValue(row, localColumns[level]), level, localColumns.length);
+            }
+            group.addChild(new RowNode<>(row));
+        }
+    }
+
+    /**
+     * Groups consecutive chunks of the rows in parallel under roots of their own, then merges each chunk root into
+     * the first in order, so groups and rows keep the order they are first seen in.
+     */
+    private void groupInParallel(final List<? extends R> rows, final int numChunks) {
+        final ExecutorService executor = Executors.newFixedThreadPool(numChunks, runnable -> {
+            final Thread thread = new Thread(runnable, "GroupedTreeStore");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final int numRows = rows.size();
+            final List<Future<GroupNode>> futures = new ArrayList<>(numChunks);
+            for (int chunk = 0; chunk < numChunks; chunk++) {
+                final List<? extends R> chunkRows = rows.subList((int) ((long) numRows * chunk / numChunks),
+                                                                 (int) ((long) numRows * (chunk + 1) / numChunks));
+                futures.add(executor.submit(() -> {
+                    final GroupNode chunkRoot = new GroupNode(null, null, -1, groupColumns.length > 0);
+                    group(chunkRows, chunkRoot);
+                    return chunkRoot;
+                }));
+            }
+            for (Future<GroupNode> future : futures) {
+                merge(getChunk(future), root);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while grouping rows", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static GroupNode getChunk(final Future<GroupNode> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Merges the children of a group into another group with the same value.  Groups which are new to the target
+     * are moved over whole, and the groups it already has are merged recursively.
+     */
+    private static void merge(final GroupNode from, final GroupNode into) {
+        if (into.groups == null) { // rows: move them all to the end of the target.
+            for (TreeNode child : from.children) {
+                into.addChild(child);
+            }
+        } else {
+            for (TreeNode child : from.children) {
+                final GroupNode fromGroup = (GroupNode) child;
+                final GroupNode intoGroup = into.groups.get(fromGroup.value);
+                if (intoGroup == null) {
+                    into.groups.put(fromGroup.value, fromGroup);
+                    into.addChild(fromGroup);
+                } else {
+                    merge(fromGroup, intoGroup);
+                }
+            }
+        }
+    }
+
+    /**
+     * Indexes the nodes of all the rows under a group, walking the groups without recursion.
+     */
+    @SuppressWarnings("unchecked")
+    private void indexRows(final GroupNode groupRoot) {
+        final List<GroupNode> groups = new ArrayList<>();
+        groups.add(groupRoot);
+        for (int index = 0; index < groups.size(); index++) {
+            final GroupNode group = groups.get(index);
+            for (TreeNode child : group.children) {
+                if (child instanceof GroupNode) {
+                    groups.add((GroupNode) child);
+                } else {
+                    final RowNode<R> rowNode = (RowNode<R>) child;
+                    if (rowNodes.put(rowNode.row, rowNode) != null) {
+                        throw new IllegalArgumentException("Rows cannot appear more than once: " + rowNode.row);
+                    }
+                }
+            }
+        }
+    }
+
+    private void checkNewRow(final R row) {
+        if (row == null) {
+            throw new IllegalArgumentException("Object cannot be null: row");
+        }
+        if (rowNodes.containsKey(row)) {
+            throw new IllegalArgumentException("Row is already in the tree: " + row);
+        }
+    }
+
+    /**
+     * @return true if the values of the group columns of a row are the values of the groups it is in.
+     */
+    private boolean isInGroup(final RowNode<R> rowNode) {
+        GroupNode group = rowNode.parent;
+        for (int level = groupColumns.length - 1; level >= 0; level--) {
+            if (!Objects.equals(group.value, values.getValue(rowNode.row, groupColumns[level]))) {
+                return false;
+            }
+            group = group.parent;
+        }
+        return true;
+    }
+
+    /**
+     * Inserts a row node at the end of its group, creating any groups it needs, and tells listeners about the row
+     * or the highest new group.
+     */
+    private void insert(final RowNode<R> rowNode) {
+        final int[] localColumns = groupColumns; // avoid repeated getfield.
+        GroupNode group = root;
+        GroupNode firstNewGroup = null;
+        for (int level = 0; level < localColumns.length; level++) {
+            final int numGroups = group.children.size();
+            group = group.getOrAddGroup(values.getValue(rowNode.row, localColumns[level]), level, localColumns.length);
+            if (firstNewGroup == null && group.parent.children.size() > numGroups) {
+                firstNewGroup = group;
+            }
+        }
+        group.addChild(rowNode);
+        final TreeNode inserted = firstNewGroup == null ? rowNode : firstNewGroup;
+        final GroupNode parent = (GroupNode) inserted.getParent();
+        fireTreeNodesInserted(parent, parent.children.size() - 1, inserted);
+    }
+
+    /**
+     * Removes a row node from its group, and the highest group which becomes empty as a result, and tells listeners
+     * about the row or the group removed.
+     */
+    private void remove(final RowNode<R> rowNode) {
+        TreeNode removed = rowNode;
+        GroupNode parent = rowNode.parent;
+        while (parent != root && parent.children.size() == 1) {
+            removed = parent;
+            parent = parent.parent;
+        }
+        final int index = GroupNode.indexOf(removed);
+        parent.removeChild(index);
+        if (removed instanceof GroupNode) {
+            parent.groups.remove(((GroupNode) removed).value);
+        }
+        fireTreeNodesRemoved(parent, index, removed);
+        rowNode.parent = null;
+    }
+
+    private void fireTreeNodesInserted(final GroupNode parent, final int index, final TreeNode child) {
+        if (!listeners.isEmpty()) {
+            final TreeModelEvent event = createEvent(parent, index, child);
+            for (int listener = listeners.size() - 1; listener >= 0; listener--) {
+                listeners.get(listener).treeNodesInserted(event);
+            }
+        }
+    }
+
+    private void fireTreeNodesRemoved(final GroupNode parent, final int index, final TreeNode child) {
+        if (!listeners.isEmpty()) {
+            final TreeModelEvent event = createEvent(parent, index, child);
+            for (int listener = listeners.size() - 1; listener >= 0; listener--) {
+                listeners.get(listener).treeNodesRemoved(event);
+            }
+        }
+    }
+
+    private void fireTreeNodesChanged(final GroupNode parent, final int index, final TreeNode child) {
+        if (!listeners.isEmpty()) {
+            final TreeModelEvent event = createEvent(parent, index, child);
+            for (int listener = listeners.size() - 1; listener >= 0; listener--) {
+                listeners.get(listener).treeNodesChanged(event);
+            }
+        }
+    }
+
+    private TreeModelEvent createEvent(final GroupNode parent, final int index, final TreeNode child) {
+        final List<Object> path = new ArrayList<>();
+        for (GroupNode group = parent; group != null; group = group.parent) {
+            path.add(group);
+        }
+        Collections.reverse(path);
+        return new TreeModelEvent(this, path.toArray(), new int[] {index}, new Object[] {child});
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Nodes
+     */
+
+    /**
+     * A group of rows which have the same value of a group column, and are in the same parent group.
+     */
+    public static final class GroupNode implements TreeNode {
+
+        private GroupNode parent;
+        private int index; // the index of the group in its parent.
+        private final Object value;
+        private final int level;
+        private final List<TreeNode> children = new ArrayList<>();
+        private final Map<Object, GroupNode> groups; // the child groups by value, or null if the children are rows.
+
+        private GroupNode(final GroupNode parent, final Object value, final int level, final boolean hasGroups) {
+            this.parent = parent;
+            this.value = value;
+            this.level = level;
+            this.groups = hasGroups ? new HashMap<>() : null;
+        }
+
+        /**
+         * @return The value of the group column shared by all the rows in the group, or null for the root.
+         */
+        public Object getValue() {
+            return value;
+        }
+
+        /**
+         * @return The level of the group column in the group columns, or -1 for the root.
+         */
+        public int getLevel() {
+            return level;
+        }
+
+        @Override
+        public TreeNode getChildAt(final int childIndex) {
+            return children.get(childIndex);
+        }
+
+        @Override
+        public int getChildCount() {
+            return children.size();
+        }
+
+        @Override
+        public TreeNode getParent() {
+            return parent;
+        }
+
+        @Override
+        public int getIndex(final TreeNode node) {
+            return node != null && node.getParent() == this ? indexOf(node) : -1;
+        }
+
+        @Override
+        public boolean getAllowsChildren() {
+            return true;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return children.isEmpty();
+        }
+
+        @Override
+        public Enumeration<? extends TreeNode> children() {
+            return Collections.enumeration(children);
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(value);
+        }
+
+        private GroupNode getOrAddGroup(final Object groupValue, final int groupLevel, final int numLevels) {
+            GroupNode group = groups.get(groupValue);
+            if (group == null) {
+                group = new GroupNode(this, groupValue, groupLevel, groupLevel < numLevels - 1);
+                groups.put(groupValue, group);
+                group.index = children.size();
+                children.add(group);
+            }
+            return group;
+        }
+
+        private void addChild(final TreeNode child) {
+            final int childIndex = children.size();
+            if (child instanceof RowNode) {
+                final RowNode<?> rowNode = (RowNode<?>) child;
+                rowNode.parent = this;
+                rowNode.index = childIndex;
+            } else {
+                final GroupNode group = (GroupNode) child;
+                group.parent = this;
+                group.index = childIndex;
+            }
+            children.add(child);
+        }
+
+        /**
+         * Removes a child, and renumbers the children after it, which the list has to shift down anyway.
+         */
+        private void removeChild(final int childIndex) {
+            final List<TreeNode> localChildren = children; // avoid repeated getfield.
+            localChildren.remove(childIndex);
+            for (int index = childIndex; index < localChildren.size(); index++) {
+                final TreeNode child = localChildren.get(index);
+                if (child instanceof RowNode) {
+                    ((RowNode<?>) child).index = index;
+                } else {
+                    ((GroupNode) child).index = index;
+                }
+            }
+        }
+
+        /**
+         * @return The index of a node in its parent group, kept as it is added or its siblings are removed.
+         */
+        private static int indexOf(final TreeNode node) {
+            return node instanceof RowNode ? ((RowNode<?>) node).index : ((GroupNode) node).index;
+        }
+    }
+
+    /**
+     * A row in the tree.
+     *
+     * @param <R> The type of row.
+     */
+    public static final class RowNode<R> implements TreeNode {
+
+        private final R row;
+        private GroupNode parent;
+        private int index; // the index of the row in its group.
+
+        private RowNode(final R row) {
+            this.row = row;
+        }
+
+        /**
+         * @return The row of the node.
+         */
+        public R getRow() {
+            return row;
+        }
+
+        @Override
+        public TreeNode getChildAt(final int childIndex) {
+            throw new ArrayIndexOutOfBoundsException("A row has no children: " + childIndex);
+        }
+
+        @Override
+        public int getChildCount() {
+            return 0;
+        }
+
+        @Override
+        public TreeNode getParent() {
+            return parent;
+        }
+
+        @Override
+        public int getIndex(final TreeNode node) {
+            return -1;
+        }
+
+        @Override
+        public boolean getAllowsChildren() {
+            return false;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return true;
+        }
+
+        @Override
+        public Enumeration<? extends TreeNode> children() {
+            return Collections.emptyEnumeration();
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(row);
+        }
+    }
+
+}
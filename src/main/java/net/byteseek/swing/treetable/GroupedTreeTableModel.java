@@ -0,0 +1,117 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import javax.swing.table.DefaultTableColumnModel;
+import javax.swing.table.TableColumnModel;
+import javax.swing.tree.TreeNode;
+
+/**
+ * A TreeTableModel which displays flat rows grouped by the values of some of their columns, using a
+ * {@link GroupedTreeStore}.
+ * <p>
+ * The root group is hidden, so the top level of the tree shows the groups of the first group column.
+ * A group shows its value in the tree column and in the column it groups by, and no value in other columns, unless
+ * they are aggregate columns set with {@link #setAggregateColumn(int, SubtreeAggregate)}, such as the sum of a column
+ * over the rows in each group.  Rows show the values of all their columns.
+ * <p>
+ * The model listens to the store, so rows added, removed or moved between groups in the store are shown without
+ * rebuilding the tree.
+ *
+ * @param <R> The type of row grouped.
+ */
+public class GroupedTreeTableModel<R> extends TreeTableModel {
+
+    protected final GroupedTreeStore<R> store;
+    protected final int[] groupColumns;
+    protected final String[] columnNames;
+
+    /**
+     * Constructs a GroupedTreeTableModel for a store, and listens to it for changes.
+     *
+     * @param store The store to display.
+     * @param columnNames The names of the columns to display, in model index order.
+     * @throws IllegalArgumentException if the store or column names are null.
+     */
+    public GroupedTreeTableModel(final GroupedTreeStore<R> store, final String... columnNames) {
+        super(getRoot(store), false);
+        if (columnNames == null) {
+            throw new IllegalArgumentException("Object cannot be null: columnNames");
+        }
+        this.store = store;
+        this.groupColumns = store.getGroupColumns();
+        this.columnNames = columnNames.clone();
+        store.addTreeModelListener(this);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object getColumnValue(final TreeNode node, final int column) {
+        if (node instanceof GroupedTreeStore.RowNode) {
+            return store.getValue(((GroupedTreeStore.RowNode<R>) node).getRow(), column);
+        }
+        final GroupedTreeStore.GroupNode group = (GroupedTreeStore.GroupNode) node;
+        final int level = group.getLevel();
+        return column == TREE_COLUMN_INDEX || (level >= 0 && groupColumns[level] == column) ? group.getValue() : null;
+    }
+
+    /**
+     * @return The store this model displays.
+     */
+    public GroupedTreeStore<R> getStore() {
+        return store;
+    }
+
+    /**
+     * Stops listening to the store, so the model can be garbage collected while the store is still in use.
+     */
+    public void dispose() {
+        store.removeTreeModelListener(this);
+    }
+
+    @Override
+    protected TableColumnModel createTableColumnModel() {
+        final TableColumnModel result = new DefaultTableColumnModel();
+        for (int column = 0; column < columnNames.length; column++) {
+            result.addColumn(createColumn(column, columnNames[column]));
+        }
+        return result;
+    }
+
+    private static TreeNode getRoot(final GroupedTreeStore<?> store) {
+        if (store == null) {
+            throw new IllegalArgumentException("Object cannot be null: store");
+        }
+        return store.getRoot();
+    }
+
+}
@@ -0,0 +1,1148 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+import javax.swing.tree.TreeNode;
+
+/**
+ * A read-only tree whose structure and column data live in a memory-mapped file, for trees too big for the heap.
+ * <p>
+ * The file is written once by an offline build step with a {@link Writer}, from the structure of a
+ * {@link CompactTreeStore} and the column values of each item it was built from.  Nodes are stored in breadth-first
+ * order, so the children of a node are consecutive, and each node needs only a parent, a first child and a child
+ * count.  Column values are stored by node: longs and doubles as arrays, strings as offsets into UTF-8 data.
+ * Strings with many repeated values are dictionary encoded: each distinct string is stored once, in sorted order,
+ * and each node stores the int code of its string.
+ * A column can also store its precomputed order: the rank of each node's value among all the values in the column.
+ * Siblings are then sorted on the column by comparing two ints, without reading or decoding their values.
+ * Dictionary codes are already in order, so dictionary encoded columns always have their order.
+ * <p>
+ * Named sets of node numbers, such as the nodes which were expanded, and string properties describing the data,
+ * can also be stored.
+ * <p>
+ * Only the nodes in use are materialised as {@link Node} objects.  A node has the same identity as long as anything
+ * refers to it, such as the displayed nodes of a TreeTableModel, and a node refers to its parent, so the ancestors
+ * of a node in use are also kept.  A bounded cache keeps the most recently used nodes, so scrolling and sorting
+ * don't create the same nodes repeatedly.  Nodes which are not in use or in the cache can be garbage collected,
+ * and a new object is created for them when they are next asked for.  A model displaying the store must keep
+ * its expanded nodes in use, as {@link MappedTreeTableModel} does, or it may forget they were expanded.
+ * <p>
+ * Each section of the file (for example, the values of one column) must be smaller than 2GB, which is around
+ * 268 million nodes for a column of longs.  The store is not thread-safe, and should be used on the
+ * Event Dispatch Thread once the tree is in use.
+ */
+public final class MappedTreeStore {
+
+    /* *****************************************************************************************************************
+     *                                                Constants
+     */
+
+    /**
+     * The default number of recently used nodes which are cached.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 4096;
+
+    /**
+     * The types of column values which can be stored.
+     */
+    public enum ColumnType {
+        LONG(Long.class),
+        DOUBLE(Double.class),
+        STRING(String.class);
+
+        private final Class<?> columnClass;
+
+        ColumnType(final Class<?> columnClass) {
+            this.columnClass = columnClass;
+        }
+
+        /**
+         * @return The class of values in a column of this type.
+         */
+        public Class<?> getColumnClass() {
+            return columnClass;
+        }
+    }
+
+    private static final int MAGIC = 0x42545453; // "BTTS"
+    private static final int VERSION = 1;
+    private static final int NO_PARENT = -1;
+    private static final int NULL_RANK = 0;
+
+    private static final int PARENTS = 0;
+    private static final int FIRST_CHILDREN = 1;
+    private static final int CHILD_COUNTS = 2;
+    private static final int ITEM_INDEXES = 3;
+    private static final int STRUCTURE_SECTIONS = 4;
+
+    private static final int VALUES = 0;  // longs, doubles or dictionary codes.
+    private static final int NULLS = 1;   // a bit set of the nodes with no value.
+    private static final int OFFSETS = 2; // offsets of the strings of each node or dictionary entry into the data.
+    private static final int DATA = 3;    // UTF-8 string data.
+    private static final int ORDER = 4;   // the rank of the value of each node.
+    private static final int COLUMN_SECTIONS = 5;
+
+    private static final int PLAIN = 0;
+    private static final int DICTIONARY = 1;
+
+
+    /* *****************************************************************************************************************
+     *                                                Variables
+     */
+
+    private final int nodeCount;
+    private final IntBuffer parents;
+    private final IntBuffer firstChildren;
+    private final IntBuffer childCounts;
+    private final IntBuffer itemIndexes;
+    private final Column[] columns;
+    private final Map<String, String> properties;
+    private final Map<String, ByteBuffer> nodeSets;
+
+    private final Map<Integer, NodeReference> materialisedNodes = new HashMap<>();
+    private final ReferenceQueue<Node> collectedNodes = new ReferenceQueue<>();
+    private final Node root;
+    private Node[] recentNodes;
+    private int recentMask;
+
+
+    /* *****************************************************************************************************************
+     *                                                Constructors
+     */
+
+    private MappedTreeStore(final int nodeCount, final ByteBuffer[] structure, final Column[] columns,
+                            final Map<String, String> properties, final Map<String, ByteBuffer> nodeSets) {
+        this.nodeCount = nodeCount;
+        this.parents = structure[PARENTS].asIntBuffer();
+        this.firstChildren = structure[FIRST_CHILDREN].asIntBuffer();
+        this.childCounts = structure[CHILD_COUNTS].asIntBuffer();
+        this.itemIndexes = structure[ITEM_INDEXES].asIntBuffer();
+        this.columns = columns;
+        this.properties = properties;
+        this.nodeSets = nodeSets;
+        this.root = new Node(this, 0, null);
+        setCacheSize(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Opens a store written by a {@link Writer}, mapping its sections into memory.  No node or column data is read
+     * until it is asked for.
+     *
+     * @param path The path of the store file.
+     * @return A MappedTreeStore for the file.
+     * @throws IOException if the file can't be read, or is not a store file.
+     * @throws IllegalArgumentException if the path is null.
+     */
+    public static MappedTreeStore open(final Path path) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("Object cannot be null: path");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final DataInputStream header = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            if (header.readInt() != MAGIC) {
+                throw new IOException("Not a mapped tree store: " + path);
+            }
+            final int version = header.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported mapped tree store version " + version + ": " + path);
+            }
+            final int nodeCount = header.readInt();
+            final int columnCount = header.readInt();
+            final int propertyCount = header.readInt();
+            final int nodeSetCount = header.readInt();
+            final String[] names = new String[columnCount];
+            final ColumnType[] types = new ColumnType[columnCount];
+            final int[] encodings = new int[columnCount];
+            for (int column = 0; column < columnCount; column++) {
+                names[column] = header.readUTF();
+                types[column] = ColumnType.values()[header.readInt()];
+                encodings[column] = header.readInt();
+            }
+            final Map<String, String> properties = new LinkedHashMap<>();
+            for (int property = 0; property < propertyCount; property++) {
+                properties.put(header.readUTF(), header.readUTF());
+            }
+            final String[] nodeSetNames = new String[nodeSetCount];
+            for (int nodeSet = 0; nodeSet < nodeSetCount; nodeSet++) {
+                nodeSetNames[nodeSet] = header.readUTF();
+            }
+            final ByteBuffer[] structure = new ByteBuffer[STRUCTURE_SECTIONS];
+            for (int section = 0; section < STRUCTURE_SECTIONS; section++) {
+                structure[section] = mapSection(channel, header.readLong(), header.readLong());
+            }
+            final Column[] columns = new Column[columnCount];
+            for (int column = 0; column < columnCount; column++) {
+                final ByteBuffer[] sections = new ByteBuffer[COLUMN_SECTIONS];
+                for (int section = 0; section < COLUMN_SECTIONS; section++) {
+                    sections[section] = mapSection(channel, header.readLong(), header.readLong());
+                }
+                columns[column] = new Column(names[column], types[column], encodings[column] == DICTIONARY, sections);
+            }
+            final Map<String, ByteBuffer> nodeSets = new HashMap<>();
+            for (String nodeSetName : nodeSetNames) {
+                final ByteBuffer nodeSet = mapSection(channel, header.readLong(), header.readLong());
+                nodeSets.put(nodeSetName, nodeSet == null ? ByteBuffer.allocate(0) : nodeSet);
+            }
+            return new MappedTreeStore(nodeCount, structure, columns, properties, nodeSets);
+        }
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Tree methods
+     */
+
+    /**
+     * @return The root node of the tree.
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * @return The number of nodes in the tree.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the node with a node number, materialising it and any of its ancestors which are not in use.
+     * The same object is returned for a node as long as anything refers to it.
+     *
+     * @param nodeNumber The number of the node.
+     * @return The node.
+     * @throws IndexOutOfBoundsException if the node number is not valid.
+     */
+    public Node getNode(final int nodeNumber) {
+        if (nodeNumber < 0 || nodeNumber >= nodeCount) {
+            throw new IndexOutOfBoundsException("Node number " + nodeNumber + " is not in a tree of " + nodeCount + " nodes.");
+        }
+        Node node = findNode(nodeNumber);
+        if (node == null) {
+            // Walk up the ancestors until we find one which exists, then create the others back down.
+            // This is iterative, so very deep trees don't overflow the stack.
+            final IntBuffer localParents = parents; // avoid repeated getfield.
+            final List<Integer> missing = new ArrayList<>();
+            int ancestor = nodeNumber;
+            Node parent;
+            do {
+                missing.add(ancestor);
+                ancestor = localParents.get(ancestor);
+                parent = findNode(ancestor);
+            } while (parent == null);
+            for (int index = missing.size() - 1; index >= 0; index--) {
+                parent = createNode(missing.get(index), parent);
+            }
+            node = parent;
+        }
+        return node;
+    }
+
+    /**
+     * @return The number of nodes which are currently materialised as objects.
+     */
+    public int getMaterialisedNodeCount() {
+        expungeCollectedNodes();
+        return materialisedNodes.size() + 1; // the root is always materialised.
+    }
+
+    /**
+     * @return The number of recently used nodes which are cached.
+     */
+    public int getCacheSize() {
+        return recentNodes.length;
+    }
+
+    /**
+     * Sets the number of recently used nodes which are cached, rounded up to a power of two.  Any cached nodes are
+     * released from the cache.
+     *
+     * @param cacheSize The number of recently used nodes to cache.
+     * @throws IllegalArgumentException if the cache size is less than one.
+     */
+    public void setCacheSize(final int cacheSize) {
+        if (cacheSize < 1 || cacheSize > 1 << 30) {
+            throw new IllegalArgumentException("Cache size must be between 1 and 2^30: " + cacheSize);
+        }
+        final int size = Integer.highestOneBit(cacheSize) == cacheSize ? cacheSize : Integer.highestOneBit(cacheSize) << 1;
+        recentNodes = new Node[size];
+        recentMask = size - 1;
+    }
+
+    /**
+     * @param key The name of a property.
+     * @return The value of a property written with the store, or null if there is no such property.
+     */
+    public String getProperty(final String key) {
+        return properties.get(key);
+    }
+
+    /**
+     * @param name The name of a node set.
+     * @return The node numbers in a node set written with the store, or null if there is no such node set.
+     */
+    public int[] getNodeSet(final String name) {
+        final ByteBuffer nodeSet = nodeSets.get(name);
+        if (nodeSet == null) {
+            return null;
+        }
+        final IntBuffer nodeNumbers = nodeSet.asIntBuffer();
+        final int[] result = new int[nodeNumbers.remaining()];
+        nodeNumbers.get(result);
+        return result;
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Column methods
+     */
+
+    /**
+     * @return The number of columns.
+     */
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * @param column The column.
+     * @return The name of the column.
+     */
+    public String getColumnName(final int column) {
+        return columns[column].name;
+    }
+
+    /**
+     * @param column The column.
+     * @return The type of values in the column.
+     */
+    public ColumnType getColumnType(final int column) {
+        return columns[column].type;
+    }
+
+    /**
+     * @param column The column.
+     * @return true if the column stores its precomputed order, or is dictionary encoded.
+     */
+    public boolean hasOrder(final int column) {
+        return columns[column].order != null || columns[column].codes != null;
+    }
+
+    /**
+     * @param column The column.
+     * @return true if the column is a STRING column which is dictionary encoded.
+     */
+    public boolean isDictionaryEncoded(final int column) {
+        return columns[column].codes != null;
+    }
+
+    /**
+     * @param column The column.
+     * @param nodeNumber The number of the node.
+     * @return true if the node has no value for the column.
+     */
+    public boolean isNull(final int column, final int nodeNumber) {
+        return columns[column].isNull(nodeNumber);
+    }
+
+    /**
+     * Returns the value of a column for a node, as a Long, Double or String depending on the column type.
+     *
+     * @param column The column.
+     * @param nodeNumber The number of the node.
+     * @return The value of the column for the node, or null if it has no value.
+     */
+    public Object getValue(final int column, final int nodeNumber) {
+        final Column col = columns[column];
+        if (col.isNull(nodeNumber)) {
+            return null;
+        }
+        switch (col.type) {
+            case LONG:   return col.longs.get(nodeNumber);
+            case DOUBLE: return col.doubles.get(nodeNumber);
+            default:     return col.getString(nodeNumber);
+        }
+    }
+
+    /**
+     * @param column A LONG column.
+     * @param nodeNumber The number of the node.
+     * @return The value of the column for the node, or zero if it has no value.
+     */
+    public long getLong(final int column, final int nodeNumber) {
+        return columns[column].longs.get(nodeNumber);
+    }
+
+    /**
+     * @param column A DOUBLE column.
+     * @param nodeNumber The number of the node.
+     * @return The value of the column for the node, or zero if it has no value.
+     */
+    public double getDouble(final int column, final int nodeNumber) {
+        return columns[column].doubles.get(nodeNumber);
+    }
+
+    /**
+     * Compares the values of a column for two nodes, without creating objects for them.  If the column stores its
+     * precomputed order, the ranks of the values are compared.  Nulls are smaller than any value.
+     *
+     * @param column The column.
+     * @param nodeNumber1 The number of the first node.
+     * @param nodeNumber2 The number of the second node.
+     * @return A negative number, zero or a positive number as the first value is less than, equal to or greater than
+     *         the second.
+     */
+    public int compare(final int column, final int nodeNumber1, final int nodeNumber2) {
+        final Column col = columns[column];
+        if (col.order != null) {
+            return Integer.compare(col.order.get(nodeNumber1), col.order.get(nodeNumber2));
+        }
+        final boolean null1 = col.isNull(nodeNumber1);
+        final boolean null2 = col.isNull(nodeNumber2);
+        if (null1 || null2) {
+            return null1 == null2 ? 0 : null1 ? -1 : 1;
+        }
+        if (col.codes != null) {
+            return Integer.compare(col.codes.get(nodeNumber1), col.codes.get(nodeNumber2));
+        }
+        switch (col.type) {
+            case LONG:   return Long.compare(col.longs.get(nodeNumber1), col.longs.get(nodeNumber2));
+            case DOUBLE: return Double.compare(col.doubles.get(nodeNumber1), col.doubles.get(nodeNumber2));
+            default:     return col.getString(nodeNumber1).compareTo(col.getString(nodeNumber2));
+        }
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Private methods
+     */
+
+    private Node findNode(final int nodeNumber) {
+        if (nodeNumber == 0) {
+            return root;
+        }
+        final Node[] localRecentNodes = recentNodes; // avoid repeated getfield.
+        final int slot = nodeNumber & recentMask;
+        final Node recent = localRecentNodes[slot];
+        if (recent != null && recent.node == nodeNumber) {
+            return recent;
+        }
+        final NodeReference reference = materialisedNodes.get(nodeNumber);
+        final Node node = reference == null ? null : reference.get();
+        if (node != null) {
+            localRecentNodes[slot] = node;
+        }
+        return node;
+    }
+
+    private Node createNode(final int nodeNumber, final Node parent) {
+        expungeCollectedNodes();
+        final Node node = new Node(this, nodeNumber, parent);
+        materialisedNodes.put(nodeNumber, new NodeReference(node, collectedNodes));
+        recentNodes[nodeNumber & recentMask] = node;
+        return node;
+    }
+
+    private Node getChild(final Node parent, final int nodeNumber) {
+        final Node node = findNode(nodeNumber);
+        return node == null ? createNode(nodeNumber, parent) : node;
+    }
+
+    private void expungeCollectedNodes() {
+        Reference<? extends Node> collected;
+        while ((collected = collectedNodes.poll()) != null) {
+            final int nodeNumber = ((NodeReference) collected).node;
+            if (materialisedNodes.get(nodeNumber) == collected) {
+                materialisedNodes.remove(nodeNumber);
+            }
+        }
+    }
+
+    private static ByteBuffer mapSection(final FileChannel channel, final long offset, final long length) throws IOException {
+        if (length == 0) {
+            return null;
+        }
+        if (length > Integer.MAX_VALUE || offset < 0 || offset + length > channel.size()) {
+            throw new IOException("Invalid section at " + offset + " of length " + length);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Nodes
+     */
+
+    /**
+     * A TreeNode for a node in a MappedTreeStore, which holds only its node number and its parent.
+     */
+    public static final class Node implements TreeNode {
+
+        private final MappedTreeStore store;
+        private final int node;
+        private final Node parent;
+
+        private Node(final MappedTreeStore store, final int node, final Node parent) {
+            this.store = store;
+            this.node = node;
+            this.parent = parent;
+        }
+
+        /**
+         * @return The number of the node in its store.
+         */
+        public int getNodeNumber() {
+            return node;
+        }
+
+        /**
+         * @return The index of the item the node was built from.
+         */
+        public int getItemIndex() {
+            return store.itemIndexes.get(node);
+        }
+
+        /**
+         * @return The store the node belongs to.
+         */
+        public MappedTreeStore getStore() {
+            return store;
+        }
+
+        /**
+         * @param column The column.
+         * @return The value of the column for this node.
+         */
+        public Object getValue(final int column) {
+            return store.getValue(column, node);
+        }
+
+        @Override
+        public TreeNode getChildAt(final int childIndex) {
+            if (childIndex < 0 || childIndex >= store.childCounts.get(node)) {
+                throw new ArrayIndexOutOfBoundsException("Node " + node + " has no child at index " + childIndex);
+            }
+            return store.getChild(this, store.firstChildren.get(node) + childIndex);
+        }
+
+        @Override
+        public int getChildCount() {
+            return store.childCounts.get(node);
+        }
+
+        @Override
+        public TreeNode getParent() {
+            return parent;
+        }
+
+        @Override
+        public int getIndex(final TreeNode child) {
+            if (child instanceof Node) {
+                final Node childNode = (Node) child;
+                if (childNode.store == store && store.parents.get(childNode.node) == node) {
+                    return childNode.node - store.firstChildren.get(node);
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * The root and any node with children allow children.
+         */
+        @Override
+        public boolean getAllowsChildren() {
+            return parent == null || store.childCounts.get(node) > 0;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return store.childCounts.get(node) == 0;
+        }
+
+        @Override
+        public Enumeration<? extends TreeNode> children() {
+            return new Enumeration<>() {
+                private int next;
+
+                @Override
+                public boolean hasMoreElements() {
+                    return next < getChildCount();
+                }
+
+                @Override
+                public TreeNode nextElement() {
+                    if (!hasMoreElements()) {
+                        throw new NoSuchElementException();
+                    }
+                    return getChildAt(next++);
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            final Object value = store.columns.length > 0 ? getValue(0) : null;
+            return value == null ? "Node " + node : value.toString();
+        }
+    }
+
+    private static final class NodeReference extends WeakReference<Node> {
+
+        private final int node;
+
+        NodeReference(final Node referent, final ReferenceQueue<Node> queue) {
+            super(referent, queue);
+            this.node = referent.node;
+        }
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Columns
+     */
+
+    private static final class Column {
+
+        private final String name;
+        private final ColumnType type;
+        private final LongBuffer longs;
+        private final DoubleBuffer doubles;
+        private final IntBuffer codes;
+        private final IntBuffer stringOffsets;
+        private final ByteBuffer stringData;
+        private final ByteBuffer nulls;
+        private final IntBuffer order;
+
+        Column(final String name, final ColumnType type, final boolean dictionary, final ByteBuffer[] sections) {
+            this.name = name;
+            this.type = type;
+            final ByteBuffer values = sections[VALUES];
+            this.longs = type == ColumnType.LONG && values != null ? values.asLongBuffer() : null;
+            this.doubles = type == ColumnType.DOUBLE && values != null ? values.asDoubleBuffer() : null;
+            this.codes = dictionary && values != null ? values.asIntBuffer() : null;
+            this.stringOffsets = sections[OFFSETS] == null ? null : sections[OFFSETS].asIntBuffer();
+            this.stringData = sections[DATA];
+            this.nulls = sections[NULLS];
+            this.order = sections[ORDER] == null ? null : sections[ORDER].asIntBuffer();
+        }
+
+        boolean isNull(final int node) {
+            final ByteBuffer localNulls = nulls;
+            return localNulls != null && (localNulls.get(node >>> 3) & (1 << (node & 7))) != 0;
+        }
+
+        String getString(final int node) {
+            final int entry = codes == null ? node : codes.get(node);
+            final int start = stringOffsets.get(entry);
+            final int length = stringOffsets.get(entry + 1) - start;
+            if (length == 0) {
+                return "";
+            }
+            final byte[] bytes = new byte[length];
+            final ByteBuffer data = stringData.duplicate();
+            data.position(start);
+            data.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Writing
+     */
+
+    /**
+     * Writes a MappedTreeStore file, from the structure of a CompactTreeStore and the values of the items its
+     * nodes were built from.  This is an offline build step: the structure and the values of one column at a time
+     * are held in memory while writing.
+     */
+    public static final class Writer {
+
+        private final CompactTreeStore tree;
+        private final List<ColumnDefinition> columnDefinitions = new ArrayList<>();
+        private final Map<String, String> properties = new LinkedHashMap<>();
+        private final Map<String, int[]> nodeSets = new LinkedHashMap<>();
+
+        /**
+         * Constructs a Writer for the structure of a tree.
+         *
+         * @param tree The tree whose structure will be written.
+         * @throws IllegalArgumentException if the tree is null.
+         */
+        public Writer(final CompactTreeStore tree) {
+            if (tree == null) {
+                throw new IllegalArgumentException("Object cannot be null: tree");
+            }
+            this.tree = tree;
+        }
+
+        /**
+         * Adds a column to write.  Values can be null, and are otherwise converted to the column type:
+         * Numbers to longs or doubles, and other objects to strings.
+         *
+         * @param name The name of the column.
+         * @param type The type of the column.
+         * @param values A function giving the value of the column for an item index.
+         * @param storeOrder Whether to precompute and store the order of the column values, to sort on it quickly.
+         * @return This Writer.
+         * @throws IllegalArgumentException if any of the parameters are null.
+         */
+        public Writer addColumn(final String name, final ColumnType type, final IntFunction<?> values,
+                                final boolean storeOrder) {
+            if (name == null || type == null || values == null) {
+                throw new IllegalArgumentException("Object cannot be null: name, type or values");
+            }
+            columnDefinitions.add(new ColumnDefinition(name, type, values, storeOrder));
+            return this;
+        }
+
+        /**
+         * Adds a property to write with the store, which can be read back with {@link MappedTreeStore#getProperty(String)}.
+         *
+         * @param key The name of the property.
+         * @param value The value of the property.
+         * @return This Writer.
+         * @throws IllegalArgumentException if the key or value are null.
+         */
+        public Writer setProperty(final String key, final String value) {
+            if (key == null || value == null) {
+                throw new IllegalArgumentException("Object cannot be null: key or value");
+            }
+            properties.put(key, value);
+            return this;
+        }
+
+        /**
+         * Adds a named set of node numbers to write with the store, such as the nodes which are expanded,
+         * which can be read back with {@link MappedTreeStore#getNodeSet(String)}.
+         *
+         * @param name The name of the node set.
+         * @param nodeNumbers The node numbers in the set.
+         * @return This Writer.
+         * @throws IllegalArgumentException if the name or node numbers are null, or a node number is not valid.
+         */
+        public Writer addNodeSet(final String name, final int[] nodeNumbers) {
+            if (name == null || nodeNumbers == null) {
+                throw new IllegalArgumentException("Object cannot be null: name or nodeNumbers");
+            }
+            for (int nodeNumber : nodeNumbers) {
+                if (nodeNumber < 0 || nodeNumber >= tree.getNodeCount()) {
+                    throw new IllegalArgumentException("Invalid node number " + nodeNumber + " in node set " + name);
+                }
+            }
+            nodeSets.put(name, nodeNumbers.clone());
+            return this;
+        }
+
+        /**
+         * Writes the store to a file, replacing it if it exists.
+         *
+         * @param path The path of the file to write.
+         * @throws IOException if the file could not be written.
+         * @throws IllegalArgumentException if the path is null.
+         */
+        public void write(final Path path) throws IOException {
+            if (path == null) {
+                throw new IllegalArgumentException("Object cannot be null: path");
+            }
+            final int numNodes = tree.getNodeCount();
+            final int numColumns = columnDefinitions.size();
+            final long[] sections = new long[(STRUCTURE_SECTIONS + numColumns * COLUMN_SECTIONS + nodeSets.size()) * 2];
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                final SectionWriter out = new SectionWriter(channel, align(writeHeader(sections).length));
+                int section = 0;
+                for (int structure = 0; structure < STRUCTURE_SECTIONS; structure++) {
+                    final long start = out.startSection();
+                    for (int node = 0; node < numNodes; node++) {
+                        out.putInt(getStructure(structure, node));
+                    }
+                    section = out.endSection(sections, section, start);
+                }
+                for (ColumnDefinition definition : columnDefinitions) {
+                    section = writeColumn(out, definition, numNodes, sections, section);
+                }
+                for (int[] nodeSet : nodeSets.values()) {
+                    final long start = out.startSection();
+                    for (int nodeNumber : nodeSet) {
+                        out.putInt(nodeNumber);
+                    }
+                    section = out.endSection(sections, section, start);
+                }
+                out.flush();
+                channel.write(ByteBuffer.wrap(writeHeader(sections)), 0);
+            }
+        }
+
+        private int getStructure(final int structure, final int node) {
+            switch (structure) {
+                case PARENTS:        return tree.getParentNumber(node);
+                case FIRST_CHILDREN: return tree.getFirstChildNumber(node);
+                case CHILD_COUNTS:   return tree.getChildCount(node);
+                default:             return tree.getItemIndex(node);
+            }
+        }
+
+        private int writeColumn(final SectionWriter out, final ColumnDefinition definition, final int numNodes,
+                                final long[] sections, final int section) throws IOException {
+            // Get the values of the column for each node:
+            final BitSet nulls = new BitSet(numNodes);
+            long[] longs = null;
+            double[] doubles = null;
+            String[] strings = null;
+            switch (definition.type) {
+                case LONG:   longs = new long[numNodes];       break;
+                case DOUBLE: doubles = new double[numNodes];   break;
+                default:     strings = new String[numNodes];
+            }
+            for (int node = 0; node < numNodes; node++) {
+                final Object value = definition.values.apply(tree.getItemIndex(node));
+                if (value == null) {
+                    nulls.set(node);
+                } else if (longs != null) {
+                    longs[node] = ((Number) value).longValue();
+                } else if (doubles != null) {
+                    doubles[node] = ((Number) value).doubleValue();
+                } else {
+                    strings[node] = value.toString();
+                }
+            }
+
+            // Dictionary encode strings if at least half of them are repeated values:
+            String[] dictionary = null;
+            int[] codes = null;
+            if (strings != null) {
+                final Map<String, Integer> distinct = new HashMap<>();
+                for (String string : strings) {
+                    if (string != null) {
+                        distinct.putIfAbsent(string, distinct.size());
+                    }
+                }
+                if (distinct.size() * 2 <= numNodes - nulls.cardinality()) {
+                    dictionary = distinct.keySet().toArray(new String[0]);
+                    Arrays.sort(dictionary);
+                    for (int code = 0; code < dictionary.length; code++) {
+                        distinct.put(dictionary[code], code);
+                    }
+                    codes = new int[numNodes];
+                    for (int node = 0; node < numNodes; node++) {
+                        codes[node] = strings[node] == null ? 0 : distinct.get(strings[node]);
+                    }
+                }
+            }
+            definition.dictionary = dictionary != null;
+
+            // Write the values:
+            int nextSection = section;
+            long start = out.startSection();
+            for (int node = 0; node < numNodes; node++) {
+                if (longs != null) {
+                    out.putLong(longs[node]);
+                } else if (doubles != null) {
+                    out.putLong(Double.doubleToRawLongBits(doubles[node]));
+                } else if (codes != null) {
+                    out.putInt(codes[node]);
+                }
+            }
+            nextSection = out.endSection(sections, nextSection, start);
+
+            // Write the nulls, if there are any:
+            start = out.startSection();
+            if (!nulls.isEmpty()) {
+                out.putBytes(Arrays.copyOf(nulls.toByteArray(), (numNodes + 7) / 8));
+            }
+            nextSection = out.endSection(sections, nextSection, start);
+
+            // Write the string offsets and data, of each node or of each dictionary entry:
+            final byte[][] encoded = strings == null ? new byte[0][] : encode(dictionary == null ? strings : dictionary);
+            start = out.startSection();
+            if (strings != null) {
+                int offset = 0;
+                for (byte[] string : encoded) {
+                    out.putInt(offset);
+                    offset += string == null ? 0 : string.length;
+                    if (offset < 0) {
+                        throw new IOException("String data for column " + definition.name + " is larger than 2GB");
+                    }
+                }
+                out.putInt(offset);
+            }
+            nextSection = out.endSection(sections, nextSection, start);
+            start = out.startSection();
+            for (byte[] string : encoded) {
+                if (string != null) {
+                    out.putBytes(string);
+                }
+            }
+            nextSection = out.endSection(sections, nextSection, start);
+
+            // Write the rank of each value in the column, if the order is stored and isn't given by dictionary codes:
+            start = out.startSection();
+            if (definition.storeOrder && codes == null) {
+                final int[] ranks = computeRanks(numNodes, nulls, longs, doubles, strings);
+                for (int node = 0; node < numNodes; node++) {
+                    out.putInt(ranks[node]);
+                }
+            }
+            return out.endSection(sections, nextSection, start);
+        }
+
+        private byte[] writeHeader(final long[] sections) throws IOException {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream header = new DataOutputStream(bytes);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeInt(tree.getNodeCount());
+            header.writeInt(columnDefinitions.size());
+            header.writeInt(properties.size());
+            header.writeInt(nodeSets.size());
+            for (ColumnDefinition definition : columnDefinitions) {
+                header.writeUTF(definition.name);
+                header.writeInt(definition.type.ordinal());
+                header.writeInt(definition.dictionary ? DICTIONARY : PLAIN);
+            }
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                header.writeUTF(property.getKey());
+                header.writeUTF(property.getValue());
+            }
+            for (String nodeSetName : nodeSets.keySet()) {
+                header.writeUTF(nodeSetName);
+            }
+            for (long value : sections) {
+                header.writeLong(value);
+            }
+            header.flush();
+            return bytes.toByteArray();
+        }
+
+        private static byte[][] encode(final String[] strings) {
+            final byte[][] encoded = new byte[strings.length][];
+            for (int index = 0; index < strings.length; index++) {
+                encoded[index] = strings[index] == null ? null : strings[index].getBytes(StandardCharsets.UTF_8);
+            }
+            return encoded;
+        }
+    }
+
+    /**
+     * Computes the rank of the value of each node in a column: nulls have rank zero, the smallest value has rank one,
+     * and equal values have the same rank.
+     */
+    private static int[] computeRanks(final int numNodes, final BitSet nulls, final long[] longs,
+                                      final double[] doubles, final String[] strings) {
+        final NodeComparator comparator;
+        if (longs != null) {
+            comparator = (node1, node2) -> Long.compare(longs[node1], longs[node2]);
+        } else if (doubles != null) {
+            comparator = (node1, node2) -> Double.compare(doubles[node1], doubles[node2]);
+        } else {
+            comparator = (node1, node2) -> strings[node1].compareTo(strings[node2]);
+        }
+        final int[] sorted = new int[numNodes - nulls.cardinality()];
+        int count = 0;
+        for (int node = nulls.nextClearBit(0); node < numNodes; node = nulls.nextClearBit(node + 1)) {
+            sorted[count++] = node;
+        }
+        mergeSort(sorted, new int[count], 0, count, comparator);
+        final int[] ranks = new int[numNodes]; // nulls are left with NULL_RANK.
+        int rank = NULL_RANK;
+        for (int index = 0; index < count; index++) {
+            if (index == 0 || comparator.compare(sorted[index - 1], sorted[index]) != 0) {
+                rank++;
+            }
+            ranks[sorted[index]] = rank;
+        }
+        return ranks;
+    }
+
+    private static void mergeSort(final int[] nodes, final int[] temp, final int from, final int to,
+                                  final NodeComparator comparator) {
+        if (to - from < 16) { // insertion sort small runs.
+            for (int index = from + 1; index < to; index++) {
+                final int node = nodes[index];
+                int insert = index;
+                while (insert > from && comparator.compare(nodes[insert - 1], node) > 0) {
+                    nodes[insert] = nodes[insert - 1];
+                    insert--;
+                }
+                nodes[insert] = node;
+            }
+            return;
+        }
+        final int middle = (from + to) >>> 1;
+        mergeSort(nodes, temp, from, middle, comparator);
+        mergeSort(nodes, temp, middle, to, comparator);
+        if (comparator.compare(nodes[middle - 1], nodes[middle]) <= 0) {
+            return; // already in order.
+        }
+        System.arraycopy(nodes, from, temp, from, to - from);
+        int left = from;
+        int right = middle;
+        int index = from;
+        while (left < middle && right < to) {
+            nodes[index++] = comparator.compare(temp[right], temp[left]) < 0 ? temp[right++] : temp[left++];
+        }
+        while (left < middle) {
+            nodes[index++] = temp[left++];
+        }
+        while (right < to) {
+            nodes[index++] = temp[right++];
+        }
+    }
+
+    private static long align(final long position) {
+        return (position + 7) & ~7L;
+    }
+
+    private interface NodeComparator {
+        int compare(int node1, int node2);
+    }
+
+    private static final class ColumnDefinition {
+
+        private final String name;
+        private final ColumnType type;
+        private final IntFunction<?> values;
+        private final boolean storeOrder;
+        private boolean dictionary; // decided when the column values are written.
+
+        ColumnDefinition(final String name, final ColumnType type, final IntFunction<?> values, final boolean storeOrder) {
+            this.name = name;
+            this.type = type;
+            this.values = values;
+            this.storeOrder = storeOrder;
+        }
+    }
+
+    /**
+     * Writes sections to a file channel through a buffer, starting each section on an 8 byte boundary.
+     */
+    private static final class SectionWriter {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private long position;
+
+        SectionWriter(final FileChannel channel, final long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        long startSection() throws IOException {
+            while ((position & 7) != 0) {
+                putByte((byte) 0);
+            }
+            return position;
+        }
+
+        int endSection(final long[] sections, final int section, final long start) {
+            final long length = position - start;
+            sections[section * 2] = length == 0 ? 0 : start;
+            sections[section * 2 + 1] = length;
+            return section + 1;
+        }
+
+        void putByte(final byte value) throws IOException {
+            ensureSpace(Byte.BYTES);
+            buffer.put(value);
+            position++;
+        }
+
+        void putInt(final int value) throws IOException {
+            ensureSpace(Integer.BYTES);
+            buffer.putInt(value);
+            position += Integer.BYTES;
+        }
+
+        void putLong(final long value) throws IOException {
+            ensureSpace(Long.BYTES);
+            buffer.putLong(value);
+            position += Long.BYTES;
+        }
+
+        void putBytes(final byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensureSpace(1);
+                final int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+                position += length;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            final long writePosition = position - buffer.remaining();
+            long written = 0;
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer, writePosition + written);
+            }
+            buffer.clear();
+        }
+
+        private void ensureSpace(final int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.HashSet;
+import java.util.Set;
+import javax.swing.RowSorter;
+import javax.swing.table.DefaultTableColumnModel;
+import javax.swing.table.TableColumnModel;
+import javax.swing.tree.TreeNode;
+
+/**
+ * A TreeTableModel which displays the tree and columns of a {@link MappedTreeStore}.
+ * <p>
+ * Column values are read from the mapped file when they are displayed, and nodes are sorted by comparing the values
+ * in the file directly, or the precomputed order of a column when the store has it, without creating objects for
+ * the values.  Only the nodes which are displayed, expanded or being sorted are materialised.
+ * <p>
+ * The model records expanded nodes in a weak map, and a store only keeps the nodes which are in use, so the model
+ * also keeps a strong reference to each expanded node.  Otherwise an expanded node which is not displayed, such as
+ * the child of a collapsed node, could be garbage collected and forget its expansion.
+ */
+public class MappedTreeTableModel extends TreeTableModel {
+
+    protected final MappedTreeStore store;
+    protected final Set<TreeNode> expandedNodes = new HashSet<>(); // strong references to nodes which are expanded.
+
+    /**
+     * Constructs a MappedTreeTableModel showing the root node of a store.
+     *
+     * @param store The store to display.
+     * @throws IllegalArgumentException if the store is null.
+     */
+    public MappedTreeTableModel(final MappedTreeStore store) {
+        this(store, true);
+    }
+
+    /**
+     * Constructs a MappedTreeTableModel for a store.
+     *
+     * @param store The store to display.
+     * @param showRoot Whether to show the root node of the store.
+     * @throws IllegalArgumentException if the store is null.
+     */
+    public MappedTreeTableModel(final MappedTreeStore store, final boolean showRoot) {
+        super(getRoot(store), showRoot);
+        this.store = store;
+    }
+
+    @Override
+    public Object getColumnValue(final TreeNode node, final int column) {
+        return store.getValue(column, ((MappedTreeStore.Node) node).getNodeNumber());
+    }
+
+    @Override
+    public Class<?> getColumnClass(final int columnIndex) {
+        return store.getColumnType(columnIndex).getColumnClass();
+    }
+
+    /**
+     * @return The store this model displays.
+     */
+    public MappedTreeStore getStore() {
+        return store;
+    }
+
+    @Override
+    protected TableColumnModel createTableColumnModel() {
+        final TableColumnModel result = new DefaultTableColumnModel();
+        for (int column = 0; column < store.getColumnCount(); column++) {
+            result.addColumn(createColumn(column, store.getColumnName(column)));
+        }
+        return result;
+    }
+
+    @Override
+    protected void toggleVisibleExpansion(final TreeNode parentNode, final int parentModelIndex, final boolean currentlyExpanded) {
+        super.toggleVisibleExpansion(parentNode, parentModelIndex, currentlyExpanded);
+        updateExpandedNode(parentNode, currentlyExpanded);
+    }
+
+    @Override
+    protected void toggleInvisibleExpansion(final TreeNode node, final boolean currentlyExpanded) {
+        super.toggleInvisibleExpansion(node, currentlyExpanded);
+        updateExpandedNode(node, currentlyExpanded);
+    }
+
+    @Override
+    protected void clearExpansions() {
+        expandedNodes.clear();
+        super.clearExpansions();
+    }
+
+    /**
+     * Creates the default row sorter, with a node comparator that compares the values in the store directly.
+     */
+    @Override
+    protected TreeTableRowSorter createDefaultRowSorter() {
+        final TreeTableRowSorter rowSorter = super.createDefaultRowSorter();
+        rowSorter.setNodeComparator(new StoreComparator(this));
+        return rowSorter;
+    }
+
+    private void updateExpandedNode(final TreeNode node, final boolean wasExpanded) {
+        if (wasExpanded) {
+            expandedNodes.remove(node);
+        } else {
+            expandedNodes.add(node);
+        }
+    }
+
+    private static TreeNode getRoot(final MappedTreeStore store) {
+        if (store == null) {
+            throw new IllegalArgumentException("Object cannot be null: store");
+        }
+        return store.getRoot();
+    }
+
+    /**
+     * A node comparator which compares column values in the store with {@link MappedTreeStore#compare(int, int, int)}.
+     * Aggregate columns show values computed by the model rather than the values in the store, so they are compared
+     * with {@link TreeTableModel#getNodeValue(TreeNode, int)} instead.
+     */
+    protected static class StoreComparator extends TreeNodeComparator {
+
+        private final MappedTreeStore store;
+
+        public StoreComparator(final MappedTreeTableModel model) {
+            super(model);
+            this.store = model.getStore();
+        }
+
+        @Override
+        protected int compareValues(final TreeNode node1, final TreeNode node2, final RowSorter.SortKey sortKey) {
+            if (model.isAggregateColumn(sortKey.getColumn())) {
+                return super.compareValues(node1, node2, sortKey);
+            }
+            return store.compare(sortKey.getColumn(), ((MappedTreeStore.Node) node1).getNodeNumber(),
+                                 ((MappedTreeStore.Node) node2).getNodeNumber());
+        }
+    }
+
+}
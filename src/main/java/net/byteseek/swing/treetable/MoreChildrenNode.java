@@ -0,0 +1,158 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.function.Predicate;
+import javax.swing.tree.TreeNode;
+
+/**
+ * A synthetic row shown after the children of a paged parent in a {@link TreeTableModel}, standing in for the
+ * children which are not shown yet.  It displays how many more children there are, and shows the next page of them
+ * when it is activated, by clicking on it in the tree column or expanding it from the keyboard.
+ * <p>
+ * It is not a child of the parent, but it does return the parent from {@link #getParent()}, so it sits in the tree
+ * at the same depth as the children.  It also records which children of the parent are shown.
+ * <p>
+ * Rows showing more children are created by the model when a parent with more children than the child page size
+ * is expanded - see {@link TreeTableModel#setChildPageSize(int)}.
+ */
+public final class MoreChildrenNode implements TreeNode {
+
+    private final TreeNode parent;
+    private final Set<TreeNode> shownChildren = createChildSet();
+    private int hiddenCount;
+
+    /**
+     * Constructs a MoreChildrenNode for a paged parent, with no children shown yet.
+     *
+     * @param parent The parent whose children are paged.
+     */
+    MoreChildrenNode(final TreeNode parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * @return The number of unfiltered children of the parent which are not shown yet.
+     */
+    public int getHiddenCount() {
+        return hiddenCount;
+    }
+
+    /**
+     * @return The number of children of the parent which are shown.
+     */
+    public int getShownCount() {
+        return shownChildren.size();
+    }
+
+    /**
+     * @param child A child of the parent.
+     * @return true if the child is shown.
+     */
+    public boolean isShown(final TreeNode child) {
+        return shownChildren.contains(child);
+    }
+
+    @Override
+    public TreeNode getChildAt(final int childIndex) {
+        throw new ArrayIndexOutOfBoundsException("A row showing more children has no children: " + childIndex);
+    }
+
+    @Override
+    public int getChildCount() {
+        return 0;
+    }
+
+    @Override
+    public TreeNode getParent() {
+        return parent;
+    }
+
+    @Override
+    public int getIndex(final TreeNode node) {
+        return -1;
+    }
+
+    @Override
+    public boolean getAllowsChildren() {
+        return false;
+    }
+
+    @Override
+    public boolean isLeaf() {
+        return true;
+    }
+
+    @Override
+    public Enumeration<? extends TreeNode> children() {
+        return Collections.emptyEnumeration();
+    }
+
+    @Override
+    public String toString() {
+        return hiddenCount + " more\u2026"; // an ellipsis.
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Package methods
+     */
+
+    void setHiddenCount(final int hiddenCount) {
+        this.hiddenCount = Math.max(0, hiddenCount);
+    }
+
+    void addShownChildren(final Collection<? extends TreeNode> children) {
+        shownChildren.addAll(children);
+    }
+
+    boolean removeShownChild(final Object child) {
+        return shownChildren.remove(child);
+    }
+
+    void retainShownChildren(final Predicate<TreeNode> condition) {
+        shownChildren.removeIf(child -> !condition.test(child));
+    }
+
+    /**
+     * @return A new empty set of children, compared by identity.
+     */
+    static Set<TreeNode> createChildSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+}
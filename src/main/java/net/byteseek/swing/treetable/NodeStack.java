@@ -0,0 +1,201 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import javax.swing.tree.TreeNode;
+
+/**
+ * A stack of the nodes on a path down a tree, with the index of the next child to visit in each, used to walk trees
+ * depth first without recursion.  The stack grows on the heap rather than the call stack, so trees of any depth can
+ * be walked.  An int value can be kept with each node, for example the depth left to walk below it, or the size of a
+ * list when it was reached.
+ * <p>
+ * The arrays are kept when nodes are popped, so a stack can be reused for many walks without allocating.
+ * Popped nodes are cleared from the stack, so it doesn't keep them from being garbage collected.
+ */
+final class NodeStack {
+
+    private static final int DEFAULT_CAPACITY = 32;
+
+    private TreeNode[] nodes;
+    private int[] nextChildIndexes;
+    private int[] values;
+    private int size;
+
+    /**
+     * Constructs an empty NodeStack.
+     */
+    NodeStack() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty NodeStack with an initial capacity.
+     *
+     * @param capacity The number of nodes the stack can hold before it grows.
+     */
+    NodeStack(final int capacity) {
+        final int initialCapacity = Math.max(1, capacity);
+        nodes = new TreeNode[initialCapacity];
+        nextChildIndexes = new int[initialCapacity];
+        values = new int[initialCapacity];
+    }
+
+    /**
+     * @return true if there are no nodes on the stack.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return The number of nodes on the stack.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Pushes a node onto the stack with a value of zero.  Its children will be visited from the first child.
+     *
+     * @param node The node to push.
+     */
+    void push(final TreeNode node) {
+        push(node, 0);
+    }
+
+    /**
+     * Pushes a node onto the stack with a value.  Its children will be visited from the first child.
+     *
+     * @param node The node to push.
+     * @param value The value to keep with the node.
+     */
+    void push(final TreeNode node, final int value) {
+        push(node, 0, value);
+    }
+
+    /**
+     * Pushes a node onto the stack with a value, and the index of its next child to visit.  This lets a walk keep the
+     * node whose children it is visiting in local variables, and only push it when it descends into a child.
+     *
+     * @param node The node to push.
+     * @param nextChildIndex The index of the next child of the node to visit.
+     * @param value The value to keep with the node.
+     */
+    void push(final TreeNode node, final int nextChildIndex, final int value) {
+        if (size == nodes.length) {
+            grow();
+        }
+        nodes[size] = node;
+        nextChildIndexes[size] = nextChildIndex;
+        values[size++] = value;
+    }
+
+    /**
+     * @return The node on top of the stack.
+     * @throws ArrayIndexOutOfBoundsException if the stack is empty.
+     */
+    TreeNode peek() {
+        return nodes[size - 1];
+    }
+
+    /**
+     * @return The value kept with the node on top of the stack.
+     * @throws ArrayIndexOutOfBoundsException if the stack is empty.
+     */
+    int peekValue() {
+        return values[size - 1];
+    }
+
+    /**
+     * @return The index of the next child to visit of the node on top of the stack.
+     * @throws ArrayIndexOutOfBoundsException if the stack is empty.
+     */
+    int peekChildIndex() {
+        return nextChildIndexes[size - 1];
+    }
+
+    /**
+     * Returns the next child of the node on top of the stack, or null if all of its children have been visited.
+     * The child count is checked each time, so children added or removed during a walk are accounted for.
+     *
+     * @return The next child of the node on top of the stack, or null if there are no more children.
+     * @throws ArrayIndexOutOfBoundsException if the stack is empty.
+     */
+    TreeNode nextChild() {
+        final int top = size - 1;
+        final TreeNode node = nodes[top];
+        final int childIndex = nextChildIndexes[top];
+        if (childIndex < node.getChildCount()) {
+            nextChildIndexes[top] = childIndex + 1;
+            return node.getChildAt(childIndex);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the node on top of the stack.
+     *
+     * @return The node which was on top of the stack.
+     * @throws ArrayIndexOutOfBoundsException if the stack is empty.
+     */
+    TreeNode pop() {
+        final TreeNode node = nodes[--size];
+        nodes[size] = null;
+        return node;
+    }
+
+    /**
+     * Removes all nodes from the stack, keeping its capacity.
+     */
+    void clear() {
+        final TreeNode[] localNodes = nodes; // avoid repeated getfield.
+        for (int index = 0; index < size; index++) {
+            localNodes[index] = null;
+        }
+        size = 0;
+    }
+
+    private void grow() {
+        final int newCapacity = nodes.length * 2;
+        final TreeNode[] newNodes = new TreeNode[newCapacity];
+        System.arraycopy(nodes, 0, newNodes, 0, size);
+        nodes = newNodes;
+        final int[] newChildIndexes = new int[newCapacity];
+        System.arraycopy(nextChildIndexes, 0, newChildIndexes, 0, size);
+        nextChildIndexes = newChildIndexes;
+        final int[] newValues = new int[newCapacity];
+        System.arraycopy(values, 0, newValues, 0, size);
+        values = newValues;
+    }
+
+}
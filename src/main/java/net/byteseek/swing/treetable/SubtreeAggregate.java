@@ -0,0 +1,339 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import javax.swing.tree.TreeNode;
+
+/**
+ * Defines the value of an aggregate column in a {@link TreeTableModel}, which combines a value of every node in
+ * the subtree of a node, such as the total size of all descendants, the number of files, or the latest modified time.
+ * <p>
+ * Each node has its own value, obtained from a column of the model or from a function of the node.
+ * The aggregate value of a node is its own value combined with the aggregate values of its children.
+ * Values are combined with an associative operator, which has an identity value that makes no difference when combined
+ * with another value (a monoid): zero for a sum, or null for a minimum or maximum.
+ * <p>
+ * An aggregate is set on a column with {@link TreeTableModel#setAggregateColumn(int, SubtreeAggregate)}.
+ * The model computes the aggregate values of a subtree in a single bottom-up pass when they are first needed,
+ * and keeps them up to date along the path to the root when it is told that nodes are inserted, removed or changed.
+ * <p>
+ * The model also keeps the combined values of the children of each node, so a change to one child is applied to its
+ * parent without combining all the other children again.  An aggregate with an inverse, such as a sum or a count,
+ * takes the old value of the child out and combines the new one.  A minimum or maximum only combines all the
+ * children again if the old value of the child was the extreme.  Other aggregates combine all the children again,
+ * as their combiners may not be commutative.
+ *
+ * @param <V> The type of value aggregated.
+ */
+public final class SubtreeAggregate<V> {
+
+    /**
+     * The source column of an aggregate whose node values are not obtained from a column.
+     */
+    public static final int NO_COLUMN = -1;
+
+    /**
+     * Returned by {@link #replace(Object, Object, Object)} if the combined values must be combined again.
+     */
+    static final Object RECOMPUTE = new Object();
+
+    private final int sourceColumn;
+    private final BiFunction<TreeTableModel, TreeNode, ? extends V> nodeValue;
+    private final V identity;
+    private final BinaryOperator<V> combiner;
+    private final BinaryOperator<V> inverse; // null if values can't be taken out of a combined value.
+    private final boolean selective;         // whether the combiner always returns one of its values, like a minimum.
+
+    private SubtreeAggregate(final int sourceColumn, final BiFunction<TreeTableModel, TreeNode, ? extends V> nodeValue,
+                             final V identity, final BinaryOperator<V> combiner, final BinaryOperator<V> inverse,
+                             final boolean selective) {
+        this.sourceColumn = sourceColumn;
+        this.nodeValue = nodeValue;
+        this.identity = identity;
+        this.combiner = combiner;
+        this.inverse = inverse;
+        this.selective = selective;
+    }
+
+    /**
+     * Sums the values of a column in a subtree as longs.  Values which are not Numbers count as zero.
+     *
+     * @param column The model index of the column to sum.
+     * @return An aggregate giving the sum of the column values in a subtree.
+     * @throws IllegalArgumentException if the column is negative.
+     */
+    public static SubtreeAggregate<Long> sum(final int column) {
+        return of(column, value -> value instanceof Number ? ((Number) value).longValue() : 0L, 0L, Long::sum,
+                  (total, value) -> total - value);
+    }
+
+    /**
+     * Sums the values of a column in a subtree as doubles.  Values which are not Numbers count as zero.
+     * Subtracting doubles doesn't exactly undo adding them, so a change to a child combines all its siblings again.
+     *
+     * @param column The model index of the column to sum.
+     * @return An aggregate giving the sum of the column values in a subtree.
+     * @throws IllegalArgumentException if the column is negative.
+     */
+    public static SubtreeAggregate<Double> sumDouble(final int column) {
+        return of(column, value -> value instanceof Number ? ((Number) value).doubleValue() : 0.0, 0.0, Double::sum);
+    }
+
+    /**
+     * Counts the nodes in a subtree, including the node itself.
+     *
+     * @return An aggregate giving the number of nodes in a subtree.
+     */
+    public static SubtreeAggregate<Long> count() {
+        return count(node -> true);
+    }
+
+    /**
+     * Counts the nodes in a subtree which match a predicate, including the node itself.
+     * For example, <code>count(TreeNode::isLeaf)</code> counts the files under a folder.
+     *
+     * @param predicate The predicate nodes must match to be counted.
+     * @return An aggregate giving the number of matching nodes in a subtree.
+     * @throws IllegalArgumentException if the predicate is null.
+     */
+    public static SubtreeAggregate<Long> count(final Predicate<? super TreeNode> predicate) {
+        checkNull(predicate, "predicate");
+        return of(node -> predicate.test(node) ? 1L : 0L, 0L, Long::sum, (total, value) -> total - value);
+    }
+
+    /**
+     * Finds the smallest value of a column in a subtree.  Null values are ignored, and the aggregate is null if there
+     * are no values.
+     *
+     * @param column The model index of the column.
+     * @param <C> The type of value in the column.
+     * @return An aggregate giving the smallest value of the column in a subtree.
+     * @throws IllegalArgumentException if the column is negative.
+     */
+    public static <C extends Comparable<? super C>> SubtreeAggregate<C> min(final int column) {
+        return selective(column, (value1, value2) -> value1 == null ? value2 :
+                                                     value2 == null ? value1 :
+                                                     value1.compareTo(value2) <= 0 ? value1 : value2);
+    }
+
+    /**
+     * Finds the largest value of a column in a subtree.  Null values are ignored, and the aggregate is null if there
+     * are no values.
+     *
+     * @param column The model index of the column.
+     * @param <C> The type of value in the column.
+     * @return An aggregate giving the largest value of the column in a subtree.
+     * @throws IllegalArgumentException if the column is negative.
+     */
+    public static <C extends Comparable<? super C>> SubtreeAggregate<C> max(final int column) {
+        return selective(column, (value1, value2) -> value1 == null ? value2 :
+                                                     value2 == null ? value1 :
+                                                     value1.compareTo(value2) >= 0 ? value1 : value2);
+    }
+
+    /**
+     * Combines the values of a column in a subtree with a custom operator.
+     * The values of the column must be of the type combined, or null, which is treated as the identity.
+     *
+     * @param column The model index of the column.
+     * @param identity The value which makes no difference when combined with another value.
+     * @param combiner An associative operator which combines two values.
+     * @param <V> The type of value aggregated.
+     * @return An aggregate combining the column values in a subtree.
+     * @throws IllegalArgumentException if the column is negative or the combiner is null.
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> SubtreeAggregate<V> of(final int column, final V identity, final BinaryOperator<V> combiner) {
+        return of(column, value -> (V) value, identity, combiner);
+    }
+
+    /**
+     * Combines the values of a column in a subtree with a custom operator, after converting them to the type combined.
+     *
+     * @param column The model index of the column.
+     * @param converter Converts a column value, which may be null, to the type combined.
+     * @param identity The value which makes no difference when combined with another value.
+     * @param combiner An associative operator which combines two values.
+     * @param <V> The type of value aggregated.
+     * @return An aggregate combining the converted column values in a subtree.
+     * @throws IllegalArgumentException if the column is negative, or the converter or combiner are null.
+     */
+    public static <V> SubtreeAggregate<V> of(final int column, final Function<Object, ? extends V> converter,
+                                             final V identity, final BinaryOperator<V> combiner) {
+        return of(column, converter, identity, combiner, null, false);
+    }
+
+    /**
+     * Combines the values of a column in a subtree with a custom operator, after converting them to the type combined,
+     * with an inverse which takes a value out of a combined value.  A change to a child is applied to its parent
+     * with the inverse, rather than by combining all the children again.
+     *
+     * @param column The model index of the column.
+     * @param converter Converts a column value, which may be null, to the type combined.
+     * @param identity The value which makes no difference when combined with another value.
+     * @param combiner An associative and commutative operator which combines two values.
+     * @param inverse An operator which takes the second value out of the first, so it undoes the combiner exactly.
+     * @param <V> The type of value aggregated.
+     * @return An aggregate combining the converted column values in a subtree.
+     * @throws IllegalArgumentException if the column is negative, or the converter, combiner or inverse are null.
+     */
+    public static <V> SubtreeAggregate<V> of(final int column, final Function<Object, ? extends V> converter,
+                                             final V identity, final BinaryOperator<V> combiner,
+                                             final BinaryOperator<V> inverse) {
+        checkNull(inverse, "inverse");
+        return of(column, converter, identity, combiner, inverse, false);
+    }
+
+    /**
+     * Combines a value of each node in a subtree with a custom operator.
+     *
+     * @param nodeValue A function giving the value of a node.  It can return null, which is treated as the identity.
+     * @param identity The value which makes no difference when combined with another value.
+     * @param combiner An associative operator which combines two values.
+     * @param <V> The type of value aggregated.
+     * @return An aggregate combining the node values in a subtree.
+     * @throws IllegalArgumentException if the node value function or combiner are null.
+     */
+    public static <V> SubtreeAggregate<V> of(final Function<? super TreeNode, ? extends V> nodeValue,
+                                             final V identity, final BinaryOperator<V> combiner) {
+        checkNull(nodeValue, "nodeValue");
+        checkNull(combiner, "combiner");
+        return new SubtreeAggregate<>(NO_COLUMN, (model, node) -> nodeValue.apply(node), identity, combiner, null, false);
+    }
+
+    /**
+     * Combines a value of each node in a subtree with a custom operator, with an inverse which takes a value out of
+     * a combined value.  A change to a child is applied to its parent with the inverse, rather than by combining all
+     * the children again.
+     *
+     * @param nodeValue A function giving the value of a node.  It can return null, which is treated as the identity.
+     * @param identity The value which makes no difference when combined with another value.
+     * @param combiner An associative and commutative operator which combines two values.
+     * @param inverse An operator which takes the second value out of the first, so it undoes the combiner exactly.
+     * @param <V> The type of value aggregated.
+     * @return An aggregate combining the node values in a subtree.
+     * @throws IllegalArgumentException if the node value function, combiner or inverse are null.
+     */
+    public static <V> SubtreeAggregate<V> of(final Function<? super TreeNode, ? extends V> nodeValue,
+                                             final V identity, final BinaryOperator<V> combiner,
+                                             final BinaryOperator<V> inverse) {
+        checkNull(nodeValue, "nodeValue");
+        checkNull(combiner, "combiner");
+        checkNull(inverse, "inverse");
+        return new SubtreeAggregate<>(NO_COLUMN, (model, node) -> nodeValue.apply(node), identity, combiner, inverse, false);
+    }
+
+    /**
+     * @return The model index of the column the node values come from, or {@link #NO_COLUMN} if they come from a
+     *         function of the node.
+     */
+    public int getSourceColumn() {
+        return sourceColumn;
+    }
+
+    /**
+     * @return The value which makes no difference when combined with another value.
+     */
+    public V getIdentity() {
+        return identity;
+    }
+
+    /**
+     * @param model The model to get column values from.
+     * @param node The node to get the value of.
+     * @return The value of the node itself, or the identity if it has no value.
+     */
+    Object getNodeValue(final TreeTableModel model, final TreeNode node) {
+        final V value = nodeValue.apply(model, node);
+        return value == null ? identity : value;
+    }
+
+    /**
+     * @param value1 The first value to combine.
+     * @param value2 The second value to combine.
+     * @return The two values combined.
+     */
+    @SuppressWarnings("unchecked")
+    Object combine(final Object value1, final Object value2) {
+        return combiner.apply((V) value1, (V) value2);
+    }
+
+    /**
+     * Replaces one of the values in a combined value, if it can be done without combining all the values again.
+     * A value inserted replaces the identity, and a value removed is replaced by the identity.
+     *
+     * @param combined The combined value which the old value is one of.
+     * @param oldValue The value being replaced.
+     * @param newValue The value replacing it.
+     * @return The combined value with the old value replaced by the new value, or {@link #RECOMPUTE}
+     *         if all the values must be combined again.
+     */
+    @SuppressWarnings("unchecked")
+    Object replace(final Object combined, final Object oldValue, final Object newValue) {
+        if (inverse != null) {
+            return combiner.apply(inverse.apply((V) combined, (V) oldValue), (V) newValue);
+        }
+        if (selective && (!Objects.equals(oldValue, combined) || Objects.equals(combine(oldValue, newValue), newValue))) {
+            return combine(combined, newValue); // the old value wasn't the extreme, or the new value is as extreme.
+        }
+        return RECOMPUTE;
+    }
+
+    private static <V> SubtreeAggregate<V> of(final int column, final Function<Object, ? extends V> converter,
+                                              final V identity, final BinaryOperator<V> combiner,
+                                              final BinaryOperator<V> inverse, final boolean selective) {
+        if (column < 0) {
+            throw new IllegalArgumentException("Column cannot be negative: " + column);
+        }
+        checkNull(converter, "converter");
+        checkNull(combiner, "combiner");
+        return new SubtreeAggregate<>(column, (model, node) -> converter.apply(model.getColumnValue(node, column)),
+                                      identity, combiner, inverse, selective);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <C> SubtreeAggregate<C> selective(final int column, final BinaryOperator<C> combiner) {
+        return of(column, value -> (C) value, null, combiner, null, true);
+    }
+
+    private static void checkNull(final Object object, final String description) {
+        if (object == null) {
+            throw new IllegalArgumentException("Object cannot be null: " + description);
+        }
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableColumn;
+import javax.swing.tree.TreeNode;
+
+/**
+ * A flat TableModel showing the nodes which sort first anywhere in the tree of a {@link TreeTableModel},
+ * such as the 500 largest items, using {@link TreeTableModel#getTopNodes(int, boolean, int)}.
+ * <p>
+ * It has the same columns and values as the tree model, so a JTable showing it can be placed next to, or swapped with,
+ * the tree table.  The path of each node is available for tooltips, and {@link #revealInTree(int)} jumps to a node
+ * in the tree table.  The top nodes are not updated when the tree changes; call {@link #update()} to select them again.
+ */
+public class TopNodesTableModel extends AbstractTableModel {
+
+    /**
+     * The separator between the nodes of a path returned by {@link #getPathText(int)}.
+     */
+    public static final String PATH_SEPARATOR = " / ";
+
+    protected final TreeTableModel treeTableModel;
+    protected int count;
+    protected boolean includeFiltered;
+    protected int parallelism = 1;
+    protected List<TreeNode> nodes = Collections.emptyList();
+
+    /**
+     * Constructs a TopNodesTableModel for a tree model.  It is empty until {@link #update()} is called.
+     *
+     * @param treeTableModel The tree model to find the top nodes of.
+     * @param count The maximum number of nodes to show.
+     * @throws IllegalArgumentException if the tree model is null or the count is negative.
+     */
+    public TopNodesTableModel(final TreeTableModel treeTableModel, final int count) {
+        if (treeTableModel == null) {
+            throw new IllegalArgumentException("Object cannot be null: treeTableModel");
+        }
+        this.treeTableModel = treeTableModel;
+        setCount(count);
+    }
+
+    /**
+     * Selects the top nodes again with the current sort keys of the tree model, and updates the table.
+     */
+    public void update() {
+        nodes = treeTableModel.getTopNodes(count, includeFiltered, parallelism);
+        fireTableDataChanged();
+    }
+
+    /**
+     * @param count The maximum number of nodes to show the next time the model is updated.
+     * @throws IllegalArgumentException if the count is negative.
+     */
+    public void setCount(final int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Count cannot be negative: " + count);
+        }
+        this.count = count;
+    }
+
+    /**
+     * @return The maximum number of nodes to show.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @param includeFiltered Whether nodes in filtered subtrees are included the next time the model is updated.
+     */
+    public void setIncludeFiltered(final boolean includeFiltered) {
+        this.includeFiltered = includeFiltered;
+    }
+
+    /**
+     * @return Whether nodes in filtered subtrees are included.
+     */
+    public boolean getIncludeFiltered() {
+        return includeFiltered;
+    }
+
+    /**
+     * Sets the number of threads to select the top nodes with.  The tree model must then be safe to read from several
+     * threads, as described in {@link TreeTableModel#getTopNodes(int, boolean, int)}.
+     *
+     * @param parallelism The number of threads to select the top nodes with the next time the model is updated.
+     * @throws IllegalArgumentException if the parallelism is less than one.
+     */
+    public void setParallelism(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return The number of threads to select the top nodes with.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return The tree model this model shows the top nodes of.
+     */
+    public TreeTableModel getTreeTableModel() {
+        return treeTableModel;
+    }
+
+    /**
+     * @return An unmodifiable list of the nodes shown, best first.
+     */
+    public List<TreeNode> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    /**
+     * @param row The model index of a row.
+     * @return The node shown in the row.
+     */
+    public TreeNode getNodeAt(final int row) {
+        return nodes.get(row);
+    }
+
+    /**
+     * @param row The model index of a row.
+     * @return The nodes from the root of the tree down to the node shown in the row.
+     */
+    public List<TreeNode> getPath(final int row) {
+        final List<TreeNode> path = new ArrayList<>();
+        for (TreeNode node = nodes.get(row); node != null; node = node.getParent()) {
+            path.add(node);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * Returns the path of the node in a row as text, for example to show in a tooltip.  Each node in the path is
+     * shown by its value in the tree column of the tree model, separated by {@link #PATH_SEPARATOR}.
+     *
+     * @param row The model index of a row.
+     * @return The path of the node shown in the row as text.
+     */
+    public String getPathText(final int row) {
+        final StringBuilder builder = new StringBuilder();
+        for (TreeNode node : getPath(row)) {
+            if (builder.length() > 0) {
+                builder.append(PATH_SEPARATOR);
+            }
+            builder.append(treeTableModel.getNodeValue(node, TreeTableModel.TREE_COLUMN_INDEX));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Jumps to the node in a row in the tree table, expanding its ancestors, selecting it and scrolling to it.
+     *
+     * @param row The model index of a row.
+     * @return true if the node is now visible in the tree, or false if it is no longer in the tree or is filtered.
+     */
+    public boolean revealInTree(final int row) {
+        return treeTableModel.revealNode(nodes.get(row));
+    }
+
+    @Override
+    public int getRowCount() {
+        return nodes.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return treeTableModel.getColumnCount();
+    }
+
+    @Override
+    public String getColumnName(final int column) {
+        final TableColumn tableColumn = TreeUtils.getColumnWithModelIndex(treeTableModel.getTableColumnModel(), column);
+        final Object header = tableColumn == null ? null : tableColumn.getHeaderValue();
+        return header == null ? super.getColumnName(column) : header.toString();
+    }
+
+    @Override
+    public Class<?> getColumnClass(final int column) {
+        return treeTableModel.getColumnClass(column);
+    }
+
+    @Override
+    public Object getValueAt(final int row, final int column) {
+        return treeTableModel.getNodeValue(nodes.get(row), column);
+    }
+
+}
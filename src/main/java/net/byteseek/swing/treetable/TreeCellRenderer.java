@@ -148,6 +148,7 @@ public class TreeCellRenderer extends DefaultTableCellRenderer implements TreeTa
     public Component getTableCellRendererComponent(final JTable table, final Object value, final boolean isSelected,
                                                    final boolean hasFocus, final int row, final int column) {
         setNode(treeTableModel.getNodeAtTableRow(row)); // Ensure current node is set before anything else.
+        treeTableModel.countMetric(TreeTableModel.MetricsListener.Counter.CELLS_RENDERED, 1);
         setForeground( isSelected? getSelectedForegroundColor(table, value, hasFocus, row, column)
                                  : getUnselectedForegroundColor(table, value, hasFocus, row, column));
         setBackground( isSelected? getSelectedBackgroundColor(table, value, hasFocus, row, column)
@@ -224,6 +225,10 @@ public class TreeCellRenderer extends DefaultTableCellRenderer implements TreeTa
      */
     protected int calculateNodeIndent(final TreeNode currentNode, final JTable table, final Object value,
                                       final boolean isSelected, final boolean hasFocus, final int row, final int column) {
+        final int modelIndex = treeTableModel.getModelIndexForTableRow(row);
+        if (currentNode != null && treeTableModel.getNodeAtModelIndex(modelIndex) == currentNode) {
+            return calculateLevelIndent(treeTableModel.getNodeDepth(modelIndex)); // depth is cached by the model.
+        }
         return calculateNodeIndent(currentNode);
     }
 
@@ -378,11 +383,13 @@ public class TreeCellRenderer extends DefaultTableCellRenderer implements TreeTa
      * which subclasses of it can override to get the right tree icon.  If you prefer, you can instead override
      * this method in your TreeCellRenderer sub-class to get the right icon for the node.
      *
+     * A row showing more children of a paged parent has no icon.
+     *
      * @param node The node to get the icon for.
      * @return The icon for the node, or null if no icon exists for it.
      */
     protected Icon getNodeIcon(final TreeNode node) {
-        return treeTableModel.getNodeIcon(node);
+        return node instanceof MoreChildrenNode ? null : treeTableModel.getNodeIcon(node);
     }
 
     /**
@@ -413,8 +420,16 @@ public class TreeCellRenderer extends DefaultTableCellRenderer implements TreeTa
      * @return The number of pixels to indent for a node.
      */
     protected int calculateNodeIndent(final TreeNode node) {
+        return calculateLevelIndent(TreeUtils.getLevel(node));
+    }
+
+    /**
+     * @param level The depth of a node in the tree.
+     * @return The number of pixels to indent for a node at that depth.
+     */
+    protected int calculateLevelIndent(final int level) {
         final int adjustShowRoot = treeTableModel.getShowRoot()? 0 : 1;
-        return PADDING + maxIconWidth + ((TreeUtils.getLevel(node) - adjustShowRoot) * pixelsPerLevel);
+        return PADDING + maxIconWidth + ((level - adjustShowRoot) * pixelsPerLevel);
     }
 
     /**
@@ -103,8 +103,20 @@ public class TreeNodeComparator implements Comparator<TreeNode> {
             }
         }
 
+        return compareSortKeys(node1, node2);
+    }
+
+    /**
+     * Compares two nodes by the sort keys of the model only, without using a grouping comparator.
+     * This can compare nodes which are not siblings, for example to find the top nodes anywhere in a tree.
+     *
+     * @param node1 the first node to compare
+     * @param node2 the second node to compare
+     * @return the result of comparing the two nodes by the sort keys.
+     */
+    public int compareSortKeys(final TreeNode node1, final TreeNode node2) {
         // For all columns with a SortKey that are not UNSORTED:
-        final List<? extends RowSorter.SortKey> keys = localModel.getSortKeys();
+        final List<? extends RowSorter.SortKey> keys = model.getSortKeys();
         for (RowSorter.SortKey sortKey : keys) {
 
             final SortOrder order = sortKey.getSortOrder();
@@ -139,8 +151,9 @@ public class TreeNodeComparator implements Comparator<TreeNode> {
     protected int compareValues(final TreeNode node1, final TreeNode node2, final RowSorter.SortKey sortKey) {
         final TreeTableModel localModel = model; // reduce field access - use a local reference.
         final int sortedColumn = sortKey.getColumn();
-        final Object value1 = localModel.getColumnValue(node1, sortedColumn);
-        final Object value2 = localModel.getColumnValue(node2, sortedColumn);
+        final Object value1 = localModel.getNodeValue(node1, sortedColumn);
+        final Object value2 = localModel.getNodeValue(node2, sortedColumn);
+        localModel.countMetric(TreeTableModel.MetricsListener.Counter.COLUMN_VALUES, 2);
 
         // Null value comparisons giving a total order.  null is "smaller" than not null, two nulls are equal.
         if (value1 == null || value2 == null) {
@@ -0,0 +1,410 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.ArrayDeque;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import javax.swing.tree.TreeNode;
+
+/**
+ * A Spliterator over a node and its children and sub-children, which splits by subtree so parallel streams can
+ * traverse different subtrees of a tree on different threads.  Nodes which fail an optional condition are left out,
+ * along with all of their children, so whole subtrees can be pruned without visiting them.
+ * <p>
+ * Size estimates come from child counts: the size of a tree is estimated from the child counts of the nodes down its
+ * first path, as if every node on a level had as many children as the first.  Estimates are shared out when a
+ * spliterator splits, and reduced as nodes are traversed.
+ * <p>
+ * The tree must not be modified while it is traversed.  Child counts are read when a node is reached,
+ * and its children are read later, possibly on another thread.
+ */
+abstract class TreeNodeSpliterator implements Spliterator<TreeNode> {
+
+    protected final Predicate<TreeNode> condition; // null if all nodes are included.
+    protected long estimate;
+
+    private TreeNodeSpliterator(final Predicate<TreeNode> condition, final long estimate) {
+        this.condition = condition;
+        this.estimate = estimate;
+    }
+
+    /**
+     * Creates a spliterator over a node and its children in depth-first order: the order they would have visually
+     * in the tree if they were all expanded.  It is ordered: splitting it gives the nodes before the nodes it keeps.
+     *
+     * @param node The node to traverse from.
+     * @param condition A condition nodes must pass to be included with their children, or null to include all nodes.
+     * @return A depth-first spliterator over the node and its children.
+     * @throws NullPointerException if the node is null.
+     */
+    static TreeNodeSpliterator depthFirst(final TreeNode node, final Predicate<TreeNode> condition) {
+        return new DepthFirst(node, condition);
+    }
+
+    /**
+     * Creates a spliterator over a node and its children in breadth-first order: the node, then its children,
+     * then all of their children, and so on.  Splitting it gives some of the nodes waiting to be traversed,
+     * along with all of their children, so it is not ordered: only the nodes within each split are in breadth-first order.
+     *
+     * @param node The node to traverse from.
+     * @param condition A condition nodes must pass to be included with their children, or null to include all nodes.
+     * @return A breadth-first spliterator over the node and its children.
+     * @throws NullPointerException if the node is null.
+     */
+    static TreeNodeSpliterator breadthFirst(final TreeNode node, final Predicate<TreeNode> condition) {
+        return new BreadthFirst(node, condition);
+    }
+
+    /**
+     * Estimates the number of nodes in a tree from the child counts of the nodes down its first path, as if every
+     * node on a level had as many children as the first node on that level.
+     *
+     * @param node The root of the tree to estimate the size of.
+     * @return An estimate of the number of nodes in the tree, or Long.MAX_VALUE if it is too big to count.
+     * @throws NullPointerException if the node is null.
+     */
+    static long estimateTreeSize(final TreeNode node) {
+        long total = 1;
+        long levelSize = 1;
+        TreeNode firstNode = node;
+        int childCount;
+        while ((childCount = firstNode.getChildCount()) > 0) {
+            if (levelSize > Long.MAX_VALUE / childCount) {
+                return Long.MAX_VALUE;
+            }
+            levelSize *= childCount;
+            if (total > Long.MAX_VALUE - levelSize) {
+                return Long.MAX_VALUE;
+            }
+            total += levelSize;
+            firstNode = firstNode.getChildAt(0);
+        }
+        return total;
+    }
+
+    @Override
+    public long estimateSize() {
+        return estimate;
+    }
+
+    protected final boolean isIncluded(final TreeNode node) {
+        return condition == null || condition.test(node);
+    }
+
+    /**
+     * Records that a node was traversed, reducing the estimate of the nodes left.
+     */
+    protected final void traversed() {
+        if (estimate > 0 && estimate < Long.MAX_VALUE) {
+            estimate--;
+        }
+    }
+
+    /**
+     * Shares out the estimate for a split in proportion to the subtrees split off, keeping the rest for this spliterator.
+     * An estimate too big to count stays too big to count for both.
+     *
+     * @param splitSubtrees The number of subtrees split off.
+     * @param totalSubtrees The number of subtrees being split.
+     * @return The estimate for the spliterator split off.
+     */
+    protected final long splitEstimate(final long splitSubtrees, final long totalSubtrees) {
+        final long splitEstimate = estimate == Long.MAX_VALUE ? estimate
+                                   : (long) ((double) estimate * splitSubtrees / totalSubtrees);
+        if (estimate < Long.MAX_VALUE) {
+            estimate -= splitEstimate;
+        }
+        return splitEstimate;
+    }
+
+    /**
+     * @return A spliterator over a single node, which doesn't traverse its children.
+     */
+    protected final Spliterator<TreeNode> splitSingleNode(final TreeNode node) {
+        traversed();
+        return Spliterators.spliterator(new Object[] {node}, characteristics());
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Depth first
+     */
+
+    /**
+     * Traverses a tree depth first with a stack of frames: the parents whose children are being traversed,
+     * with the index of their next child and the number of their children.  The deepest frame is on top,
+     * and its children come first, so the bottom frames have the nodes which come last.  It splits by giving the
+     * lowest frame with two or more children left and the frames above it to a new spliterator, which traverses
+     * the first half of that frame's children, keeping the second half.
+     */
+    private static final class DepthFirst extends TreeNodeSpliterator {
+
+        private static final int DEFAULT_CAPACITY = 16;
+
+        private TreeNode pendingNode;     // a node which has not been traversed yet, before any frames.
+        private TreeNode[] parents;
+        private int[] nextChildIndexes;
+        private int[] childCounts;
+        private int top;                  // one past the last frame.
+
+        private DepthFirst(final TreeNode node, final Predicate<TreeNode> condition) {
+            super(condition, estimateTreeSize(node));
+            parents = new TreeNode[DEFAULT_CAPACITY];
+            nextChildIndexes = new int[DEFAULT_CAPACITY];
+            childCounts = new int[DEFAULT_CAPACITY];
+            if (isIncluded(node)) {
+                pendingNode = node;
+            } else {
+                estimate = 0;
+            }
+        }
+
+        private DepthFirst(final Predicate<TreeNode> condition, final long estimate, final int capacity) {
+            super(condition, estimate);
+            parents = new TreeNode[capacity];
+            nextChildIndexes = new int[capacity];
+            childCounts = new int[capacity];
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super TreeNode> action) {
+            final TreeNode node = nextNode();
+            if (node != null) {
+                action.accept(node);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(final Consumer<? super TreeNode> action) {
+            TreeNode node;
+            while ((node = nextNode()) != null) {
+                action.accept(node);
+            }
+        }
+
+        @Override
+        public Spliterator<TreeNode> trySplit() {
+            if (pendingNode != null) { // split off the node itself, keeping its children to split further.
+                final TreeNode node = pendingNode;
+                pendingNode = null;
+                pushFrame(node);
+                return splitSingleNode(node);
+            }
+            for (int frame = 0; frame < top; frame++) {
+                final int nextChildIndex = nextChildIndexes[frame];
+                final int remaining = childCounts[frame] - nextChildIndex;
+                if (remaining > 1) {
+                    final int middle = nextChildIndex + remaining / 2;
+                    final int numFrames = top - frame;
+                    final DepthFirst prefix = new DepthFirst(condition, splitEstimate(middle - nextChildIndex, remaining),
+                                                             Math.max(DEFAULT_CAPACITY, numFrames * 2));
+                    System.arraycopy(parents, frame, prefix.parents, 0, numFrames);
+                    System.arraycopy(nextChildIndexes, frame, prefix.nextChildIndexes, 0, numFrames);
+                    System.arraycopy(childCounts, frame, prefix.childCounts, 0, numFrames);
+                    prefix.childCounts[0] = middle;
+                    prefix.top = numFrames;
+                    nextChildIndexes[frame] = middle;
+                    clearFrames(frame + 1, top);
+                    top = frame + 1;
+                    return prefix;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+
+        private TreeNode nextNode() {
+            if (pendingNode != null) {
+                final TreeNode node = pendingNode;
+                pendingNode = null;
+                pushFrame(node);
+                traversed();
+                return node;
+            }
+            final TreeNode[] localParents = parents; // avoid repeated getfield.
+            while (top > 0) {
+                final int frame = top - 1;
+                final int childIndex = nextChildIndexes[frame];
+                if (childIndex < childCounts[frame]) {
+                    nextChildIndexes[frame] = childIndex + 1;
+                    final TreeNode child = localParents[frame].getChildAt(childIndex);
+                    if (isIncluded(child)) {
+                        pushFrame(child);
+                        traversed();
+                        return child;
+                    }
+                } else {
+                    localParents[frame] = null;
+                    top = frame;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Pushes a frame to traverse the children of a node, if it has any.
+         */
+        private void pushFrame(final TreeNode node) {
+            final int childCount = node.getChildCount();
+            if (childCount > 0) {
+                if (top == parents.length) {
+                    grow();
+                }
+                parents[top] = node;
+                nextChildIndexes[top] = 0;
+                childCounts[top++] = childCount;
+            }
+        }
+
+        private void grow() {
+            final int capacity = parents.length * 2;
+            final TreeNode[] newParents = new TreeNode[capacity];
+            System.arraycopy(parents, 0, newParents, 0, top);
+            parents = newParents;
+            final int[] newChildIndexes = new int[capacity];
+            System.arraycopy(nextChildIndexes, 0, newChildIndexes, 0, top);
+            nextChildIndexes = newChildIndexes;
+            final int[] newChildCounts = new int[capacity];
+            System.arraycopy(childCounts, 0, newChildCounts, 0, top);
+            childCounts = newChildCounts;
+        }
+
+        private void clearFrames(final int from, final int to) {
+            for (int frame = from; frame < to; frame++) {
+                parents[frame] = null;
+            }
+        }
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Breadth first
+     */
+
+    /**
+     * Traverses a tree breadth first with a queue of the nodes waiting to be traversed.  When a node is traversed,
+     * its children join the end of the queue.  It splits by giving the first half of the queue to a new spliterator,
+     * which traverses those nodes and all of their children.
+     */
+    private static final class BreadthFirst extends TreeNodeSpliterator {
+
+        private final ArrayDeque<TreeNode> queue;
+
+        private BreadthFirst(final TreeNode node, final Predicate<TreeNode> condition) {
+            super(condition, estimateTreeSize(node));
+            queue = new ArrayDeque<>();
+            if (isIncluded(node)) {
+                queue.add(node);
+            } else {
+                estimate = 0;
+            }
+        }
+
+        private BreadthFirst(final Predicate<TreeNode> condition, final long estimate, final ArrayDeque<TreeNode> queue) {
+            super(condition, estimate);
+            this.queue = queue;
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super TreeNode> action) {
+            final TreeNode node = nextNode();
+            if (node != null) {
+                action.accept(node);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(final Consumer<? super TreeNode> action) {
+            TreeNode node;
+            while ((node = nextNode()) != null) {
+                action.accept(node);
+            }
+        }
+
+        @Override
+        public Spliterator<TreeNode> trySplit() {
+            final ArrayDeque<TreeNode> localQueue = queue; // avoid repeated getfield.
+            final int queued = localQueue.size();
+            if (queued == 1) { // split off the node itself, keeping its children to split further.
+                final TreeNode node = localQueue.poll();
+                queueChildren(node);
+                return splitSingleNode(node);
+            }
+            if (queued > 1) {
+                final int splitSize = queued / 2;
+                final ArrayDeque<TreeNode> splitQueue = new ArrayDeque<>(splitSize);
+                for (int count = 0; count < splitSize; count++) {
+                    splitQueue.add(localQueue.poll());
+                }
+                return new BreadthFirst(condition, splitEstimate(splitSize, queued), splitQueue);
+            }
+            return null;
+        }
+
+        @Override
+        public int characteristics() {
+            return NONNULL;
+        }
+
+        private TreeNode nextNode() {
+            final TreeNode node = queue.poll();
+            if (node != null) {
+                queueChildren(node);
+                traversed();
+            }
+            return node;
+        }
+
+        private void queueChildren(final TreeNode node) {
+            final ArrayDeque<TreeNode> localQueue = queue; // avoid repeated getfield.
+            final int childCount = node.getChildCount();
+            for (int childIndex = 0; childIndex < childCount; childIndex++) {
+                final TreeNode child = node.getChildAt(childIndex);
+                if (isIncluded(child)) {
+                    localQueue.add(child);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A {@link TreeTableModel.MetricsListener} which emits JDK Flight Recorder events for the operations of a
+ * TreeTableModel and its TreeTableRowSorter.  Each event carries the operation, the row count after it completed,
+ * the number of rows it affected, the depth of the node it applied to, and the number of sort keys in effect.
+ * The duration of each event is the duration of the operation.
+ * <p>
+ * The events appear under the "TreeTable" category in a recording, and can be enabled or given a duration threshold
+ * in a JFR settings file using their names, e.g. <code>net.byteseek.swing.treetable.Sort#threshold=10 ms</code>.
+ * If no recording is running, or an event type is not enabled, there is very little cost to leaving this listener added.
+ * <p>
+ * Operations can be nested (e.g. setting a filter refreshes the tree), so events are kept in a stack until they complete.
+ * This class is not thread-safe - operations are expected to run on the Event Dispatch Thread.
+ */
+public class TreeTableFlightRecorder implements TreeTableModel.MetricsListener {
+
+    /* *****************************************************************************************************************
+     *                                                Constants
+     */
+
+    protected static final String CATEGORY = "TreeTable";
+
+
+    /* *****************************************************************************************************************
+     *                                                Variables
+     */
+
+    protected final TreeTableModel model;
+    protected final Deque<OperationEvent> events = new ArrayDeque<>();
+
+
+    /* *****************************************************************************************************************
+     *                                                Constructors
+     */
+
+    /**
+     * Constructs a TreeTableFlightRecorder for a model.  It must still be added as a metrics listener to the model.
+     *
+     * @param model The model to record events for, which supplies the sort keys in effect.
+     * @throws IllegalArgumentException if the model is null.
+     */
+    public TreeTableFlightRecorder(final TreeTableModel model) {
+        if (model == null) {
+            throw new IllegalArgumentException("Object cannot be null: model");
+        }
+        this.model = model;
+    }
+
+    /**
+     * Constructs a TreeTableFlightRecorder and adds it as a metrics listener to the model.
+     *
+     * @param model The model to record events for.
+     * @return A TreeTableFlightRecorder emitting events for the model.
+     * @throws IllegalArgumentException if the model is null.
+     */
+    public static TreeTableFlightRecorder recordEvents(final TreeTableModel model) {
+        final TreeTableFlightRecorder recorder = new TreeTableFlightRecorder(model);
+        model.addMetricsListener(recorder);
+        return recorder;
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Listener methods
+     */
+
+    @Override
+    public void operationStarted(final Operation operation) {
+        final OperationEvent event = createEvent(operation);
+        event.begin();
+        events.push(event);
+    }
+
+    @Override
+    public void operationCompleted(final Operation operation, final long durationNanos,
+                                   final int rowCount, final int rowsAffected, final int nodeDepth) {
+        final OperationEvent event = events.poll();
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = operation.name();
+                event.rowCount = rowCount;
+                event.rowsAffected = rowsAffected;
+                event.nodeDepth = nodeDepth;
+                event.sortKeyCount = model.getSortKeys().size();
+                event.commit();
+            }
+        }
+    }
+
+    @Override
+    public void counted(final Counter counter, final int amount) {
+        // Counters are not recorded as events - there are too many of them.
+    }
+
+    /**
+     * Creates an event of the type for an operation.
+     *
+     * @param operation The operation to create an event for.
+     * @return An event of the type for the operation.
+     */
+    protected OperationEvent createEvent(final Operation operation) {
+        switch (operation) {
+            case SORT: case INSERT_SORT_INDICES: case REMOVE_SORT_INDICES: case UPDATE_SORT_INDICES:
+                return new SortEvent();
+            case REFRESH_TREE: case SET_FILTER: case SET_ROOT:
+                return new FilterEvent();
+            case EXPAND: case COLLAPSE: case EXPAND_TREE: case COLLAPSE_TREE:
+                return new ExpansionEvent();
+            default:
+                return new TreeModelChangeEvent();
+        }
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Event types
+     */
+
+    /**
+     * The fields common to all TreeTable events.
+     */
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public abstract static class OperationEvent extends Event {
+
+        @Label("Operation")
+        protected String operation;
+
+        @Label("Row Count")
+        @Description("The number of rows in the model after the operation completed")
+        protected int rowCount;
+
+        @Label("Rows Affected")
+        @Description("The number of rows inserted, removed or sorted by the operation")
+        protected int rowsAffected;
+
+        @Label("Node Depth")
+        @Description("The depth of the node the operation applied to, or -1 if it didn't apply to a node")
+        protected int nodeDepth;
+
+        @Label("Sort Keys")
+        @Description("The number of sort keys in effect")
+        protected int sortKeyCount;
+    }
+
+    /**
+     * A full sort, or patching the sort indexes when rows are inserted, removed or updated.
+     */
+    @Name("net.byteseek.swing.treetable.Sort")
+    @Label("TreeTable Sort")
+    @Description("TreeTableRowSorter sorting or patching its sort indexes")
+    public static class SortEvent extends OperationEvent {
+    }
+
+    /**
+     * Refreshing the tree, changing the node filter or setting a new root.
+     */
+    @Name("net.byteseek.swing.treetable.Filter")
+    @Label("TreeTable Filter")
+    @Description("TreeTableModel refreshing the tree, changing its node filter or setting a new root")
+    public static class FilterEvent extends OperationEvent {
+    }
+
+    /**
+     * Expanding or collapsing a node, or the whole tree.
+     */
+    @Name("net.byteseek.swing.treetable.Expansion")
+    @Label("TreeTable Expansion")
+    @Description("TreeTableModel expanding or collapsing a node")
+    public static class ExpansionEvent extends OperationEvent {
+    }
+
+    /**
+     * Handling a TreeModelListener callback.
+     */
+    @Name("net.byteseek.swing.treetable.TreeModelChange")
+    @Label("TreeTable Tree Model Change")
+    @Description("TreeTableModel handling a TreeModelEvent")
+    public static class TreeModelChangeEvent extends OperationEvent {
+    }
+
+}
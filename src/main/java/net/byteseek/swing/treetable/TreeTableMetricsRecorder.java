@@ -0,0 +1,288 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A {@link TreeTableModel.MetricsListener} which records metrics into memory.
+ * It keeps a histogram of durations for each operation, and a running total for each counter.
+ * <p>
+ * Durations are recorded into buckets whose upper bounds are powers of two nanoseconds, so recording is cheap and
+ * the memory used is fixed, at the cost of percentiles being approximate to within a factor of two.
+ * <p>
+ * This class is not thread-safe.  Metrics are reported on the Event Dispatch Thread,
+ * so they should also be read and reset on it.
+ */
+public class TreeTableMetricsRecorder implements TreeTableModel.MetricsListener {
+
+    /* *****************************************************************************************************************
+     *                                                Variables
+     */
+
+    protected final Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+    protected final long[] counters = new long[Counter.values().length];
+
+
+    /* *****************************************************************************************************************
+     *                                                Constructors
+     */
+
+    /**
+     * Constructs a TreeTableMetricsRecorder with an empty histogram for each operation.
+     */
+    public TreeTableMetricsRecorder() {
+        for (Operation operation : Operation.values()) {
+            histograms.put(operation, new Histogram());
+        }
+    }
+
+    /**
+     * Constructs a TreeTableMetricsRecorder and adds it as a metrics listener to the model.
+     *
+     * @param model The model to record metrics for.
+     * @return A TreeTableMetricsRecorder recording metrics for the model.
+     */
+    public static TreeTableMetricsRecorder recordMetrics(final TreeTableModel model) {
+        final TreeTableMetricsRecorder recorder = new TreeTableMetricsRecorder();
+        model.addMetricsListener(recorder);
+        return recorder;
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Listener methods
+     */
+
+    @Override
+    public void operationCompleted(final Operation operation, final long durationNanos,
+                                   final int rowCount, final int rowsAffected, final int nodeDepth) {
+        histograms.get(operation).record(durationNanos, rowsAffected);
+    }
+
+    @Override
+    public void counted(final Counter counter, final int amount) {
+        counters[counter.ordinal()] += amount;
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Getters
+     */
+
+    /**
+     * @param operation The operation to get the histogram for.
+     * @return The histogram of durations recorded for the operation.
+     */
+    public Histogram getHistogram(final Operation operation) {
+        return histograms.get(operation);
+    }
+
+    /**
+     * @param counter The counter to get.
+     * @return The total amount counted.
+     */
+    public long getCount(final Counter counter) {
+        return counters[counter.ordinal()];
+    }
+
+    /**
+     * Resets all histograms and counters.
+     */
+    public void reset() {
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        Arrays.fill(counters, 0);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder(getClass().getSimpleName()).append('\n');
+        for (Map.Entry<Operation, Histogram> entry : histograms.entrySet()) {
+            if (entry.getValue().getCount() > 0) {
+                builder.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+            }
+        }
+        for (Counter counter : Counter.values()) {
+            builder.append(counter).append(": ").append(counters[counter.ordinal()]).append('\n');
+        }
+        return builder.toString();
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Histogram
+     */
+
+    /**
+     * A histogram of durations, with buckets whose upper bounds are powers of two nanoseconds.
+     * It also records the exact count, total, minimum and maximum durations, and the total rows affected.
+     */
+    public static class Histogram {
+
+        protected static final int NUM_BUCKETS = 64;
+
+        protected final long[] buckets = new long[NUM_BUCKETS];
+        protected long count;
+        protected long totalNanos;
+        protected long minNanos = Long.MAX_VALUE;
+        protected long maxNanos;
+        protected long totalRowsAffected;
+
+        /**
+         * Records a duration.
+         *
+         * @param durationNanos The duration in nanoseconds.
+         * @param rowsAffected The number of rows affected by the operation.
+         */
+        public void record(final long durationNanos, final int rowsAffected) {
+            final long duration = Math.max(0, durationNanos);
+            buckets[getBucket(duration)]++;
+            count++;
+            totalNanos += duration;
+            totalRowsAffected += rowsAffected;
+            if (duration < minNanos) {
+                minNanos = duration;
+            }
+            if (duration > maxNanos) {
+                maxNanos = duration;
+            }
+        }
+
+        /**
+         * @return The number of durations recorded.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return The total of all durations recorded, in nanoseconds.
+         */
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * @return The smallest duration recorded in nanoseconds, or zero if none have been recorded.
+         */
+        public long getMinNanos() {
+            return count == 0 ? 0 : minNanos;
+        }
+
+        /**
+         * @return The largest duration recorded in nanoseconds.
+         */
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * @return The mean duration in nanoseconds, or zero if none have been recorded.
+         */
+        public long getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        /**
+         * @return The total number of rows affected by all the operations recorded.
+         */
+        public long getTotalRowsAffected() {
+            return totalRowsAffected;
+        }
+
+        /**
+         * Returns an approximate percentile, which is the upper bound of the bucket the percentile falls in,
+         * capped at the maximum duration recorded.
+         *
+         * @param percentile The percentile, from 0 to 100.
+         * @return The approximate duration in nanoseconds at the percentile, or zero if none have been recorded.
+         * @throws IllegalArgumentException if the percentile is not between 0 and 100.
+         */
+        public long getPercentileNanos(final double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+            }
+            if (count == 0) {
+                return 0;
+            }
+            final long target = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+            final long[] localBuckets = buckets; // avoid repeated getfield.
+            long seen = 0;
+            for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+                seen += localBuckets[bucket];
+                if (seen >= target) {
+                    return Math.min(getBucketUpperBound(bucket), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        /**
+         * Resets the histogram.
+         */
+        public void reset() {
+            Arrays.fill(buckets, 0);
+            count = 0;
+            totalNanos = 0;
+            minNanos = Long.MAX_VALUE;
+            maxNanos = 0;
+            totalRowsAffected = 0;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + " rows=" + totalRowsAffected + " min=" + getMinNanos() + "ns mean=" + getMeanNanos() +
+                   "ns p50=" + getPercentileNanos(50) + "ns p99=" + getPercentileNanos(99) + "ns max=" + maxNanos + "ns";
+        }
+
+        /**
+         * @param durationNanos A non-negative duration.
+         * @return The bucket the duration falls in - the number of bits needed to represent it.
+         */
+        protected static int getBucket(final long durationNanos) {
+            return Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(durationNanos));
+        }
+
+        /**
+         * @param bucket The bucket.
+         * @return The largest duration that falls in the bucket.
+         */
+        protected static long getBucketUpperBound(final int bucket) {
+            return bucket >= NUM_BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+        }
+    }
+
+}
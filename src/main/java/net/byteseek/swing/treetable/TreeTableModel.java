@@ -37,15 +37,24 @@ import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Predicate;
 import javax.swing.AbstractAction;
 import javax.swing.ActionMap;
@@ -69,7 +78,6 @@ import javax.swing.table.TableColumn;
 import javax.swing.table.TableColumnModel;
 import javax.swing.table.TableModel;
 import javax.swing.tree.TreeNode;
-import net.byteseek.utils.collections.BlockModifyArrayList;
 
 /**
  * A tree table model which binds to a JTable as a TableModel given a root tree node.
@@ -247,8 +255,11 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      * It uses a BlockModifyArrayList, which is a type of ArrayList that supports block insert and removals as single
      * operations.  The normal ArrayList handles this by individual inserts and removals, each of which shifts the
      * remaining elements in the array around, giving O(n * m) performance rather than O(n + m) for the BlockModifyArrayList.
+     * <p>
+     * The DisplayedNodeList also keeps the depth, parent model index and visible subtree size of each row,
+     * updated by the same block operations.
      */
-    protected final BlockModifyArrayList<TreeNode> displayedNodes = new BlockModifyArrayList<>();
+    protected final DisplayedNodeList displayedNodes = new DisplayedNodeList();
 
     /**
      * A map tracking which nodes are expanded, and how many visible children they have.
@@ -276,6 +287,44 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      */
     protected final Map<TreeNode, Integer> expandedNodeCounts = new WeakHashMap<>(); // If a TreeNode is removed and no longer used, it will be garbage collected.
 
+    /*
+     * Subtree aggregate columns
+     */
+    protected SubtreeAggregate<?>[] aggregates = new SubtreeAggregate<?>[0]; // the aggregate of each aggregate column.
+    protected int[] aggregateColumns = EMPTY_ARRAY; // the model index of each aggregate column.
+
+    /**
+     * A map of nodes to their aggregate values, in the same order as the aggregates.  Values are computed for a whole
+     * subtree in a single bottom-up pass when they are first needed, so if a node has values, all the nodes in its
+     * subtree have values too.  They are then updated along the path to the root when nodes change.
+     * It's a WeakHashMap to allow nodes which are no longer referenced anywhere else to be garbage collected.
+     */
+    protected final Map<TreeNode, Object[]> aggregateValues = new WeakHashMap<>();
+
+    /**
+     * A map of nodes to the aggregate values of all their children combined, in the same order as the aggregates.
+     * A node has combined child values if it has aggregate values, so a change to one child can be applied to its
+     * parent without combining all the other children again.
+     */
+    protected final Map<TreeNode, Object[]> childAggregateValues = new WeakHashMap<>();
+
+    /*
+     * Paged children
+     */
+    protected int childPageSize; // the number of children shown in each page of a wide parent, or zero to show them all.
+
+    /**
+     * A map of expanded parents whose children are paged, to the rows showing more of their children, which record
+     * the children shown.  The rows refer to their parents, so entries are removed when a parent is collapsed or removed
+     * from the tree, rather than using a WeakHashMap.
+     */
+    protected final Map<TreeNode, MoreChildrenNode> childPages = new HashMap<>();
+
+    /*
+     * Tree walking
+     */
+    private final Deque<NodeStack> freeNodeStacks = new ArrayDeque<>(); // reused to walk the tree without recursion.
+
     /*
      * Keyboard, mouse and tree events
      */
@@ -283,12 +332,26 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
     protected final List<ExpandCollapseListener> eventListeners = new ArrayList<>(2); // tree event listeners.
     protected TreeClickHandler clickHandler; // the handler which processes expand/collapse click events.
 
+    /**
+     * Listeners to metrics about model and row sorter operations.
+     * This is null if there are no listeners, so checking whether metrics are required costs a single null check.
+     */
+    protected MetricsListener[] metricsListeners;
+
     /**
      * The old header renderer assigned to the JTable before we bound to it.
      * We hold on to it, so we can replace it if we unbind the TreeTableModel from the JTable.
      */
     protected TableCellRenderer oldHeaderRenderer;
 
+    /**
+     * The selection model installed on the JTable when we bound to it, or null if the table's own selection model
+     * is being used.  The old selection model and update selection on sort setting are restored if we unbind.
+     */
+    protected TreeTableSelectionModel treeSelectionModel;
+    protected ListSelectionModel oldSelectionModel;
+    protected boolean oldUpdateSelectionOnSort;
+
 
     /* *****************************************************************************************************************
      *                                         Constructors
@@ -420,6 +483,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
                 rowSorter.setSortKeys(sortKeys);
             }
             tableToBind.setRowSorter(rowSorter);
+            bindSelectionModel(tableToBind);
             oldHeaderRenderer = tableToBind.getTableHeader().getDefaultRenderer();
             if (headerRenderer != null) {
                 tableToBind.getTableHeader().setDefaultRenderer(headerRenderer);
@@ -437,6 +501,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
             removeMouseListener();
             removeKeyboardActions();
             removeRowSorterAndCacheSortKeys();
+            unbindSelectionModel();
             table.setColumnModel(new DefaultTableColumnModel());
             table.setAutoCreateColumnsFromModel(true);
             table.setModel(new DefaultTableModel());
@@ -446,6 +511,53 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
         }
     }
 
+    /**
+     * Creates the selection model to install on a JTable when it is bound.
+     * The default implementation returns a {@link TreeTableSelectionModel}, which tracks selected nodes rather than
+     * rows, so the selection does not need updating when nodes are expanded, collapsed or sorted.
+     * Override this to return null if the table should keep its existing selection model.
+     *
+     * @return The selection model to install on a bound JTable, or null if the existing one should be kept.
+     */
+    protected TreeTableSelectionModel createSelectionModel() {
+        return new TreeTableSelectionModel(this);
+    }
+
+    /**
+     * Installs a tree selection model on the table, if one is created.
+     * The JTable no longer needs to cache and restore the selection on sort changes, as the selection is held
+     * against nodes, so updateSelectionOnSort is turned off while bound.
+     *
+     * @param tableToBind The table to install the selection model on.
+     */
+    protected void bindSelectionModel(final JTable tableToBind) {
+        treeSelectionModel = createSelectionModel();
+        if (treeSelectionModel != null) {
+            oldSelectionModel = tableToBind.getSelectionModel();
+            oldUpdateSelectionOnSort = tableToBind.getUpdateSelectionOnSort();
+            treeSelectionModel.setSelectionMode(oldSelectionModel.getSelectionMode());
+            tableToBind.setSelectionModel(treeSelectionModel);
+            tableToBind.setUpdateSelectionOnSort(false);
+            treeSelectionModel.bindTable(tableToBind);
+        }
+    }
+
+    /**
+     * Restores the selection model and update selection on sort setting the table had before it was bound.
+     */
+    protected void unbindSelectionModel() {
+        if (treeSelectionModel != null) {
+            treeSelectionModel.unbindTable();
+            if (table.getSelectionModel() == treeSelectionModel) {
+                oldSelectionModel.clearSelection();
+                table.setSelectionModel(oldSelectionModel);
+            }
+            table.setUpdateSelectionOnSort(oldUpdateSelectionOnSort);
+            treeSelectionModel = null;
+            oldSelectionModel = null;
+        }
+    }
+
 
     /* *****************************************************************************************************************
      *                             Optional methods for subclasses to implement
@@ -760,6 +872,282 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
     }
 
 
+    /* *****************************************************************************************************************
+     *                                    Top nodes across the tree
+     *
+     * Methods which find the nodes which sort first anywhere in the tree, whether they are visible or not.
+     */
+
+    /**
+     * Returns the nodes which sort first by the current sort keys anywhere in the tree, such as the largest items,
+     * whether they are visible or not.  Nodes inside filtered subtrees are not included.
+     *
+     * @param count The maximum number of nodes to return.
+     * @return The top nodes in sort order, best first.
+     * @throws IllegalArgumentException if the count is negative.
+     */
+    public List<TreeNode> getTopNodes(final int count) {
+        return getTopNodes(count, false, 1);
+    }
+
+    /**
+     * Returns the nodes which sort first by the current sort keys anywhere in the tree, whether they are visible
+     * or not.  Nodes are compared with the node comparator of the row sorter if a table is bound, without any grouping,
+     * and nodes which compare equal are in tree order.  The root is only included if it is shown.
+     * <p>
+     * Every node is compared with the worst of the best nodes found so far, which are kept in a bounded heap,
+     * so selection takes O(n log count) time.  With a parallelism of more than one, the subtrees of the root are split
+     * between threads, each selecting its own top nodes, which are then merged.  Column values, the comparator and the
+     * filter must then be safe to read from several threads, and the tree must not change while selecting.
+     * Selection is done on the calling thread if there are metrics listeners, or a sort key is on an aggregate column,
+     * as they are not thread-safe.
+     *
+     * @param count The maximum number of nodes to return.
+     * @param includeFiltered Whether to include nodes in filtered subtrees.
+     * @param parallelism The number of threads to select nodes with.
+     * @return The top nodes in sort order, best first.
+     * @throws IllegalArgumentException if the count is negative or the parallelism is less than one.
+     * @throws IllegalStateException if the thread is interrupted while waiting for nodes to be selected.
+     */
+    public List<TreeNode> getTopNodes(final int count, final boolean includeFiltered, final int parallelism) {
+        if (count < 0 || parallelism < 1) {
+            throw new IllegalArgumentException("Count cannot be negative and parallelism must be positive: " + count + ", " + parallelism);
+        }
+        final long startTime = operationStarted(MetricsListener.Operation.SELECT_TOP_NODES);
+        final int rowsBefore = displayedNodes.size();
+        try {
+            final Comparator<TopNode> order = getTopNodeOrder(getTopNodeComparator());
+            final TreeNode localRoot = rootNode; // avoid repeated getfield.
+            final PriorityQueue<TopNode> best = new PriorityQueue<>(getHeapCapacity(count), order.reversed()); // worst first.
+            if (showRoot && (includeFiltered || !isFiltered(localRoot))) {
+                offerTopNode(best, count, order, new TopNode(localRoot, -1, 0));
+            }
+            final int numChildren = includeFiltered || !showRoot || !isFiltered(localRoot) ? localRoot.getChildCount() : 0;
+            final int numTasks = count == 0 || numChildren == 0 || !canSelectInParallel() ? 1
+                                 : Math.min(numChildren, parallelism * 4);
+            if (numTasks == 1) {
+                selectTopNodes(best, count, order, includeFiltered, 0, numChildren, 0);
+            } else {
+                selectTopNodesInParallel(best, count, order, includeFiltered, numChildren, numTasks, parallelism);
+            }
+            final List<TopNode> sorted = new ArrayList<>(best);
+            sorted.sort(order);
+            final List<TreeNode> result = new ArrayList<>(sorted.size());
+            for (TopNode topNode : sorted) {
+                result.add(topNode.node);
+            }
+            return result;
+        } finally {
+            operationCompleted(MetricsListener.Operation.SELECT_TOP_NODES, startTime, rowsBefore);
+        }
+    }
+
+    /**
+     * Expands the ancestors of a node so it is visible in the tree, and if a table is bound, selects it and scrolls
+     * it into view.  This can be used to jump to a node found with {@link #getTopNodes(int)}.
+     * If the node or an ancestor is a child of a paged parent which is not shown yet, it is shown.
+     *
+     * @param node The node to reveal.
+     * @return true if the node is now visible, or false if it is not in the tree, or it or an ancestor is filtered.
+     * @throws IllegalArgumentException if the node is null.
+     */
+    public boolean revealNode(final TreeNode node) {
+        checkNull(node, "node");
+        final List<TreeNode> ancestors = new ArrayList<>();
+        for (TreeNode ancestor = node.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+            ancestors.add(ancestor);
+        }
+        if (!canReveal(node, ancestors)) {
+            return false;
+        }
+        for (int index = ancestors.size() - 1; index >= 0; index--) {
+            final TreeNode ancestor = ancestors.get(index);
+            expandNode(ancestor);
+            final TreeNode child = index == 0 ? node : ancestors.get(index - 1);
+            final MoreChildrenNode page = childPages.get(ancestor);
+            if (page != null && !page.isShown(child) && !isFiltered(child)) { // show it even if it's not in a page yet.
+                showPagedChildren(ancestor, page, Collections.singleton(child));
+            }
+        }
+        if (!isVisible(node)) {
+            return false;
+        }
+        if (table != null) {
+            final int tableRow = table.convertRowIndexToView(getModelIndexForTreeNode(node));
+            if (tableRow >= 0) {
+                table.getSelectionModel().setSelectionInterval(tableRow, tableRow);
+                table.scrollRectToVisible(table.getCellRect(tableRow, 0, true));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether a node would be visible once its ancestors are expanded and any pages hiding it are shown,
+     * so nothing is expanded for a node which can't be revealed.
+     *
+     * @param node The node to reveal.
+     * @param ancestors The ancestors of the node, from its parent up to the top of its tree.
+     * @return true if the node is in the tree, and it isn't filtered, a hidden root, or under a filtered ancestor.
+     */
+    private boolean canReveal(final TreeNode node, final List<TreeNode> ancestors) {
+        final TreeNode top = ancestors.isEmpty() ? node : ancestors.get(ancestors.size() - 1);
+        if (top != rootNode || node == rootNode && !showRoot || isFiltered(node)) {
+            return false;
+        }
+        for (TreeNode ancestor : ancestors) {
+            if (isFiltered(ancestor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The comparator to find top nodes with: the node comparator of the row sorter if a table is bound and
+     *         sorted by a TreeTableRowSorter, or a new TreeNodeComparator otherwise.  The sort keys of a
+     *         TreeNodeComparator are compared without any grouping.
+     */
+    protected Comparator<TreeNode> getTopNodeComparator() {
+        Comparator<TreeNode> comparator = null;
+        if (table != null && table.getRowSorter() instanceof TreeTableRowSorter) {
+            comparator = ((TreeTableRowSorter) table.getRowSorter()).getNodeComparator();
+        }
+        if (comparator == null) {
+            comparator = new TreeNodeComparator(this);
+        }
+        if (comparator instanceof TreeNodeComparator) {
+            final TreeNodeComparator nodeComparator = (TreeNodeComparator) comparator;
+            return nodeComparator::compareSortKeys;
+        }
+        return comparator;
+    }
+
+    /**
+     * @return true if top nodes can be selected on several threads: there are no metrics listeners,
+     *         and no sort key is on an aggregate column.
+     */
+    protected boolean canSelectInParallel() {
+        if (metricsListeners != null) {
+            return false;
+        }
+        for (RowSorter.SortKey key : getSortKeys()) {
+            if (isAggregateColumn(key.getColumn())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Selects the top nodes in the subtrees of a range of children of the root, walking each subtree depth first
+     * without recursion, and skipping filtered subtrees unless they are included.
+     */
+    private void selectTopNodes(final PriorityQueue<TopNode> best, final int count, final Comparator<TopNode> order,
+                                final boolean includeFiltered, final int fromChild, final int toChild, final int task) {
+        final List<TreeNode> stack = new ArrayList<>();
+        int sequence = 0;
+        for (int childIndex = toChild - 1; childIndex >= fromChild; childIndex--) {
+            stack.add(rootNode.getChildAt(childIndex));
+        }
+        while (!stack.isEmpty()) {
+            final TreeNode node = stack.remove(stack.size() - 1);
+            if (includeFiltered || !isFiltered(node)) {
+                offerTopNode(best, count, order, new TopNode(node, task, sequence++));
+                for (int childIndex = node.getChildCount() - 1; childIndex >= 0; childIndex--) {
+                    stack.add(node.getChildAt(childIndex));
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the children of the root into consecutive ranges, selects the top nodes of each range on a thread pool,
+     * and merges them into the best nodes.  The ranges are numbered in order, so nodes which compare equal stay in
+     * tree order.
+     */
+    private void selectTopNodesInParallel(final PriorityQueue<TopNode> best, final int count, final Comparator<TopNode> order,
+                                          final boolean includeFiltered, final int numChildren, final int numTasks,
+                                          final int parallelism) {
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            final Thread thread = new Thread(runnable, "TreeTableModel top nodes");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final List<Future<PriorityQueue<TopNode>>> futures = new ArrayList<>(numTasks);
+            for (int task = 0; task < numTasks; task++) {
+                final int taskNumber = task;
+                final int fromChild = (int) ((long) numChildren * task / numTasks);
+                final int toChild = (int) ((long) numChildren * (task + 1) / numTasks);
+                futures.add(executor.submit(() -> {
+                    final PriorityQueue<TopNode> taskBest = new PriorityQueue<>(getHeapCapacity(count), order.reversed());
+                    selectTopNodes(taskBest, count, order, includeFiltered, fromChild, toChild, taskNumber);
+                    return taskBest;
+                }));
+            }
+            for (Future<PriorityQueue<TopNode>> future : futures) {
+                for (TopNode topNode : getTaskResult(future)) {
+                    offerTopNode(best, count, order, topNode);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while selecting top nodes", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> T getTaskResult(final Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Adds a node to a bounded heap of the best nodes if there is room, or if it is better than the worst of them.
+     */
+    private static void offerTopNode(final PriorityQueue<TopNode> best, final int count, final Comparator<TopNode> order,
+                                     final TopNode topNode) {
+        if (best.size() < count) {
+            best.add(topNode);
+        } else if (count > 0 && order.compare(topNode, best.peek()) < 0) {
+            best.poll();
+            best.add(topNode);
+        }
+    }
+
+    /**
+     * @return An order of top nodes by a node comparator, then in tree order if they compare equal.
+     */
+    private static Comparator<TopNode> getTopNodeOrder(final Comparator<TreeNode> comparator) {
+        return (topNode1, topNode2) -> {
+            final int comparison = comparator.compare(topNode1.node, topNode2.node);
+            if (comparison != 0) {
+                return comparison;
+            }
+            return topNode1.task != topNode2.task ? Integer.compare(topNode1.task, topNode2.task)
+                                                  : Integer.compare(topNode1.sequence, topNode2.sequence);
+        };
+    }
+
+    /**
+     * @return The initial capacity of a heap of top nodes, which grows if more are found.
+     */
+    private static int getHeapCapacity(final int count) {
+        return Math.max(1, Math.min(count, 1024));
+    }
+
+
     /* *****************************************************************************************************************
      *                                    Filtering methods
      *
@@ -782,11 +1170,17 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      * Even if it isn't filtered, it still might not be visible for other reasons, and it can be filtered even if it's not visible.
      * If you need to check visibility of a node in the tree (which takes account of filtering too), use {@link #isVisible(TreeNode)}.
      *
+     * A row showing more children of a paged parent is never filtered.
+     *
      * @param node The node te test.
      * @return true if a real node passed in matches an active filter, false in all other circumstances.
      */
     public boolean isFiltered(final TreeNode node) {
-        return filterPredicate != null && node != null && filterPredicate.test(node);
+        if (filterPredicate != null && node != null && !(node instanceof MoreChildrenNode)) {
+            countMetric(MetricsListener.Counter.FILTER_EVALUATIONS, 1);
+            return filterPredicate.test(node);
+        }
+        return false;
     }
 
     /**
@@ -794,25 +1188,834 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      *
      * @param filterPredicate The predicate used to filter a node.  If the test returns true, the node is filtered.
      */
-    public void setNodeFilter(final Predicate<TreeNode> filterPredicate) {
-        if (this.filterPredicate != filterPredicate) {
-            this.filterPredicate = filterPredicate;
-            refreshTree();
+    public void setNodeFilter(final Predicate<TreeNode> filterPredicate) {
+        if (this.filterPredicate != filterPredicate) {
+            final long startTime = operationStarted(MetricsListener.Operation.SET_FILTER);
+            final int rowsBefore = displayedNodes.size();
+            try {
+                this.filterPredicate = filterPredicate;
+                refreshTree();
+            } finally {
+                operationCompleted(MetricsListener.Operation.SET_FILTER, startTime, rowsBefore);
+            }
+        }
+    }
+
+    /**
+     * @return The current filter assigned to the model, or null if no filter is set.
+     */
+    public Predicate<TreeNode> getNodeFilter() {
+        return filterPredicate;
+    }
+
+    /**
+     * Clears any filtering set on the model.
+     */
+    public void clearNodeFilter() {
+        setNodeFilter(null);
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                    Paged children
+     *
+     * Methods which show the children of very wide parents a page at a time, followed by a row showing more.
+     */
+
+    /**
+     * Sets how many children of a wide parent are shown at a time.  When a parent with more children than this is
+     * expanded, only the first page of its children in sort order is shown, followed by a {@link MoreChildrenNode} row
+     * which shows the next page when it is activated.  This avoids building rows for every child of a parent with
+     * millions of children at once.  Any existing pages are discarded and the visible tree is rebuilt.
+     * <p>
+     * Pages are selected in the sort order when the parent is expanded, or the next page is shown.  Children which are
+     * shown stay shown if the sort keys change, and are sorted as usual, with the row showing more children after them.
+     * To page a parent again in the new order, collapse and expand it.
+     *
+     * @param pageSize The number of children to show in each page, or zero to show all children.
+     * @throws IllegalArgumentException if the page size is negative.
+     */
+    public void setChildPageSize(final int pageSize) {
+        if (pageSize < 0) {
+            throw new IllegalArgumentException("Page size cannot be negative: " + pageSize);
+        }
+        if (pageSize != childPageSize) {
+            childPageSize = pageSize;
+            childPages.clear();
+            refreshTree();
+        }
+    }
+
+    /**
+     * @return The number of children shown in each page of a wide parent, or zero if all children are shown.
+     */
+    public int getChildPageSize() {
+        return childPageSize;
+    }
+
+    /**
+     * @param parentNode The parent node to check.
+     * @return true if the children of the parent are paged.
+     */
+    public boolean isPaged(final TreeNode parentNode) {
+        return childPages.containsKey(parentNode);
+    }
+
+    /**
+     * @param parentNode The parent node to get the row showing more children for.
+     * @return The row showing more children of the parent, or null if its children are not paged.
+     *         The row is only visible while the parent has children which are not shown.
+     */
+    public MoreChildrenNode getMoreChildrenNode(final TreeNode parentNode) {
+        return childPages.get(parentNode);
+    }
+
+    /**
+     * Shows the next page of children of a paged parent, in sort order.  This is what activating the row showing more
+     * children does.
+     *
+     * @param parentNode The paged parent to show more children of.
+     * @return The number of children which are now shown, or zero if the parent is not paged or all of its children
+     *         are already shown.
+     * @throws IllegalArgumentException if the parent node is null.
+     */
+    public int showMoreChildren(final TreeNode parentNode) {
+        checkNull(parentNode, "parentNode");
+        final MoreChildrenNode page = childPages.get(parentNode);
+        if (page == null || page.getHiddenCount() == 0) {
+            return 0;
+        }
+        final long startTime = operationStarted(MetricsListener.Operation.SHOW_MORE_CHILDREN);
+        final int rowsBefore = displayedNodes.size();
+        try {
+            final Set<TreeNode> children = selectChildPage(parentNode, page, getChildPageSize(parentNode));
+            showPagedChildren(parentNode, page, children);
+            return children.size();
+        } finally {
+            operationCompleted(MetricsListener.Operation.SHOW_MORE_CHILDREN, startTime, rowsBefore);
+        }
+    }
+
+    /**
+     * Returns the page size for the children of a parent.  By default, this is the page size set on the model.
+     * Subclasses can override this to page some parents differently, or not at all.
+     *
+     * @param parentNode The parent node.
+     * @return The number of children of the parent to show in each page, or zero to show all of them.
+     */
+    protected int getChildPageSize(final TreeNode parentNode) {
+        return childPageSize;
+    }
+
+    /**
+     * Returns the row showing more children of a parent, creating it if the parent has more children than its page size.
+     *
+     * @param parentNode The parent node which is expanding or being rebuilt.
+     * @return The row showing more children of the parent, or null if its children are not paged.
+     */
+    protected MoreChildrenNode getChildPage(final TreeNode parentNode) {
+        MoreChildrenNode page = childPages.get(parentNode);
+        if (page == null) {
+            final int pageSize = getChildPageSize(parentNode);
+            if (pageSize > 0 && parentNode.getChildCount() > pageSize) {
+                page = new MoreChildrenNode(parentNode);
+                childPages.put(parentNode, page);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Returns true if a node is a child of a paged parent which is not shown, or is a row showing more children which
+     * has no more children to show.  This says nothing about whether the node is filtered, or its parent is expanded.
+     *
+     * @param node The node to check.
+     * @return true if the node is not shown because its parent is paged.
+     */
+    protected boolean isPagedOut(final TreeNode node) {
+        if (childPages.isEmpty() || node == null) {
+            return node instanceof MoreChildrenNode;
+        }
+        final MoreChildrenNode page = childPages.get(node.getParent());
+        if (node instanceof MoreChildrenNode) {
+            return page != node || page.getHiddenCount() == 0;
+        }
+        return page != null && !page.isShown(node);
+    }
+
+    /**
+     * Returns the row showing more children of a parent whose visible children are about to be built, or null if its
+     * children are not paged.  Children which are no longer unfiltered children of the parent stop being shown,
+     * and if no children are still shown, the first page is selected.  The number of children not shown is reset
+     * to zero, to be counted again as the children are built.
+     *
+     * @param parentNode The parent node whose visible children are about to be built.
+     * @return The row showing more children of the parent, or null if its children are not paged.
+     */
+    protected MoreChildrenNode prepareChildPage(final TreeNode parentNode) {
+        final MoreChildrenNode page = getChildPage(parentNode);
+        if (page != null) {
+            page.retainShownChildren(child -> child.getParent() == parentNode && !isFiltered(child));
+            if (page.getShownCount() == 0) {
+                page.addShownChildren(selectChildPage(parentNode, page, getChildPageSize(parentNode)));
+            }
+            page.setHiddenCount(0);
+        }
+        return page;
+    }
+
+    /**
+     * Selects the next page of children of a paged parent: the unfiltered children which are not shown yet and sort
+     * first, by the comparator from {@link #getChildPageComparator()}.  Children which compare equal are selected in
+     * tree order.  Each child is compared with the worst of the best children found so far, which are kept in a bounded
+     * heap, so selection takes O(n log count) time.
+     *
+     * @param parentNode The paged parent node.
+     * @param page The row showing more children of the parent.
+     * @param count The maximum number of children to select.
+     * @return The children selected, which are not yet recorded as shown.
+     */
+    protected Set<TreeNode> selectChildPage(final TreeNode parentNode, final MoreChildrenNode page, final int count) {
+        final Set<TreeNode> selected = MoreChildrenNode.createChildSet();
+        final int numChildren = parentNode.getChildCount();
+        final Comparator<TreeNode> comparator = getChildPageComparator();
+        if (comparator == null) { // not sorted - the page is the next children in tree order.
+            for (int childIndex = 0; childIndex < numChildren && selected.size() < count; childIndex++) {
+                final TreeNode child = parentNode.getChildAt(childIndex);
+                if (!page.isShown(child) && !isFiltered(child)) {
+                    selected.add(child);
+                }
+            }
+        } else {
+            final Comparator<TopNode> order = getTopNodeOrder(comparator);
+            final PriorityQueue<TopNode> best = new PriorityQueue<>(getHeapCapacity(count), order.reversed()); // worst first.
+            for (int childIndex = 0; childIndex < numChildren; childIndex++) {
+                final TreeNode child = parentNode.getChildAt(childIndex);
+                if (!page.isShown(child) && !isFiltered(child)) {
+                    offerTopNode(best, count, order, new TopNode(child, 0, childIndex));
+                }
+            }
+            for (TopNode topNode : best) {
+                selected.add(topNode.node);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @return The comparator to select pages of children with, or null if there are no sort keys or grouping,
+     *         in which case pages are in tree order.  This is the node comparator of the row sorter if a table is bound
+     *         and sorted by a TreeTableRowSorter, or a new TreeNodeComparator otherwise.
+     */
+    protected Comparator<TreeNode> getChildPageComparator() {
+        if (groupingComparator == null && getSortKeys().isEmpty()) {
+            return null;
+        }
+        if (table != null && table.getRowSorter() instanceof TreeTableRowSorter) {
+            final Comparator<TreeNode> comparator = ((TreeTableRowSorter) table.getRowSorter()).getNodeComparator();
+            if (comparator != null) {
+                return comparator;
+            }
+        }
+        return new TreeNodeComparator(this);
+    }
+
+    /**
+     * Records children of a paged parent as shown, and if the children of the parent are visible, inserts their rows.
+     *
+     * @param parentNode The paged parent node.
+     * @param page The row showing more children of the parent.
+     * @param children The children of the parent to show, which are not shown yet.
+     */
+    protected void showPagedChildren(final TreeNode parentNode, final MoreChildrenNode page, final Set<TreeNode> children) {
+        if (!children.isEmpty()) {
+            page.addShownChildren(children);
+            page.setHiddenCount(page.getHiddenCount() - children.size());
+            if (childrenWillBeVisible(parentNode)) {
+                updateVisibleChildCounts(parentNode, addShownChildRows(parentNode, page, children));
+            }
+        }
+    }
+
+    /**
+     * Inserts the rows of newly shown children of a paged parent whose children are visible, among the rows of the
+     * children already shown, in tree order.  The children are inserted in blocks of consecutive rows,
+     * and the row showing more children is updated, or removed if all children are now shown.
+     *
+     * @param parentNode The paged parent node, whose children are visible.
+     * @param page The row showing more children of the parent.
+     * @param children The newly shown children.
+     * @return The change in the number of visible rows.
+     */
+    protected int addShownChildRows(final TreeNode parentNode, final MoreChildrenNode page, final Set<TreeNode> children) {
+        final DisplayedNodeList localNodes = displayedNodes; // avoid repeated getfield.
+        final List<TreeNode> newRows = new ArrayList<>();
+        int row = isHiddenRoot(parentNode) ? 0 : getModelIndexForTreeNode(parentNode) + 1;
+        int rowsChanged = 0;
+        for (int childIndex = 0; childIndex < parentNode.getChildCount(); childIndex++) {
+            final TreeNode child = parentNode.getChildAt(childIndex);
+            if (children.contains(child)) {
+                newRows.add(child);
+                buildVisibleChildren(child, newRows);
+            } else if (page.isShown(child)) { // already visible - insert any new rows before it and skip its rows.
+                final int inserted = insertRows(row, newRows);
+                row += inserted;
+                rowsChanged += inserted;
+                row += localNodes.getSubtreeSize(row) + 1;
+            }
+        }
+        final int inserted = insertRows(row, newRows);
+        row += inserted;
+        rowsChanged += inserted;
+        if (page.getHiddenCount() == 0) { // all children are now shown - remove the row showing more.
+            removeVisibleRows(row, 1);
+            rowsChanged--;
+        } else {
+            fireTableRowsUpdated(row, row);
+        }
+        return rowsChanged;
+    }
+
+    /**
+     * Records unfiltered children inserted into a paged parent whose children are visible as not shown, and updates the
+     * row showing more children, inserting it at the end of the children if it wasn't visible.
+     *
+     * @param parentNode The paged parent node, whose children are visible.
+     * @param page The row showing more children of the parent.
+     * @param childIndices The indices of the inserted children.
+     * @return The number of rows inserted, which is one if the row showing more children was inserted, or zero.
+     */
+    protected int addHiddenChildren(final TreeNode parentNode, final MoreChildrenNode page, final int... childIndices) {
+        int numHidden = 0;
+        for (int childIndex : childIndices) {
+            if (!isFiltered(parentNode.getChildAt(childIndex))) {
+                numHidden++;
+            }
+        }
+        if (numHidden > 0) {
+            final int hiddenBefore = page.getHiddenCount();
+            page.setHiddenCount(hiddenBefore + numHidden);
+            final int endRow = getEndOfChildRows(parentNode);
+            if (hiddenBefore == 0) {
+                displayedNodes.add(endRow, page);
+                fireTableRowsInserted(endRow, endRow);
+                return 1;
+            }
+            fireTableRowsUpdated(endRow - 1, endRow - 1);
+        }
+        return 0;
+    }
+
+    /**
+     * Updates the children recorded as shown or not shown for a paged parent whose children are visible, after children
+     * have been removed from it and the rows of any shown ones have been removed.  The row showing more children is
+     * updated, or removed if there are no more children to show.
+     *
+     * @param parentNode The paged parent node, whose children are visible.
+     * @param page The row showing more children of the parent.
+     * @param removedNodes The removed children.
+     * @return The number of rows removed, which is one if the row showing more children was removed, or zero.
+     */
+    protected int removeHiddenChildren(final TreeNode parentNode, final MoreChildrenNode page, final Set<?> removedNodes) {
+        int numHidden = 0;
+        for (Object removedNode : removedNodes) {
+            if (!page.removeShownChild(removedNode) && !isFiltered((TreeNode) removedNode)) {
+                numHidden++;
+            }
+        }
+        if (numHidden > 0 && page.getHiddenCount() > 0) {
+            page.setHiddenCount(page.getHiddenCount() - numHidden);
+            final int moreRow = getEndOfChildRows(parentNode) - 1;
+            if (page.getHiddenCount() == 0) {
+                removeVisibleRows(moreRow, 1);
+                return 1;
+            }
+            fireTableRowsUpdated(moreRow, moreRow);
+        }
+        return 0;
+    }
+
+    /**
+     * Removes the pages of any parents which are no longer in the tree.
+     */
+    protected void removeDetachedChildPages() {
+        if (!childPages.isEmpty()) {
+            final TreeNode localRoot = rootNode; // avoid repeated getfield.
+            childPages.keySet().removeIf(parentNode -> parentNode != localRoot &&
+                                                       TreeUtils.getFurthestAncestor(parentNode, node -> true) != localRoot);
+        }
+    }
+
+    /**
+     * @param parentNode A parent node whose children are visible.
+     * @return The model index after the last visible row of the subtree of the parent.
+     */
+    private int getEndOfChildRows(final TreeNode parentNode) {
+        if (isHiddenRoot(parentNode)) {
+            return displayedNodes.size();
+        }
+        final int parentIndex = getModelIndexForTreeNode(parentNode);
+        return parentIndex + displayedNodes.getSubtreeSize(parentIndex) + 1;
+    }
+
+    /**
+     * Inserts a block of rows at a model index and notifies the table, then clears the list of rows.
+     *
+     * @return The number of rows inserted.
+     */
+    private int insertRows(final int modelIndex, final List<TreeNode> rows) {
+        final int numRows = rows.size();
+        if (numRows > 0) {
+            displayedNodes.addAll(modelIndex, rows);
+            fireTableRowsInserted(modelIndex, modelIndex + numRows - 1);
+            rows.clear();
+        }
+        return numRows;
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                    Subtree aggregate columns
+     *
+     * Methods which define columns whose values combine a value of every node in the subtree of a node.
+     */
+
+    /**
+     * Sets a column to show an aggregate of the nodes in the subtree of each node, such as the total size of all its
+     * descendants.  Aggregate values are obtained with {@link #getNodeValue(TreeNode, int)} for display and sorting,
+     * rather than {@link #getColumnValue(TreeNode, int)}, which is not called for an aggregate column.
+     * <p>
+     * A column can aggregate its own values, so rows show their own value and groups show the total of their subtree.
+     * <p>
+     * Values are computed for a subtree in a single bottom-up pass when they are first needed.
+     * They are then updated along the path to the root when the model is told that nodes are inserted, removed
+     * or changed, so reading them to render or sort is O(1).  A node whose value changes without the model being
+     * told will have a stale aggregate value.
+     *
+     * @param column The model index of the column to show the aggregate values in.
+     * @param aggregate The aggregate to show in the column.
+     * @throws IllegalArgumentException if the aggregate is null, if it aggregates another aggregate column,
+     *                                  or if the column is aggregated by another aggregate column.
+     */
+    public void setAggregateColumn(final int column, final SubtreeAggregate<?> aggregate) {
+        checkNull(aggregate, "aggregate");
+        final int sourceColumn = aggregate.getSourceColumn();
+        if (sourceColumn != column && isAggregateColumn(sourceColumn)) {
+            throw new IllegalArgumentException("An aggregate cannot aggregate an aggregate column: " + sourceColumn);
+        }
+        for (int slot = 0; slot < aggregates.length; slot++) {
+            if (aggregates[slot].getSourceColumn() == column && aggregateColumns[slot] != column) {
+                throw new IllegalArgumentException("Column " + column + " is aggregated by column " + aggregateColumns[slot]);
+            }
+        }
+        final int slot = getAggregateSlot(column);
+        if (slot >= 0) {
+            aggregates[slot] = aggregate;
+        } else {
+            final int numAggregates = aggregates.length;
+            aggregates = Arrays.copyOf(aggregates, numAggregates + 1);
+            aggregateColumns = Arrays.copyOf(aggregateColumns, numAggregates + 1);
+            aggregates[numAggregates] = aggregate;
+            aggregateColumns[numAggregates] = column;
+        }
+        aggregatesRedefined();
+    }
+
+    /**
+     * Removes an aggregate from a column, so its values are obtained from {@link #getColumnValue(TreeNode, int)} again.
+     * Nothing happens if the column is not an aggregate column.
+     *
+     * @param column The model index of the aggregate column to remove.
+     */
+    public void removeAggregateColumn(final int column) {
+        final int slot = getAggregateSlot(column);
+        if (slot >= 0) {
+            final int numAggregates = aggregates.length;
+            final SubtreeAggregate<?>[] newAggregates = new SubtreeAggregate<?>[numAggregates - 1];
+            final int[] newColumns = new int[numAggregates - 1];
+            System.arraycopy(aggregates, 0, newAggregates, 0, slot);
+            System.arraycopy(aggregates, slot + 1, newAggregates, slot, numAggregates - slot - 1);
+            System.arraycopy(aggregateColumns, 0, newColumns, 0, slot);
+            System.arraycopy(aggregateColumns, slot + 1, newColumns, slot, numAggregates - slot - 1);
+            aggregates = newAggregates;
+            aggregateColumns = newColumns;
+            aggregatesRedefined();
+        }
+    }
+
+    /**
+     * @param column The model index of a column.
+     * @return true if the column shows aggregate values.
+     */
+    public boolean isAggregateColumn(final int column) {
+        return getAggregateSlot(column) >= 0;
+    }
+
+    /**
+     * @param column The model index of a column.
+     * @return The aggregate shown in the column, or null if it is not an aggregate column.
+     */
+    public SubtreeAggregate<?> getAggregate(final int column) {
+        final int slot = getAggregateSlot(column);
+        return slot < 0 ? null : aggregates[slot];
+    }
+
+    /**
+     * Returns the aggregate value of a node for an aggregate column.  If the values of the node have not been computed
+     * yet, they are computed for its whole subtree.
+     *
+     * @param node The node to get the aggregate value of.
+     * @param column The model index of an aggregate column.
+     * @return The aggregate value of the node.
+     * @throws IllegalArgumentException if the node is null or the column is not an aggregate column.
+     */
+    public Object getAggregateValue(final TreeNode node, final int column) {
+        checkNull(node, "node");
+        final int slot = getAggregateSlot(column);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Column is not an aggregate column: " + column);
+        }
+        return getAggregateValues(node)[slot];
+    }
+
+    /**
+     * Returns the value of a column for a node, which is its aggregate value for an aggregate column, or otherwise
+     * the value given by {@link #getColumnValue(TreeNode, int)}.  The table and sorting get values with this method.
+     *
+     * @param node The node to get the value of.
+     * @param column The model index of the column.
+     * @return The value of the column for the node.
+     */
+    public Object getNodeValue(final TreeNode node, final int column) {
+        if (node instanceof MoreChildrenNode) { // a row showing more children only has a value in the tree column.
+            return column == TREE_COLUMN_INDEX ? node.toString() : null;
+        }
+        final int slot = getAggregateSlot(column);
+        return slot < 0 ? getColumnValue(node, column) : getAggregateValues(node)[slot];
+    }
+
+    /**
+     * @param column The model index of a column.
+     * @return The position of the column in the aggregate columns, or -1 if it is not an aggregate column.
+     */
+    protected int getAggregateSlot(final int column) {
+        final int[] localColumns = aggregateColumns; // avoid repeated getfield.
+        for (int slot = 0; slot < localColumns.length; slot++) {
+            if (localColumns[slot] == column) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param node The node to get the aggregate values of.
+     * @return The aggregate values of the node, computing them for its subtree if they have not been computed yet.
+     */
+    protected Object[] getAggregateValues(final TreeNode node) {
+        final Object[] values = aggregateValues.get(node);
+        return values == null ? computeAggregateValues(node) : values;
+    }
+
+    /**
+     * Computes the aggregate values of all the nodes in a subtree in a single bottom-up pass.
+     * The nodes are listed breadth first, so processing them in reverse order computes all the children of a node
+     * before the node itself, without recursion.
+     *
+     * @param subtreeRoot The root of the subtree to compute the values of.
+     * @return The aggregate values of the subtree root.
+     */
+    protected Object[] computeAggregateValues(final TreeNode subtreeRoot) {
+        final List<TreeNode> nodes = new ArrayList<>();
+        nodes.add(subtreeRoot);
+        for (int index = 0; index < nodes.size(); index++) {
+            final TreeNode node = nodes.get(index);
+            final int childCount = node.getChildCount();
+            for (int childIndex = 0; childIndex < childCount; childIndex++) {
+                nodes.add(node.getChildAt(childIndex));
+            }
+        }
+        Object[] values = null;
+        for (int index = nodes.size() - 1; index >= 0; index--) {
+            values = aggregate(nodes.get(index));
+        }
+        return values;
+    }
+
+    /**
+     * Combines the aggregate values of the children of a node, then combines the values of the node itself with them,
+     * and stores both.  Any child without aggregate values has them computed for its subtree.
+     *
+     * @param node The node to aggregate.
+     * @return The aggregate values of the node.
+     */
+    protected Object[] aggregate(final TreeNode node) {
+        final int numAggregates = aggregates.length;
+        final Object[] childValues = new Object[numAggregates];
+        for (int slot = 0; slot < numAggregates; slot++) {
+            childValues[slot] = combineChildValues(node, slot);
+        }
+        childAggregateValues.put(node, childValues);
+        final Object[] values = combineNodeValues(node, childValues);
+        aggregateValues.put(node, values);
+        return values;
+    }
+
+    /**
+     * Applies changes to the aggregate values of some children of a node to the combined child values of the node,
+     * then updates the values of the node and each of its ancestors in turn, stopping when the values of a node
+     * don't change.  Each change replaces the old values of a child with its new values, so the other children are
+     * only combined again for an aggregate which can't replace a value, such as a maximum whose old value was the
+     * largest.  Visible rows whose values change are updated.  Nodes whose values have not been computed yet are left
+     * to be computed when they are needed.
+     *
+     * @param parentNode The parent of the changed children, or null.
+     * @param oldChildValues The old aggregate values of each changed child, which are null if they are not known.
+     *                       The identities are the old values of an inserted child.
+     * @param newChildValues The new aggregate values of each changed child.  The identities are the new values of
+     *                       a removed child.
+     */
+    protected void updateAggregateValues(final TreeNode parentNode, final Object[][] oldChildValues, final Object[][] newChildValues) {
+        final int numAggregates = aggregates.length;
+        Object[][] oldChanges = oldChildValues;
+        Object[][] newChanges = newChildValues;
+        int numChanged = 0;
+        TreeNode node = parentNode;
+        while (node != null) {
+            final Object[] oldValues = aggregateValues.get(node);
+            if (oldValues == null) {
+                break;
+            }
+            final Object[] oldCombined = childAggregateValues.get(node);
+            final Object[] childValues = new Object[numAggregates];
+            for (int slot = 0; slot < numAggregates; slot++) {
+                childValues[slot] = replaceChildValues(node, slot, oldCombined[slot], oldChanges, newChanges);
+            }
+            childAggregateValues.put(node, childValues);
+            final Object[] newValues = combineNodeValues(node, childValues);
+            aggregateValues.put(node, newValues);
+            if (Arrays.equals(oldValues, newValues)) {
+                break;
+            }
+            numChanged++;
+            oldChanges = new Object[][] {oldValues};
+            newChanges = new Object[][] {newValues};
+            node = node.getParent();
+        }
+        if (numChanged > 0) {
+            fireAncestorRowsUpdated(parentNode, numChanged);
+        }
+    }
+
+    /**
+     * Updates the visible rows of a node and some of its ancestors.  If a node is visible, so are the ancestors above
+     * it up to the root, so the lowest visible node is found in a single walk to the root, and its model index is
+     * looked up once.  The rows of the ancestors above it are the parent rows of the displayed nodes.
+     *
+     * @param node The lowest node to update.
+     * @param numNodes The number of nodes to update, starting with the node and going up its ancestors.
+     */
+    private void fireAncestorRowsUpdated(final TreeNode node, final int numNodes) {
+        // Find the lowest node on the path to the root whose ancestors are all expanded and not filtered or paged out:
+        TreeNode lowestVisible = isFiltered(node) || isPagedOut(node) ? null : node;
+        int lowestLevel = 0;
+        int level = 0;
+        TreeNode top = node;
+        for (TreeNode ancestor = node.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+            level++;
+            top = ancestor;
+            if (!isExpanded(ancestor) || isFiltered(ancestor) || isPagedOut(ancestor)) {
+                lowestVisible = isFiltered(ancestor) || isPagedOut(ancestor) ? null : ancestor;
+                lowestLevel = level;
+            }
+        }
+        if (top != rootNode || lowestVisible == null || lowestLevel >= numNodes || lowestVisible == rootNode && !showRoot) {
+            return;
+        }
+        int modelIndex = getModelIndexForTreeNode(lowestVisible);
+        for (int updated = lowestLevel; updated < numNodes && modelIndex >= 0; updated++) {
+            fireTableRowsUpdated(modelIndex, modelIndex);
+            modelIndex = displayedNodes.getParentIndex(modelIndex);
+        }
+    }
+
+    /**
+     * Updates aggregate values after some children of a node have changed their own values.
+     * The rows of the changed children are already updated by the caller, so only their ancestors' rows are updated,
+     * and only if the aggregate values of a child changed.  The combined values of the children of a changed child
+     * are still current, so only its own values are obtained again.
+     *
+     * @param parentNode The parent of the changed children, or null if the root changed.
+     * @param changedChildren The children which changed.
+     */
+    protected void updateChangedAggregates(final TreeNode parentNode, final TreeNode... changedChildren) {
+        if (aggregates.length > 0) {
+            final Object[][] oldChildValues = new Object[changedChildren.length][];
+            final Object[][] newChildValues = new Object[changedChildren.length][];
+            int numChanged = 0;
+            for (final TreeNode child : changedChildren) {
+                final Object[] oldValues = aggregateValues.get(child);
+                if (oldValues != null) {
+                    final Object[] newValues = combineNodeValues(child, childAggregateValues.get(child));
+                    aggregateValues.put(child, newValues);
+                    if (!Arrays.equals(oldValues, newValues)) {
+                        oldChildValues[numChanged] = oldValues;
+                        newChildValues[numChanged++] = newValues;
+                    }
+                }
+            }
+            if (numChanged > 0) {
+                updateAggregateValues(parentNode, Arrays.copyOf(oldChildValues, numChanged), Arrays.copyOf(newChildValues, numChanged));
+            }
+        }
+    }
+
+    /**
+     * Updates aggregate values after the subtrees of some children of a node have been inserted.
+     * The subtrees are computed again if their parent has values, or if they had values before.
+     *
+     * @param parentNode The parent of the children.
+     * @param children The children which were inserted.
+     */
+    protected void updateInsertedAggregates(final TreeNode parentNode, final TreeNode... children) {
+        if (aggregates.length > 0) {
+            final boolean parentHasValues = aggregateValues.containsKey(parentNode);
+            final Object[] identities = getAggregateIdentities();
+            final Object[][] oldChildValues = new Object[children.length][];
+            final Object[][] newChildValues = new Object[children.length][];
+            for (int index = 0; index < children.length; index++) {
+                final TreeNode child = children[index];
+                if (parentHasValues || aggregateValues.containsKey(child)) {
+                    oldChildValues[index] = identities; // the parent did not have the child before.
+                    newChildValues[index] = computeAggregateValues(child);
+                }
+            }
+            if (parentHasValues) {
+                updateAggregateValues(parentNode, oldChildValues, newChildValues);
+            }
+        }
+    }
+
+    /**
+     * Updates aggregate values after the subtree of a node has been replaced.
+     * The subtree is computed again if its parent has values, or if it had values before.
+     *
+     * @param changedNode The node whose subtree was replaced.
+     */
+    protected void updateReplacedAggregates(final TreeNode changedNode) {
+        if (aggregates.length > 0) {
+            final TreeNode parentNode = changedNode.getParent();
+            final Object[] oldValues = aggregateValues.get(changedNode);
+            if (oldValues != null || parentNode != null && aggregateValues.containsKey(parentNode)) {
+                final Object[] newValues = computeAggregateValues(changedNode);
+                updateAggregateValues(parentNode, new Object[][] {oldValues}, new Object[][] {newValues});
+            }
+        }
+    }
+
+    /**
+     * Updates aggregate values after children of a node have been removed.
+     *
+     * @param previousParentNode The previous parent of the removed children.
+     * @param removedChildren The children which were removed, or null if they are not known.
+     */
+    protected void updateRemovedAggregates(final TreeNode previousParentNode, final Object... removedChildren) {
+        if (aggregates.length > 0 && aggregateValues.containsKey(previousParentNode)) {
+            final Object[] identities = getAggregateIdentities();
+            final int numRemoved = removedChildren == null ? 1 : removedChildren.length;
+            final Object[][] oldChildValues = new Object[numRemoved][]; // unknown children have unknown old values.
+            final Object[][] newChildValues = new Object[numRemoved][];
+            for (int index = 0; index < numRemoved; index++) {
+                oldChildValues[index] = removedChildren == null ? null : aggregateValues.get(removedChildren[index]);
+                newChildValues[index] = identities; // the parent no longer has the child.
+            }
+            updateAggregateValues(previousParentNode, oldChildValues, newChildValues);
+        }
+    }
+
+    /**
+     * Combines the aggregate values of the children of a node for one aggregate.
+     *
+     * @param node The node whose children are combined.
+     * @param slot The position of the aggregate in the aggregate columns.
+     * @return The aggregate values of the children combined, or the identity if the node has no children.
+     */
+    protected Object combineChildValues(final TreeNode node, final int slot) {
+        final SubtreeAggregate<?> aggregate = aggregates[slot];
+        Object value = aggregate.getIdentity();
+        final int childCount = node.getChildCount();
+        for (int childIndex = 0; childIndex < childCount; childIndex++) {
+            value = aggregate.combine(value, getAggregateValues(node.getChildAt(childIndex))[slot]);
+        }
+        return value;
+    }
+
+    /**
+     * Replaces the old values of changed children in the combined child values of a node for one aggregate.
+     * If the aggregate can't replace a value, or the old value of a child isn't known, the children are combined again.
+     */
+    private Object replaceChildValues(final TreeNode node, final int slot, final Object combined,
+                                      final Object[][] oldChildValues, final Object[][] newChildValues) {
+        final SubtreeAggregate<?> aggregate = aggregates[slot];
+        Object value = combined;
+        for (int change = 0; change < oldChildValues.length; change++) {
+            final Object[] oldValues = oldChildValues[change];
+            value = oldValues == null ? SubtreeAggregate.RECOMPUTE : aggregate.replace(value, oldValues[slot], newChildValues[change][slot]);
+            if (value == SubtreeAggregate.RECOMPUTE) {
+                return combineChildValues(node, slot);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Combines the values of a node itself with the combined aggregate values of its children.
+     */
+    private Object[] combineNodeValues(final TreeNode node, final Object[] childValues) {
+        final SubtreeAggregate<?>[] localAggregates = aggregates; // avoid repeated getfield.
+        final int numAggregates = localAggregates.length;
+        final Object[] values = new Object[numAggregates];
+        for (int slot = 0; slot < numAggregates; slot++) {
+            values[slot] = localAggregates[slot].combine(localAggregates[slot].getNodeValue(this, node), childValues[slot]);
+        }
+        return values;
+    }
+
+    /**
+     * @return The identity of each aggregate, which are the aggregate values of no nodes.
+     */
+    private Object[] getAggregateIdentities() {
+        final SubtreeAggregate<?>[] localAggregates = aggregates; // avoid repeated getfield.
+        final Object[] identities = new Object[localAggregates.length];
+        for (int slot = 0; slot < localAggregates.length; slot++) {
+            identities[slot] = localAggregates[slot].getIdentity();
         }
+        return identities;
     }
 
     /**
-     * @return The current filter assigned to the model, or null if no filter is set.
+     * Clears all aggregate values, so they will be computed again with the current aggregates, and updates all rows.
      */
-    public Predicate<TreeNode> getNodeFilter() {
-        return filterPredicate;
+    protected void aggregatesRedefined() {
+        aggregateValues.clear();
+        childAggregateValues.clear();
+        final int rowCount = getRowCount();
+        if (rowCount > 0) {
+            fireTableRowsUpdated(0, rowCount - 1);
+        }
     }
 
     /**
-     * Clears any filtering set on the model.
+     * @param parentNode The parent of the children.
+     * @param childIndices The indices of the children.
+     * @return The children at the indices given.
      */
-    public void clearNodeFilter() {
-        setNodeFilter(null);
+    private static TreeNode[] getChildren(final TreeNode parentNode, final int[] childIndices) {
+        final TreeNode[] children = new TreeNode[childIndices.length];
+        for (int index = 0; index < childIndices.length; index++) {
+            children[index] = parentNode.getChildAt(childIndices[index]);
+        }
+        return children;
     }
 
 
@@ -841,7 +2044,8 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      */
     @Override
     public Object getValueAt(final int row, final int column) {
-        return getColumnValue( getNodeAtModelIndex(row), column);
+        countMetric(MetricsListener.Counter.COLUMN_VALUES, 1);
+        return getNodeValue( getNodeAtModelIndex(row), column);
     }
 
     /*
@@ -853,8 +2057,10 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      */
     @Override
     public void setValueAt(final Object aValue, final int row, final int column) {
-        setColumnValue( getNodeAtModelIndex(row), column, aValue);
+        final TreeNode node = getNodeAtModelIndex(row);
+        setColumnValue(node, column, aValue);
         fireTableCellUpdated(row, column);
+        updateChangedAggregates(node.getParent(), node);
     }
 
 
@@ -914,20 +2120,51 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      * Refreshes the entire visible tree, rebuilding from the root upwards.
      */
     public void refreshTree() {
-         buildVisibleNodes();
-         fireTableDataChanged();
+        final long startTime = operationStarted(MetricsListener.Operation.REFRESH_TREE);
+        final int rowsBefore = displayedNodes.size();
+        try {
+            buildVisibleNodes();
+            fireTableDataChanged();
+        } finally {
+            operationCompleted(MetricsListener.Operation.REFRESH_TREE, startTime, rowsBefore);
+        }
+    }
+
+    /**
+     * Overridden to count the rows inserted if there are metrics listeners.
+     */
+    @Override
+    public void fireTableRowsInserted(final int firstRow, final int lastRow) {
+        countMetric(MetricsListener.Counter.ROWS_INSERTED, lastRow - firstRow + 1);
+        super.fireTableRowsInserted(firstRow, lastRow);
+    }
+
+    /**
+     * Overridden to count the rows removed if there are metrics listeners.
+     */
+    @Override
+    public void fireTableRowsDeleted(final int firstRow, final int lastRow) {
+        countMetric(MetricsListener.Counter.ROWS_REMOVED, lastRow - firstRow + 1);
+        super.fireTableRowsDeleted(firstRow, lastRow);
     }
 
     @Override
     public void treeNodesChanged(final TreeModelEvent e) {
-        final int[] childIndices = e.getChildIndices();
-        // TreeModelListener interface specifies that null child indices are used to indicate the root node has changed.
-        if (childIndices == null) {
-            if (showRoot) {
-                fireTableRowsUpdated(0, 0);
+        final long startTime = operationStarted(MetricsListener.Operation.TREE_NODES_CHANGED);
+        final int rowsBefore = displayedNodes.size();
+        try {
+            final int[] childIndices = e.getChildIndices();
+            // TreeModelListener interface specifies that null child indices are used to indicate the root node has changed.
+            if (childIndices == null) {
+                if (showRoot) {
+                    fireTableRowsUpdated(0, 0);
+                }
+                updateChangedAggregates(null, rootNode);
+            } else {
+                treeNodesChanged( getLastPathNode(e), childIndices);
             }
-        } else {
-            treeNodesChanged( getLastPathNode(e), childIndices);
+        } finally {
+            operationCompleted(MetricsListener.Operation.TREE_NODES_CHANGED, startTime, rowsBefore, getEventDepth(e));
         }
     }
 
@@ -940,6 +2177,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
             final int modelIndex  = getModelIndexForTreeNode(nodeChanged);
             fireTableRowsUpdated(modelIndex, modelIndex);
         }
+        updateChangedAggregates(nodeChanged.getParent(), nodeChanged);
     }
 
     /**
@@ -952,14 +2190,25 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
         if (childrenWillBeVisible(parentNode)) {
             for (int childIndex : childIndices) {
                 final int modelIndex = getModelIndexForTreeNode(parentNode.getChildAt(childIndex));
-                fireTableRowsUpdated(modelIndex, modelIndex);
+                if (modelIndex >= 0) { // children can be filtered or not shown in a paged parent.
+                    fireTableRowsUpdated(modelIndex, modelIndex);
+                }
             }
         }
+        if (aggregates.length > 0) {
+            updateChangedAggregates(parentNode, getChildren(parentNode, childIndices));
+        }
     }
 
     @Override
     public void treeNodesInserted(final TreeModelEvent e) {
-        treeNodesInserted( getLastPathNode(e), e.getChildIndices());
+        final long startTime = operationStarted(MetricsListener.Operation.TREE_NODES_INSERTED);
+        final int rowsBefore = displayedNodes.size();
+        try {
+            treeNodesInserted( getLastPathNode(e), e.getChildIndices());
+        } finally {
+            operationCompleted(MetricsListener.Operation.TREE_NODES_INSERTED, startTime, rowsBefore, getEventDepth(e));
+        }
     }
 
     /**
@@ -972,6 +2221,9 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
             final int numInserted = insertChildNodeToModel(parentNode, childIndex);
             updateVisibleChildCounts(parentNode, numInserted);
         }
+        if (aggregates.length > 0) {
+            updateInsertedAggregates(parentNode, parentNode.getChildAt(childIndex));
+        }
     }
 
     /**
@@ -985,11 +2237,20 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
             final int numInserted = insertChildNodesToModel(parentNode, childIndices);
             updateVisibleChildCounts(parentNode, numInserted);
         }
+        if (aggregates.length > 0) {
+            updateInsertedAggregates(parentNode, getChildren(parentNode, childIndices));
+        }
     }
 
     @Override
     public void treeNodesRemoved(final TreeModelEvent e) {
-        treeNodesRemoved( getLastPathNode(e), e.getChildIndices(), e.getChildren());
+        final long startTime = operationStarted(MetricsListener.Operation.TREE_NODES_REMOVED);
+        final int rowsBefore = displayedNodes.size();
+        try {
+            treeNodesRemoved( getLastPathNode(e), e.getChildIndices(), e.getChildren());
+        } finally {
+            operationCompleted(MetricsListener.Operation.TREE_NODES_REMOVED, startTime, rowsBefore, getEventDepth(e));
+        }
     }
 
     /**
@@ -1001,9 +2262,11 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      */
     public void treeNodesRemoved(final TreeNode previousParentNode, final int[] childIndices, final Object[] removedChildren) {
         if (childrenWillBeVisible(previousParentNode)) {
-            final int numRemoved = removeVisibleNodes(childIndices, removedChildren);
+            final int numRemoved = removeVisibleNodes(previousParentNode, childIndices, removedChildren);
             updateVisibleChildCounts(previousParentNode, -numRemoved);
         }
+        removeDetachedChildPages();
+        updateRemovedAggregates(previousParentNode, removedChildren);
     }
 
     /**
@@ -1014,18 +2277,26 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      */
     public void treeNodeRemoved(final TreeNode previousParentNode, final TreeNode removedNode) {
         if (childrenWillBeVisible(previousParentNode)) {
-            final int numRemoved = removeVisibleNode(removedNode);
+            final int numRemoved = removeVisibleNode(previousParentNode, removedNode);
             updateVisibleChildCounts(previousParentNode, -numRemoved);
         }
+        removeDetachedChildPages();
+        updateRemovedAggregates(previousParentNode, removedNode);
     }
 
     @Override
     public void treeStructureChanged(final TreeModelEvent e) {
-        final TreeNode parentNode = getLastPathNode(e);
-        if (e.getPath().length == 1 && parentNode != rootNode) { // only one object in path and not current root - set root.
-            setRoot(parentNode);
-        } else {
-            treeStructureChanged(parentNode);
+        final long startTime = operationStarted(MetricsListener.Operation.TREE_STRUCTURE_CHANGED);
+        final int rowsBefore = displayedNodes.size();
+        try {
+            final TreeNode parentNode = getLastPathNode(e);
+            if (e.getPath().length == 1 && parentNode != rootNode) { // only one object in path and not current root - set root.
+                setRoot(parentNode);
+            } else {
+                treeStructureChanged(parentNode);
+            }
+        } finally {
+            operationCompleted(MetricsListener.Operation.TREE_STRUCTURE_CHANGED, startTime, rowsBefore, getEventDepth(e));
         }
     }
 
@@ -1042,6 +2313,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
             final int modelIndex = getModelIndexForTreeNode(changedNode);
             fireTableRowsUpdated(modelIndex, modelIndex);
         }
+        updateReplacedAggregates(changedNode);
     }
 
     /**
@@ -1078,7 +2350,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
             final int numOldChildren = getLastKnownSubTreeCount(changedNode);
             if (numOldChildren > 0) {
                 firstChildModelIndex = getModelIndexForTreeNode(changedNode) + 1;
-                removeVisibleRows(firstChildModelIndex, firstChildModelIndex + numOldChildren - 1);
+                removeVisibleRows(firstChildModelIndex, numOldChildren);
             }
 
             // 2. insert any current children:
@@ -1106,12 +2378,20 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
     public void setRoot(final TreeNode newRoot) {
         checkNull(newRoot, "newRoot");
         if (newRoot != rootNode) {
-            rootNode = newRoot;
-            clearExpansions();
-            if (!showRoot) {
-                expandNode(rootNode);
+            final long startTime = operationStarted(MetricsListener.Operation.SET_ROOT);
+            final int rowsBefore = displayedNodes.size();
+            try {
+                rootNode = newRoot;
+                aggregateValues.clear();
+                childAggregateValues.clear();
+                clearExpansions();
+                if (!showRoot) {
+                    expandNode(rootNode);
+                }
+                refreshTree();
+            } finally {
+                operationCompleted(MetricsListener.Operation.SET_ROOT, startTime, rowsBefore);
             }
-            refreshTree();
         }
     }
 
@@ -1124,6 +2404,10 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
     }
 
     protected int insertChildNodesToModel(final TreeNode parentNode, final int[] childIndices) {
+        final MoreChildrenNode page = childPages.get(parentNode);
+        if (page != null) { // children inserted into a paged parent are not shown until more children are shown.
+            return addHiddenChildren(parentNode, page, childIndices);
+        }
         final int length = childIndices.length;
         int from = 0;
         int numInserted = 0;
@@ -1140,6 +2424,10 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
     }
 
     protected int insertChildNodeToModel(final TreeNode parentNode, final int childIndex) {
+        final MoreChildrenNode page = childPages.get(parentNode);
+        if (page != null) {
+            return addHiddenChildren(parentNode, page, childIndex);
+        }
         final TreeNode insertedNode = parentNode.getChildAt(childIndex); // The node that was inserted.
         if (!isFiltered(insertedNode)) {
             final List<TreeNode> newNodes = new ArrayList<>();
@@ -1171,45 +2459,78 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
         return newNodes.size();
     }
 
-    protected int removeVisibleNodes(final int[] childIndices, final Object[] removedChildren) {
+    protected int removeVisibleNodes(final TreeNode parentNode, final int[] childIndices, final Object[] removedChildren) {
         final int length = childIndices.length;
         int from = 0;
         int numRemoved = 0;
         while (from < length) {
             final int to = TreeUtils.findLastConsecutiveIndex(from, childIndices); // process all consecutive insertions together.
             if (from == to) { // just removing a single node (that potentially also has removedChildren, so numRemoved may be bigger than one).
-                numRemoved += removeVisibleNode((TreeNode) removedChildren[from]);
+                numRemoved += removeVisibleNode(parentNode, (TreeNode) removedChildren[from]);
             } else {          // removing a block of nodes.
-                numRemoved += removeVisibleNodes(from, to, removedChildren);
+                numRemoved += removeVisibleNodes(parentNode, from, to, removedChildren);
             }
             from = to + 1;
         }
         return numRemoved;
     }
 
-    protected int removeVisibleNode(final TreeNode removedNode) {
-        final int modelIndex = getModelIndexForTreeNode(removedNode);
-        if (modelIndex >= 0) {
-            final int numChildren = getLastKnownSubTreeCount(removedNode);
-            final int lastIndex = modelIndex + numChildren;
-            displayedNodes.remove(modelIndex, lastIndex);
-            fireTableRowsDeleted(modelIndex, lastIndex);
-            return 1 + numChildren;
+    protected int removeVisibleNode(final TreeNode parentNode, final TreeNode removedNode) {
+        return removeVisibleChildRows(parentNode, Collections.singleton(removedNode));
+    }
+
+    protected int removeVisibleNodes(final TreeNode parentNode, final int from, final int to, final Object[] removedChildren) {
+        final Set<Object> removedNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int index = from; index <= to; index++) {
+            removedNodes.add(removedChildren[index]);
         }
-        return 0; // wasn't visible after all - so nothing removed.
+        return removeVisibleChildRows(parentNode, removedNodes);
     }
 
-    protected int removeVisibleNodes(final int from, final int to, final Object[] removedChildren) {
-        final int modelIndex = getModelIndexForTreeNode((TreeNode) removedChildren[from]);
-        if (modelIndex >= 0) {
-            int numToRemove = 0;
-            for (int index = from; index <= to; index++) {
-                numToRemove += (getLastKnownSubTreeCount((TreeNode) removedChildren[index]) + 1);
+    /**
+     * Removes the rows of consecutive children which have been removed from a parent node, along with their visible
+     * children.  Removed nodes are no longer attached to the tree, so they can't be located by walking up their
+     * parents.  Instead, the visible children of the parent are scanned, skipping over their visible subtrees
+     * using the row metadata.  If the parent is paged, the row showing more children is then updated.
+     *
+     * @param parentNode The parent the nodes were removed from.
+     * @param removedNodes The consecutive child nodes which were removed.
+     * @return The number of rows removed.
+     */
+    protected int removeVisibleChildRows(final TreeNode parentNode, final Set<?> removedNodes) {
+        final int numRemoved = removeChildRows(parentNode, removedNodes);
+        final MoreChildrenNode page = childPages.get(parentNode);
+        return page == null ? numRemoved : numRemoved + removeHiddenChildren(parentNode, page, removedNodes);
+    }
+
+    /**
+     * Removes the rows of removed children which are visible, and returns the number of rows removed.
+     */
+    private int removeChildRows(final TreeNode parentNode, final Set<?> removedNodes) {
+        final int parentIndex = isHiddenRoot(parentNode) ? NOT_LOCATED : getModelIndexForTreeNode(parentNode);
+        if (parentIndex != NOT_LOCATED || isHiddenRoot(parentNode)) {
+            final DisplayedNodeList localNodes = displayedNodes; // avoid repeated getfield.
+            final int endRow = parentIndex == NOT_LOCATED ? localNodes.size() : parentIndex + localNodes.getSubtreeSize(parentIndex) + 1;
+            int firstRemoved = NOT_LOCATED;
+            int endRemoved = NOT_LOCATED;
+            for (int row = parentIndex + 1; row < endRow; ) {
+                final int nextSibling = row + localNodes.getSubtreeSize(row) + 1;
+                if (removedNodes.contains(localNodes.get(row))) {
+                    if (firstRemoved == NOT_LOCATED) {
+                        firstRemoved = row;
+                    }
+                    endRemoved = nextSibling;
+                } else if (firstRemoved != NOT_LOCATED) {
+                    break; // removed children are consecutive - no more to find.
+                }
+                row = nextSibling;
+            }
+            if (firstRemoved != NOT_LOCATED) {
+                final int lastIndex = endRemoved - 1;
+                localNodes.remove(firstRemoved, lastIndex);
+                fireTableRowsDeleted(firstRemoved, lastIndex);
+                return endRemoved - firstRemoved;
             }
-            final int lastIndex = modelIndex + numToRemove - 1;
-            displayedNodes.remove(modelIndex, lastIndex);
-            fireTableRowsDeleted(modelIndex, lastIndex);
-            return numToRemove;
         }
         return 0; // wasn't visible after all - so nothing removed.
     }
@@ -1223,17 +2544,22 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      * @return the model index to insert a block of nodes into the model, as children of a parent node.
      */
     protected int getModelIndexAtInsertPosition(final TreeNode parentNode, final int childIndex, final int numInsertions) {
-        final int afterInsertionIndex = childIndex + numInsertions;
         final int numChildren = parentNode.getChildCount();
         checkInsertionIndices(numChildren, childIndex, numInsertions);
-        final int modelIndexToInsertAt;
-        if (numInsertions == numChildren) { // No previous nodes - the number of insertions equals the number of current children:
-            modelIndexToInsertAt = getModelIndexForTreeNode(parentNode) + 1; // Insert at the position just after the parent node.
-        } else if (afterInsertionIndex == numChildren) { // If inserted at the end of existing children - just after the end of the insertions will be the total number of  children.
-            final TreeNode previousChild = parentNode.getChildAt(childIndex - 1); // previous last child is the one before the first inserted.
-            modelIndexToInsertAt = getModelIndexForTreeNode(previousChild) + getLastKnownSubTreeCount(previousChild) + 1; // insert one after last previous child and all its visible children.
-        }  else { // Inserting before the end of existing children, possibly at the start, or somewhere in the middle.
-            modelIndexToInsertAt = getModelIndexForTreeNode(parentNode.getChildAt(afterInsertionIndex)); // insert at the index in the current model of the child the last inserted node displaced.
+        // The new nodes are already children of the parent in the tree, but not yet displayed, so we can't locate the
+        // displaced child by walking up the tree.  Use the row metadata to find the end of the parent's visible subtree,
+        // or to skip over the visible subtrees of any children preceding the insertion.
+        final DisplayedNodeList localNodes = displayedNodes; // avoid repeated getfield.
+        final int parentIndex = isHiddenRoot(parentNode) ? NOT_LOCATED : getModelIndexForTreeNode(parentNode);
+        final int endRow = parentIndex == NOT_LOCATED ? localNodes.size() : parentIndex + localNodes.getSubtreeSize(parentIndex) + 1;
+        if (childIndex + numInsertions == numChildren) { // inserted at the end of existing children - insert after all of them.
+            return endRow;
+        }
+        int modelIndexToInsertAt = parentIndex + 1;
+        for (int child = 0; child < childIndex && modelIndexToInsertAt < endRow; child++) {
+            if (localNodes.get(modelIndexToInsertAt) == parentNode.getChildAt(child)) { // child is visible - skip its rows.
+                modelIndexToInsertAt += localNodes.getSubtreeSize(modelIndexToInsertAt) + 1;
+            }
         }
         return modelIndexToInsertAt;
     }
@@ -1280,6 +2606,41 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
         return modelIndex >= 0 && modelIndex < displayedNodes.size() ? displayedNodes.get(modelIndex) : null;
     }
 
+    /**
+     * Gets the depth in the tree of the node at a model index.  The root node has a depth of zero.
+     *
+     * @param modelIndex The index in the model of the node.
+     * @return The depth in the tree of the node at the model index.
+     * @throws IndexOutOfBoundsException if the model index is out of bounds.
+     */
+    public int getNodeDepth(final int modelIndex) {
+        return displayedNodes.getDepth(modelIndex);
+    }
+
+    /**
+     * Gets the model index of the parent of the node at a model index, or -1 if the parent is not visible
+     * (e.g. the node is the root, or a child of a hidden root).
+     *
+     * @param modelIndex The index in the model of the node.
+     * @return The model index of the parent of the node, or -1 if the parent is not visible.
+     * @throws IndexOutOfBoundsException if the model index is out of bounds.
+     */
+    public int getParentModelIndex(final int modelIndex) {
+        return displayedNodes.getParentIndex(modelIndex);
+    }
+
+    /**
+     * Gets the number of visible descendants of the node at a model index.
+     * These are the rows in the model directly following it.
+     *
+     * @param modelIndex The index in the model of the node.
+     * @return The number of visible descendants of the node.
+     * @throws IndexOutOfBoundsException if the model index is out of bounds.
+     */
+    public int getVisibleSubtreeSize(final int modelIndex) {
+        return displayedNodes.getSubtreeSize(modelIndex);
+    }
+
     /**
      * Gets the node in a bound JTable given a table row index.
      * The view row index can differ from the rows in this underlying model if the table is sorted or filtered.
@@ -1302,14 +2663,42 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
 
     /**
      * Gets a list of all the selected nodes in the JTable, or an empty list if no rows are selected.
+     * The nodes are the visible selected rows, in table row order.
+     *
      * @return a list of all the selected nodes in the JTable, or an empty list if no rows are selected.
      */
     public List<TreeNode> getSelectedNodes() {
-        List<TreeNode> nodes = new ArrayList<>(table.getSelectedRowCount());
-        if (table != null) {
-            for (int rowIndex : table.getSelectedRows()) {
-                nodes.add(getNodeAtTableRow(rowIndex));
-            }
+        if (table == null) {
+            return new ArrayList<>(0);
+        }
+        final int[] selectedRows = table.getSelectedRows();
+        final List<TreeNode> nodes = new ArrayList<>(selectedRows.length);
+        for (int rowIndex : selectedRows) {
+            nodes.add(getNodeAtTableRow(rowIndex));
+        }
+        return nodes;
+    }
+
+    /**
+     * Gets the set of selected nodes in the JTable, compared by identity, or an empty set if no rows are selected.
+     * <p>
+     * If the table is using a {@link TreeTableSelectionModel}, this is the set of nodes it holds, obtained in time
+     * proportional to the number of selected nodes.  This includes selected nodes which are currently hidden by a
+     * collapsed ancestor.  Otherwise, it is the set of visible selected nodes.
+     *
+     * @return the set of selected nodes in the JTable, or an empty set if no rows are selected.
+     */
+    public Set<TreeNode> getSelectedNodeSet() {
+        if (table == null) {
+            return Collections.newSetFromMap(new IdentityHashMap<>());
+        }
+        final ListSelectionModel selectionModel = table.getSelectionModel();
+        if (selectionModel instanceof TreeTableSelectionModel) {
+            return ((TreeTableSelectionModel) selectionModel).getSelectedNodeSet();
+        }
+        final Set<TreeNode> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int rowIndex : table.getSelectedRows()) {
+            nodes.add(getNodeAtTableRow(rowIndex));
         }
         return nodes;
     }
@@ -1350,6 +2739,18 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
         return rowSorter == null? tableRow : rowSorter.convertRowIndexToModel(tableRow);
     }
 
+    /**
+     * Gets the row in a bound table of an index in the model.
+     * If the table is unsorted, the model and table indexes will be identical.
+     *
+     * @param modelIndex The index in the model to get the table row for.
+     * @return the row in a bound JTable of the model index.
+     */
+    public int getTableRowForModelIndex(final int modelIndex) {
+        final RowSorter<? extends TableModel> rowSorter = table == null? null : table.getRowSorter();
+        return rowSorter == null? modelIndex : rowSorter.convertRowIndexToView(modelIndex);
+    }
+
     /**
      * Gets the index in the model of a node, or -1 if it isn't visible or part of the current tree.
      *
@@ -1422,7 +2823,9 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
                 // add up all the visible children of that parent which precede the child we want to find.
                 final TreeNode parentNode = parentPath.get(pathIndex + 1); // Get the parent of the one we will find.  This is root initially.
                 if (isExpanded(parentNode) && !isFiltered(parentNode)) {
-                    final int visibleChildren = countVisibleChildrenUpToChild(parentNode, parentPath.get(pathIndex));
+                    final int visibleChildren = isPaged(parentNode)
+                            ? countPagedChildrenUpToChild(modelIndex, parentPath.get(pathIndex))
+                            : countVisibleChildrenUpToChild(parentNode, parentPath.get(pathIndex));
                     if (visibleChildren == NOT_LOCATED) { // e.g. if the child to find was filtered out.
                         break CALCULATE_INDEX; // stop looking and fall through to return NOT_LOCATED.
                     }
@@ -1461,6 +2864,26 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
         return NOT_LOCATED;
     }
 
+    /**
+     * Returns the number of visible nodes of a paged parent up to and including the node to find, or -1 if it is not
+     * visible.  Rather than scanning all the children of the parent, most of which are not shown, the rows of the
+     * parent's visible subtree are scanned, skipping over the visible subtrees of each child using the row metadata.
+     *
+     * @param parentModelIndex The model index of the paged parent, or -1 if it is a hidden root.
+     * @param childToFind The child node, or row showing more children, to find.
+     * @return the number of visible nodes up to the child to find, or -1 if it is not visible.
+     */
+    protected int countPagedChildrenUpToChild(final int parentModelIndex, final TreeNode childToFind) {
+        final DisplayedNodeList localNodes = displayedNodes; // avoid repeated getfield.
+        final int endRow = parentModelIndex < 0 ? localNodes.size() : parentModelIndex + localNodes.getSubtreeSize(parentModelIndex) + 1;
+        for (int row = parentModelIndex + 1; row < endRow; row += localNodes.getSubtreeSize(row) + 1) {
+            if (localNodes.get(row) == childToFind) {
+                return row - parentModelIndex;
+            }
+        }
+        return NOT_LOCATED;
+    }
+
     /**
      * Builds the path of a node up to the root.  The first node in the list is the node we start with,
      * and the last node will be the root node.
@@ -1503,6 +2926,46 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
         eventListeners.remove(listener);
     }
 
+    /**
+     * Adds a listener to metrics about the operations of this model and any TreeTableRowSorter sorting it.
+     * There is no cost to gathering metrics if no listeners are added.
+     *
+     * @param listener The listener to be notified of metrics.
+     */
+    public void addMetricsListener(final MetricsListener listener) {
+        checkNull(listener, "listener");
+        final MetricsListener[] listeners = metricsListeners;
+        if (listeners == null) {
+            metricsListeners = new MetricsListener[] {listener};
+        } else if (!Arrays.asList(listeners).contains(listener)) {
+            final MetricsListener[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+            newListeners[listeners.length] = listener;
+            metricsListeners = newListeners;
+        }
+    }
+
+    /**
+     * Removes a metrics listener.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeMetricsListener(final MetricsListener listener) {
+        final MetricsListener[] listeners = metricsListeners;
+        if (listeners != null) {
+            final List<MetricsListener> remaining = new ArrayList<>(Arrays.asList(listeners));
+            remaining.remove(listener);
+            metricsListeners = remaining.isEmpty() ? null : remaining.toArray(new MetricsListener[0]);
+        }
+    }
+
+    /**
+     * @return A list of the metrics listeners currently added.
+     */
+    public List<MetricsListener> getMetricsListeners() {
+        final MetricsListener[] listeners = metricsListeners;
+        return listeners == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(listeners));
+    }
+
     /**
      * Adds a mouse listener for expand / collapse events to a JTable
      **/
@@ -1824,7 +3287,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      * Expands all nodes in the tree which allow children.
      */
     public void expandTree() {
-        expandChildren(rootNode);
+        performOperation(MetricsListener.Operation.EXPAND_TREE, () -> expandChildren(rootNode));
     }
 
     /**
@@ -1835,7 +3298,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      * @param depth The number of levels of children to make visible under the root.
      */
     public void expandTree(final int depth) {
-        expandChildren(rootNode, depth);
+        performOperation(MetricsListener.Operation.EXPAND_TREE, () -> expandChildren(rootNode, depth));
     }
 
     /**
@@ -1846,7 +3309,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      * @param nodePredicate The predicate a node must pass in order to be expanded.
      */
     public void expandTree(final Predicate<TreeNode> nodePredicate) {
-        expandChildren(rootNode, nodePredicate);
+        performOperation(MetricsListener.Operation.EXPAND_TREE, () -> expandChildren(rootNode, nodePredicate));
     }
 
     /**
@@ -1861,7 +3324,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      * @param nodePredicate The predicate a node must pass in order to be expanded.
      */
     public void expandTree(final int depth, final Predicate<TreeNode> nodePredicate) {
-        expandChildren(rootNode, depth, nodePredicate);
+        performOperation(MetricsListener.Operation.EXPAND_TREE, () -> expandChildren(rootNode, depth, nodePredicate));
     }
 
     /**
@@ -1870,16 +3333,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      * @param parentNode The node to expand and all children and sub-children.
      */
     public void expandChildren(final TreeNode parentNode) {
-        if (parentNode.getAllowsChildren()) {
-            TreeUtils.forEachChild(parentNode, this::expandChildren);
-            /*
-             * Expand the parent AFTER the children are expanded.  This is much faster if many child and sub-child
-             * nodes are not currently visible, as they will only be added to the displayed nodes once their parent
-             * is finally expanded, instead of modifying the visual display continuously as all children get
-             * expanded.
-             */
-            expandNode(parentNode);
-        }
+        expandChildren(parentNode, Integer.MAX_VALUE, TreeNode::getAllowsChildren);
     }
 
     /**
@@ -1891,16 +3345,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      * @param nodePredicate The predicate a node must pass in order to expand itself and its children.
      */
     public void expandChildren(final TreeNode parentNode, final Predicate<TreeNode> nodePredicate) {
-        if (nodePredicate.test(parentNode)) {
-            TreeUtils.forEachChild(parentNode, child -> expandChildren(child, nodePredicate));
-            /*
-             * Expand the parent AFTER the children are expanded.  This is much faster if many child and sub-child
-             * nodes are not currently visible, as they will only be added to the displayed nodes once their parent
-             * is finally expanded, instead of modifying the visual display continuously as all children get
-             * expanded.
-             */
-            expandNode(parentNode);
-        }
+        expandChildren(parentNode, Integer.MAX_VALUE, nodePredicate);
     }
 
     /**
@@ -1912,18 +3357,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      * @param depth The maximum depth to expand a parent node, 1 being its immediate children, 2 being their children and so on.
      */
     public void expandChildren(final TreeNode parentNode, final int depth) {
-        if (depth > 0) { // as long as there's a depth level to expand...
-            if (depth > 1) { // don't bother trying to expand each child if they wouldn't be expanded anyway due to depth.
-                TreeUtils.forEachChild(parentNode, child -> expandChildren(child, depth - 1));
-            }
-            /*
-             * Expand the parent AFTER the children are expanded.  This is much faster if many child and sub-child
-             * nodes are not currently visible, as they will only be added to the displayed nodes once their parent
-             * is finally expanded, instead of modifying the visual display continuously as all children get
-             * expanded.
-             */
-            expandNode(parentNode);
-        }
+        expandChildren(parentNode, depth, node -> true);
     }
 
     /**
@@ -1937,16 +3371,30 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      */
     public void expandChildren(final TreeNode parentNode, final int depth, final Predicate<TreeNode> nodePredicate) {
         if (depth > 0 && nodePredicate.test(parentNode)) { // as long as there's a depth level to expand and the node passes the test...
-            if (depth > 1) { // don't bother trying to expand children if they wouldn't be expanded anyway due to depth.
-                TreeUtils.forEachChild(parentNode, child -> expandChildren(child, depth - 1, nodePredicate));
+            // Walk the tree with a stack rather than recursion, so trees of any depth can be expanded.
+            // The depth left to expand is kept with each node on the stack.
+            final NodeStack stack = acquireNodeStack();
+            try {
+                stack.push(parentNode, depth);
+                while (!stack.isEmpty()) {
+                    final int childDepth = stack.peekValue() - 1;
+                    // don't bother trying to expand children if they wouldn't be expanded anyway due to depth.
+                    final TreeNode child = childDepth > 0 ? stack.nextChild() : null;
+                    if (child == null) {
+                        /*
+                         * Expand the parent AFTER the children are expanded.  This is much faster if many child and sub-child
+                         * nodes are not currently visible, as they will only be added to the displayed nodes once their parent
+                         * is finally expanded, instead of modifying the visual display continuously as all children get
+                         * expanded.
+                         */
+                        expandNode(stack.pop());
+                    } else if (nodePredicate.test(child)) {
+                        stack.push(child, childDepth);
+                    }
+                }
+            } finally {
+                releaseNodeStack(stack);
             }
-            /*
-             * Expand the parent AFTER the children are expanded.  This is much faster if many child and sub-child
-             * nodes are not currently visible, as they will only be added to the displayed nodes once their parent
-             * is finally expanded, instead of modifying the visual display continuously as all children get
-             * expanded.
-             */
-            expandNode(parentNode);
         }
     }
 
@@ -1965,8 +3413,10 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      * If the root is not showing, it will be expanded (or nothing in the tree could be visible).
      */
     public void collapseTree() {
-        clearExpansions();
-        fireTableDataChanged();
+        performOperation(MetricsListener.Operation.COLLAPSE_TREE, () -> {
+            clearExpansions();
+            fireTableDataChanged();
+        });
     }
 
     /**
@@ -1975,8 +3425,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      * @param parentNode The node to collapse all children.
      */
     public void collapseChildren(final TreeNode parentNode) {
-        collapseNode(parentNode);
-        TreeUtils.forEachChild(parentNode, this::collapseChildren);
+        collapseChildren(parentNode, node -> true);
     }
 
     /**
@@ -1988,8 +3437,22 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      */
     public void collapseChildren(final TreeNode parentNode, final Predicate<TreeNode> nodePredicate) {
         if (nodePredicate.test(parentNode)) {
-            collapseNode(parentNode);
-            TreeUtils.forEachChild(parentNode, child -> collapseChildren(child, nodePredicate));
+            collapseNode(parentNode); // collapse the parent first, so its children are no longer visible as they collapse.
+            final NodeStack stack = acquireNodeStack();
+            try {
+                stack.push(parentNode);
+                while (!stack.isEmpty()) {
+                    final TreeNode child = stack.nextChild();
+                    if (child == null) {
+                        stack.pop();
+                    } else if (nodePredicate.test(child)) {
+                        collapseNode(child);
+                        stack.push(child);
+                    }
+                }
+            } finally {
+                releaseNodeStack(stack);
+            }
         }
     }
 
@@ -2002,13 +3465,27 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      * @param modelIndex The row in the model the node exists at, or -1 if the node isn't currently visible.
      */
     protected void toggleExpansion(final TreeNode node, final int modelIndex) {
+        if (node instanceof MoreChildrenNode) { // expanding a row showing more children shows the next page.
+            showMoreChildren(node.getParent());
+            return;
+        }
         final boolean currentlyExpanded = isExpanded(node);
         if (node.getAllowsChildren()) {
             if (listenersApprove(node, currentlyExpanded)) {
-                if (expansionChangeAffectsVisibleNodes(node, modelIndex)) {
-                    toggleVisibleExpansion(node, modelIndex, currentlyExpanded); // deal with changes to visible nodes.
-                } else {
-                    toggleInvisibleExpansion(node, currentlyExpanded); // node not visible - just toggle it's expanded state.
+                final MetricsListener.Operation operation = currentlyExpanded ? MetricsListener.Operation.COLLAPSE
+                                                                              : MetricsListener.Operation.EXPAND;
+                final long startTime = operationStarted(operation);
+                final int rowsBefore = displayedNodes.size();
+                try {
+                    if (expansionChangeAffectsVisibleNodes(node, modelIndex)) {
+                        toggleVisibleExpansion(node, modelIndex, currentlyExpanded); // deal with changes to visible nodes.
+                    } else {
+                        toggleInvisibleExpansion(node, currentlyExpanded); // node not visible - just toggle it's expanded state.
+                    }
+                } finally {
+                    if (metricsListeners != null) { // don't calculate the level of the node unless we need it.
+                        operationCompleted(operation, startTime, rowsBefore, TreeUtils.getLevel(node));
+                    }
                 }
             }
         }
@@ -2037,6 +3514,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
             childrenChanged = getLastKnownSubTreeCount(parentNode);
             removeVisibleRows(parentModelIndex + 1, childrenChanged);
             expandedNodeCounts.remove(parentNode);
+            childPages.remove(parentNode);
             updateTreeChildCounts(parentNode.getParent(), -childrenChanged);
         } else {
             childrenChanged = addVisibleChildren(parentModelIndex, parentNode);
@@ -2060,6 +3538,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
     protected void toggleInvisibleExpansion(final TreeNode node, final boolean currentlyExpanded) {
         if (currentlyExpanded) {
             expandedNodeCounts.remove(node);
+            childPages.remove(node);
         } else {
             expandedNodeCounts.put(node, 0); // no visible nodes right now, but still needs an entry.
         }
@@ -2078,7 +3557,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
             final int existingChildren = getLastKnownSubTreeCount(node);
             final int newVisibleChildren = existingChildren + delta;
             expandedNodeCounts.put(node, newVisibleChildren);
-            updateTreeChildCounts(node.getParent(), newVisibleChildren);
+            updateTreeChildCounts(node.getParent(), delta);
         }
     }
 
@@ -2109,6 +3588,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      */
     protected void clearExpansions() {
         expandedNodeCounts.clear();
+        childPages.clear();
         if (!showRoot) { // expand the root if it's not showing - or nothing will ever be visible in the tree!
             expandNode(rootNode);
         }
@@ -2127,7 +3607,11 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
             final int columnIndex = table.columnAtPoint(point);
             final int modelIndex = getModelIndexForTableRow(tableRow);
             final TreeNode node = displayedNodes.get(modelIndex);
-            if (getClickHandler().clickOnExpand(node, columnIndex, evt)) {
+            if (node instanceof MoreChildrenNode) { // clicking a row showing more children in the tree column shows them.
+                if (table.convertColumnIndexToModel(columnIndex) == TREE_COLUMN_INDEX) {
+                    showMoreChildren(node.getParent());
+                }
+            } else if (getClickHandler().clickOnExpand(node, columnIndex, evt)) {
                 toggleExpansion(node, modelIndex);
             }
         }
@@ -2170,6 +3654,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
         } else if (showRoot) {
             //TODO: does this affect child counts of the expanded nodes?
             displayedNodes.add(ROOT_MODEL_INDEX, rootNode);
+            displayedNodes.rebuildMetadata(); // all the top level nodes now have the root as their parent.
             fireTableRowsInserted(ROOT_MODEL_INDEX, ROOT_MODEL_INDEX);
         } else {
             //TODO: does this affect child counts of the expanded nodes?
@@ -2187,9 +3672,10 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
         if (node == rootNode) {
             return showRoot && !isFiltered(node);
         }
-        // We're visible if we're not null or filtered, and if all our parents are expanded and not filtered up to the root.
-        return node != null && !isFiltered(node) &&
-               TreeUtils.getFurthestAncestor(node, parent -> isExpanded(parent) && !isFiltered(parent)) == rootNode;
+        // We're visible if we're not null, filtered or paged out, and if all our parents are expanded and not filtered
+        // or paged out up to the root.
+        return node != null && !isFiltered(node) && !isPagedOut(node) &&
+               TreeUtils.getFurthestAncestor(node, parent -> isExpanded(parent) && !isFiltered(parent) && !isPagedOut(parent)) == rootNode;
     }
 
     /**
@@ -2212,15 +3698,17 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      * Does not alter any prior node expansions, so they will remain expanded when the tree is rebuilt.
      */
     protected void buildVisibleNodes() {
-        displayedNodes.clear();
+        final List<TreeNode> visibleNodes = new ArrayList<>();
         if (showRoot) {
             if (!isFiltered(rootNode)) {
-                displayedNodes.add(rootNode);
-                buildVisibleChildren(rootNode, displayedNodes);
+                visibleNodes.add(rootNode);
+                buildVisibleChildren(rootNode, visibleNodes);
             }
         } else {
-            buildVisibleChildren(rootNode, displayedNodes);
+            buildVisibleChildren(rootNode, visibleNodes);
         }
+        displayedNodes.clear();
+        displayedNodes.addAll(visibleNodes); // add as a single block, so row metadata is calculated in one pass.
     }
 
     /**
@@ -2277,10 +3765,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
     protected List<TreeNode> buildVisibleChildren(final TreeNode node) {
         if (node.getChildCount() > 0) {
             final List<TreeNode> children = new ArrayList<>();
-            TreeUtils.forEachChild(node, child -> !isFiltered(child), child -> {
-                    children.add(child);
-                    buildVisibleChildren(child, children);
-                });
+            addVisibleDescendants(node, children);
             return children;
         }
         return Collections.emptyList();
@@ -2297,15 +3782,7 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
     protected int buildVisibleChildren(final TreeNode parentNode, final List<TreeNode> visibleNodes) {
         // if expanded, then add in the visible children.
         if (isExpanded(parentNode)) {
-            int totalVisibleChildren = 0;
-            for (int childIndex = 0; childIndex < parentNode.getChildCount(); childIndex++) {
-                final TreeNode child = parentNode.getChildAt(childIndex);
-                if (!isFiltered(child)) {
-                    visibleNodes.add(child);
-                    totalVisibleChildren += (1 + buildVisibleChildren(child, visibleNodes)); // And this child and the children of the child if they're visible...
-                }
-            }
-
+            final int totalVisibleChildren = addVisibleDescendants(parentNode, visibleNodes);
             // Reset the child count for each expanded node as it is built (some nodes may be filtered, or it may have changed entirely since last rebuild).
             expandedNodeCounts.put(parentNode, totalVisibleChildren); // ensure child counts for any expanded nodes are updated when the tree is rebuilt.
             return totalVisibleChildren;
@@ -2324,13 +3801,118 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
      */
     protected int calculateVisibleChildNodes(final TreeNode node, final boolean expandNode) {
         if (expandNode || isExpanded(node)) {
-            final int[] totalVisibleChildNodes = new int[1];
-            TreeUtils.forEachChild(node, child -> totalVisibleChildNodes[0] += (1 + calculateVisibleChildNodes(child, false)));
-            return totalVisibleChildNodes[0];
+            int totalVisibleChildNodes = 0;
+            final NodeStack stack = acquireNodeStack();
+            try {
+                stack.push(node);
+                while (!stack.isEmpty()) {
+                    final TreeNode child = stack.nextChild();
+                    if (child == null) {
+                        stack.pop();
+                    } else {
+                        totalVisibleChildNodes++;
+                        if (isExpanded(child)) {
+                            stack.push(child);
+                        }
+                    }
+                }
+            } finally {
+                releaseNodeStack(stack);
+            }
+            return totalVisibleChildNodes;
         }
         return 0;
     }
 
+    /**
+     * Adds the visible children of a parent node and their visible children to a list, treating the parent as expanded.
+     * The child count of each expanded node under the parent is reset as it is built, but not the count of the parent.
+     * Only the shown children of a paged parent are added, followed by the row showing more children if any are not shown.
+     * <p>
+     * The tree is walked with a stack rather than recursion, so trees of any depth can be built.
+     * The size of the list when each expanded node was reached is kept with it, so the number of visible nodes under it
+     * is known when all of its children have been added.
+     *
+     * @param parentNode The node to add the visible children of.
+     * @param visibleNodes The list to add the visible nodes to.
+     * @return The number of visible nodes added.
+     */
+    private int addVisibleDescendants(final TreeNode parentNode, final List<TreeNode> visibleNodes) {
+        final Map<TreeNode, Integer> localCounts = expandedNodeCounts; // avoid repeated getfield.
+        final Map<TreeNode, MoreChildrenNode> localPages = childPages;
+        final int startSize = visibleNodes.size();
+        final NodeStack stack = acquireNodeStack();
+        try {
+            // The node whose children are being added is kept in local variables, and is only pushed onto the stack
+            // while the children of one of its expanded children are added.
+            TreeNode node = parentNode;
+            int childIndex = 0;
+            int nodeStartSize = startSize;
+            MoreChildrenNode page = prepareChildPage(parentNode);
+            while (true) {
+                TreeNode expandedChild = null;
+                while (childIndex < node.getChildCount()) {
+                    final TreeNode child = node.getChildAt(childIndex++);
+                    if (!isFiltered(child)) {
+                        if (page == null || page.isShown(child)) {
+                            visibleNodes.add(child);
+                            if (isExpanded(child)) {
+                                expandedChild = child;
+                                break;
+                            }
+                        } else {
+                            page.setHiddenCount(page.getHiddenCount() + 1);
+                        }
+                    }
+                }
+                if (expandedChild != null) { // add the children of the expanded child before the rest of the node's children.
+                    stack.push(node, childIndex, nodeStartSize);
+                    node = expandedChild;
+                    childIndex = 0;
+                    nodeStartSize = visibleNodes.size();
+                    page = prepareChildPage(expandedChild);
+                } else { // all the children of the node have been added.
+                    if (page != null && page.getHiddenCount() > 0) {
+                        visibleNodes.add(page);
+                    }
+                    if (stack.isEmpty()) {
+                        break;
+                    }
+                    localCounts.put(node, visibleNodes.size() - nodeStartSize);
+                    nodeStartSize = stack.peekValue();
+                    childIndex = stack.peekChildIndex();
+                    node = stack.pop();
+                    page = localPages.isEmpty() ? null : localPages.get(node);
+                }
+            }
+        } finally {
+            releaseNodeStack(stack);
+        }
+        return visibleNodes.size() - startSize;
+    }
+
+    /**
+     * Returns a stack to walk the tree with, reusing one which is no longer in use if possible.
+     * A walk may call back into the model and start another walk, for example by expanding a node whose listeners
+     * expand more nodes, so each walk has its own stack.
+     *
+     * @return A stack to walk the tree with, which must be released when the walk is finished.
+     */
+    private NodeStack acquireNodeStack() {
+        final NodeStack stack = freeNodeStacks.poll();
+        return stack == null ? new NodeStack() : stack;
+    }
+
+    /**
+     * Clears a stack and makes it available to be reused by another walk.
+     *
+     * @param stack The stack which is no longer in use.
+     */
+    private void releaseNodeStack(final NodeStack stack) {
+        stack.clear();
+        freeNodeStacks.push(stack);
+    }
+
 
     /* *****************************************************************************************************************
      *                                            Listeners and handlers.
@@ -2521,6 +4103,26 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
         }
     }
 
+    /* *****************************************************************************************************************
+     *                            Top node selection classes.
+     */
+
+    /**
+     * A node found while selecting top nodes, with its position in tree order: the task which found it (the root is
+     * task -1), and the order the task found it in.
+     */
+    private static final class TopNode {
+        private final TreeNode node;
+        private final int task;
+        private final int sequence;
+
+        private TopNode(final TreeNode node, final int task, final int sequence) {
+            this.node = node;
+            this.task = task;
+            this.sequence = sequence;
+        }
+    }
+
     /* *****************************************************************************************************************
      *                            Action classes to bind to keyboard events.
      */
@@ -2583,10 +4185,10 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
                     if (collapseOnParentNavigation && isExpanded(node)) {
                         toggleExpansion(node, modelIndexRow);
                     } else {
-                        final TreeNode parentNode = node.getParent();
-                        if (isVisible(parentNode)) {
-                            final int parentModelIndexRow = getModelIndexForTreeNode(parentNode);
-                            table.setRowSelectionInterval(parentModelIndexRow, parentModelIndexRow);
+                        final int parentModelIndexRow = getParentModelIndex(modelIndexRow);
+                        if (parentModelIndexRow >= 0) {
+                            final int parentTableRow = getTableRowForModelIndex(parentModelIndexRow);
+                            table.setRowSelectionInterval(parentTableRow, parentTableRow);
                         }
                     }
                 }
@@ -2606,8 +4208,8 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
                     if (expandOnChildNavigation && !isExpanded(node)) {
                         toggleExpansion(node, modelIndexRow);
                     } else {
-                        if (node.getChildCount() > 0) {
-                            final int childRow = modelIndexRow + 1;
+                        if (getVisibleSubtreeSize(modelIndexRow) > 0) { // visible children always follow their parent in the table.
+                            final int childRow = table.getSelectedRow() + 1;
                             table.setRowSelectionInterval(childRow, childRow);
                         }
                     }
@@ -2632,6 +4234,126 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
         return result;
     }
 
+    /* *****************************************************************************************************************
+     *                                              Metrics
+     *
+     * These methods notify any metrics listeners.  Each checks whether there are any listeners first,
+     * so they cost very little if there are none.  They are also called by the TreeTableRowSorter.
+     */
+
+    /**
+     * Notifies metrics listeners that an operation is starting, and returns the start time in nanoseconds.
+     *
+     * @param operation The operation starting.
+     * @return The start time of the operation in nanoseconds, or zero if there are no listeners.
+     */
+    protected long operationStarted(final MetricsListener.Operation operation) {
+        final MetricsListener[] listeners = metricsListeners;
+        if (listeners != null) {
+            for (MetricsListener listener : listeners) {
+                listener.operationStarted(operation);
+            }
+            return System.nanoTime();
+        }
+        return 0;
+    }
+
+    /**
+     * Runs an action as an operation reported to metrics listeners.  If there are no listeners, the action is just run.
+     *
+     * @param operation The operation the action performs.
+     * @param action The action to run.
+     */
+    protected void performOperation(final MetricsListener.Operation operation, final Runnable action) {
+        if (metricsListeners == null) {
+            action.run();
+        } else {
+            final long startTime = operationStarted(operation);
+            final int rowsBefore = displayedNodes.size();
+            try {
+                action.run();
+            } finally {
+                operationCompleted(operation, startTime, rowsBefore);
+            }
+        }
+    }
+
+    /**
+     * Notifies metrics listeners that an operation has completed, where no particular node depth applies.
+     *
+     * @param operation The operation which completed.
+     * @param startTime The start time returned by {@link #operationStarted(MetricsListener.Operation)}.
+     * @param rowsBefore The number of rows in the model before the operation started.
+     */
+    protected void operationCompleted(final MetricsListener.Operation operation, final long startTime, final int rowsBefore) {
+        operationCompleted(operation, startTime, rowsBefore, MetricsListener.NO_DEPTH);
+    }
+
+    /**
+     * Notifies metrics listeners that an operation has completed.
+     * The rows affected by the operation are the difference between the number of rows before and after it.
+     *
+     * @param operation The operation which completed.
+     * @param startTime The start time returned by {@link #operationStarted(MetricsListener.Operation)}.
+     * @param rowsBefore The number of rows in the model before the operation started.
+     * @param nodeDepth The depth of the node the operation applied to, or {@link MetricsListener#NO_DEPTH}.
+     */
+    protected void operationCompleted(final MetricsListener.Operation operation, final long startTime,
+                                      final int rowsBefore, final int nodeDepth) {
+        final MetricsListener[] listeners = metricsListeners;
+        if (listeners != null) {
+            final long duration = System.nanoTime() - startTime;
+            final int rowCount = displayedNodes.size();
+            final int rowsAffected = Math.abs(rowCount - rowsBefore);
+            for (MetricsListener listener : listeners) {
+                listener.operationCompleted(operation, duration, rowCount, rowsAffected, nodeDepth);
+            }
+        }
+    }
+
+    /**
+     * Notifies metrics listeners that an operation has completed, which affected a known number of rows.
+     *
+     * @param operation The operation which completed.
+     * @param startTime The start time returned by {@link #operationStarted(MetricsListener.Operation)}.
+     * @param rowsAffected The number of rows affected by the operation.
+     */
+    protected void operationCompletedForRows(final MetricsListener.Operation operation, final long startTime, final int rowsAffected) {
+        final MetricsListener[] listeners = metricsListeners;
+        if (listeners != null) {
+            final long duration = System.nanoTime() - startTime;
+            final int rowCount = displayedNodes.size();
+            for (MetricsListener listener : listeners) {
+                listener.operationCompleted(operation, duration, rowCount, rowsAffected, MetricsListener.NO_DEPTH);
+            }
+        }
+    }
+
+    /**
+     * Adds an amount to a metrics counter, if there are any metrics listeners.
+     *
+     * @param counter The counter to add to.
+     * @param amount The amount to add.
+     */
+    protected void countMetric(final MetricsListener.Counter counter, final int amount) {
+        final MetricsListener[] listeners = metricsListeners;
+        if (listeners != null) {
+            for (MetricsListener listener : listeners) {
+                listener.counted(counter, amount);
+            }
+        }
+    }
+
+    /**
+     * @param e A TreeModelEvent
+     * @return The depth of the parent node of the event, or {@link MetricsListener#NO_DEPTH} if there are no metrics listeners.
+     */
+    protected int getEventDepth(final TreeModelEvent e) {
+        final Object[] path;
+        return metricsListeners == null || (path = e.getPath()) == null ? MetricsListener.NO_DEPTH : path.length - 1;
+    }
+
+
     /* *****************************************************************************************************************
      *                                              Interfaces
      */
@@ -2679,4 +4401,85 @@ public abstract class TreeTableModel extends AbstractTableModel implements TreeM
         boolean nodeCollapsing(TreeNode node);
     }
 
+
+    /**
+     * An interface for a listener to metrics about the operations of a TreeTableModel and its TreeTableRowSorter,
+     * such as sorting, patching sort indexes, expanding, filtering and handling tree events, and counters for
+     * calls on hot paths, such as getting column values, comparing nodes and rendering tree cells.
+     * <p>
+     * Listeners are called on the thread performing the operation, which should be the Event Dispatch Thread,
+     * so they should do as little work as possible.  Operations can be nested - for example, setting a node filter
+     * also refreshes the tree - and each nested operation is reported separately.
+     * If no listeners are added to a model, no metrics are gathered.
+     */
+    public interface MetricsListener {
+
+        /**
+         * The depth reported for operations which do not apply to a particular node.
+         */
+        int NO_DEPTH = -1;
+
+        /**
+         * Timed operations.
+         */
+        enum Operation {
+            SORT,                   // Full sort of the rows by the TreeTableRowSorter.
+            INSERT_SORT_INDICES,    // Patching sort indexes with inserted rows.
+            REMOVE_SORT_INDICES,    // Patching sort indexes with removed rows.
+            UPDATE_SORT_INDICES,    // Patching sort indexes with an updated row.
+            EXPAND,                 // Expanding a node.
+            COLLAPSE,               // Collapsing a node.
+            EXPAND_TREE,            // Expanding nodes throughout the tree.
+            COLLAPSE_TREE,          // Collapsing all nodes in the tree.
+            SET_ROOT,               // Setting a new root node.
+            REFRESH_TREE,           // Rebuilding all visible rows.
+            SET_FILTER,             // Changing the node filter.
+            SELECT_TOP_NODES,       // Selecting the top nodes across the whole tree.
+            SHOW_MORE_CHILDREN,     // Showing the next page of children of a paged parent.
+            TREE_NODES_CHANGED,     // Handling a TreeModelListener event.
+            TREE_NODES_INSERTED,    // Handling a TreeModelListener event.
+            TREE_NODES_REMOVED,     // Handling a TreeModelListener event.
+            TREE_STRUCTURE_CHANGED  // Handling a TreeModelListener event.
+        }
+
+        /**
+         * Counted events on hot paths.
+         */
+        enum Counter {
+            COLUMN_VALUES,          // Column values fetched by getValueAt, or by the TreeNodeComparator when sorting.
+            COMPARISONS,            // Comparisons of two rows by the TreeTableRowSorter.
+            FILTER_EVALUATIONS,     // Evaluations of the node filter.
+            ROWS_INSERTED,          // Rows inserted into the model.
+            ROWS_REMOVED,           // Rows removed from the model.
+            CELLS_RENDERED          // Tree column cells rendered by the TreeCellRenderer.
+        }
+
+        /**
+         * Notifies the listener that an operation is starting.  The default implementation does nothing.
+         *
+         * @param operation The operation which is starting.
+         */
+        default void operationStarted(Operation operation) {
+        }
+
+        /**
+         * Notifies the listener that an operation has completed.
+         *
+         * @param operation The operation which completed.
+         * @param durationNanos How long the operation took in nanoseconds.
+         * @param rowCount The number of rows in the model after the operation.
+         * @param rowsAffected The number of rows inserted, removed or sorted by the operation.
+         * @param nodeDepth The depth of the node the operation applied to, or {@link #NO_DEPTH}.
+         */
+        void operationCompleted(Operation operation, long durationNanos, int rowCount, int rowsAffected, int nodeDepth);
+
+        /**
+         * Notifies the listener that a counted event occurred.
+         *
+         * @param counter The counter.
+         * @param amount The amount to add to the counter.
+         */
+        void counted(Counter counter, int amount);
+    }
+
 }
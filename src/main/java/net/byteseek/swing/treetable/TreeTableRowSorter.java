@@ -44,6 +44,8 @@ import javax.swing.ListSelectionModel;
 import javax.swing.RowSorter;
 import javax.swing.tree.TreeNode;
 import static net.byteseek.swing.treetable.TreeNodeComparator.EQUAL_VALUE;
+import static net.byteseek.swing.treetable.TreeNodeComparator.GREATER_THAN;
+import static net.byteseek.swing.treetable.TreeNodeComparator.LESS_THAN;
 
 //TODO: examine whether having UNSORTED keys in the sort keys affects overall sorted status?
 
@@ -485,41 +487,75 @@ public class TreeTableRowSorter extends RowSorter<TreeTableModel> {
      * @return Whether node 1 is less than (<0), equal to (=0) or greater than (>0) node 2.
      */
     protected int compare(final int modelRowIndex1, final int modelRowIndex2) {
-        TreeNode firstNode = model.getNodeAtModelIndex(modelRowIndex1);
-        TreeNode secondNode = model.getNodeAtModelIndex(modelRowIndex2);
+        final TreeTableModel localModel = model; // avoid repeated getfield.
+        localModel.countMetric(TreeTableModel.MetricsListener.Counter.COMPARISONS, 1);
+        int firstRow = modelRowIndex1;
+        int secondRow = modelRowIndex2;
 
         // If the nodes don't already share a parent, we have to find two comparable parent nodes that do.
-        if (firstNode.getParent() != secondNode.getParent()) {
+        if (localModel.getParentModelIndex(firstRow) != localModel.getParentModelIndex(secondRow)) {
 
             // If the nodes are at different levels, walk one of them back, so they are at the same level as each other.
-            final int firstLevel = TreeUtils.getLevel(firstNode);
-            final int secondLevel = TreeUtils.getLevel(secondNode);
+            final int firstLevel = localModel.getNodeDepth(firstRow);
+            final int secondLevel = localModel.getNodeDepth(secondRow);
             if (firstLevel < secondLevel) {
-                secondNode = TreeUtils.getAncestor(secondNode, secondLevel - firstLevel);
+                secondRow = getAncestorRow(secondRow, secondLevel - firstLevel);
             } else if (secondLevel < firstLevel) {
-                firstNode =  TreeUtils.getAncestor(firstNode, firstLevel - secondLevel);
+                firstRow = getAncestorRow(firstRow, firstLevel - secondLevel);
             }
 
             // If they now both the same node at the same level, this means we are comparing a node with one of its children, sub-children
             // or vice versa.  The only ancestor node of a child at the same level as the parent is the parent itself.
             // In this situation, if the first node is at the lower level, it's the parent and should sort earlier
             // in the tree, if the other way around, the second level should sort earlier.
-            if (firstNode == secondNode) {
+            if (firstRow == secondRow) {
                 return firstLevel - secondLevel;
             }
 
             // They are now both at the same level - find the nodes that share a common parent (root will be common to all).
-            while (firstNode.getParent() != secondNode.getParent()) {
-                firstNode = firstNode.getParent();
-                secondNode = secondNode.getParent();
+            int firstParent, secondParent;
+            while ((firstParent = localModel.getParentModelIndex(firstRow)) != (secondParent = localModel.getParentModelIndex(secondRow))) {
+                firstRow = firstParent;
+                secondRow = secondParent;
             }
         }
 
         // Nodes share a common parent - compare values, falling back to the model index order if they're still equal.
-        final int comparison = nodeComparator.compare(firstNode, secondNode);
+        final int comparison = compareSiblings(localModel.getNodeAtModelIndex(firstRow), localModel.getNodeAtModelIndex(secondRow));
         return comparison == EQUAL_VALUE ? modelRowIndex1 - modelRowIndex2 : comparison;
     }
 
+    /**
+     * Compares two sibling nodes with the node comparator.  A row showing more children of a paged parent always
+     * sorts after its siblings, whatever the sort order, as it stands in for the children which are not shown yet.
+     *
+     * @param node1 The first node.
+     * @param node2 The second node.
+     * @return Whether node 1 is less than (<0), equal to (=0) or greater than (>0) node 2.
+     */
+    protected int compareSiblings(final TreeNode node1, final TreeNode node2) {
+        final boolean more1 = node1 instanceof MoreChildrenNode;
+        if (more1 || node2 instanceof MoreChildrenNode) {
+            return more1 == node2 instanceof MoreChildrenNode ? EQUAL_VALUE : more1 ? GREATER_THAN : LESS_THAN;
+        }
+        return nodeComparator.compare(node1, node2);
+    }
+
+    /**
+     * Walks up the parents of a row in the model using the row metadata kept by the model.
+     *
+     * @param modelRowIndex The model index of the row.
+     * @param levelsUp How many levels up to walk.
+     * @return The model index of the ancestor.
+     */
+    protected int getAncestorRow(final int modelRowIndex, final int levelsUp) {
+        int ancestor = modelRowIndex;
+        for (int level = 0; level < levelsUp; level++) {
+            ancestor = model.getParentModelIndex(ancestor);
+        }
+        return ancestor;
+    }
+
     /**
      * Builds the sort indexes if there are any sort keys or a grouping comparator to sort with,
      * and otherwise clears them.
@@ -557,10 +593,15 @@ public class TreeTableRowSorter extends RowSorter<TreeTableModel> {
      * Creates sort indexes and notifies a sort change.
      */
     protected void sort() {
-        final int[] previousViewToModelIndex = buildViewToModelAsInts();
-        buildViewToModelIndex();
-        buildModelToViewIndex();
-        fireRowSorterChanged(previousViewToModelIndex);
+        final long startTime = model.operationStarted(TreeTableModel.MetricsListener.Operation.SORT);
+        try {
+            final int[] previousViewToModelIndex = buildViewToModelAsInts();
+            buildViewToModelIndex();
+            buildModelToViewIndex();
+            fireRowSorterChanged(previousViewToModelIndex);
+        } finally {
+            model.operationCompletedForRows(TreeTableModel.MetricsListener.Operation.SORT, startTime, lastRowCount);
+        }
     }
 
     /**
@@ -678,25 +719,47 @@ public class TreeTableRowSorter extends RowSorter<TreeTableModel> {
     protected void insertSortIndices(final int firstModelIndex, final int endModelIndex) {
         //TODO: check assumption that we throw exception if all of the inserts are not within the last row count?
         if (isSorting()) {
-            checkValidLastKnownIndices(firstModelIndex, endModelIndex);
-
-            //TODO: turns out, you don't have to supply this.  If you do, selection and editing are preserved.  If you don't, they aren't.
-            //      could make it configurable behaviour - if you want more efficient (not creating a new copy of the entire index on every update),
-            //      then just provide a null old view to model and it will still work.
-            //final int[] oldViewToModel = buildViewToModelAsInts();
-            //insertSortedRowsToIndices(firstModelIndex, endModelIndex);
-            //fireRowSorterChanged(oldViewToModel);
-
-            final int[] selectedIndices = getSelectedRows();
+            final long startTime = model.operationStarted(TreeTableModel.MetricsListener.Operation.INSERT_SORT_INDICES);
             try {
-                insertSortedRowsToIndices(firstModelIndex, endModelIndex);
-                fireRowSorterChanged(null); // no prior index supplied.
+                insertSortIndicesAndNotify(firstModelIndex, endModelIndex);
             } finally {
-                restoreSelectedRows(selectedIndices);
+                model.operationCompletedForRows(TreeTableModel.MetricsListener.Operation.INSERT_SORT_INDICES,
+                                                startTime, endModelIndex - firstModelIndex + 1);
             }
         }
     }
 
+    /**
+     * Inserts rows into the sort indices, preserving the selection, and notifies listeners of the change.
+     *
+     * @param firstModelIndex The first model index inserted.
+     * @param endModelIndex The end model index inserted.
+     */
+    protected void insertSortIndicesAndNotify(final int firstModelIndex, final int endModelIndex) {
+        checkValidLastKnownIndices(firstModelIndex, endModelIndex);
+
+        //TODO: turns out, you don't have to supply this.  If you do, selection and editing are preserved.  If you don't, they aren't.
+        //      could make it configurable behaviour - if you want more efficient (not creating a new copy of the entire index on every update),
+        //      then just provide a null old view to model and it will still work.
+        //final int[] oldViewToModel = buildViewToModelAsInts();
+        //insertSortedRowsToIndices(firstModelIndex, endModelIndex);
+        //fireRowSorterChanged(oldViewToModel);
+
+        if (model.getSelectionModel() instanceof TreeTableSelectionModel) {
+            // Selection is held against nodes, so it is unaffected by inserting rows into the sort index.
+            insertSortedRowsToIndices(firstModelIndex, endModelIndex);
+            fireRowSorterChanged(null);
+            return;
+        }
+        final int[] selectedIndices = getSelectedRows();
+        try {
+            insertSortedRowsToIndices(firstModelIndex, endModelIndex);
+            fireRowSorterChanged(null); // no prior index supplied.
+        } finally {
+            restoreSelectedRows(selectedIndices);
+        }
+    }
+
     protected int[] getSelectedRows() {
         final ListSelectionModel selectModel = model.getSelectionModel();
         if (selectModel != null) {
@@ -722,19 +785,30 @@ public class TreeTableRowSorter extends RowSorter<TreeTableModel> {
     protected void removeSortIndices(final int firstModelIndex, final int endModelIndex) {
         //TODO: check assumption that we throw exception if all of the inserts are not within the last row count?
         if (isSorting()) {
-            checkValidLastKnownIndices(firstModelIndex, endModelIndex);
-            final int[] oldViewToModel = buildViewToModelAsInts();
-            removeSortedRowsFromIndices(firstModelIndex, endModelIndex);
-            fireRowSorterChanged(oldViewToModel);
+            final long startTime = model.operationStarted(TreeTableModel.MetricsListener.Operation.REMOVE_SORT_INDICES);
+            try {
+                checkValidLastKnownIndices(firstModelIndex, endModelIndex);
+                final int[] oldViewToModel = buildViewToModelAsInts();
+                removeSortedRowsFromIndices(firstModelIndex, endModelIndex);
+                fireRowSorterChanged(oldViewToModel);
+            } finally {
+                model.operationCompletedForRows(TreeTableModel.MetricsListener.Operation.REMOVE_SORT_INDICES,
+                                                startTime, endModelIndex - firstModelIndex + 1);
+            }
         }
     }
 
     //TODO: check indices here?
     protected void updateSortIndices(final int modelIndex) {
         if (isSorting()) {
-            final int[] oldViewToModel = buildViewToModelAsInts();
-            updateSiblings(modelIndex);
-            fireRowSorterChanged(oldViewToModel);
+            final long startTime = model.operationStarted(TreeTableModel.MetricsListener.Operation.UPDATE_SORT_INDICES);
+            try {
+                final int[] oldViewToModel = buildViewToModelAsInts();
+                updateSiblings(modelIndex);
+                fireRowSorterChanged(oldViewToModel);
+            } finally {
+                model.operationCompletedForRows(TreeTableModel.MetricsListener.Operation.UPDATE_SORT_INDICES, startTime, 1);
+            }
         }
     }
 
@@ -779,7 +853,6 @@ public class TreeTableRowSorter extends RowSorter<TreeTableModel> {
         final TreeTableModel localModel = model; // avoid repeated getField - use a local reference.
         final int numRows = lastRowCount; // avoid repeated getField - use a local reference.
         final SortRow[] localViewToModelIndex = viewToModelIndex; // avoid repeated getField - use a local reference.
-        final Comparator<TreeNode> localComparator = nodeComparator; // avoid repeated getField - use a local reference.
         final TreeNode parent = updatingNode.getParent();
 
         /*
@@ -805,7 +878,7 @@ public class TreeTableRowSorter extends RowSorter<TreeTableModel> {
                 break;
             }
 
-            nodeCompare = localComparator.compare(siblingNode, updatingNode);
+            nodeCompare = compareSiblings(siblingNode, updatingNode);
             if (nodeCompare == 0) { // If they are equal, compare on their model indexes to provide stable sort.
                 nodeCompare = siblingModelIndex - updatingNodeModelIndex;
             }
@@ -830,7 +903,6 @@ public class TreeTableRowSorter extends RowSorter<TreeTableModel> {
     protected int findPreviousInsertionViewIndex(TreeNode updatingNode, int updatingNodeViewIndex, int updatingNodeModelIndex) {
         final TreeTableModel localModel = model; // avoid repeated getField - use a local reference.
         final SortRow[] localViewToModelIndex = viewToModelIndex; // avoid repeated getField - use a local reference.
-        final Comparator<TreeNode> localComparator = nodeComparator; // avoid repeated getField - use a local reference.
 
         /*
          * Loop while we find siblings that are bigger than our updated node.
@@ -861,7 +933,7 @@ public class TreeTableRowSorter extends RowSorter<TreeTableModel> {
             // If it shares the same parent as our original node, it's a sibling,
             // otherwise it's part of a subtree of the previous sibling (so we ignore it)
             if (siblingNode.getParent() == parent) {
-                nodeCompare = localComparator.compare(siblingNode, updatingNode);
+                nodeCompare = compareSiblings(siblingNode, updatingNode);
                 if (nodeCompare == 0) {
                     nodeCompare = siblingModelIndex - updatingNodeModelIndex; //TODO: check comparison correct here.
                 }
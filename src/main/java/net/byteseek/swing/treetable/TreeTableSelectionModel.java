@@ -0,0 +1,744 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.RowSorter;
+import javax.swing.event.EventListenerList;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.event.RowSorterEvent;
+import javax.swing.event.RowSorterListener;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.tree.TreeNode;
+
+/**
+ * A ListSelectionModel for a JTable bound to a TreeTableModel, which records the selection as a set of TreeNodes
+ * rather than as intervals of table rows.
+ * <p>
+ * The DefaultListSelectionModel stores selection as row intervals, which must be shifted on every row insert or delete,
+ * and which must be cleared and re-added row by row whenever the sort indexes are patched.  With many rows selected,
+ * expanding a single node in a sorted view would re-select every one of them.
+ * <p>
+ * This model holds the selected nodes in an identity set.  Inserting, removing or re-sorting rows doesn't touch the
+ * selection at all; it only invalidates a cache of the selected table rows, which is rebuilt lazily the next time a
+ * row-based query needs it.  Testing whether a row is selected, which is what painting a table row requires,
+ * is a single set lookup.
+ * <p>
+ * Selected nodes which are hidden by collapsing one of their ancestors remain selected, and will appear selected again
+ * if they become visible again.  The row-based methods of the ListSelectionModel only report visible rows.
+ * Nodes which are removed from the tree are pruned from the selection lazily.
+ * <p>
+ * A TreeTableModel installs one of these automatically when it is bound to a JTable.
+ */
+public class TreeTableSelectionModel implements ListSelectionModel, TableModelListener, RowSorterListener {
+
+    /* *****************************************************************************************************************
+     *                                                Constants
+     */
+
+    protected static final int NOT_LOCATED = -1;
+    protected static final int[] EMPTY_ARRAY = new int[0];
+
+    /**
+     * A value for a cached row which indicates that it must be recalculated.
+     */
+    protected static final int UNKNOWN_ROW = -2;
+
+    /**
+     * The number of selected nodes at or below which the table rows of selected nodes are found by looking up
+     * each node in the model.  Above this, the selected rows are found by scanning every table row.
+     * Looking up a node can itself scan siblings, so it only pays off when few nodes are selected.
+     */
+    protected static final int NODE_LOOKUP_THRESHOLD = 32;
+
+
+    /* *****************************************************************************************************************
+     *                                                Variables
+     */
+
+    /**
+     * The model whose nodes are being selected.
+     */
+    protected final TreeTableModel model;
+
+    /**
+     * The set of selected nodes, compared by identity.
+     */
+    protected final Set<TreeNode> selectedNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Anchor and lead nodes, or null if not set.
+     */
+    protected TreeNode anchorNode;
+    protected TreeNode leadNode;
+
+    /**
+     * Selection mode and adjusting status.
+     */
+    protected int selectionMode = MULTIPLE_INTERVAL_SELECTION;
+    protected boolean valueIsAdjusting;
+
+    /**
+     * Selection listeners.
+     */
+    protected final EventListenerList listenerList = new EventListenerList();
+
+    /**
+     * Cached table rows, recalculated lazily after they are invalidated by changes to the model or sort order.
+     */
+    protected int[] selectedTableRows; // sorted table rows of visible selected nodes, or null if not calculated.
+    protected int minSelectedRow = UNKNOWN_ROW;
+    protected int maxSelectedRow = UNKNOWN_ROW;
+    protected int anchorRow = UNKNOWN_ROW;
+    protected int leadRow = UNKNOWN_ROW;
+
+    /**
+     * Whether rows have been removed from the model since selected nodes were last checked to still be in the tree.
+     */
+    protected boolean removedNodesPossible;
+
+    /**
+     * Range of changed table rows accumulated while the value is adjusting, reported when adjusting ends.
+     */
+    protected int firstChangedRow = Integer.MAX_VALUE;
+    protected int lastChangedRow = NOT_LOCATED;
+
+    /**
+     * The table and row sorter this selection model is listening to, if bound.
+     */
+    protected JTable table;
+    protected RowSorter<?> rowSorter;
+    protected final PropertyChangeListener rowSorterChangeListener = evt -> listenToRowSorter(table.getRowSorter());
+
+
+    /* *****************************************************************************************************************
+     *                                                Constructors
+     */
+
+    /**
+     * Constructs a TreeTableSelectionModel for a TreeTableModel.
+     *
+     * @param model The TreeTableModel whose nodes will be selected.
+     * @throws IllegalArgumentException if the model is null.
+     */
+    public TreeTableSelectionModel(final TreeTableModel model) {
+        if (model == null) {
+            throw new IllegalArgumentException("Object cannot be null: model");
+        }
+        this.model = model;
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                      Binding to the table and model
+     */
+
+    /**
+     * Listens to the model, the table and its row sorter for changes which invalidate cached table rows.
+     * Called by the TreeTableModel when it is bound to a JTable.
+     *
+     * @param tableToBind The table whose selection this model holds.
+     */
+    public void bindTable(final JTable tableToBind) {
+        unbindTable();
+        if (tableToBind != null) {
+            this.table = tableToBind;
+            model.addTableModelListener(this);
+            tableToBind.addPropertyChangeListener("rowSorter", rowSorterChangeListener);
+            listenToRowSorter(tableToBind.getRowSorter());
+        }
+    }
+
+    /**
+     * Stops listening to the model, table and row sorter.
+     * Called by the TreeTableModel when it is unbound from a JTable.
+     */
+    public void unbindTable() {
+        if (table != null) {
+            model.removeTableModelListener(this);
+            table.removePropertyChangeListener("rowSorter", rowSorterChangeListener);
+            listenToRowSorter(null);
+            table = null;
+        }
+    }
+
+    protected void listenToRowSorter(final RowSorter<?> newRowSorter) {
+        if (rowSorter != null) {
+            rowSorter.removeRowSorterListener(this);
+        }
+        rowSorter = newRowSorter;
+        if (newRowSorter != null) {
+            newRowSorter.addRowSorterListener(this);
+        }
+        invalidateRows();
+    }
+
+    @Override
+    public void tableChanged(final TableModelEvent e) {
+        invalidateRows();
+        if (e.getType() == TableModelEvent.DELETE || e.getFirstRow() == TableModelEvent.HEADER_ROW
+                || e.getLastRow() == Integer.MAX_VALUE) {
+            removedNodesPossible = true;
+        }
+    }
+
+    @Override
+    public void sorterChanged(final RowSorterEvent e) {
+        invalidateRows();
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                      Node selection methods
+     */
+
+    /**
+     * Returns a list of the selected nodes, in no particular order.  This can include selected nodes which are
+     * currently hidden by a collapsed ancestor.  Takes time proportional to the number of selected nodes.
+     *
+     * @return A list of the selected nodes.
+     */
+    public List<TreeNode> getSelectedNodes() {
+        pruneRemovedNodes();
+        return new ArrayList<>(selectedNodes);
+    }
+
+    /**
+     * Returns the set of selected nodes, compared by identity.  This can include selected nodes which are currently
+     * hidden by a collapsed ancestor.  Takes time proportional to the number of selected nodes.
+     *
+     * @return A new set of the selected nodes.
+     */
+    public Set<TreeNode> getSelectedNodeSet() {
+        pruneRemovedNodes();
+        final Set<TreeNode> nodes = Collections.newSetFromMap(new IdentityHashMap<>(selectedNodes.size()));
+        nodes.addAll(selectedNodes);
+        return nodes;
+    }
+
+    /**
+     * @return The number of selected nodes, including any which are hidden by a collapsed ancestor.
+     */
+    public int getSelectedNodeCount() {
+        pruneRemovedNodes();
+        return selectedNodes.size();
+    }
+
+    /**
+     * @param node The node to test.
+     * @return true if the node is selected.
+     */
+    public boolean isSelected(final TreeNode node) {
+        return node != null && selectedNodes.contains(node);
+    }
+
+    /**
+     * Selects a node, if it is not already selected.
+     *
+     * @param node The node to select.
+     */
+    public void addSelectedNode(final TreeNode node) {
+        if (node != null && selectedNodes.add(node)) {
+            selectionChanged();
+        }
+    }
+
+    /**
+     * Deselects a node, if it is selected.
+     *
+     * @param node The node to deselect.
+     */
+    public void removeSelectedNode(final TreeNode node) {
+        if (node != null && selectedNodes.remove(node)) {
+            selectionChanged();
+        }
+    }
+
+    /**
+     * Removes any selected nodes which are no longer part of the tree in the model,
+     * if rows have been removed from the model since the last time this was checked.
+     */
+    protected void pruneRemovedNodes() {
+        if (removedNodesPossible) {
+            removedNodesPossible = false;
+            final TreeNode root = model.getRoot();
+            selectedNodes.removeIf(node -> !isInTree(node, root));
+            if (anchorNode != null && !isInTree(anchorNode, root)) {
+                anchorNode = null;
+            }
+            if (leadNode != null && !isInTree(leadNode, root)) {
+                leadNode = null;
+            }
+        }
+    }
+
+    /**
+     * @param node The node to test.
+     * @param root The root of the tree.
+     * @return true if the node is the root, or has the root as an ancestor.
+     */
+    protected boolean isInTree(final TreeNode node, final TreeNode root) {
+        TreeNode currentNode = node;
+        while (currentNode != null) {
+            if (currentNode == root) {
+                return true;
+            }
+            currentNode = currentNode.getParent();
+        }
+        return false;
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                      ListSelectionModel methods
+     */
+
+    @Override
+    public void setSelectionInterval(final int index0, final int index1) {
+        if (index0 == NOT_LOCATED || index1 == NOT_LOCATED) {
+            return;
+        }
+        final int start = selectionMode == SINGLE_SELECTION ? index1 : index0;
+        final boolean hadSelection = !selectedNodes.isEmpty();
+        selectedNodes.clear();
+        setAnchorAndLeadNodes(start, index1);
+        addRows(Math.min(start, index1), Math.max(start, index1));
+        if (hadSelection) {
+            selectionChanged();
+        } else {
+            selectionChanged(Math.min(start, index1), Math.max(start, index1));
+        }
+    }
+
+    @Override
+    public void addSelectionInterval(final int index0, final int index1) {
+        if (index0 == NOT_LOCATED || index1 == NOT_LOCATED) {
+            return;
+        }
+        if (selectionMode != MULTIPLE_INTERVAL_SELECTION) {
+            setSelectionInterval(index0, index1);
+            return;
+        }
+        setAnchorAndLeadNodes(index0, index1);
+        final int from = Math.max(0, Math.min(index0, index1));
+        final int to = Math.min(model.getRowCount() - 1, Math.max(index0, index1));
+        final boolean cachedRowsValid = selectedTableRows != null || minSelectedRow != UNKNOWN_ROW;
+        final int oldMin = minSelectedRow;
+        final int oldMax = maxSelectedRow;
+        addRows(from, to);
+        selectionChanged(from, to);
+        if (cachedRowsValid && from <= to) { // adding rows can only extend the min and max, so they can be kept without recalculation.
+            minSelectedRow = oldMin == NOT_LOCATED ? from : Math.min(oldMin, from);
+            maxSelectedRow = oldMax == NOT_LOCATED ? to : Math.max(oldMax, to);
+        }
+    }
+
+    @Override
+    public void removeSelectionInterval(final int index0, final int index1) {
+        if (index0 == NOT_LOCATED || index1 == NOT_LOCATED) {
+            return;
+        }
+        setAnchorAndLeadNodes(index0, index1);
+        final int from = Math.max(0, Math.min(index0, index1));
+        final int to = Math.min(model.getRowCount() - 1, Math.max(index0, index1));
+        for (int row = from; row <= to; row++) {
+            selectedNodes.remove(model.getNodeAtTableRow(row));
+        }
+        selectionChanged(from, to);
+    }
+
+    @Override
+    public int getMinSelectionIndex() {
+        if (minSelectedRow == UNKNOWN_ROW) {
+            if (selectedNodes.size() <= NODE_LOOKUP_THRESHOLD) {
+                final int[] rows = getSelectedTableRows();
+                minSelectedRow = rows.length == 0 ? NOT_LOCATED : rows[0];
+            } else { // scan up from the start for the first selected row.
+                minSelectedRow = NOT_LOCATED;
+                final int rowCount = model.getRowCount();
+                for (int row = 0; row < rowCount; row++) {
+                    if (selectedNodes.contains(model.getNodeAtTableRow(row))) {
+                        minSelectedRow = row;
+                        break;
+                    }
+                }
+            }
+        }
+        return minSelectedRow;
+    }
+
+    @Override
+    public int getMaxSelectionIndex() {
+        if (maxSelectedRow == UNKNOWN_ROW) {
+            if (selectedNodes.size() <= NODE_LOOKUP_THRESHOLD) {
+                final int[] rows = getSelectedTableRows();
+                maxSelectedRow = rows.length == 0 ? NOT_LOCATED : rows[rows.length - 1];
+            } else { // scan down from the end for the last selected row.
+                maxSelectedRow = NOT_LOCATED;
+                for (int row = model.getRowCount() - 1; row >= 0; row--) {
+                    if (selectedNodes.contains(model.getNodeAtTableRow(row))) {
+                        maxSelectedRow = row;
+                        break;
+                    }
+                }
+            }
+        }
+        return maxSelectedRow;
+    }
+
+    @Override
+    public boolean isSelectedIndex(final int index) {
+        return index >= 0 && index < model.getRowCount() && !selectedNodes.isEmpty()
+                && selectedNodes.contains(model.getNodeAtTableRow(index));
+    }
+
+    @Override
+    public int getAnchorSelectionIndex() {
+        if (anchorRow == UNKNOWN_ROW) {
+            anchorRow = getTableRow(anchorNode);
+        }
+        return anchorRow;
+    }
+
+    @Override
+    public void setAnchorSelectionIndex(final int index) {
+        anchorNode = getNode(index);
+        anchorRow = anchorNode == null ? NOT_LOCATED : index;
+    }
+
+    @Override
+    public int getLeadSelectionIndex() {
+        if (leadRow == UNKNOWN_ROW) {
+            leadRow = getTableRow(leadNode);
+        }
+        return leadRow;
+    }
+
+    /**
+     * Sets the lead selection index, changing the selection between the anchor and the lead to match the
+     * selection state of the anchor, in the same way as the DefaultListSelectionModel.
+     *
+     * @param index The new lead selection index.
+     */
+    @Override
+    public void setLeadSelectionIndex(final int index) {
+        int anchor = getAnchorSelectionIndex();
+        if (index == NOT_LOCATED) {
+            if (anchor == NOT_LOCATED) {
+                leadNode = null;
+                leadRow = NOT_LOCATED;
+            }
+            return;
+        } else if (anchor == NOT_LOCATED) {
+            return;
+        }
+        int oldLead = getLeadSelectionIndex();
+        if (oldLead == NOT_LOCATED) {
+            oldLead = index;
+        }
+        boolean shouldSelect = isSelectedIndex(anchor);
+        if (selectionMode == SINGLE_SELECTION) {
+            anchor = index;
+            shouldSelect = true;
+        }
+        final int oldMin = Math.min(getAnchorSelectionIndex(), oldLead);
+        final int oldMax = Math.max(getAnchorSelectionIndex(), oldLead);
+        final int newMin = Math.min(anchor, index);
+        final int newMax = Math.max(anchor, index);
+        setAnchorAndLeadNodes(anchor, index);
+        if (shouldSelect) {
+            changeSelection(oldMin, oldMax, newMin, newMax);
+        } else {
+            changeSelection(newMin, newMax, oldMin, oldMax, false);
+        }
+    }
+
+    @Override
+    public void clearSelection() {
+        if (!selectedNodes.isEmpty()) {
+            selectedNodes.clear();
+            selectionChanged();
+            minSelectedRow = NOT_LOCATED;
+            maxSelectedRow = NOT_LOCATED;
+            selectedTableRows = EMPTY_ARRAY;
+        }
+    }
+
+    @Override
+    public boolean isSelectionEmpty() {
+        return selectedNodes.isEmpty() || getMinSelectionIndex() == NOT_LOCATED;
+    }
+
+    /**
+     * Rows inserted into the table do not change the selected nodes, so this only invalidates cached rows.
+     * New rows are never selected, as they are new nodes in the tree.
+     */
+    @Override
+    public void insertIndexInterval(final int index, final int length, final boolean before) {
+        invalidateRows();
+    }
+
+    /**
+     * Rows removed from the table do not change the selected nodes, so this only invalidates cached rows.
+     */
+    @Override
+    public void removeIndexInterval(final int index0, final int index1) {
+        invalidateRows();
+        removedNodesPossible = true;
+    }
+
+    @Override
+    public void setValueIsAdjusting(final boolean valueIsAdjusting) {
+        if (valueIsAdjusting != this.valueIsAdjusting) {
+            this.valueIsAdjusting = valueIsAdjusting;
+            if (!valueIsAdjusting && lastChangedRow != NOT_LOCATED) {
+                final int first = firstChangedRow;
+                final int last = lastChangedRow;
+                firstChangedRow = Integer.MAX_VALUE;
+                lastChangedRow = NOT_LOCATED;
+                fireValueChanged(first, last, false);
+            }
+        }
+    }
+
+    @Override
+    public boolean getValueIsAdjusting() {
+        return valueIsAdjusting;
+    }
+
+    @Override
+    public void setSelectionMode(final int selectionMode) {
+        switch (selectionMode) {
+            case SINGLE_SELECTION:
+            case SINGLE_INTERVAL_SELECTION:
+            case MULTIPLE_INTERVAL_SELECTION:
+                this.selectionMode = selectionMode;
+                break;
+            default:
+                throw new IllegalArgumentException("invalid selectionMode: " + selectionMode);
+        }
+    }
+
+    @Override
+    public int getSelectionMode() {
+        return selectionMode;
+    }
+
+    @Override
+    public void addListSelectionListener(final ListSelectionListener listener) {
+        listenerList.add(ListSelectionListener.class, listener);
+    }
+
+    @Override
+    public void removeListSelectionListener(final ListSelectionListener listener) {
+        listenerList.remove(ListSelectionListener.class, listener);
+    }
+
+    /**
+     * @return An array of the table rows which are selected, in ascending order.
+     */
+    @Override
+    public int[] getSelectedIndices() {
+        return getSelectedTableRows().clone();
+    }
+
+    /**
+     * @return The number of visible selected rows.
+     */
+    @Override
+    public int getSelectedItemsCount() {
+        return getSelectedTableRows().length;
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                      Row mapping and change methods
+     */
+
+    /**
+     * Returns the cached sorted array of selected table rows, calculating it if required.
+     * Do not modify the array returned.
+     *
+     * @return the cached sorted array of selected table rows.
+     */
+    protected int[] getSelectedTableRows() {
+        if (selectedTableRows == null) {
+            selectedTableRows = calculateSelectedTableRows();
+        }
+        return selectedTableRows;
+    }
+
+    protected int[] calculateSelectedTableRows() {
+        final int rowCount = model.getRowCount();
+        final Set<TreeNode> localNodes = selectedNodes; // avoid repeated getfield.
+        if (localNodes.isEmpty() || rowCount == 0) {
+            return EMPTY_ARRAY;
+        }
+        int[] rows = new int[Math.min(localNodes.size(), rowCount)];
+        int count = 0;
+        if (localNodes.size() <= NODE_LOOKUP_THRESHOLD) {
+            for (TreeNode node : localNodes) {
+                final int row = getTableRow(node);
+                if (row >= 0) {
+                    rows[count++] = row;
+                }
+            }
+            Arrays.sort(rows, 0, count);
+        } else {
+            for (int row = 0; row < rowCount && count < rows.length; row++) {
+                if (localNodes.contains(model.getNodeAtTableRow(row))) {
+                    rows[count++] = row;
+                }
+            }
+        }
+        return count == rows.length ? rows : Arrays.copyOf(rows, count);
+    }
+
+    protected int getTableRow(final TreeNode node) {
+        if (node != null) {
+            final int modelIndex = model.getModelIndexForTreeNode(node);
+            if (modelIndex >= 0) {
+                return model.getTableRowForModelIndex(modelIndex);
+            }
+        }
+        return NOT_LOCATED;
+    }
+
+    protected TreeNode getNode(final int tableRow) {
+        return tableRow >= 0 && tableRow < model.getRowCount() ? model.getNodeAtTableRow(tableRow) : null;
+    }
+
+    protected void addRows(final int from, final int to) {
+        final int lastRow = Math.min(model.getRowCount() - 1, to);
+        for (int row = Math.max(0, from); row <= lastRow; row++) {
+            selectedNodes.add(model.getNodeAtTableRow(row));
+        }
+    }
+
+    protected void setAnchorAndLeadNodes(final int anchorIndex, final int leadIndex) {
+        anchorNode = getNode(anchorIndex);
+        anchorRow = anchorNode == null ? NOT_LOCATED : anchorIndex;
+        leadNode = getNode(leadIndex);
+        leadRow = leadNode == null ? NOT_LOCATED : leadIndex;
+    }
+
+    /**
+     * Selects rows in the set range which are not in the clear range, and clears rows in the clear range which
+     * are not in the set range, in the same way as the DefaultListSelectionModel.
+     */
+    protected void changeSelection(final int clearMin, final int clearMax, final int setMin, final int setMax) {
+        changeSelection(clearMin, clearMax, setMin, setMax, true);
+    }
+
+    protected void changeSelection(final int clearMin, final int clearMax,
+                                   final int setMin, final int setMax, final boolean clearFirst) {
+        final int from = Math.max(0, Math.min(clearMin, setMin));
+        final int to = Math.min(model.getRowCount() - 1, Math.max(clearMax, setMax));
+        for (int row = from; row <= to; row++) {
+            final boolean shouldClear = row >= clearMin && row <= clearMax;
+            final boolean shouldSet = row >= setMin && row <= setMax;
+            if (shouldSet && shouldClear) {
+                if (clearFirst) {
+                    selectedNodes.add(model.getNodeAtTableRow(row));
+                } else {
+                    selectedNodes.remove(model.getNodeAtTableRow(row));
+                }
+            } else if (shouldSet) {
+                selectedNodes.add(model.getNodeAtTableRow(row));
+            } else if (shouldClear) {
+                selectedNodes.remove(model.getNodeAtTableRow(row));
+            }
+        }
+        selectionChanged(from, to);
+    }
+
+    /**
+     * Invalidates the cached table rows, which will be recalculated when next required.
+     */
+    protected void invalidateRows() {
+        selectedTableRows = null;
+        minSelectedRow = UNKNOWN_ROW;
+        maxSelectedRow = UNKNOWN_ROW;
+        anchorRow = UNKNOWN_ROW;
+        leadRow = UNKNOWN_ROW;
+    }
+
+    /**
+     * Notifies listeners that the selection may have changed on any row.
+     */
+    protected void selectionChanged() {
+        selectionChanged(0, Math.max(0, model.getRowCount() - 1));
+    }
+
+    /**
+     * Invalidates cached selected rows, and notifies listeners that the selection may have changed
+     * between the first and last rows.  If the value is adjusting, the changed range is accumulated
+     * and reported again when adjusting ends.
+     *
+     * @param firstRow The first row which may have changed.
+     * @param lastRow The last row which may have changed.
+     */
+    protected void selectionChanged(final int firstRow, final int lastRow) {
+        selectedTableRows = null;
+        minSelectedRow = UNKNOWN_ROW;
+        maxSelectedRow = UNKNOWN_ROW;
+        if (valueIsAdjusting) {
+            firstChangedRow = Math.min(firstChangedRow, firstRow);
+            lastChangedRow = Math.max(lastChangedRow, lastRow);
+        }
+        fireValueChanged(firstRow, lastRow, valueIsAdjusting);
+    }
+
+    protected void fireValueChanged(final int firstRow, final int lastRow, final boolean isAdjusting) {
+        final Object[] listeners = listenerList.getListenerList();
+        ListSelectionEvent event = null;
+        for (int i = listeners.length - 2; i >= 0; i -= 2) {
+            if (listeners[i] == ListSelectionListener.class) {
+                if (event == null) {
+                    event = new ListSelectionEvent(this, firstRow, lastRow, isAdjusting);
+                }
+                ((ListSelectionListener) listeners[i + 1]).valueChanged(event);
+            }
+        }
+    }
+
+}
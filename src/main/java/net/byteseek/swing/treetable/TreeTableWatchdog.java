@@ -0,0 +1,311 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link TreeTableModel.MetricsListener} which times operations of a TreeTableModel and its TreeTableRowSorter
+ * against a budget, and reports any operation which runs over it to a {@link StallHandler}.
+ * Operations include sorting, expanding or collapsing the tree, setting a filter or a new root, and handling
+ * tree model events.  These normally run on the Event Dispatch Thread, so an operation over budget freezes the UI.
+ * <p>
+ * Only the outermost operation is timed; nested operations (e.g. the tree refresh performed when setting a filter)
+ * are part of the operation which contains them.  If an operation is still running when its budget expires,
+ * a background thread samples the stack of the thread running it, so the report shows where the time was going.
+ * The report is made on the thread which ran the operation, once it completes.
+ * <p>
+ * The background thread is a daemon thread.  Call {@link #close()} to stop it once the watchdog is no longer needed.
+ */
+public class TreeTableWatchdog implements TreeTableModel.MetricsListener, AutoCloseable {
+
+    /* *****************************************************************************************************************
+     *                                                Constants
+     */
+
+    protected static final StackTraceElement[] NO_STACK = new StackTraceElement[0];
+
+
+    /* *****************************************************************************************************************
+     *                                                Variables
+     */
+
+    protected final TreeTableModel model;
+    protected final StallHandler handler;
+    protected final ScheduledExecutorService sampler;
+    protected volatile long budgetNanos;
+
+    // State of the outermost operation being timed.  Only accessed by the thread running operations.
+    protected int nestingLevel;
+    protected long startTime;
+    protected ScheduledFuture<?> sampleTask;
+
+    // State shared with the sampling thread.
+    protected volatile Thread operationThread;
+    protected volatile long operationId;
+    protected volatile StackTraceElement[] sampledStack;
+
+
+    /* *****************************************************************************************************************
+     *                                                Constructors
+     */
+
+    /**
+     * Constructs a TreeTableWatchdog.  It must still be added as a metrics listener to the model.
+     *
+     * @param model The model to watch, which supplies the row and expanded node counts.
+     * @param budgetMillis The budget in milliseconds an operation can take before it is reported.
+     * @param handler The handler to report operations which run over budget.
+     * @throws IllegalArgumentException if the model or handler is null, or the budget is negative.
+     */
+    public TreeTableWatchdog(final TreeTableModel model, final long budgetMillis, final StallHandler handler) {
+        if (model == null || handler == null) {
+            throw new IllegalArgumentException("Object cannot be null: " + (model == null ? "model" : "handler"));
+        }
+        this.model = model;
+        this.handler = handler;
+        setBudgetMillis(budgetMillis);
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "TreeTableWatchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true); // don't keep cancelled samples for operations which finished in budget.
+        this.sampler = executor;
+    }
+
+    /**
+     * Constructs a TreeTableWatchdog and adds it as a metrics listener to the model.
+     *
+     * @param model The model to watch.
+     * @param budgetMillis The budget in milliseconds an operation can take before it is reported.
+     * @param handler The handler to report operations which run over budget.
+     * @return A TreeTableWatchdog watching the model.
+     * @throws IllegalArgumentException if the model or handler is null, or the budget is negative.
+     */
+    public static TreeTableWatchdog watch(final TreeTableModel model, final long budgetMillis, final StallHandler handler) {
+        final TreeTableWatchdog watchdog = new TreeTableWatchdog(model, budgetMillis, handler);
+        model.addMetricsListener(watchdog);
+        return watchdog;
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Getters and setters
+     */
+
+    /**
+     * @return The budget in milliseconds an operation can take before it is reported.
+     */
+    public long getBudgetMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(budgetNanos);
+    }
+
+    /**
+     * Sets the budget in milliseconds an operation can take before it is reported.
+     *
+     * @param budgetMillis The budget in milliseconds.
+     * @throws IllegalArgumentException if the budget is negative.
+     */
+    public void setBudgetMillis(final long budgetMillis) {
+        if (budgetMillis < 0) {
+            throw new IllegalArgumentException("Budget cannot be negative: " + budgetMillis);
+        }
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    /**
+     * Removes this watchdog from the model it watches, and stops the sampling thread.
+     */
+    @Override
+    public void close() {
+        model.removeMetricsListener(this);
+        sampler.shutdownNow();
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Listener methods
+     */
+
+    @Override
+    public void operationStarted(final Operation operation) {
+        if (nestingLevel++ == 0) {
+            sampledStack = null;
+            operationThread = Thread.currentThread();
+            final long id = ++operationId;
+            if (!sampler.isShutdown()) {
+                sampleTask = sampler.schedule(() -> sampleStack(id), budgetNanos, TimeUnit.NANOSECONDS);
+            }
+            startTime = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void operationCompleted(final Operation operation, final long durationNanos,
+                                   final int rowCount, final int rowsAffected, final int nodeDepth) {
+        if (nestingLevel > 0 && --nestingLevel == 0) {
+            final long duration = System.nanoTime() - startTime;
+            operationId++; // invalidates any sample still to run for this operation.
+            operationThread = null;
+            final ScheduledFuture<?> task = sampleTask;
+            if (task != null) {
+                task.cancel(false);
+                sampleTask = null;
+            }
+            if (duration > budgetNanos) {
+                final StackTraceElement[] stack = sampledStack;
+                sampledStack = null;
+                handler.operationStalled(new Stall(operation, duration, rowCount,
+                                         model.getExpandedNodes().size(), stack == null ? NO_STACK : stack));
+            }
+        }
+    }
+
+    @Override
+    public void counted(final Counter counter, final int amount) {
+        // Counters are not timed.
+    }
+
+    /**
+     * Samples the stack of the thread running an operation, if the operation is still running.
+     * Called on the sampling thread once the budget for an operation has expired.
+     *
+     * @param id The id of the operation to sample.
+     */
+    protected void sampleStack(final long id) {
+        final Thread thread = operationThread;
+        if (thread != null && operationId == id) {
+            final StackTraceElement[] stack = thread.getStackTrace();
+            if (operationId == id) { // only keep the sample if the operation didn't complete while we took it.
+                sampledStack = stack;
+            }
+        }
+    }
+
+
+    /* *****************************************************************************************************************
+     *                                                Stall reports
+     */
+
+    /**
+     * A handler for operations which run over budget.
+     */
+    public interface StallHandler {
+
+        /**
+         * Called on the thread which ran an operation once it completes, if it ran over budget.
+         *
+         * @param stall Details of the operation which ran over budget.
+         */
+        void operationStalled(Stall stall);
+    }
+
+    /**
+     * Details of an operation which ran over budget.
+     */
+    public static class Stall {
+
+        protected final Operation operation;
+        protected final long durationNanos;
+        protected final int rowCount;
+        protected final int expandedNodeCount;
+        protected final StackTraceElement[] sampledStack;
+
+        /**
+         * Constructs a Stall.
+         *
+         * @param operation The operation which ran over budget.
+         * @param durationNanos How long the operation took, in nanoseconds.
+         * @param rowCount The number of visible rows in the model after the operation.
+         * @param expandedNodeCount The number of expanded nodes after the operation.
+         * @param sampledStack The stack of the thread running the operation, sampled when the budget expired.
+         */
+        public Stall(final Operation operation, final long durationNanos, final int rowCount,
+                     final int expandedNodeCount, final StackTraceElement[] sampledStack) {
+            this.operation = operation;
+            this.durationNanos = durationNanos;
+            this.rowCount = rowCount;
+            this.expandedNodeCount = expandedNodeCount;
+            this.sampledStack = sampledStack;
+        }
+
+        /**
+         * @return The operation which ran over budget.
+         */
+        public Operation getOperation() {
+            return operation;
+        }
+
+        /**
+         * @return How long the operation took, in nanoseconds.
+         */
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * @return The number of visible rows in the model after the operation.
+         */
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * @return The number of expanded nodes after the operation.
+         */
+        public int getExpandedNodeCount() {
+            return expandedNodeCount;
+        }
+
+        /**
+         * @return The stack of the thread running the operation, sampled when the budget expired.
+         *         This is empty if the sample could not be taken before the operation completed.
+         */
+        public StackTraceElement[] getSampledStack() {
+            return sampledStack.clone();
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "(operation = " + operation +
+                    ", duration = " + TimeUnit.NANOSECONDS.toMillis(durationNanos) + "ms" +
+                    ", rows = " + rowCount + ", expanded nodes = " + expandedNodeCount +
+                    ", sampled stack = " + Arrays.toString(sampledStack) + ')';
+        }
+    }
+
+}
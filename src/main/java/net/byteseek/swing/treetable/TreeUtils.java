@@ -32,6 +32,7 @@
 package net.byteseek.swing.treetable;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import javax.swing.RowSorter;
@@ -41,6 +42,8 @@ import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.TreeNode;
 import java.util.List;
 import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A collection of miscellaneous static utility methods and objects to build trees, group nodes, process
@@ -105,16 +108,42 @@ public final class TreeUtils {
                                                        final Function<T, List<T>> childProvider,
                                                        final Predicate<T> allowChildrenTest) {
         final boolean allowsChildren = allowChildrenTest.test(parent);
-        final DefaultMutableTreeNode parentNode = new DefaultMutableTreeNode(parent, allowsChildren);
+        final DefaultMutableTreeNode rootNode = new DefaultMutableTreeNode(parent, allowsChildren);
         if (allowsChildren) {
-            final List<T> children = childProvider.apply(parent);
-            int indexToInsert = 0;
-            for (T child : children) {
-                final DefaultMutableTreeNode childNode = buildTree(child, (childProvider), allowChildrenTest);
-                parentNode.insert(childNode, indexToInsert++);
+            // Build the tree depth first with a stack of parents and their remaining children, rather than recursion,
+            // so user object trees of any depth can be mirrored.  User objects are visited in the same order.
+            // The parent being built is kept out of the stack, as most children are added to it.
+            final List<DefaultMutableTreeNode> parentNodes = new ArrayList<>();
+            final List<Iterator<T>> remainingChildren = new ArrayList<>();
+            DefaultMutableTreeNode parentNode = rootNode;
+            Iterator<T> children = childProvider.apply(parent).iterator();
+            while (true) {
+                if (children.hasNext()) {
+                    final T child = children.next();
+                    final boolean childAllowsChildren = allowChildrenTest.test(child);
+                    final DefaultMutableTreeNode childNode = new DefaultMutableTreeNode(child, childAllowsChildren);
+                    if (childAllowsChildren) {
+                        parentNodes.add(parentNode);
+                        remainingChildren.add(children);
+                        parentNode = childNode;
+                        children = childProvider.apply(child).iterator();
+                    } else {
+                        parentNode.add(childNode);
+                    }
+                } else if (parentNodes.isEmpty()) {
+                    break;
+                } else {
+                    // Add a node to its parent once its children are built, while the parent has no parent itself.
+                    // Adding a node checks it isn't an ancestor of the parent, which walks up all of the parent's ancestors.
+                    final DefaultMutableTreeNode builtNode = parentNode;
+                    final int top = parentNodes.size() - 1;
+                    parentNode = parentNodes.remove(top);
+                    children = remainingChildren.remove(top);
+                    parentNode.add(builtNode);
+                }
             }
         }
-        return parentNode;
+        return rootNode;
     }
 
     /**
@@ -312,14 +341,24 @@ public final class TreeUtils {
 
     /**
      * Applies a method to the node passed in and all of its children using a depth first
-     * tree walk.
+     * tree walk.  The tree is walked with a stack rather than recursion, so trees of any depth can be walked.
      *
      * @param node The node to walk all children of.
      * @param method The method to apply to each node.
      */
     public static void walk(final TreeNode node, final Consumer<TreeNode> method) {
         method.accept(node);
-        forEachChild(node, child -> walk(child, method));
+        final NodeStack stack = new NodeStack();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            final TreeNode child = stack.nextChild();
+            if (child == null) {
+                stack.pop();
+            } else {
+                method.accept(child);
+                stack.push(child);
+            }
+        }
     }
 
     /**
@@ -331,13 +370,88 @@ public final class TreeUtils {
      * @param condition The predicate that decides whether to apply the method.
      */
     public static void walk(final TreeNode node, final Consumer<TreeNode> method, final Predicate<TreeNode> condition) {
-        if (condition.test(node)) {
-            method.accept(node);
+        walk(node, child -> {
+            if (condition.test(child)) {
+                method.accept(child);
+            }
+        });
+    }
+
+    /**
+     * Returns a stream of the node passed in and all of its children and sub-children in depth-first order,
+     * which is the order the nodes would have visually in the tree if they were all expanded.
+     * Nodes are streamed as the tree is walked, rather than being copied into a list first.
+     * <p>
+     * The stream is sequential, but can be made parallel.  It splits by subtree, so different subtrees are
+     * traversed on different threads, and it keeps its depth-first order in parallel.  Size estimates come from the
+     * child counts of the nodes.  The tree must not be modified while it is streamed.  Nodes created lazily when they
+     * are first asked for, such as the nodes of a {@link CompactTreeStore}, should only be streamed sequentially.
+     *
+     * @param node The node to stream with all of its children and sub-children.
+     * @return A stream of the node and all of its children and sub-children, in depth-first order.
+     * @throws NullPointerException if the node passed in is null.
+     */
+    public static Stream<TreeNode> depthFirstStream(final TreeNode node) {
+        return StreamSupport.stream(TreeNodeSpliterator.depthFirst(node, null), false);
+    }
+
+    /**
+     * Returns a stream of the node passed in and its children and sub-children in depth-first order,
+     * leaving out any node which fails the condition along with all of its children.  The children of a node which
+     * fails the condition are not visited at all, so whole subtrees can be pruned cheaply.
+     * See {@link #depthFirstStream(TreeNode)} for how the stream behaves in parallel.
+     *
+     * @param node The node to stream with its children and sub-children.
+     * @param condition The condition a node must pass to be streamed along with its children.
+     * @return A stream of the nodes which pass the condition and whose ancestors pass it, in depth-first order.
+     * @throws NullPointerException if the node passed in is null.
+     * @throws IllegalArgumentException if the condition passed in is null.
+     */
+    public static Stream<TreeNode> depthFirstStream(final TreeNode node, final Predicate<TreeNode> condition) {
+        if (condition == null) {
+            throw new IllegalArgumentException("Object cannot be null: condition");
+        }
+        return StreamSupport.stream(TreeNodeSpliterator.depthFirst(node, condition), false);
+    }
+
+    /**
+     * Returns a stream of the node passed in and all of its children and sub-children in breadth-first order:
+     * the node, then its children, then all of their children, and so on.
+     * Nodes are streamed as the tree is walked, rather than being copied into a list first.
+     * <p>
+     * The stream is sequential, but can be made parallel.  It splits by subtree, so different subtrees are
+     * traversed on different threads, but it is not ordered: in parallel, nodes are only in breadth-first order within
+     * each subtree split off.  Size estimates come from the child counts of the nodes.  The tree must not be modified
+     * while it is streamed.  Nodes created lazily when they are first asked for, such as the nodes of a
+     * {@link CompactTreeStore}, should only be streamed sequentially.
+     *
+     * @param node The node to stream with all of its children and sub-children.
+     * @return A stream of the node and all of its children and sub-children, in breadth-first order.
+     * @throws NullPointerException if the node passed in is null.
+     */
+    public static Stream<TreeNode> breadthFirstStream(final TreeNode node) {
+        return StreamSupport.stream(TreeNodeSpliterator.breadthFirst(node, null), false);
+    }
+
+    /**
+     * Returns a stream of the node passed in and its children and sub-children in breadth-first order,
+     * leaving out any node which fails the condition along with all of its children.  The children of a node which
+     * fails the condition are not visited at all, so whole subtrees can be pruned cheaply.
+     * See {@link #breadthFirstStream(TreeNode)} for how the stream behaves in parallel.
+     *
+     * @param node The node to stream with its children and sub-children.
+     * @param condition The condition a node must pass to be streamed along with its children.
+     * @return A stream of the nodes which pass the condition and whose ancestors pass it, in breadth-first order.
+     * @throws NullPointerException if the node passed in is null.
+     * @throws IllegalArgumentException if the condition passed in is null.
+     */
+    public static Stream<TreeNode> breadthFirstStream(final TreeNode node, final Predicate<TreeNode> condition) {
+        if (condition == null) {
+            throw new IllegalArgumentException("Object cannot be null: condition");
         }
-        forEachChild(node, child -> walk(child, method, condition));
+        return StreamSupport.stream(TreeNodeSpliterator.breadthFirst(node, condition), false);
     }
 
-    //TODO: do we want a walk that ceases processing childnodes when it fails the predicate.
 
     //TODO: do we want a walk with a depth limit?
 
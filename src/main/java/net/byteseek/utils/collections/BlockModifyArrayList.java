@@ -32,6 +32,7 @@
 package net.byteseek.utils.collections;
 
 import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.List;
@@ -183,7 +184,7 @@ public class BlockModifyArrayList<E> extends AbstractList<E> {
             elements[position] = elements[position + 1];
         }
          */
-        size--;
+        elements[--size] = null; // don't keep a reference to elements which are no longer in the list.
         return elementToRemove;
     }
 
@@ -197,6 +198,7 @@ public class BlockModifyArrayList<E> extends AbstractList<E> {
     public void remove(final int from, final int to) {
         checkIndex(from);
         checkFromTo(from, to); //TODO: to >= size?  doesn't this mean if to = size -1 (last position), then we miss that case?
+        final int oldSize = size;
         if (to >= size) { // If we're removing everything up to or past the end, just set the size down.
             size = from;
         } else { // got some stuff at the end we have to move over to cover the gap:
@@ -213,6 +215,7 @@ public class BlockModifyArrayList<E> extends AbstractList<E> {
              */
             size -= numToRemove;
         }
+        Arrays.fill(elements, size, oldSize, null); // don't keep references to elements which are no longer in the list.
     }
 
     public void replace(final int from, final int to, final List<? extends E> newValues) {
@@ -252,6 +255,9 @@ public class BlockModifyArrayList<E> extends AbstractList<E> {
                 elements[position] = elements[position - delta]; // delta is negative.
             }
         }
+        if (delta < 0) {
+            Arrays.fill(elements, size + delta, size, null); // don't keep references to elements no longer in the list.
+        }
         size += delta;
     }
 
@@ -294,6 +300,7 @@ public class BlockModifyArrayList<E> extends AbstractList<E> {
 
     @Override
     public void clear() {
+        Arrays.fill(elements, 0, size, null);
         size = 0;
     }
 
@@ -0,0 +1,144 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ByteStringDictionaryTest {
+
+    @Test
+    public void testCodesAreDense() {
+        final ByteStringDictionary dictionary = new ByteStringDictionary();
+        assertEquals(0, dictionary.getOrAdd("b"));
+        assertEquals(1, dictionary.getOrAdd("a"));
+        assertEquals(0, dictionary.getOrAdd("b"));
+        assertEquals(2, dictionary.getOrAdd(""));
+        assertEquals(2, dictionary.getOrAdd(""));
+        assertEquals(3, dictionary.size());
+        assertEquals("b", dictionary.getString(0));
+        assertEquals("a", dictionary.getString(1));
+        assertEquals("", dictionary.getString(2));
+    }
+
+    @Test
+    public void testGetFromBuffer() {
+        final ByteStringDictionary dictionary = new ByteStringDictionary();
+        final byte[] buffer = "xx\tyy\txx".getBytes(StandardCharsets.UTF_8);
+        assertEquals(ByteStringDictionary.NOT_FOUND, dictionary.get(buffer, 0, 2));
+        assertEquals(0, dictionary.getOrAdd(buffer, 0, 2));
+        assertEquals(1, dictionary.getOrAdd(buffer, 3, 2));
+        assertEquals(0, dictionary.getOrAdd(buffer, 6, 2));
+        assertEquals(0, dictionary.get(buffer, 6, 2));
+        assertEquals(ByteStringDictionary.NOT_FOUND, dictionary.get(buffer, 0, 1)); // prefixes are different strings.
+        assertEquals(2, dictionary.size());
+    }
+
+    @Test
+    public void testGrowsPastInitialCapacity() {
+        final ByteStringDictionary dictionary = new ByteStringDictionary();
+        final int count = 20000;
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, dictionary.getOrAdd("value-" + i + "-" + "z".repeat(i % 50)));
+        }
+        assertEquals(count, dictionary.size());
+        for (int i = 0; i < count; i++) {
+            final String value = "value-" + i + "-" + "z".repeat(i % 50);
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            assertEquals(i, dictionary.get(bytes, 0, bytes.length));
+            assertEquals(value, dictionary.getString(i));
+        }
+    }
+
+    @Test
+    public void testCompareByCodePoint() {
+        final ByteStringDictionary dictionary = new ByteStringDictionary();
+        final List<String> values = Arrays.asList("b", "a", "ab", "", "\u00e9", "z", "\ud83d\ude00", "\uffff");
+        for (String value : values) {
+            dictionary.getOrAdd(value);
+        }
+        for (int code1 = 0; code1 < values.size(); code1++) {
+            for (int code2 = 0; code2 < values.size(); code2++) {
+                final int expected = Integer.signum(compareCodePoints(values.get(code1), values.get(code2)));
+                assertEquals(expected, Integer.signum(dictionary.compare(code1, code2)),
+                             values.get(code1) + " compared to " + values.get(code2));
+            }
+        }
+        assertEquals("\u00e9", dictionary.getString(4));
+    }
+
+    @Test
+    public void testConcat() {
+        final ByteStringDictionary first = new ByteStringDictionary();
+        first.getOrAdd("a");
+        first.getOrAdd("b");
+        final ByteStringDictionary second = new ByteStringDictionary();
+        for (int i = 0; i < 3000; i++) {
+            second.getOrAdd("s" + i);
+        }
+        final ByteStringDictionary empty = new ByteStringDictionary();
+        final ByteStringDictionary result = ByteStringDictionary.concat(Arrays.asList(first, empty, second));
+        assertEquals(3002, result.size());
+        assertEquals("b", result.getString(1));
+        assertEquals("s0", result.getString(2));
+        assertEquals("s2999", result.getString(3001));
+        assertEquals(first.getHash(1), result.getHash(1));
+        assertEquals(2 + 1234, result.getOrAdd("s1234"));
+        assertEquals(3002, result.getOrAdd("c"));
+    }
+
+    @Test
+    public void testGetOrAddFromOtherDictionary() {
+        final ByteStringDictionary shard = new ByteStringDictionary();
+        final List<Integer> codes = new ArrayList<>();
+        codes.add(shard.getOrAdd("x"));
+        codes.add(shard.getOrAdd("y"));
+        final ByteStringDictionary merged = new ByteStringDictionary();
+        merged.getOrAdd("y");
+        assertEquals(1, merged.getOrAdd(shard, codes.get(0)));
+        assertEquals(0, merged.getOrAdd(shard, codes.get(1)));
+        assertEquals(2, merged.size());
+        assertEquals("x", merged.getString(1));
+    }
+
+    private static int compareCodePoints(final String string1, final String string2) {
+        final int[] codePoints1 = string1.codePoints().toArray();
+        final int[] codePoints2 = string2.codePoints().toArray();
+        return Arrays.compare(codePoints1, codePoints2);
+    }
+
+}
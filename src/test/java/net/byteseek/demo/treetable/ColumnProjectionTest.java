@@ -0,0 +1,95 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColumnProjectionTest {
+
+    private static final String[] HEADER = {"id", "name", "parent", "size_a", "size_b"};
+
+    @Test
+    public void testAllSelectsEverything() {
+        assertTrue(ColumnProjection.ALL.isAll());
+        assertNull(ColumnProjection.ALL.select(HEADER));
+        assertSame(ColumnProjection.ALL, ColumnProjection.ALL.withRequired("id"));
+        final String[] projected = ColumnProjection.project(HEADER, null);
+        assertArrayEquals(HEADER, projected);
+        assertNotSame(HEADER, projected);
+    }
+
+    @Test
+    public void testIncludeSelectsInFileOrder() {
+        final ColumnProjection projection = ColumnProjection.include("size_a", "id");
+        assertFalse(projection.isAll());
+        final int[] columns = projection.select(HEADER);
+        assertArrayEquals(new int[] {0, 3}, columns);
+        assertArrayEquals(new String[] {"id", "size_a"}, ColumnProjection.project(HEADER, columns));
+    }
+
+    @Test
+    public void testIncludeMissingColumn() {
+        final ColumnProjection projection = ColumnProjection.include("id", "colour");
+        final IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> projection.select(HEADER));
+        assertTrue(e.getMessage().contains("colour"));
+        assertFalse(e.getMessage().contains("id"));
+    }
+
+    @Test
+    public void testMatchingWholeNames() {
+        final ColumnProjection projection = ColumnProjection.matching(Pattern.compile("size_.*"));
+        assertArrayEquals(new int[] {3, 4}, projection.select(HEADER));
+        assertArrayEquals(new int[0], ColumnProjection.matching(Pattern.compile("size")).select(HEADER));
+        assertArrayEquals(new int[0], ColumnProjection.matching(Pattern.compile("colour")).select(HEADER));
+    }
+
+    @Test
+    public void testWithRequired() {
+        final ColumnProjection projection = ColumnProjection.matching(Pattern.compile("size_b"))
+                                                            .withRequired("parent", "id")
+                                                            .withRequired("not_in_header");
+        assertArrayEquals(new int[] {0, 2, 4}, projection.select(HEADER));
+        assertEquals("matching:size_b", projection.toString());
+        assertEquals(ColumnProjection.include("name").toString(), ColumnProjection.include("name").withRequired("id").toString());
+    }
+
+    @Test
+    public void testNullArguments() {
+        assertThrows(IllegalArgumentException.class, () -> ColumnProjection.include((String[]) null));
+        assertThrows(IllegalArgumentException.class, () -> ColumnProjection.matching(null));
+        assertThrows(IllegalArgumentException.class, () -> ColumnProjection.include("id").withRequired((String[]) null));
+    }
+
+}
@@ -0,0 +1,231 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TSVReaderTest {
+
+    private static final String[] HEADER = {"id", "parent", "name"};
+    private static final int ROW_COUNT = 500;
+    private static final long THREAD_STOP_TIMEOUT = 5000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testChunkBoundaries() throws IOException {
+        final Path file = writeFile("rows.tsv", ROW_COUNT, "\n", true);
+        final List<String[]> expected = expectedRows(ROW_COUNT);
+        for (int chunkSize : new int[] {1, 7, 13, 64, 1000, TSVReader.DEFAULT_CHUNK_SIZE}) {
+            try (TSVReader reader = new TSVReader(file, 3, chunkSize)) {
+                assertArrayEquals(HEADER, reader.getHeader());
+                assertRows(expected, reader.rows());
+                assertEquals(1.0, reader.getProgress());
+            }
+        }
+    }
+
+    @Test
+    public void testCarriageReturnsAndNoFinalNewline() throws IOException {
+        final Path file = writeFile("crlf.tsv", 20, "\r\n", false);
+        try (TSVReader reader = new TSVReader(file, 2, 5)) {
+            assertArrayEquals(HEADER, reader.getHeader());
+            assertRows(expectedRows(20), reader.rows());
+        }
+    }
+
+    @Test
+    public void testProjection() throws IOException {
+        final Path file = writeFile("rows.tsv", 50, "\n", true);
+        try (TSVReader reader = new TSVReader(file, 2, 11, ColumnProjection.include("name", "id"))) {
+            assertArrayEquals(new String[] {"id", "name"}, reader.getHeader());
+            final List<String[]> expected = new ArrayList<>();
+            for (String[] row : expectedRows(50)) {
+                expected.add(new String[] {row[0], row[2]});
+            }
+            assertRows(expected, reader.rows());
+        }
+    }
+
+    @Test
+    public void testNoHeader() throws IOException {
+        final Path file = tempDir.resolve("empty.tsv");
+        Files.createFile(file);
+        assertThrows(IOException.class, () -> new TSVReader(file));
+    }
+
+    @Test
+    public void testClosingAbandonedStreamStopsThreads() throws IOException {
+        final Path file = writeFile("rows.tsv", ROW_COUNT, "\n", true);
+        try (TSVReader reader = new TSVReader(file, 3, 16)) {
+            try (Stream<TSVRow> rows = reader.rows()) {
+                assertEquals("0", rows.findFirst().orElseThrow().getField(0));
+            }
+            assertThreadsStop("TSVReader");
+        }
+    }
+
+    @Test
+    public void testClosingReaderStopsThreads() throws IOException {
+        final Path file = writeFile("rows.tsv", ROW_COUNT, "\n", true);
+        final TSVReader reader = new TSVReader(file, 3, 16);
+        final Iterator<TSVRow> rows = reader.rows().iterator();
+        assertEquals("0", rows.next().getField(0));
+        reader.close();
+        assertThreadsStop("TSVReader");
+        assertThrows(UncheckedIOException.class, () -> {
+            while (rows.hasNext()) {
+                rows.next();
+            }
+        });
+    }
+
+    @Test
+    public void testGzipChunkBoundaries() throws IOException {
+        final Path file = writeGzipFile("rows.tsv.gz", ROW_COUNT);
+        for (int bufferSize : new int[] {1, 7, 64, TSVGzipReader.DEFAULT_BUFFER_SIZE}) {
+            try (TSVGzipReader reader = new TSVGzipReader(file, bufferSize, 2)) {
+                assertArrayEquals(HEADER, reader.getHeader());
+                assertRows(expectedRows(ROW_COUNT), reader.rows());
+            }
+        }
+        try (TSVRowSource source = TSVRowSource.open(file)) {
+            assertTrue(source instanceof TSVGzipReader);
+            assertThrows(IllegalStateException.class, () -> {
+                source.rows().close();
+                source.rows();
+            });
+        }
+    }
+
+    @Test
+    public void testClosingGzipReaderStopsThreads() throws IOException {
+        final Path file = writeGzipFile("rows.tsv.gz", ROW_COUNT);
+        final TSVGzipReader reader = new TSVGzipReader(file, 64, 2);
+        final Iterator<TSVRow> rows = reader.rows().iterator();
+        assertEquals("0", rows.next().getField(0));
+        reader.close();
+        assertThreadsStop("TSVGzipReader");
+        assertThrows(UncheckedIOException.class, () -> {
+            while (rows.hasNext()) {
+                rows.next();
+            }
+        });
+    }
+
+    private Path writeFile(final String name, final int rowCount, final String lineEnd, final boolean finalLineEnd) throws IOException {
+        final Path file = tempDir.resolve(name);
+        Files.write(file, getContent(rowCount, lineEnd, finalLineEnd));
+        return file;
+    }
+
+    private Path writeGzipFile(final String name, final int rowCount) throws IOException {
+        final Path file = tempDir.resolve(name);
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(file))) {
+            output.write(getContent(rowCount, "\n", true));
+        }
+        return file;
+    }
+
+    private static byte[] getContent(final int rowCount, final String lineEnd, final boolean finalLineEnd) {
+        final StringBuilder builder = new StringBuilder(String.join("\t", HEADER)).append(lineEnd);
+        final List<String[]> rows = expectedRows(rowCount);
+        for (int row = 0; row < rows.size(); row++) {
+            builder.append(String.join("\t", rows.get(row)));
+            if (finalLineEnd || row < rows.size() - 1) {
+                builder.append(lineEnd);
+            }
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Rows of varying lengths, some with empty or non-ASCII fields, so chunks end at many different places in a line.
+     */
+    private static List<String[]> expectedRows(final int rowCount) {
+        final List<String[]> rows = new ArrayList<>(rowCount);
+        for (int row = 0; row < rowCount; row++) {
+            final String parent = row == 0 ? "" : Integer.toString((row - 1) / 3);
+            final String name = row % 7 == 0 ? "" : "n\u00e9" + "x".repeat(row % 11) + row;
+            rows.add(new String[] {Integer.toString(row), parent, name});
+        }
+        return rows;
+    }
+
+    private static void assertRows(final List<String[]> expected, final Stream<TSVRow> rows) {
+        final List<String[]> actual;
+        try (rows) {
+            actual = rows.map(TSVRow::getFields).collect(Collectors.toList());
+        }
+        assertEquals(expected.size(), actual.size());
+        for (int row = 0; row < expected.size(); row++) {
+            assertArrayEquals(expected.get(row), actual.get(row), "Row " + row + ": " + Arrays.toString(actual.get(row)));
+        }
+    }
+
+    private static void assertThreadsStop(final String namePrefix) {
+        final long deadline = System.currentTimeMillis() + THREAD_STOP_TIMEOUT;
+        while (countThreads(namePrefix) > 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "Threads are still running: " + namePrefix);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("Interrupted waiting for threads to stop");
+            }
+        }
+    }
+
+    private static long countThreads(final String namePrefix) {
+        return Thread.getAllStackTraces().keySet().stream()
+                     .filter(thread -> thread.isAlive() && thread.getName().startsWith(namePrefix))
+                     .count();
+    }
+
+}
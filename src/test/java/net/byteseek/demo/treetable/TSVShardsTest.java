@@ -0,0 +1,219 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.TreeNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.byteseek.swing.treetable.CompactTreeStore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TSVShardsTest {
+
+    private static final String HEADER = "id\tparent\tname\tsize\n";
+
+    // Children appear in shards before and after their parents, with a dangling parent and a cycle.
+    private static final String[] SHARDS = {
+            HEADER + "2\t1\tb\t10\n" + "1\t\ta\t20\n" + "7\t8\tg\t1\n",
+            HEADER + "3\t1\tc\t30\n" + "4\t5\td\t40\n" + "8\t7\th\t2\n",
+            HEADER,
+            HEADER + "5\t2\te\t50\n" + "6\tmissing\tf\t60\n"};
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testFindDirectory() throws IOException {
+        writeShards("part-", ".tsv");
+        Files.write(tempDir.resolve("notes.txt"), "x".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectory(tempDir.resolve("sub.tsv"));
+        assertTrue(TSVShards.isSharded(tempDir));
+        assertEquals(Arrays.asList("part-0.tsv", "part-1.tsv", "part-2.tsv", "part-3.tsv"), getNames(TSVShards.find(tempDir)));
+    }
+
+    @Test
+    public void testFindGlob() throws IOException {
+        writeShards("part-", ".tsv");
+        write("other.tsv", HEADER);
+        final Path glob = tempDir.resolve("part-*.tsv");
+        assertTrue(TSVShards.isSharded(glob));
+        assertFalse(TSVShards.isSharded(tempDir.resolve("part-0.tsv")));
+        assertEquals(Arrays.asList("part-0.tsv", "part-1.tsv", "part-2.tsv", "part-3.tsv"), getNames(TSVShards.find(glob)));
+        assertThrows(IOException.class, () -> TSVShards.find(tempDir.resolve("none-*.tsv")));
+    }
+
+    @Test
+    public void testFindOrdersByFileName() throws IOException {
+        write("b.tsv.gz", HEADER);
+        write("a.tsv", HEADER);
+        write("c.tsv", HEADER);
+        assertEquals(Arrays.asList("a.tsv", "b.tsv.gz", "c.tsv"), getNames(TSVShards.find(tempDir)));
+    }
+
+    @Test
+    public void testLoadMatchesSingleFile() throws IOException {
+        final List<Path> shards = writeShards("part-", ".tsv");
+        final StringBuilder whole = new StringBuilder(HEADER);
+        for (String shard : SHARDS) {
+            whole.append(shard, HEADER.length(), shard.length());
+        }
+        final TSVTreeBuilder expected = readFile(write("whole.tsv", whole.toString()));
+        final String expectedTree = describe(expected.build());
+
+        for (int parallelism = 1; parallelism <= 3; parallelism++) {
+            final TSVTreeBuilder builder = TSVShards.load(shards, "id", "parent", ColumnProjection.ALL, parallelism);
+            assertEquals(8, builder.getRowCount());
+            assertEquals(expectedTree, describe(builder.build()));
+            assertEquals(1, builder.getDanglingParentCount());
+            assertEquals(2, builder.getUnreachableRowCount());
+            assertTrue(builder.hasVirtualRoot());
+        }
+        assertEquals("1(2(5(4)),3),missing(6)", expectedTree);
+    }
+
+    @Test
+    public void testLoadCompactMatchesTree() throws IOException {
+        final List<Path> shards = writeShards("part-", ".tsv");
+        final TSVTreeBuilder builder = TSVShards.load(shards, "id", "parent", ColumnProjection.ALL, 2);
+        final String tree = describe(builder.build());
+        assertEquals(tree, describe(builder.buildCompact().getRoot()));
+    }
+
+    @Test
+    public void testLoadProjectedAndCompressed() throws IOException {
+        final List<Path> shards = writeShards("part-", ".tsv.gz");
+        final TSVTreeBuilder builder = TSVShards.load(shards, "id", "parent", ColumnProjection.include("name"), 2);
+        assertArrayEquals(new String[] {"id", "parent", "name"}, builder.getTSVTable().getHeader());
+        assertEquals("1(2(5(4)),3),missing(6)", describe(builder.build()));
+    }
+
+    @Test
+    public void testLoadDifferentHeader() throws IOException {
+        final Path first = write("part-0.tsv", SHARDS[0]);
+        final Path second = write("part-1.tsv", "id\tparent\tname\n3\t1\tc\n");
+        final IOException e = assertThrows(IOException.class,
+                () -> TSVShards.load(Arrays.asList(first, second), "id", "parent", ColumnProjection.ALL, 2));
+        assertTrue(e.getMessage().contains("part-1.tsv"));
+    }
+
+    @Test
+    public void testLoadBadArguments() throws IOException {
+        final List<Path> shards = writeShards("part-", ".tsv");
+        assertThrows(IllegalArgumentException.class, () -> TSVShards.load(shards, "id", "parent", ColumnProjection.ALL, 0));
+        assertThrows(IllegalArgumentException.class, () -> TSVShards.load(shards, "id", "parent", null, 1));
+        assertThrows(IllegalArgumentException.class, () -> TSVShards.load(Arrays.asList(), "id", "parent", ColumnProjection.ALL, 1));
+        assertThrows(IllegalArgumentException.class, () -> TSVShards.load(shards, "id", "colour", ColumnProjection.ALL, 1));
+        assertThrows(IOException.class,
+                () -> TSVShards.load(Arrays.asList(tempDir.resolve("missing.tsv")), "id", "parent", ColumnProjection.ALL, 1));
+    }
+
+    private List<Path> writeShards(final String prefix, final String extension) throws IOException {
+        final Path[] paths = new Path[SHARDS.length];
+        for (int shard = 0; shard < SHARDS.length; shard++) {
+            paths[shard] = write(prefix + shard + extension, SHARDS[shard]);
+        }
+        return Arrays.asList(paths);
+    }
+
+    private Path write(final String name, final String content) throws IOException {
+        final Path file = tempDir.resolve(name);
+        final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        if (name.endsWith(TSVRowSource.GZIP_EXTENSION)) {
+            try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(file))) {
+                output.write(bytes);
+            }
+        } else {
+            Files.write(file, bytes);
+        }
+        return file;
+    }
+
+    private static TSVTreeBuilder readFile(final Path file) throws IOException {
+        try (TSVReader reader = new TSVReader(file);
+             Stream<TSVRow> rows = reader.rows()) {
+            final TSVTreeBuilder builder = new TSVTreeBuilder(new TSVTable(reader.getHeader()), "id", "parent");
+            rows.forEachOrdered(builder::add);
+            builder.getTSVTable().finish();
+            return builder;
+        }
+    }
+
+    private static List<String> getNames(final List<Path> paths) {
+        final String[] names = new String[paths.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = paths.get(i).getFileName().toString();
+        }
+        return Arrays.asList(names);
+    }
+
+    /**
+     * Describes the children of a root, written as id(child,child),id.
+     */
+    private static String describe(final TreeNode root) {
+        final StringBuilder builder = new StringBuilder();
+        appendChildren(root, builder);
+        return builder.toString();
+    }
+
+    private static void appendChildren(final TreeNode parent, final StringBuilder builder) {
+        for (int childIndex = 0; childIndex < parent.getChildCount(); childIndex++) {
+            final TreeNode child = parent.getChildAt(childIndex);
+            if (childIndex > 0) {
+                builder.append(',');
+            }
+            builder.append(getRow(child).getField(0));
+            if (child.getChildCount() > 0) {
+                builder.append('(');
+                appendChildren(child, builder);
+                builder.append(')');
+            }
+        }
+    }
+
+    private static TSVRow getRow(final TreeNode node) {
+        return (TSVRow) (node instanceof DefaultMutableTreeNode ? ((DefaultMutableTreeNode) node).getUserObject()
+                                                                : ((CompactTreeStore.Node) node).getUserObject());
+    }
+
+}
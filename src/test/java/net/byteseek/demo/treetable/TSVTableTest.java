@@ -0,0 +1,170 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import net.byteseek.demo.treetable.TSVTable.ColumnType;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TSVTableTest {
+
+    @Test
+    public void testInferColumnTypes() {
+        final TSVTable table = createTable(new String[] {"long", "double", "boolean", "date", "string"},
+                                           new String[] {"1", "1.5", "true", "2021-01-31", "a"},
+                                           new String[] {"-20", "2e3", "FALSE", "1999-12-01", "b"},
+                                           new String[] {"", "", "", "", ""},
+                                           new String[] {"0", "0.25", "false", "2000-02-29", "c"});
+        assertEquals(ColumnType.LONG, table.getColumnType(0));
+        assertEquals(ColumnType.DOUBLE, table.getColumnType(1));
+        assertEquals(ColumnType.BOOLEAN, table.getColumnType(2));
+        assertEquals(ColumnType.DATE, table.getColumnType(3));
+        assertEquals(ColumnType.STRING, table.getColumnType(4));
+        assertEquals(-20L, table.getValue(table.getRow(1), 0));
+        assertEquals(2000.0, table.getValue(table.getRow(1), 1));
+        assertEquals(false, table.getValue(table.getRow(1), 2));
+        assertEquals(LocalDate.of(1999, 12, 1), table.getValue(table.getRow(1), 3));
+        assertNull(table.getValue(table.getRow(2), 0)); // empty values in typed columns are null.
+        assertEquals(0L, table.getValue(table.getRow(3), 0));
+    }
+
+    @Test
+    public void testLeadingZerosStayStrings() {
+        final TSVTable table = createTable(new String[] {"code", "decimal", "signed", "zero"},
+                                           new String[] {"007", "00.5", "-01", "0"},
+                                           new String[] {"123", "1.5", "5", "0.5"});
+        assertEquals(ColumnType.STRING, table.getColumnType(0));
+        assertEquals(ColumnType.STRING, table.getColumnType(1));
+        assertEquals(ColumnType.STRING, table.getColumnType(2));
+        assertEquals(ColumnType.DOUBLE, table.getColumnType(3)); // zero itself and 0.5 keep their text as numbers.
+        assertEquals("007", table.getValue(table.getRow(0), 0));
+        assertEquals("00.5", table.getValue(table.getRow(0), 1));
+    }
+
+    @Test
+    public void testLaterLeadingZeroFallsBackToString() {
+        final TSVTable table = new TSVTable(new String[] {"code"}, 2);
+        table.add(TSVRow.of("12"));
+        table.add(TSVRow.of("34"));
+        assertEquals(ColumnType.LONG, table.getColumnType(0));
+        table.add(TSVRow.of("0056"));
+        assertEquals(ColumnType.STRING, table.getColumnType(0));
+        assertEquals("0056", table.getValue(table.getRow(2), 0));
+        assertEquals("12", table.getValue(table.getRow(0), 0));
+    }
+
+    @Test
+    public void testLaterValueFallsBackToString() {
+        final TSVTable table = new TSVTable(new String[] {"number"}, 2);
+        table.add(TSVRow.of("1.5"));
+        table.add(TSVRow.of("2"));
+        assertEquals(ColumnType.DOUBLE, table.getColumnType(0));
+        table.add(TSVRow.of("NaN")); // parseDouble accepts it, but it isn't a decimal number.
+        assertEquals(ColumnType.STRING, table.getColumnType(0));
+    }
+
+    @Test
+    public void testDoublesParseAsParseDouble() {
+        final String[] values = {"0", "-0", "0.1", "+3.25", "1e-5", "1E22", "1e23", "-2.5e-300", "123456789012345",
+                                 "1234567890123456789", "0.000001234", "9007199254740993", "1.7976931348623157e308",
+                                 "4.9e-324", "1e400", "1e-400", "100000.0000", "3.141592653589793238", "12345e-27"};
+        final Random random = new Random(42);
+        final String[] randomValues = new String[1000];
+        for (int i = 0; i < randomValues.length; i++) {
+            final StringBuilder builder = new StringBuilder();
+            builder.append(random.nextInt(10) + 1);
+            for (int digit = random.nextInt(18); digit > 0; digit--) {
+                builder.append(random.nextInt(10));
+            }
+            final int point = random.nextInt(builder.length() + 1);
+            if (point < builder.length()) {
+                builder.insert(point, '.');
+            }
+            if (random.nextBoolean()) {
+                builder.append('e').append(random.nextInt(60) - 30);
+            }
+            randomValues[i] = builder.toString();
+        }
+        for (String[] batch : List.of(values, randomValues)) {
+            final TSVTable table = new TSVTable(new String[] {"double"}, batch.length);
+            for (String value : batch) {
+                table.add(TSVRow.of(value));
+            }
+            table.finish();
+            assertEquals(ColumnType.DOUBLE, table.getColumnType(0));
+            for (int row = 0; row < batch.length; row++) {
+                assertEquals(Double.parseDouble(batch[row]), (double) table.getValue(table.getRow(row), 0), 0.0, batch[row]);
+            }
+        }
+    }
+
+    @Test
+    public void testDictionaryEncoding() {
+        final TSVTable table = new TSVTable(new String[] {"colour"}, 10);
+        final String[] colours = {"red", "green", "blue"};
+        for (int row = 0; row < 30; row++) {
+            table.add(TSVRow.of(colours[row % 3]));
+        }
+        assertTrue(table.isDictionaryEncoded(0));
+        assertEquals(3, table.getDistinctValueCount(0));
+        assertSame(table.getValue(table.getRow(0), 0), table.getValue(table.getRow(3), 0));
+        assertTrue(table.compare(2, 1, 0) < 0); // blue before green.
+        assertTrue(table.compare(0, 1, 0) > 0); // red after green.
+    }
+
+    @Test
+    public void testConcat() {
+        final TSVTable first = createTable(new String[] {"id", "name"}, new String[] {"1", "a"}, new String[] {"2", "b"});
+        final TSVTable second = createTable(new String[] {"id", "name"}, new String[] {"3", "c"}, new String[] {"x", "d"});
+        final TSVTable table = TSVTable.concat(List.of(first, second));
+        assertEquals(4, table.getRowCount());
+        assertEquals(ColumnType.STRING, table.getColumnType(0)); // the second table has a value which isn't a long.
+        assertEquals("x", table.getValue(table.getRow(3), 0));
+        assertThrows(IllegalArgumentException.class,
+                     () -> TSVTable.concat(List.of(createTable(new String[] {"a"}), createTable(new String[] {"b"}))));
+    }
+
+    private static TSVTable createTable(final String[] header, final String[]... rows) {
+        final TSVTable table = new TSVTable(header);
+        for (String[] row : rows) {
+            table.add(TSVRow.of(row));
+        }
+        table.finish();
+        return table;
+    }
+
+}
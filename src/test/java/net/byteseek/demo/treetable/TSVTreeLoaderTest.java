@@ -0,0 +1,186 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.SwingUtilities;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.TreeNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TSVTreeLoaderTest {
+
+    private static final String HEADER = "id\tparent\tname\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testLoadLinksParentsAfterChildren() throws Exception {
+        final Path file = write(HEADER + "4\t2\td\n" + "2\t1\tb\n" + "1\t\ta\n" + "3\t1\tc\n" + "5\tmissing\te\n" + "6\t7\tf\n" + "7\t6\tg\n");
+        final TSVTreeLoader loader = createLoader(file);
+        loader.execute();
+        assertEquals(7, loader.get(10, TimeUnit.SECONDS));
+        awaitRows(loader, 7);
+        SwingUtilities.invokeAndWait(() -> {
+            assertEquals("1(2(4),3),missing(5)", describe((TreeNode) loader.getTreeModel().getRoot()));
+            assertEquals(1, loader.getDanglingParentCount());
+            assertEquals(2, loader.getUnreachableRowCount());
+        });
+    }
+
+    @Test
+    public void testFailedBatchDoesNotStopReading() throws Exception {
+        final StringBuilder content = new StringBuilder(HEADER);
+        final int numRows = 1034; // the first batch is published after 1024 rows, and the rest in a second batch.
+        for (int row = 1; row <= numRows; row++) {
+            content.append(row).append("\t\tname").append(row).append('\n');
+        }
+        final TSVTreeLoader loader = createLoader(write(content.toString()));
+        final AtomicInteger failures = new AtomicInteger();
+        SwingUtilities.invokeAndWait(() -> loader.getTreeModel().addTreeModelListener(new FailingListener(failures)));
+        final List<Throwable> uncaught = new CopyOnWriteArrayList<>();
+        final Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, throwable) -> uncaught.add(throwable));
+        try {
+            loader.execute();
+            assertEquals(numRows, loader.get(10, TimeUnit.SECONDS)); // times out if a failed batch keeps its permit.
+            awaitRows(loader, numRows);
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(handler);
+        }
+        assertEquals(2, failures.get());
+        for (Throwable throwable : uncaught) {
+            assertEquals(IllegalStateException.class, throwable.getClass());
+        }
+    }
+
+    private Path write(final String content) throws Exception {
+        final Path file = Files.createTempFile(tempDir, "tree", ".tsv");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static TSVTreeLoader createLoader(final Path file) throws Exception {
+        final TSVRowSource source = TSVRowSource.open(file);
+        final AtomicReference<TSVTreeLoader> loader = new AtomicReference<>();
+        SwingUtilities.invokeAndWait(() -> loader.set(new TSVTreeLoader(source, "id", "parent", 0)));
+        return loader.get();
+    }
+
+    /**
+     * Waits for the batches read to be added on the Event Dispatch Thread, which may be after the rows are all read.
+     */
+    private static void awaitRows(final TSVTreeLoader loader, final int numRows) throws InterruptedException, InvocationTargetException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        final AtomicInteger rowCount = new AtomicInteger();
+        do {
+            Thread.sleep(10);
+            SwingUtilities.invokeAndWait(() -> rowCount.set(loader.getTSVTable().getRowCount()));
+        } while (rowCount.get() < numRows && System.nanoTime() < deadline);
+        assertEquals(numRows, rowCount.get());
+    }
+
+    /**
+     * Describes the children of a root, written as id(child,child),id.
+     */
+    private static String describe(final TreeNode root) {
+        final StringBuilder builder = new StringBuilder();
+        appendChildren(root, builder);
+        return builder.toString();
+    }
+
+    private static void appendChildren(final TreeNode parent, final StringBuilder builder) {
+        for (int childIndex = 0; childIndex < parent.getChildCount(); childIndex++) {
+            final TreeNode child = parent.getChildAt(childIndex);
+            if (childIndex > 0) {
+                builder.append(',');
+            }
+            builder.append(((TSVRow) ((DefaultMutableTreeNode) child).getUserObject()).getField(0));
+            if (child.getChildCount() > 0) {
+                builder.append('(');
+                appendChildren(child, builder);
+                builder.append(')');
+            }
+        }
+    }
+
+    /**
+     * A listener which fails on every change to the tree, as a model listener with a bug would.
+     */
+    private static final class FailingListener implements TreeModelListener {
+        private final AtomicInteger failures;
+
+        FailingListener(final AtomicInteger failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public void treeNodesChanged(final TreeModelEvent e) {
+            fail();
+        }
+
+        @Override
+        public void treeNodesInserted(final TreeModelEvent e) {
+            fail();
+        }
+
+        @Override
+        public void treeNodesRemoved(final TreeModelEvent e) {
+            fail();
+        }
+
+        @Override
+        public void treeStructureChanged(final TreeModelEvent e) {
+            fail();
+        }
+
+        private void fail() {
+            failures.incrementAndGet();
+            throw new IllegalStateException("Listener failed");
+        }
+    }
+
+}
@@ -0,0 +1,314 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.demo.treetable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TSVTreeReloaderTest {
+
+    private static final String HEADER = "id\tparent\tname\n";
+
+    // 1 is the only child of the virtual root, with children 2 and 3.  4 is a child of 2.
+    private static final String BASE = HEADER +
+                                       "1\t\ta\n" +
+                                       "2\t1\tb\n" +
+                                       "3\t1\tc\n" +
+                                       "4\t2\td\n";
+
+    @TempDir
+    Path tempDir;
+
+    private DefaultTreeModel treeModel;
+    private TSVTreeTableModel model;
+    private TSVTreeReloader reloader;
+
+    @Test
+    public void testUnchangedFile() throws IOException {
+        load(BASE);
+        final List<TreeNode> nodes = getNodes();
+        final TSVTreeReloader.Changes changes = reload(BASE);
+        assertChanges(changes, 0, 0, 0, 0, 0);
+        assertFalse(changes.isRebuilt());
+        assertSameNodes(nodes, getNodes());
+        assertTree("1(2(4),3)");
+    }
+
+    @Test
+    public void testChangedRow() throws IOException {
+        load(BASE);
+        final DefaultMutableTreeNode node3 = findNode("3");
+        assertChanges(reload(BASE.replace("3\t1\tc", "3\t1\tC")), 1, 0, 0, 0, 0);
+        assertSame(node3, findNode("3"));
+        assertEquals("C", getRow(node3).getField(2));
+        assertEquals("C", model.getColumnValue(node3, 2));
+        assertTree("1(2(4),3)");
+    }
+
+    @Test
+    public void testInsertedRow() throws IOException {
+        load(BASE);
+        final List<TreeNode> nodes = getNodes();
+        assertChanges(reload(BASE + "5\t3\te\n"), 1, 1, 0, 0, 0); // 3 changed to allow children.
+        assertTree("1(2(4),3(5))");
+        assertTrue(findNode("3").getAllowsChildren());
+        final List<TreeNode> newNodes = getNodes();
+        newNodes.remove(findNode("5"));
+        assertSameNodes(nodes, newNodes);
+    }
+
+    @Test
+    public void testRemovedRow() throws IOException {
+        load(BASE);
+        assertChanges(reload(BASE.replace("4\t2\td\n", "")), 1, 0, 1, 0, 0); // 2 no longer allows children.
+        assertTree("1(2,3)");
+        assertFalse(findNode("2").getAllowsChildren());
+        assertNull(findNode("4"));
+    }
+
+    @Test
+    public void testReparentedRow() throws IOException {
+        load(BASE);
+        final DefaultMutableTreeNode node4 = findNode("4");
+        assertChanges(reload(BASE.replace("4\t2\td", "4\t3\td")), 2, 0, 0, 1, 0); // 4 changed, and 2 lost its children.
+        assertTree("1(2,3(4))");
+        assertSame(node4, findNode("4"));
+    }
+
+    @Test
+    public void testReparentedSubtree() throws IOException {
+        load(BASE + "5\t4\te\n");
+        final DefaultMutableTreeNode node5 = findNode("5");
+        reload(BASE.replace("4\t2\td", "4\t3\td") + "5\t4\te\n");
+        assertTree("1(2,3(4(5)))");
+        assertSame(node5, findNode("5"));
+    }
+
+    @Test
+    public void testPlaceholderParent() throws IOException {
+        load(BASE);
+        assertChanges(reload(BASE + "6\t99\tf\n"), 0, 1, 0, 0, 0);
+        assertTree("1(2(4),3),99(6)");
+        assertTrue(getRow(findNode("99")).getIndex() < 0); // placeholders are not rows of the table.
+
+        assertChanges(reload(BASE), 0, 0, 2, 0, 0); // the placeholder goes with its only child.
+        assertTree("1(2(4),3)");
+    }
+
+    @Test
+    public void testPlaceholderBecomesRow() throws IOException {
+        load(BASE + "6\t99\tf\n");
+        final DefaultMutableTreeNode placeholder = findNode("99");
+        assertChanges(reload(BASE + "6\t99\tf\n99\t1\tz\n"), 0, 0, 0, 1, 0); // the row takes over the placeholder.
+        assertTree("1(2(4),3,99(6))");
+        assertSame(placeholder, findNode("99"));
+        assertEquals("z", getRow(placeholder).getField(2));
+    }
+
+    @Test
+    public void testDeletedParentBecomesPlaceholder() throws IOException {
+        load(BASE);
+        final DefaultMutableTreeNode node2 = findNode("2");
+        final TSVTreeReloader.Changes changes = reload(BASE.replace("2\t1\tb\n", ""));
+        assertTree("1(3),2(4)");
+        assertSame(node2, findNode("2"));
+        assertTrue(getRow(node2).getIndex() < 0);
+        assertEquals(0, changes.getRemovedCount());
+        assertEquals(1, changes.getMovedCount());
+    }
+
+    @Test
+    public void testCycle() throws IOException {
+        load(BASE);
+        // 2 becomes a child of its own child 4, so both leave the tree.  Nothing in the tree moved.
+        final TSVTreeReloader.Changes changes = reload(BASE.replace("2\t1\tb", "2\t4\tb"));
+        assertEquals(0, changes.getMovedCount());
+        assertEquals(1, changes.getUnreachableCount());
+        assertTree("1(3)");
+
+        // Breaking the cycle puts them back.  They were not in the tree to move, so 2 is inserted with its child.
+        assertChanges(reload(BASE), 0, 1, 0, 0, 0);
+        assertTree("1(3,2(4))"); // nodes added to a parent go after its existing children.
+    }
+
+    @Test
+    public void testManyChangesRefreshWholeTree() throws IOException {
+        final StringBuilder file = new StringBuilder(HEADER).append("1\t\troot\n");
+        final StringBuilder changedFile = new StringBuilder(HEADER).append("1\t\troot\n");
+        for (int id = 2; id < 50; id++) {
+            file.append(id).append("\t1\tname").append(id).append('\n');
+            changedFile.append(id).append('\t').append(id % 2 == 0 ? 1 : id - 1).append("\tchanged").append(id).append('\n');
+        }
+        load(file.toString());
+        final TSVTreeReloader.Changes changes = reload(changedFile.toString());
+        assertEquals(24, changes.getMovedCount()); // each odd id moves under the even id before it.
+        assertEquals(24, changes.getChangedCount());
+        final DefaultMutableTreeNode node3 = findNode("3");
+        assertSame(findNode("2"), node3.getParent());
+        assertEquals("changed3", getRow(node3).getField(2));
+    }
+
+    @Test
+    public void testChangedColumnsRebuild() throws IOException {
+        load(BASE);
+        final TSVTreeReloader.Changes changes = reload(BASE.replace(HEADER, "id\tparent\tlabel\n"));
+        assertTrue(changes.isRebuilt());
+        assertEquals(4, changes.getInsertedCount());
+        assertTree("1(2(4),3)");
+        assertArrayEquals(new String[] {"id", "parent", "label"}, reloader.getTSVTable().getHeader());
+    }
+
+    private void load(final String content) throws IOException {
+        final Path file = write(content);
+        final TSVTreeBuilder builder;
+        try (TSVRowSource reader = TSVRowSource.open(file)) {
+            builder = new TSVTreeBuilder(new TSVTable(reader.getHeader()), "id", "parent");
+            reader.rows().forEachOrdered(builder::add);
+        }
+        final DefaultMutableTreeNode root = builder.build();
+        model = new TSVTreeTableModel(root, builder.getTSVTable());
+        treeModel = new DefaultTreeModel(root);
+        treeModel.addTreeModelListener(model);
+        reloader = new TSVTreeReloader(builder, treeModel, model);
+        model.expandTree();
+        assertDisplayed();
+    }
+
+    private TSVTreeReloader.Changes reload(final String content) throws IOException {
+        final TSVTreeReloader.Changes changes = reloader.reload(reloader.read(write(content)));
+        assertDisplayed();
+        return changes;
+    }
+
+    private Path write(final String content) throws IOException {
+        final Path file = Files.createTempFile(tempDir, "tree", ".tsv");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static void assertChanges(final TSVTreeReloader.Changes changes, final int changed, final int inserted,
+                                      final int removed, final int moved, final int unreachable) {
+        assertEquals(changed, changes.getChangedCount(), "changed: " + changes);
+        assertEquals(inserted, changes.getInsertedCount(), "inserted: " + changes);
+        assertEquals(removed, changes.getRemovedCount(), "removed: " + changes);
+        assertEquals(moved, changes.getMovedCount(), "moved: " + changes);
+        assertEquals(unreachable, changes.getUnreachableCount(), "unreachable: " + changes);
+    }
+
+    /**
+     * Asserts the children of the virtual root, written as id(child,child),id.
+     */
+    private void assertTree(final String expected) {
+        final StringBuilder builder = new StringBuilder();
+        appendChildren((TreeNode) treeModel.getRoot(), builder);
+        assertEquals(expected, builder.toString());
+    }
+
+    private static void appendChildren(final TreeNode parent, final StringBuilder builder) {
+        for (int childIndex = 0; childIndex < parent.getChildCount(); childIndex++) {
+            final TreeNode child = parent.getChildAt(childIndex);
+            if (childIndex > 0) {
+                builder.append(',');
+            }
+            builder.append(getRow(child).getField(0));
+            if (child.getChildCount() > 0) {
+                builder.append('(');
+                appendChildren(child, builder);
+                builder.append(')');
+            }
+        }
+    }
+
+    /**
+     * Asserts the rows displayed by the model are the nodes whose ancestors are all expanded, in tree order,
+     * so the model was told about every change.
+     */
+    private void assertDisplayed() {
+        final List<TreeNode> expected = new ArrayList<>();
+        addDisplayed((TreeNode) treeModel.getRoot(), expected);
+        final List<TreeNode> displayed = new ArrayList<>();
+        for (int row = 0; row < model.getRowCount(); row++) {
+            displayed.add(model.getNodeAtModelIndex(row));
+        }
+        assertSameNodes(expected, displayed);
+    }
+
+    private void addDisplayed(final TreeNode node, final List<TreeNode> nodes) {
+        nodes.add(node);
+        if (model.isExpanded(node)) {
+            for (int childIndex = 0; childIndex < node.getChildCount(); childIndex++) {
+                addDisplayed(node.getChildAt(childIndex), nodes);
+            }
+        }
+    }
+
+    private List<TreeNode> getNodes() {
+        final List<TreeNode> nodes = new ArrayList<>();
+        final Enumeration<TreeNode> enumeration = ((DefaultMutableTreeNode) treeModel.getRoot()).preorderEnumeration();
+        nodes.addAll(Collections.list(enumeration));
+        return nodes;
+    }
+
+    private DefaultMutableTreeNode findNode(final String id) {
+        for (TreeNode node : getNodes()) {
+            if (id.equals(getRow(node).getField(0))) {
+                return (DefaultMutableTreeNode) node;
+            }
+        }
+        return null;
+    }
+
+    private static TSVRow getRow(final TreeNode node) {
+        return (TSVRow) ((DefaultMutableTreeNode) node).getUserObject();
+    }
+
+    private static void assertSameNodes(final List<TreeNode> expected, final List<TreeNode> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int index = 0; index < expected.size(); index++) {
+            assertSame(expected.get(index), actual.get(index), "Node " + index);
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import javax.swing.table.DefaultTableColumnModel;
+import javax.swing.table.TableColumnModel;
+import javax.swing.tree.TreeNode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompactTreeStoreTest extends BaseTestClass {
+
+    private static final String[] NAMES = {"child0", "root", "sub1", "child1", "sub0", "sub2"};
+    //                                         0        1       2        3        4       5
+    private static final int[] PARENTS = {1, CompactTreeStore.NO_PARENT, 3, 1, 3, 0};
+
+    @Test
+    public void testInvalidBuild() {
+        assertThrows(IllegalArgumentException.class, () -> CompactTreeStore.build(null, 0, null));
+        assertThrows(IllegalArgumentException.class, () -> CompactTreeStore.build(PARENTS, -1, null));
+        assertThrows(IllegalArgumentException.class, () -> CompactTreeStore.build(PARENTS, PARENTS.length, null));
+    }
+
+    @Test
+    public void testStructure() {
+        CompactTreeStore store = CompactTreeStore.build(PARENTS, 1, i -> NAMES[i]);
+        assertEquals(6, store.getNodeCount());
+        assertEquals(0, store.getUnreachableCount());
+
+        CompactTreeStore.Node root = store.getRoot();
+        assertNull(root.getParent());
+        assertEquals("root", root.getUserObject());
+        assertEquals(2, root.getChildCount());
+        assertTrue(root.getAllowsChildren());
+        assertFalse(root.isLeaf());
+
+        // Children are in item order:
+        TreeNode child0 = root.getChildAt(0);
+        TreeNode child1 = root.getChildAt(1);
+        assertEquals("child0", child0.toString());
+        assertEquals("child1", child1.toString());
+        assertEquals(List.of("sub2"), names(child0.children()));
+        assertEquals(List.of("sub1", "sub0"), names(child1.children()));
+
+        for (int childIndex = 0; childIndex < child1.getChildCount(); childIndex++) {
+            TreeNode child = child1.getChildAt(childIndex);
+            assertSame(child1, child.getParent());
+            assertEquals(childIndex, child1.getIndex(child));
+            assertTrue(child.isLeaf());
+            assertFalse(child.getAllowsChildren());
+        }
+        assertEquals(-1, child0.getIndex(child1.getChildAt(0)));
+        assertEquals(-1, child0.getIndex(subchild0));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> child0.getChildAt(1));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> child0.getChildAt(-1));
+    }
+
+    @Test
+    public void testViewIdentityAndItemIndexes() {
+        CompactTreeStore store = CompactTreeStore.build(PARENTS, 1, null);
+        CompactTreeStore.Node root = store.getRoot();
+        assertSame(root, store.getRoot());
+        assertSame(root.getChildAt(1), store.getRoot().getChildAt(1));
+        assertSame(store, root.getStore());
+        assertEquals(0, root.getNodeNumber());
+        assertEquals(1, root.getItemIndex());
+        assertNull(root.getUserObject());
+        assertEquals("Node 0", root.toString());
+
+        // Nodes are numbered breadth first, so children are consecutive:
+        CompactTreeStore.Node child1 = (CompactTreeStore.Node) root.getChildAt(1);
+        assertEquals(2, child1.getNodeNumber());
+        assertEquals(3, child1.getItemIndex());
+        assertEquals(4, ((CompactTreeStore.Node) child1.getChildAt(0)).getNodeNumber());
+        assertEquals(5, ((CompactTreeStore.Node) child1.getChildAt(1)).getNodeNumber());
+    }
+
+    @Test
+    public void testChildrenEnumeration() {
+        Enumeration<? extends TreeNode> children = CompactTreeStore.build(PARENTS, 1, null).getRoot().children();
+        children.nextElement();
+        children.nextElement();
+        assertFalse(children.hasMoreElements());
+        assertThrows(NoSuchElementException.class, children::nextElement);
+    }
+
+    @Test
+    public void testUnreachableItemsLeftOut() {
+        // 0 is the root, 1 and 2 form a cycle, 3 has an invalid parent, 4 has no parent, and 5 is a child of the root.
+        int[] parents = {CompactTreeStore.NO_PARENT, 2, 1, 99, CompactTreeStore.NO_PARENT, 0};
+        CompactTreeStore store = CompactTreeStore.build(parents, 0, null);
+        assertEquals(2, store.getNodeCount());
+        assertEquals(4, store.getUnreachableCount());
+        assertEquals(5, ((CompactTreeStore.Node) store.getRoot().getChildAt(0)).getItemIndex());
+    }
+
+    @Test
+    public void testRootWithParent() {
+        // The root is not a child of its parent, even if the parent is reachable from it.
+        CompactTreeStore store = CompactTreeStore.build(PARENTS, 3, i -> NAMES[i]);
+        assertEquals(3, store.getNodeCount());
+        assertNull(store.getRoot().getParent());
+        assertEquals(3, store.getUnreachableCount());
+    }
+
+    @Test
+    public void testDisplayedInTreeTableModel() {
+        CompactTreeStore store = CompactTreeStore.build(PARENTS, 1, i -> NAMES[i]);
+        TreeTableModel compactModel = new TreeTableModel(store.getRoot(), true) {
+            @Override
+            public Object getColumnValue(final TreeNode node, final int column) {
+                return ((CompactTreeStore.Node) node).getUserObject();
+            }
+
+            @Override
+            protected TableColumnModel createTableColumnModel() {
+                TableColumnModel columns = new DefaultTableColumnModel();
+                columns.addColumn(createColumn(0, "name"));
+                return columns;
+            }
+        };
+        compactModel.bindTable(table);
+        compactModel.expandTree();
+        assertEquals(6, compactModel.getRowCount());
+        List<Object> names = new ArrayList<>();
+        for (int row = 0; row < compactModel.getRowCount(); row++) {
+            names.add(compactModel.getValueAt(row, 0));
+        }
+        assertEquals(List.of("root", "child0", "sub2", "child1", "sub1", "sub0"), names);
+    }
+
+    private static List<String> names(final Enumeration<? extends TreeNode> nodes) {
+        List<String> names = new ArrayList<>();
+        while (nodes.hasMoreElements()) {
+            names.add(nodes.nextElement().toString());
+        }
+        return names;
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.MutableTreeNode;
+import javax.swing.tree.TreeNode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DisplayedNodeListTest extends BaseTestClass {
+
+    @Test
+    public void testMetadataOfSimpleTree() {
+        model.expandNode(rootNode);
+        model.expandNode(child1);
+        DisplayedNodeList list = model.displayedNodes;
+        assertEquals(8, list.size());
+        assertEquals(0, list.getDepth(0));
+        assertEquals(DisplayedNodeList.NO_PARENT, list.getParentIndex(0));
+        assertEquals(7, list.getSubtreeSize(0));
+        assertEquals(1, list.getDepth(2)); // child1
+        assertEquals(4, list.getSubtreeSize(2));
+        assertEquals(2, list.getDepth(3)); // subchild0
+        assertEquals(2, list.getParentIndex(3));
+        assertEquals(0, list.getParentIndex(7)); // child2
+        assertEquals(0, list.getAncestorIndex(6, 2));
+        assertThrows(IndexOutOfBoundsException.class, () -> list.getDepth(8));
+    }
+
+    @Test
+    public void testMetadataHiddenRoot() {
+        model.expandNode(rootNode);
+        model.expandNode(child1);
+        model.setShowRoot(false);
+        assertMetadataCorrect(model);
+        assertEquals(DisplayedNodeList.NO_PARENT, model.getParentModelIndex(0));
+        assertEquals(1, model.getNodeDepth(0));
+        model.setShowRoot(true);
+        assertMetadataCorrect(model);
+        assertEquals(0, model.getParentModelIndex(1));
+    }
+
+    @Test
+    public void testMetadataAfterExpandAndCollapse() {
+        for (int trial = 0; trial < 20; trial++) {
+            createRandomTree(trial, trial % 2 == 0);
+            expandAndCollapseRandomNodes(model, trial, 50, 10);
+            assertMetadataCorrect(model);
+            expandAndCollapseRandomNodes(model, trial + 100, 20, 30);
+            assertMetadataCorrect(model);
+        }
+    }
+
+    @Test
+    public void testMetadataAfterTreeChanges() {
+        for (int trial = 0; trial < 20; trial++) {
+            createRandomTree(trial, trial % 2 == 0);
+            expandAndCollapseRandomNodes(model, trial, 50, 10);
+            DefaultTreeModel treeModel = new DefaultTreeModel(rootNode);
+            treeModel.addTreeModelListener(model);
+            Random rand = new Random(trial);
+            for (int change = 0; change < 20; change++) {
+                List<TreeNode> nodes = new ArrayList<>(model.getVisibleNodes());
+                TreeNode node = nodes.get(rand.nextInt(nodes.size()));
+                if (node != rootNode && rand.nextBoolean()) {
+                    treeModel.removeNodeFromParent((MutableTreeNode) node);
+                } else {
+                    DefaultMutableTreeNode parent = (DefaultMutableTreeNode) node;
+                    parent.setAllowsChildren(true);
+                    DefaultMutableTreeNode newChild = new DefaultMutableTreeNode(
+                            new TestTreeTableModel.TestObject("new" + change, change, true));
+                    treeModel.insertNodeInto(newChild, parent, rand.nextInt(parent.getChildCount() + 1));
+                }
+                assertMetadataCorrect(model);
+
+                // The incrementally updated rows must match the rows of a fully rebuilt tree:
+                List<TreeNode> updatedNodes = new ArrayList<>(model.getVisibleNodes());
+                model.refreshTree();
+                assertIterableEquals(model.getVisibleNodes(), updatedNodes, "trial " + trial + " change " + change);
+            }
+        }
+    }
+
+    @Test
+    public void testMetadataAfterFilter() {
+        createRandomTree(5, true);
+        expandAndCollapseRandomNodes(model, 5, 100, 10);
+        model.setNodeFilter(node -> node.getChildCount() == 0 && node.hashCode() % 3 == 0);
+        assertMetadataCorrect(model);
+    }
+
+    private void assertMetadataCorrect(TreeTableModel model) {
+        List<TreeNode> nodes = model.getVisibleNodes();
+        for (int row = 0; row < nodes.size(); row++) {
+            TreeNode node = nodes.get(row);
+            assertEquals(TreeUtils.getLevel(node), model.getNodeDepth(row), "depth of row " + row);
+            int parentRow = nodes.indexOf(node.getParent());
+            assertEquals(parentRow, model.getParentModelIndex(row), "parent of row " + row);
+            int subtreeEnd = row + 1;
+            while (subtreeEnd < nodes.size() && TreeUtils.getLevel(nodes.get(subtreeEnd)) > TreeUtils.getLevel(node)) {
+                subtreeEnd++;
+            }
+            assertEquals(subtreeEnd - row - 1, model.getVisibleSubtreeSize(row), "subtree size of row " + row);
+        }
+    }
+
+}
@@ -0,0 +1,311 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeNode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GroupedTreeStoreTest extends BaseTestClass {
+
+    private static final GroupedTreeStore.ColumnValues<String[]> VALUES = (row, column) -> row[column];
+    private static final String[] NAMES = {"name", "region", "host", "cpu"};
+
+    private final List<String[]> rows = new ArrayList<>(Arrays.asList(
+            new String[] {"p1", "eu", "h1", "10"},
+            new String[] {"p2", "us", "h2", "20"},
+            new String[] {"p3", "eu", "h3", "30"},
+            new String[] {"p4", "eu", "h1", "40"},
+            new String[] {"p5", "us", "h2", "50"}));
+
+    @Test
+    public void testInvalidBuild() {
+        assertThrows(IllegalArgumentException.class, () -> GroupedTreeStore.build(null, VALUES, 1));
+        assertThrows(IllegalArgumentException.class, () -> GroupedTreeStore.build(rows, null, 1));
+        assertThrows(IllegalArgumentException.class, () -> GroupedTreeStore.build(rows, VALUES, (int[]) null));
+        assertThrows(IllegalArgumentException.class, () -> GroupedTreeStore.build(rows, VALUES, -1));
+        assertThrows(IllegalArgumentException.class, () -> GroupedTreeStore.build(rows, VALUES, new int[] {1}, 0));
+
+        rows.add(rows.get(0));
+        assertThrows(IllegalArgumentException.class, () -> GroupedTreeStore.build(rows, VALUES, 1));
+        rows.set(5, null);
+        assertThrows(IllegalArgumentException.class, () -> GroupedTreeStore.build(rows, VALUES, 1));
+    }
+
+    @Test
+    public void testGroups() {
+        GroupedTreeStore<String[]> store = GroupedTreeStore.build(rows, VALUES, 1, 2);
+        assertEquals(5, store.getRowCount());
+        assertArrayEquals(new int[] {1, 2}, store.getGroupColumns());
+        assertEquals("eu\n h1\n  p1\n  p4\n h3\n  p3\nus\n h2\n  p2\n  p5\n", describe(store.getRoot()));
+
+        GroupedTreeStore.GroupNode root = store.getRoot();
+        assertNull(root.getParent());
+        assertEquals(-1, root.getLevel());
+        GroupedTreeStore.GroupNode eu = (GroupedTreeStore.GroupNode) root.getChildAt(0);
+        assertEquals("eu", eu.getValue());
+        assertEquals(0, eu.getLevel());
+        assertSame(root, eu.getParent());
+        assertEquals(1, ((GroupedTreeStore.GroupNode) eu.getChildAt(1)).getLevel());
+
+        GroupedTreeStore.RowNode<String[]> p4 = store.getRowNode(rows.get(3));
+        assertSame(rows.get(3), p4.getRow());
+        assertEquals(1, p4.getParent().getIndex(p4));
+        assertTrue(p4.isLeaf());
+        assertFalse(p4.getAllowsChildren());
+        assertNull(store.getRowNode(new String[] {"p1", "eu", "h1", "10"}));
+    }
+
+    @Test
+    public void testNoGroupColumns() {
+        GroupedTreeStore<String[]> store = GroupedTreeStore.build(rows, VALUES);
+        assertEquals("p1\np2\np3\np4\np5\n", describe(store.getRoot()));
+        store.rowChanged(rows.get(0));
+        store.removeRow(rows.get(1));
+        assertEquals("p1\np3\np4\np5\n", describe(store.getRoot()));
+    }
+
+    @Test
+    public void testParallelBuildSameAsSequential() {
+        Random random = new Random(42);
+        List<String[]> manyRows = new ArrayList<>();
+        for (int row = 0; row < 10000; row++) {
+            manyRows.add(new String[] {"p" + row, "r" + random.nextInt(5), "h" + random.nextInt(50), "" + row});
+        }
+        String expected = describe(GroupedTreeStore.build(manyRows, VALUES, 1, 2).getRoot());
+        for (int parallelism = 2; parallelism <= 8; parallelism *= 2) {
+            GroupedTreeStore<String[]> store = GroupedTreeStore.build(manyRows, VALUES, new int[] {1, 2}, parallelism);
+            assertEquals(expected, describe(store.getRoot()));
+            assertEquals(manyRows.size(), store.getRowCount());
+            assertParentsConsistent(store.getRoot());
+        }
+    }
+
+    @Test
+    public void testAddRemoveAndMoveRows() {
+        GroupedTreeStore<String[]> store = GroupedTreeStore.build(rows, VALUES, 1, 2);
+        EventCounter events = new EventCounter();
+        store.addTreeModelListener(events);
+
+        // Changed values which don't change the groups:
+        rows.get(0)[3] = "11";
+        assertFalse(store.rowChanged(rows.get(0)));
+        assertEquals("changed:[null, eu, h1]0:p1", events.toString());
+
+        // A row moving into an existing group removes and inserts only the row:
+        events.clear();
+        rows.get(0)[2] = "h3";
+        assertTrue(store.rowChanged(rows.get(0)));
+        assertEquals("removed:[null, eu, h1]0:p1 inserted:[null, eu, h3]1:p1", events.toString());
+
+        // A row moving out of a group leaving it empty removes the group, and a new group is inserted whole:
+        events.clear();
+        rows.get(2)[1] = "asia";
+        assertTrue(store.rowChanged(rows.get(2)));
+        assertEquals("eu\n h1\n  p4\n h3\n  p1\nus\n h2\n  p2\n  p5\nasia\n h3\n  p3\n", describe(store.getRoot()));
+
+        events.clear();
+        rows.get(3)[1] = "asia";
+        assertTrue(store.rowChanged(rows.get(3)));
+        assertEquals("removed:[null, eu]0:h1 inserted:[null, asia]1:h1", events.toString());
+        assertParentsConsistent(store.getRoot());
+
+        // Adding and removing rows:
+        events.clear();
+        String[] newRow = {"p6", "eu", "h9", "60"};
+        GroupedTreeStore.RowNode<String[]> node = store.addRow(newRow);
+        assertSame(node, store.getRowNode(newRow));
+        assertEquals("inserted:[null, eu]1:h9", events.toString());
+        assertThrows(IllegalArgumentException.class, () -> store.addRow(newRow));
+        assertThrows(IllegalArgumentException.class, () -> store.addRow(null));
+        assertEquals(6, store.getRowCount());
+
+        events.clear();
+        assertTrue(store.removeRow(rows.get(0)));
+        assertTrue(store.removeRow(newRow));
+        assertFalse(store.removeRow(newRow));
+        assertEquals("removed:[null, eu]0:h3 removed:[null]0:eu", events.toString());
+        assertEquals("us\n h2\n  p2\n  p5\nasia\n h3\n  p3\n h1\n  p4\n", describe(store.getRoot()));
+        assertThrows(IllegalArgumentException.class, () -> store.rowChanged(newRow));
+        assertParentsConsistent(store.getRoot());
+
+        store.removeTreeModelListener(events);
+        events.clear();
+        store.addRow(newRow);
+        assertEquals("", events.toString());
+    }
+
+    @Test
+    public void testModelFollowsMovedRows() {
+        GroupedTreeStore<String[]> store = GroupedTreeStore.build(rows, VALUES, 1, 2);
+        GroupedTreeTableModel<String[]> groupModel = new GroupedTreeTableModel<>(store, NAMES);
+        groupModel.expandTree();
+        assertEquals(4, groupModel.getColumnCount());
+        assertEquals(10, groupModel.getRowCount());
+        assertEquals("eu", groupModel.getValueAt(0, 0));
+        assertEquals("eu", groupModel.getValueAt(0, 1));
+        assertNull(groupModel.getValueAt(0, 2));
+        assertEquals("h1", groupModel.getValueAt(1, 0));
+        assertNull(groupModel.getValueAt(1, 1));
+        assertEquals("h1", groupModel.getValueAt(1, 2));
+        assertEquals("p1", groupModel.getValueAt(2, 0));
+        assertEquals("10", groupModel.getValueAt(2, 3));
+
+        groupModel.setAggregateColumn(3, SubtreeAggregate.of(3, value -> value == null ? 0L : Long.parseLong((String) value),
+                                                             0L, Long::sum));
+        assertEquals(80L, groupModel.getValueAt(0, 3));
+
+        rows.get(0)[1] = "us";
+        store.rowChanged(rows.get(0));
+        assertEquals(70L, groupModel.getValueAt(0, 3));
+        assertEquals(10, groupModel.getRowCount()); // p1 moved to a new group h1 under us, which is collapsed.
+        GroupedTreeStore.GroupNode us = (GroupedTreeStore.GroupNode) store.getRoot().getChildAt(1);
+        assertEquals(80L, groupModel.getAggregateValue(us, 3));
+        assertFalse(groupModel.isExpanded(us.getChildAt(1)));
+
+        store.removeRow(rows.get(2)); // removes p3 and its group h3.
+        assertEquals(8, groupModel.getRowCount());
+        assertEquals(40L, groupModel.getValueAt(0, 3));
+
+        groupModel.dispose();
+        store.removeRow(rows.get(3));
+        assertEquals(8, groupModel.getRowCount());
+    }
+
+    @Test
+    public void testChildIndexesFollowRandomChanges() {
+        Random random = new Random(7);
+        List<String[]> manyRows = new ArrayList<>();
+        for (int row = 0; row < 500; row++) {
+            manyRows.add(new String[] {"p" + row, "r" + random.nextInt(3), "h" + random.nextInt(10), "" + row});
+        }
+        GroupedTreeStore<String[]> store = GroupedTreeStore.build(manyRows, VALUES, 1, 2);
+        List<String> wrongIndexes = new ArrayList<>();
+        store.addTreeModelListener(new EventCounter() {
+            @Override
+            public void treeNodesChanged(TreeModelEvent e) {
+                TreeNode parent = (TreeNode) e.getTreePath().getLastPathComponent();
+                if (parent.getChildAt(e.getChildIndices()[0]) != e.getChildren()[0]) {
+                    wrongIndexes.add(e.toString());
+                }
+            }
+        });
+        for (int change = 0; change < 2000; change++) {
+            String[] row = manyRows.get(random.nextInt(manyRows.size()));
+            if (store.getRowNode(row) == null) {
+                store.addRow(row);
+            } else if (random.nextInt(3) == 0) {
+                store.removeRow(row);
+            } else {
+                row[2 + random.nextInt(2)] = random.nextBoolean() ? "h" + random.nextInt(10) : "" + change;
+                store.rowChanged(row);
+            }
+        }
+        assertEquals(List.of(), wrongIndexes);
+        assertParentsConsistent(store.getRoot());
+
+        GroupedTreeStore.GroupNode first = (GroupedTreeStore.GroupNode) store.getRoot().getChildAt(0);
+        assertEquals(-1, store.getRoot().getIndex(first.getChildAt(0)));
+        assertEquals(-1, store.getRoot().getIndex(null));
+    }
+
+    private static String describe(TreeNode root) {
+        StringBuilder builder = new StringBuilder();
+        for (TreeNode node : TreeUtils.getNodeList(root)) {
+            if (node != root) {
+                builder.append(" ".repeat(TreeUtils.getLevel(node) - 1));
+                builder.append(node instanceof GroupedTreeStore.RowNode
+                               ? ((String[]) ((GroupedTreeStore.RowNode<?>) node).getRow())[0] : node.toString());
+                builder.append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    private static void assertParentsConsistent(TreeNode node) {
+        for (int childIndex = 0; childIndex < node.getChildCount(); childIndex++) {
+            TreeNode child = node.getChildAt(childIndex);
+            assertSame(node, child.getParent());
+            assertEquals(childIndex, node.getIndex(child));
+            assertParentsConsistent(child);
+        }
+    }
+
+    private static class EventCounter implements TreeModelListener {
+
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void treeNodesChanged(TreeModelEvent e) {
+            add("changed", e);
+        }
+
+        @Override
+        public void treeNodesInserted(TreeModelEvent e) {
+            add("inserted", e);
+        }
+
+        @Override
+        public void treeNodesRemoved(TreeModelEvent e) {
+            add("removed", e);
+        }
+
+        @Override
+        public void treeStructureChanged(TreeModelEvent e) {
+            add("structure", e);
+        }
+
+        private void add(String type, TreeModelEvent e) {
+            Object child = e.getChildren()[0];
+            String name = child instanceof GroupedTreeStore.RowNode
+                          ? ((String[]) ((GroupedTreeStore.RowNode<?>) child).getRow())[0] : child.toString();
+            events.add(type + ":" + Arrays.toString(e.getPath()) + e.getChildIndices()[0] + ":" + name);
+        }
+
+        void clear() {
+            events.clear();
+        }
+
+        @Override
+        public String toString() {
+            return String.join(" ", events);
+        }
+    }
+
+}
@@ -0,0 +1,240 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.tree.TreeNode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.byteseek.swing.treetable.MappedTreeStore.ColumnType;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedTreeStoreTest extends BaseTestClass {
+
+    //                                          0         1        2       3        4       5
+    private static final String[] NAMES =  {"child0", "root",  "sub1", "child1", "sub0", "sub2"};
+    private static final Long[] SIZES =    {30L,      null,    20L,    10L,      5L,     20L};
+    private static final Double[] RATIOS = {0.5,      1.0,     null,   -2.0,     0.25,   3.0};
+    private static final String[] TYPES =  {"dir",    "dir",   "file", "dir",    null,   "file"};
+    private static final int[] PARENTS =   {1, CompactTreeStore.NO_PARENT, 3, 1, 3, 0};
+
+    @TempDir
+    Path tempDir;
+
+    private Path storeFile;
+
+    @BeforeEach
+    public void writeStore() throws IOException {
+        storeFile = tempDir.resolve("tree.store");
+        new MappedTreeStore.Writer(CompactTreeStore.build(PARENTS, 1, null))
+                .addColumn("name", ColumnType.STRING, i -> NAMES[i], true)
+                .addColumn("size", ColumnType.LONG, i -> SIZES[i], true)
+                .addColumn("ratio", ColumnType.DOUBLE, i -> RATIOS[i], false)
+                .addColumn("type", ColumnType.STRING, i -> TYPES[i], false)
+                .setProperty("source", "test")
+                .addNodeSet("expanded", new int[] {0, 2})
+                .write(storeFile);
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> MappedTreeStore.open(null));
+        assertThrows(IllegalArgumentException.class, () -> new MappedTreeStore.Writer(null));
+        MappedTreeStore.Writer writer = new MappedTreeStore.Writer(CompactTreeStore.build(PARENTS, 1, null));
+        assertThrows(IllegalArgumentException.class, () -> writer.addColumn(null, ColumnType.LONG, i -> 1L, false));
+        assertThrows(IllegalArgumentException.class, () -> writer.addColumn("a", null, i -> 1L, false));
+        assertThrows(IllegalArgumentException.class, () -> writer.addColumn("a", ColumnType.LONG, null, false));
+        assertThrows(IllegalArgumentException.class, () -> writer.addNodeSet("a", null));
+        assertThrows(IllegalArgumentException.class, () -> writer.addNodeSet("a", new int[] {6}));
+        assertThrows(IllegalArgumentException.class, () -> writer.write(null));
+    }
+
+    @Test
+    public void testNotAStoreFile() throws IOException {
+        Path notStore = tempDir.resolve("not.store");
+        Files.write(notStore, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        assertThrows(IOException.class, () -> MappedTreeStore.open(notStore));
+    }
+
+    @Test
+    public void testStructure() throws IOException {
+        MappedTreeStore store = MappedTreeStore.open(storeFile);
+        assertEquals(6, store.getNodeCount());
+        assertEquals("test", store.getProperty("source"));
+        assertNull(store.getProperty("missing"));
+        assertArrayEquals(new int[] {0, 2}, store.getNodeSet("expanded"));
+        assertNull(store.getNodeSet("missing"));
+
+        MappedTreeStore.Node root = store.getRoot();
+        assertNull(root.getParent());
+        assertEquals("root", root.toString());
+        assertEquals(1, root.getItemIndex());
+        assertEquals(2, root.getChildCount());
+        TreeNode child1 = root.getChildAt(1);
+        assertEquals("child1", child1.toString());
+        assertSame(root, child1.getParent());
+        assertEquals(1, root.getIndex(child1));
+        assertEquals(-1, child1.getIndex(root));
+        assertEquals(List.of("sub1", "sub0"), names(child1));
+        assertTrue(child1.getChildAt(0).isLeaf());
+        assertFalse(child1.getChildAt(0).getAllowsChildren());
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> child1.getChildAt(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> store.getNode(6));
+    }
+
+    @Test
+    public void testNodeIdentity() throws IOException {
+        MappedTreeStore store = MappedTreeStore.open(storeFile);
+        store.setCacheSize(1);
+        assertEquals(1, store.getCacheSize());
+        TreeNode sub1 = store.getNode(4); // materialises its parent as well.
+        assertEquals("sub1", sub1.toString());
+        assertEquals(3, store.getMaterialisedNodeCount());
+        assertSame(sub1, store.getRoot().getChildAt(1).getChildAt(0));
+        assertSame(sub1.getParent(), store.getRoot().getChildAt(1));
+        assertSame(sub1, store.getNode(4));
+        assertThrows(IllegalArgumentException.class, () -> store.setCacheSize(0));
+    }
+
+    @Test
+    public void testColumns() throws IOException {
+        MappedTreeStore store = MappedTreeStore.open(storeFile);
+        assertEquals(4, store.getColumnCount());
+        assertEquals("size", store.getColumnName(1));
+        assertEquals(ColumnType.DOUBLE, store.getColumnType(2));
+        assertTrue(store.hasOrder(1));
+        assertFalse(store.hasOrder(2));
+
+        MappedTreeStore.Node root = store.getRoot();
+        assertNull(root.getValue(1));
+        assertTrue(store.isNull(1, 0));
+        assertEquals(1.0, root.getValue(2));
+        MappedTreeStore.Node child1 = (MappedTreeStore.Node) root.getChildAt(1);
+        assertEquals(10L, child1.getValue(1));
+        assertEquals(10L, store.getLong(1, child1.getNodeNumber()));
+        assertEquals(-2.0, store.getDouble(2, child1.getNodeNumber()));
+        MappedTreeStore.Node sub1 = (MappedTreeStore.Node) child1.getChildAt(0);
+        assertNull(sub1.getValue(2));
+
+        // Only the column with repeated strings is dictionary encoded:
+        assertFalse(store.isDictionaryEncoded(0));
+        assertTrue(store.isDictionaryEncoded(3));
+        assertTrue(store.hasOrder(3));
+        assertEquals("dir", root.getValue(3));
+        assertEquals("file", sub1.getValue(3));
+        assertNull(((MappedTreeStore.Node) child1.getChildAt(1)).getValue(3));
+    }
+
+    @Test
+    public void testCompare() throws IOException {
+        MappedTreeStore store = MappedTreeStore.open(storeFile);
+        int root = 0;
+        int child0 = 1; // nodes are numbered breadth first.
+        int child1 = 2;
+        int sub2 = 3;
+        int sub1 = 4;
+        int sub0 = 5;
+        // Ordered string column:
+        assertTrue(store.compare(0, child0, child1) < 0);
+        assertTrue(store.compare(0, sub2, sub0) > 0);
+        // Ordered long column with nulls and equal values:
+        assertTrue(store.compare(1, root, sub0) < 0);
+        assertEquals(0, store.compare(1, sub1, sub2));
+        assertTrue(store.compare(1, child0, sub1) > 0);
+        // Unordered double column with nulls:
+        assertTrue(store.compare(2, sub1, child1) < 0);
+        assertTrue(store.compare(2, child1, sub0) < 0);
+        assertEquals(0, store.compare(2, root, root));
+        // Dictionary encoded string column with nulls:
+        assertTrue(store.compare(3, sub0, child1) < 0);
+        assertTrue(store.compare(3, child1, sub1) < 0);
+        assertEquals(0, store.compare(3, sub1, sub2));
+    }
+
+    @Test
+    public void testSortedInTreeTableModel() throws IOException {
+        MappedTreeTableModel storeModel = new MappedTreeTableModel(MappedTreeStore.open(storeFile));
+        assertThrows(IllegalArgumentException.class, () -> new MappedTreeTableModel(null));
+        assertEquals(Long.class, storeModel.getColumnClass(1));
+        storeModel.bindTable(table);
+        storeModel.expandTree();
+        assertEquals(List.of("root", "child0", "sub2", "child1", "sub1", "sub0"), columnValues(storeModel, 0));
+        assertTrue(storeModel.expandedNodes.contains(storeModel.getStore().getRoot().getChildAt(1)));
+
+        storeModel.setSortKeys(new RowSorter.SortKey(1, SortOrder.ASCENDING),
+                               new RowSorter.SortKey(0, SortOrder.DESCENDING));
+        assertEquals(List.of("root", "child1", "sub0", "sub1", "child0", "sub2"), columnValues(storeModel, 0));
+
+        storeModel.setSortKeys(new RowSorter.SortKey(2, SortOrder.DESCENDING));
+        assertEquals(List.of("root", "child0", "sub2", "child1", "sub0", "sub1"), columnValues(storeModel, 0));
+
+        storeModel.collapseTree();
+        assertTrue(storeModel.expandedNodes.isEmpty());
+    }
+
+    @Test
+    public void testSortedByAggregateColumn() throws IOException {
+        MappedTreeTableModel storeModel = new MappedTreeTableModel(MappedTreeStore.open(storeFile));
+        storeModel.bindTable(table);
+        storeModel.expandTree();
+        storeModel.setAggregateColumn(1, SubtreeAggregate.count()); // child0 has fewer nodes, but a larger size.
+        storeModel.setSortKeys(new RowSorter.SortKey(1, SortOrder.ASCENDING));
+        assertEquals(List.of("root", "child0", "sub2", "child1", "sub1", "sub0"), columnValues(storeModel, 0));
+        assertEquals(List.of(6L, 2L, 1L, 3L, 1L, 1L), columnValues(storeModel, 1));
+    }
+
+    private static List<Object> columnValues(final TreeTableModel model, final int column) {
+        List<Object> values = new ArrayList<>();
+        for (int row = 0; row < model.getRowCount(); row++) {
+            values.add(model.getValueAt(model.getTable().convertRowIndexToModel(row), column));
+        }
+        return values;
+    }
+
+    private static List<String> names(final TreeNode node) {
+        List<String> names = new ArrayList<>();
+        for (int child = 0; child < node.getChildCount(); child++) {
+            names.add(node.getChildAt(child).toString());
+        }
+        return names;
+    }
+
+}
@@ -0,0 +1,255 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.TreeNode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MoreChildrenNodeTest extends BaseTestClass {
+
+    private static final int SIZE = 1;
+    private static final int NUM_CHILDREN = 25;
+    private static final int PAGE_SIZE = 10;
+
+    private DefaultMutableTreeNode wideRoot;
+    private List<DefaultMutableTreeNode> children;
+
+    @BeforeEach
+    public void setupWideTree() {
+        wideRoot = new DefaultMutableTreeNode(new TestTreeTableModel.TestObject("root", 0, true));
+        children = addChildren(wideRoot, NUM_CHILDREN, "child", 0);
+        model = new TestTreeTableModel(wideRoot, true);
+        model.setChildPageSize(PAGE_SIZE);
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> model.setChildPageSize(-1));
+        assertThrows(IllegalArgumentException.class, () -> model.showMoreChildren(null));
+    }
+
+    @Test
+    public void testFirstPageAndMoreRow() {
+        model.expandNode(wideRoot);
+        assertTrue(model.isPaged(wideRoot));
+        assertEquals(1 + PAGE_SIZE + 1, model.getRowCount());
+        assertEquals(PAGE_SIZE + 1, model.getVisibleSubTreeCount(wideRoot));
+
+        MoreChildrenNode more = model.getMoreChildrenNode(wideRoot);
+        assertSame(more, model.getNodeAtModelIndex(PAGE_SIZE + 1));
+        assertSame(wideRoot, more.getParent());
+        assertEquals(NUM_CHILDREN - PAGE_SIZE, more.getHiddenCount());
+        assertEquals(PAGE_SIZE, more.getShownCount());
+        assertEquals("15 more\u2026", model.getValueAt(PAGE_SIZE + 1, 0));
+        assertNull(model.getValueAt(PAGE_SIZE + 1, SIZE));
+        assertEquals(1, model.getNodeDepth(PAGE_SIZE + 1));
+        assertEquals(0, model.getParentModelIndex(PAGE_SIZE + 1));
+
+        assertTrue(model.isVisible(more));
+        assertTrue(model.isVisible(children.get(PAGE_SIZE - 1)));
+        assertFalse(model.isVisible(children.get(PAGE_SIZE)));
+        assertEquals(PAGE_SIZE, model.getModelIndexForTreeNode(children.get(PAGE_SIZE - 1)));
+        assertEquals(-1, model.getModelIndexForTreeNode(children.get(PAGE_SIZE)));
+        assertEquals(PAGE_SIZE + 1, model.getModelIndexForTreeNode(more));
+    }
+
+    @Test
+    public void testSmallParentsAreNotPaged() {
+        model.setChildPageSize(NUM_CHILDREN);
+        model.expandNode(wideRoot);
+        assertFalse(model.isPaged(wideRoot));
+        assertNull(model.getMoreChildrenNode(wideRoot));
+        assertEquals(1 + NUM_CHILDREN, model.getRowCount());
+    }
+
+    @Test
+    public void testShowMoreChildren() {
+        model.expandNode(wideRoot);
+        MoreChildrenNode more = model.getMoreChildrenNode(wideRoot);
+        assertEquals(PAGE_SIZE, model.showMoreChildren(wideRoot));
+        assertEquals(1 + 2 * PAGE_SIZE + 1, model.getRowCount());
+        assertEquals(5, more.getHiddenCount());
+        assertSame(more, model.getNodeAtModelIndex(model.getRowCount() - 1));
+
+        model.toggleNode(more); // activating the row shows the last page.
+        assertEquals(1 + NUM_CHILDREN, model.getRowCount());
+        assertEquals(0, more.getHiddenCount());
+        assertFalse(model.isVisible(more));
+        assertEquals(children, model.getVisibleNodes().subList(1, model.getRowCount()));
+        assertEquals(NUM_CHILDREN, model.getVisibleSubTreeCount(wideRoot));
+        assertEquals(0, model.showMoreChildren(wideRoot));
+    }
+
+    @Test
+    public void testPagesInSortOrder() {
+        model.bindTable(table);
+        model.setSortKeys(new RowSorter.SortKey(SIZE, SortOrder.DESCENDING));
+        model.expandNode(wideRoot);
+        MoreChildrenNode more = model.getMoreChildrenNode(wideRoot);
+        for (int childIndex = 0; childIndex < NUM_CHILDREN; childIndex++) {
+            assertEquals(childIndex >= NUM_CHILDREN - PAGE_SIZE, more.isShown(children.get(childIndex)));
+        }
+
+        // The largest children are shown first in the table, followed by the row showing more.
+        assertSame(children.get(NUM_CHILDREN - 1), model.getNodeAtTableRow(1));
+        assertSame(more, model.getNodeAtTableRow(table.getRowCount() - 1));
+
+        model.showMoreChildren(wideRoot);
+        assertSame(children.get(NUM_CHILDREN - 2 * PAGE_SIZE), model.getNodeAtTableRow(2 * PAGE_SIZE));
+        assertSame(more, model.getNodeAtTableRow(table.getRowCount() - 1));
+
+        // The row showing more stays last when the sort order is reversed.
+        model.setSortKeys(new RowSorter.SortKey(SIZE, SortOrder.ASCENDING));
+        assertSame(children.get(NUM_CHILDREN - 2 * PAGE_SIZE), model.getNodeAtTableRow(1));
+        assertSame(more, model.getNodeAtTableRow(table.getRowCount() - 1));
+    }
+
+    @Test
+    public void testInsertAndRemoveChildren() {
+        model.expandNode(wideRoot);
+        MoreChildrenNode more = model.getMoreChildrenNode(wideRoot);
+        int rows = model.getRowCount();
+
+        // Inserted children are not shown until more children are shown.
+        addChildren(wideRoot, 2, "new", 100);
+        model.treeNodesInserted(wideRoot, new int[] {0, 1});
+        assertEquals(rows, model.getRowCount());
+        assertEquals(17, more.getHiddenCount());
+
+        // Removing a shown child removes its row, removing a hidden child updates the count.
+        TreeNode shown = children.get(0);
+        wideRoot.remove(2);
+        model.treeNodeRemoved(wideRoot, shown);
+        assertEquals(rows - 1, model.getRowCount());
+        TreeNode hidden = children.get(PAGE_SIZE);
+        int hiddenIndex = wideRoot.getIndex(hidden);
+        wideRoot.remove(hiddenIndex);
+        model.treeNodesRemoved(wideRoot, new int[] {hiddenIndex}, new Object[] {hidden});
+        assertEquals(rows - 1, model.getRowCount());
+        assertEquals(16, more.getHiddenCount());
+        assertEquals(PAGE_SIZE, model.getModelIndexForTreeNode(more));
+
+        // Removing the last hidden children removes the row showing more.
+        for (int childIndex = wideRoot.getChildCount() - 1; childIndex >= 0; childIndex--) {
+            TreeNode child = wideRoot.getChildAt(childIndex);
+            if (!more.isShown(child)) {
+                wideRoot.remove(childIndex);
+                model.treeNodesRemoved(wideRoot, new int[] {childIndex}, new Object[] {child});
+            }
+        }
+        assertFalse(model.isVisible(more));
+        assertEquals(1 + wideRoot.getChildCount(), model.getRowCount());
+        assertEquals(wideRoot.getChildCount(), model.getVisibleSubTreeCount(wideRoot));
+    }
+
+    @Test
+    public void testCollapseDiscardsPages() {
+        model.expandNode(wideRoot);
+        model.showMoreChildren(wideRoot);
+        model.collapseNode(wideRoot);
+        assertFalse(model.isPaged(wideRoot));
+        assertEquals(1, model.getRowCount());
+
+        model.expandNode(wideRoot);
+        assertEquals(1 + PAGE_SIZE + 1, model.getRowCount());
+    }
+
+    @Test
+    public void testRevealNotShownChild() {
+        model.bindTable(table);
+        DefaultMutableTreeNode hidden = children.get(NUM_CHILDREN - 1);
+        addChildren(hidden, 3, "grandchild", 0);
+        TreeNode grandchild = hidden.getChildAt(1);
+        model.expandNode(wideRoot);
+        assertFalse(model.isVisible(hidden));
+
+        assertTrue(model.revealNode(grandchild));
+        assertTrue(model.isVisible(hidden));
+        assertSame(grandchild, model.getSelectedNode());
+        assertEquals(NUM_CHILDREN - PAGE_SIZE - 1, model.getMoreChildrenNode(wideRoot).getHiddenCount());
+        assertEquals(model.getVisibleNodes().indexOf(grandchild), model.getModelIndexForTreeNode(grandchild));
+    }
+
+    @Test
+    public void testFilteredChildrenAreNotCounted() {
+        model.setNodeFilter(node -> node != wideRoot && wideRoot.getIndex(node) % 2 == 1);
+        model.expandNode(wideRoot);
+        MoreChildrenNode more = model.getMoreChildrenNode(wideRoot);
+        assertEquals(3, more.getHiddenCount());
+        assertSame(children.get(18), model.getNodeAtModelIndex(PAGE_SIZE));
+
+        model.clearNodeFilter();
+        assertEquals(NUM_CHILDREN - PAGE_SIZE, more.getHiddenCount());
+        assertEquals(1 + PAGE_SIZE + 1, model.getRowCount());
+    }
+
+    @Test
+    public void testModelIndexesInLargePagedTree() {
+        for (int trial = 0; trial < 5; trial++) {
+            createRandomTree(trial, trial % 2 == 0);
+            model.setChildPageSize(4);
+            model.expandTree();
+            Random rand = new Random(trial);
+            for (int more = 0; more < 100; more++) {
+                TreeNode node = model.getNodeAtModelIndex(rand.nextInt(model.getRowCount()));
+                if (node instanceof MoreChildrenNode) {
+                    model.toggleNode(node);
+                } else if (node.getParent() != null) {
+                    model.showMoreChildren(node.getParent());
+                }
+            }
+            assertTrue(model.getRowCount() > 100); // model indexes are found with a tree scan.
+            List<TreeNode> visible = new ArrayList<>(model.getVisibleNodes());
+            for (int modelIndex = 0; modelIndex < visible.size(); modelIndex++) {
+                TreeNode node = visible.get(modelIndex);
+                assertEquals(modelIndex, model.getModelIndexForTreeNode(node));
+                assertTrue(model.isVisible(node));
+            }
+            for (TreeNode node : TreeUtils.getNodeList(rootNode)) {
+                assertEquals(visible.contains(node), model.isVisible(node), node.toString());
+            }
+            List<TreeNode> before = new ArrayList<>(visible);
+            model.refreshTree();
+            assertEquals(before, model.getVisibleNodes());
+        }
+    }
+
+}
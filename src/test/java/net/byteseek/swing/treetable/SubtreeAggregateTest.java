@@ -0,0 +1,431 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeNode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SubtreeAggregateTest extends BaseTestClass {
+
+    private static final int SIZE = 1;
+    private static final int AGGREGATE = 4;
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> SubtreeAggregate.sum(-1));
+        assertThrows(IllegalArgumentException.class, () -> SubtreeAggregate.count(null));
+        assertThrows(IllegalArgumentException.class, () -> SubtreeAggregate.of(null, 0L, Long::sum));
+        assertThrows(IllegalArgumentException.class, () -> SubtreeAggregate.of(SIZE, 0L, null));
+
+        assertThrows(IllegalArgumentException.class, () -> model.setAggregateColumn(AGGREGATE, null));
+        model.setAggregateColumn(AGGREGATE, SubtreeAggregate.sum(SIZE));
+        assertThrows(IllegalArgumentException.class, () -> model.setAggregateColumn(3, SubtreeAggregate.max(AGGREGATE)));
+        assertThrows(IllegalArgumentException.class, () -> model.setAggregateColumn(SIZE, SubtreeAggregate.count()));
+        assertThrows(IllegalArgumentException.class, () -> model.getAggregateValue(rootNode, SIZE));
+        assertThrows(IllegalArgumentException.class, () -> model.getAggregateValue(null, AGGREGATE));
+    }
+
+    @Test
+    public void testSetAndRemoveAggregateColumn() {
+        assertFalse(model.isAggregateColumn(AGGREGATE));
+        assertNull(model.getAggregate(AGGREGATE));
+
+        SubtreeAggregate<Long> sum = SubtreeAggregate.sum(SIZE);
+        model.setAggregateColumn(AGGREGATE, sum);
+        assertTrue(model.isAggregateColumn(AGGREGATE));
+        assertSame(sum, model.getAggregate(AGGREGATE));
+        assertEquals(SIZE, sum.getSourceColumn());
+        assertEquals(0L, sum.getIdentity());
+        assertEquals(4309L, model.getAggregateValue(rootNode, AGGREGATE));
+        assertEquals(4309L, model.getValueAt(0, AGGREGATE));
+
+        model.setAggregateColumn(AGGREGATE, SubtreeAggregate.count());
+        assertEquals(8L, model.getValueAt(0, AGGREGATE));
+        assertEquals(SubtreeAggregate.NO_COLUMN, model.getAggregate(AGGREGATE).getSourceColumn());
+
+        model.removeAggregateColumn(AGGREGATE);
+        assertFalse(model.isAggregateColumn(AGGREGATE));
+        assertEquals(model.getColumnValue(rootNode, AGGREGATE), model.getValueAt(0, AGGREGATE));
+        model.removeAggregateColumn(AGGREGATE); // nothing happens if it's not an aggregate column.
+    }
+
+    @Test
+    public void testAggregates() {
+        model.setAggregateColumn(AGGREGATE, SubtreeAggregate.sum(SIZE));
+        model.setAggregateColumn(3, SubtreeAggregate.count(TreeNode::isLeaf));
+        model.setAggregateColumn(5, SubtreeAggregate.<Long>min(SIZE));
+        model.setAggregateColumn(6, SubtreeAggregate.<Long>max(SIZE));
+        model.setAggregateColumn(7, SubtreeAggregate.sumDouble(SIZE));
+        model.setAggregateColumn(8, SubtreeAggregate.<String>of(0, "", (a, b) -> a.compareTo(b) >= 0 ? a : b));
+
+        assertEquals(4107L, model.getAggregateValue(child1, AGGREGATE));
+        assertEquals(4L, model.getAggregateValue(child1, 3));
+        assertEquals(101L, model.getAggregateValue(child1, 5));
+        assertEquals(1003L, model.getAggregateValue(child1, 6));
+        assertEquals(4107.0, model.getAggregateValue(child1, 7));
+        assertEquals("subchildren3", model.getAggregateValue(child1, 8));
+
+        assertEquals(4309L, model.getAggregateValue(rootNode, AGGREGATE));
+        assertEquals(6L, model.getAggregateValue(rootNode, 3));
+        assertEquals(0L, model.getAggregateValue(rootNode, 5));
+        assertEquals(1003L, model.getAggregateValue(rootNode, 6));
+
+        assertEquals(1000L, model.getAggregateValue(subchild0, 5));
+        assertEquals(1L, model.getAggregateValue(subchild0, 3));
+    }
+
+    @Test
+    public void testColumnAggregatesItself() {
+        model.setAggregateColumn(SIZE, SubtreeAggregate.sum(SIZE));
+        assertEquals(4309L, model.getValueAt(0, SIZE));
+        assertEquals(1000L, model.getAggregateValue(subchild0, SIZE));
+        assertEquals(1000L, model.getColumnValue(subchild0, SIZE));
+    }
+
+    @Test
+    public void testMinAndMaxIgnoreNulls() {
+        model.setAggregateColumn(5, SubtreeAggregate.<String>max(AGGREGATE)); // null for the root at row 0.
+        assertEquals("not null", model.getAggregateValue(rootNode, 5));
+
+        TreeNode singleNode = new DefaultMutableTreeNode(new TestTreeTableModel.TestObject("single", 0, true));
+        model = new TestTreeTableModel(singleNode, true);
+        model.setAggregateColumn(5, SubtreeAggregate.<String>max(AGGREGATE));
+        model.setAggregateColumn(6, SubtreeAggregate.<String>min(AGGREGATE));
+        assertNull(model.getAggregateValue(singleNode, 5));
+        assertNull(model.getAggregateValue(singleNode, 6));
+    }
+
+    @Test
+    public void testRandomTreesMatchFullWalk() {
+        for (int trial = 0; trial < 20; trial++) {
+            createRandomTree(trial, true);
+            model.setAggregateColumn(AGGREGATE, SubtreeAggregate.sum(SIZE));
+            model.setAggregateColumn(5, SubtreeAggregate.count());
+            for (TreeNode node : TreeUtils.getNodeList(rootNode)) {
+                assertEquals(sumSizes(node), model.getAggregateValue(node, AGGREGATE));
+                assertEquals(countNodes(node), model.getAggregateValue(node, 5));
+            }
+        }
+    }
+
+    @Test
+    public void testTreeModelEventsUpdateAggregates() {
+        DefaultTreeModel treeModel = new DefaultTreeModel(rootNode);
+        treeModel.addTreeModelListener(model);
+        model.setAggregateColumn(AGGREGATE, SubtreeAggregate.sum(SIZE));
+        assertEquals(4309L, model.getAggregateValue(rootNode, AGGREGATE));
+
+        // Insert a new node under a collapsed child:
+        DefaultMutableTreeNode newNode = new DefaultMutableTreeNode(new TestTreeTableModel.TestObject("new", 50, true), false);
+        treeModel.insertNodeInto(newNode, (DefaultMutableTreeNode) child1, 0);
+        assertEquals(4157L, model.getAggregateValue(child1, AGGREGATE));
+        assertEquals(4359L, model.getAggregateValue(rootNode, AGGREGATE));
+
+        // Change the size of a node:
+        ((TestTreeTableModel.TestObject) ((DefaultMutableTreeNode) subchild0).getUserObject()).size = 10;
+        treeModel.nodeChanged(subchild0);
+        assertEquals(3167L, model.getAggregateValue(child1, AGGREGATE));
+        assertEquals(3369L, model.getAggregateValue(rootNode, AGGREGATE));
+
+        // Remove a subtree:
+        treeModel.removeNodeFromParent((DefaultMutableTreeNode) child1);
+        assertEquals(202L, model.getAggregateValue(rootNode, AGGREGATE));
+
+        // Replace the structure of a node:
+        ((DefaultMutableTreeNode) child0).setAllowsChildren(true);
+        ((DefaultMutableTreeNode) child0).add(newNode);
+        treeModel.nodeStructureChanged(child0);
+        assertEquals(150L, model.getAggregateValue(child0, AGGREGATE));
+        assertEquals(252L, model.getAggregateValue(rootNode, AGGREGATE));
+    }
+
+    @Test
+    public void testSetValueUpdatesAggregates() {
+        model.expandNode(rootNode);
+        model.setAggregateColumn(AGGREGATE, SubtreeAggregate.sum(SIZE));
+        assertEquals(4309L, model.getValueAt(0, AGGREGATE));
+        model.setValueAt(1100L, 1, SIZE); // child0 is at row 1.
+        assertEquals(1100L, model.getValueAt(1, AGGREGATE));
+        assertEquals(5309L, model.getValueAt(0, AGGREGATE));
+    }
+
+    @Test
+    public void testSortingUsesAggregateValues() {
+        model.expandTree();
+        model.bindTable(table);
+        model.setAggregateColumn(AGGREGATE, SubtreeAggregate.sum(SIZE));
+        model.setSortKeys(new RowSorter.SortKey(AGGREGATE, SortOrder.DESCENDING));
+        TreeNodeComparator comparator = new TreeNodeComparator(model);
+        assertTrue(comparator.compare(child1, child2) < 0); // child1 has the larger total, so sorts first.
+        assertTrue(comparator.compare(child2, child0) < 0);
+        assertEquals(child1, model.getNodeAtTableRow(1));
+    }
+
+    @Test
+    public void testOnlyAncestorPathIsRecomputed() {
+        createRandomTree(1, true);
+        AtomicInteger nodeValues = new AtomicInteger();
+        model.setAggregateColumn(AGGREGATE, SubtreeAggregate.of(node -> {
+            nodeValues.incrementAndGet();
+            return 1L;
+        }, 0L, Long::sum));
+        final int nodeCount = TreeUtils.getNodeList(rootNode).size();
+        assertEquals((long) nodeCount, model.getAggregateValue(rootNode, AGGREGATE));
+        assertEquals(nodeCount, nodeValues.get());
+
+        // Reading values again doesn't compute anything:
+        for (TreeNode node : TreeUtils.getNodeList(rootNode)) {
+            model.getAggregateValue(node, AGGREGATE);
+        }
+        assertEquals(nodeCount, nodeValues.get());
+
+        // A changed node whose aggregate doesn't change only recomputes itself:
+        TreeNode deepest = rootNode;
+        while (deepest.getChildCount() > 0) {
+            deepest = deepest.getChildAt(deepest.getChildCount() - 1);
+        }
+        nodeValues.set(0);
+        model.treeNodeChanged(deepest);
+        assertEquals(1, nodeValues.get());
+
+        // Removing a node recomputes only the path from its parent to the root:
+        TreeNode parent = deepest.getParent();
+        ((DefaultMutableTreeNode) parent).remove((DefaultMutableTreeNode) deepest);
+        nodeValues.set(0);
+        model.treeNodeRemoved(parent, deepest);
+        assertEquals(TreeUtils.getLevel(parent) + 1, nodeValues.get());
+        assertEquals((long) nodeCount - 1, model.getAggregateValue(rootNode, AGGREGATE));
+    }
+
+    @Test
+    public void testInvertibleAggregatesApplyChanges() {
+        DefaultMutableTreeNode wideRoot = createWideTree(1000);
+        model = new TestTreeTableModel(wideRoot, true);
+        DefaultTreeModel treeModel = new DefaultTreeModel(wideRoot);
+        treeModel.addTreeModelListener(model);
+        AtomicInteger operations = new AtomicInteger();
+        model.setAggregateColumn(AGGREGATE, SubtreeAggregate.of(node -> getSize(node), 0L, (a, b) -> {
+            operations.incrementAndGet();
+            return a + b;
+        }, (a, b) -> {
+            operations.incrementAndGet();
+            return a - b;
+        }));
+        assertEquals(sumSizes(wideRoot), model.getAggregateValue(wideRoot, AGGREGATE));
+
+        // A changed child takes its old value out of its parent and adds its new value, without adding its siblings:
+        DefaultMutableTreeNode child = (DefaultMutableTreeNode) wideRoot.getChildAt(500);
+        ((TestTreeTableModel.TestObject) child.getUserObject()).size = 12345;
+        operations.set(0);
+        treeModel.nodeChanged(child);
+        assertTrue(operations.get() <= 4, "operations: " + operations.get());
+        assertEquals(sumSizes(wideRoot), model.getAggregateValue(wideRoot, AGGREGATE));
+
+        // So do inserted and removed children:
+        operations.set(0);
+        treeModel.insertNodeInto(new DefaultMutableTreeNode(new TestTreeTableModel.TestObject("new", 77, true)), wideRoot, 10);
+        treeModel.removeNodeFromParent(child);
+        assertTrue(operations.get() <= 8, "operations: " + operations.get());
+        assertEquals(sumSizes(wideRoot), model.getAggregateValue(wideRoot, AGGREGATE));
+    }
+
+    @Test
+    public void testMinAndMaxOnlyRecombineWhenTheExtremeChanges() {
+        AtomicInteger childReads = new AtomicInteger();
+        DefaultMutableTreeNode wideRoot = new DefaultMutableTreeNode(new TestTreeTableModel.TestObject("root", 0, true)) {
+            @Override
+            public TreeNode getChildAt(int index) {
+                childReads.incrementAndGet();
+                return super.getChildAt(index);
+            }
+        };
+        for (int child = 0; child < 1000; child++) {
+            wideRoot.add(new DefaultMutableTreeNode(new TestTreeTableModel.TestObject("child" + child, 1000 + child, true)));
+        }
+        model = new TestTreeTableModel(wideRoot, true);
+        model.setAggregateColumn(AGGREGATE, SubtreeAggregate.<Long>max(SIZE));
+        model.setAggregateColumn(5, SubtreeAggregate.<Long>min(SIZE));
+        assertEquals(1999L, model.getAggregateValue(wideRoot, AGGREGATE));
+        DefaultMutableTreeNode largest = (DefaultMutableTreeNode) wideRoot.getLastChild();
+        DefaultMutableTreeNode middle = (DefaultMutableTreeNode) wideRoot.getChildAt(500);
+
+        // A change to a child which isn't the extreme, or which makes it more extreme, doesn't read the other children:
+        childReads.set(0);
+        setSize(middle, 1600);
+        setSize(largest, 2500);
+        assertEquals(0, childReads.get());
+        assertEquals(2500L, model.getAggregateValue(wideRoot, AGGREGATE));
+
+        // A change which makes the extreme less extreme combines the children again:
+        setSize(largest, 1);
+        assertEquals(1000, childReads.get());
+        assertEquals(1998L, model.getAggregateValue(wideRoot, AGGREGATE));
+        assertEquals(0L, model.getAggregateValue(wideRoot, 5)); // the root's own size is the smallest.
+    }
+
+    @Test
+    public void testRandomChangesMatchFullWalk() {
+        for (int trial = 0; trial < 10; trial++) {
+            createRandomTree(trial, true);
+            DefaultTreeModel treeModel = new DefaultTreeModel(rootNode);
+            treeModel.addTreeModelListener(model);
+            model.setAggregateColumn(AGGREGATE, SubtreeAggregate.sum(SIZE));
+            model.setAggregateColumn(5, SubtreeAggregate.count());
+            model.setAggregateColumn(6, SubtreeAggregate.<Long>min(SIZE));
+            model.setAggregateColumn(7, SubtreeAggregate.<Long>max(SIZE));
+            model.setAggregateColumn(8, SubtreeAggregate.sumDouble(SIZE));
+            model.getAggregateValue(rootNode, AGGREGATE);
+            Random random = new Random(trial);
+            for (int change = 0; change < 200; change++) {
+                List<TreeNode> nodes = TreeUtils.getNodeList(rootNode);
+                DefaultMutableTreeNode node = (DefaultMutableTreeNode) nodes.get(random.nextInt(nodes.size()));
+                int operation = random.nextInt(3);
+                if (operation == 0 || node == rootNode) {
+                    ((TestTreeTableModel.TestObject) node.getUserObject()).size = random.nextInt(1000);
+                    treeModel.nodeChanged(node);
+                } else if (operation == 1) {
+                    treeModel.removeNodeFromParent(node);
+                } else {
+                    node.setAllowsChildren(true);
+                    DefaultMutableTreeNode newNode = new DefaultMutableTreeNode(
+                            new TestTreeTableModel.TestObject("new", random.nextInt(1000), true));
+                    treeModel.insertNodeInto(newNode, node, random.nextInt(node.getChildCount() + 1));
+                }
+            }
+            for (TreeNode node : TreeUtils.getNodeList(rootNode)) {
+                assertEquals(sumSizes(node), model.getAggregateValue(node, AGGREGATE));
+                assertEquals(countNodes(node), model.getAggregateValue(node, 5));
+                assertEquals(extremeSize(node, true), model.getAggregateValue(node, 6));
+                assertEquals(extremeSize(node, false), model.getAggregateValue(node, 7));
+                assertEquals((double) sumSizes(node), model.getAggregateValue(node, 8));
+            }
+        }
+    }
+
+    @Test
+    public void testDeepChangeUpdatesVisibleAncestorRows() {
+        DefaultMutableTreeNode deepRoot = new DefaultMutableTreeNode(new TestTreeTableModel.TestObject("root", 0, true));
+        List<DefaultMutableTreeNode> chain = new ArrayList<>();
+        DefaultMutableTreeNode parent = deepRoot;
+        for (int level = 0; level < 2000; level++) {
+            DefaultMutableTreeNode child = new DefaultMutableTreeNode(new TestTreeTableModel.TestObject("level" + level, level, true));
+            parent.add(child);
+            parent.add(new DefaultMutableTreeNode(new TestTreeTableModel.TestObject("sibling" + level, 1, true)));
+            chain.add(child);
+            parent = child;
+        }
+        AtomicInteger indexLookups = new AtomicInteger();
+        model = new TestTreeTableModel(deepRoot, true) {
+            @Override
+            public int getModelIndexForTreeNode(TreeNode node) {
+                indexLookups.incrementAndGet();
+                return super.getModelIndexForTreeNode(node);
+            }
+        };
+        model.expandTree();
+        model.collapseNode(chain.get(1499)); // levels above 1500 are hidden.
+        model.setAggregateColumn(AGGREGATE, SubtreeAggregate.sum(SIZE));
+        model.getAggregateValue(deepRoot, AGGREGATE);
+        List<Integer> updatedRows = new ArrayList<>();
+        model.addTableModelListener(e -> {
+            for (int row = e.getFirstRow(); row <= e.getLastRow(); row++) {
+                updatedRows.add(row);
+            }
+        });
+
+        indexLookups.set(0);
+        DefaultMutableTreeNode leaf = chain.get(chain.size() - 1);
+        ((TestTreeTableModel.TestObject) leaf.getUserObject()).size += 1000;
+        model.treeNodeChanged(leaf);
+        assertTrue(indexLookups.get() <= 2, "lookups: " + indexLookups.get());
+        List<Integer> expectedRows = new ArrayList<>();
+        for (int level = 1499; level >= 0; level--) {
+            expectedRows.add(model.getModelIndexForTreeNode(chain.get(level)));
+        }
+        expectedRows.add(0);
+        assertEquals(expectedRows, updatedRows);
+        assertEquals(sumSizes(deepRoot), model.getAggregateValue(deepRoot, AGGREGATE));
+    }
+
+    private DefaultMutableTreeNode createWideTree(int numChildren) {
+        DefaultMutableTreeNode wideRoot = new DefaultMutableTreeNode(new TestTreeTableModel.TestObject("root", 0, true));
+        for (int child = 0; child < numChildren; child++) {
+            wideRoot.add(new DefaultMutableTreeNode(new TestTreeTableModel.TestObject("child" + child, child, true)));
+        }
+        return wideRoot;
+    }
+
+    private void setSize(DefaultMutableTreeNode node, long size) {
+        ((TestTreeTableModel.TestObject) node.getUserObject()).size = size;
+        model.treeNodeChanged(node);
+    }
+
+    private static long getSize(TreeNode node) {
+        return ((TestTreeTableModel.TestObject) ((DefaultMutableTreeNode) node).getUserObject()).size;
+    }
+
+    private static long extremeSize(TreeNode node, boolean smallest) {
+        long extreme = getSize(node);
+        for (int childIndex = 0; childIndex < node.getChildCount(); childIndex++) {
+            long childExtreme = extremeSize(node.getChildAt(childIndex), smallest);
+            extreme = smallest ? Math.min(extreme, childExtreme) : Math.max(extreme, childExtreme);
+        }
+        return extreme;
+    }
+
+    private static long sumSizes(TreeNode node) {
+        long sum = ((TestTreeTableModel.TestObject) ((DefaultMutableTreeNode) node).getUserObject()).size;
+        for (int childIndex = 0; childIndex < node.getChildCount(); childIndex++) {
+            sum += sumSizes(node.getChildAt(childIndex));
+        }
+        return sum;
+    }
+
+    private static long countNodes(TreeNode node) {
+        long count = 1;
+        for (int childIndex = 0; childIndex < node.getChildCount(); childIndex++) {
+            count += countNodes(node.getChildAt(childIndex));
+        }
+        return count;
+    }
+
+}
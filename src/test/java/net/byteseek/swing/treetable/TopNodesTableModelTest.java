@@ -0,0 +1,190 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.TreeNode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TopNodesTableModelTest extends BaseTestClass {
+
+    private static final int SIZE = 1;
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> model.getTopNodes(-1));
+        assertThrows(IllegalArgumentException.class, () -> model.getTopNodes(10, false, 0));
+        assertThrows(IllegalArgumentException.class, () -> model.revealNode(null));
+        assertThrows(IllegalArgumentException.class, () -> new TopNodesTableModel(null, 10));
+        assertThrows(IllegalArgumentException.class, () -> new TopNodesTableModel(model, -1));
+        assertThrows(IllegalArgumentException.class, () -> new TopNodesTableModel(model, 10).setParallelism(0));
+    }
+
+    @Test
+    public void testTopNodesMatchFullSort() {
+        for (int trial = 0; trial < 10; trial++) {
+            createRandomTree(trial, trial % 2 == 0);
+            model.setSortKeys(new RowSorter.SortKey(SIZE, SortOrder.DESCENDING));
+            List<TreeNode> allNodes = getSortedNodes(model, Comparator.comparingLong(TopNodesTableModelTest::getSize).reversed());
+            for (int count : new int[] {0, 1, 10, 500, Integer.MAX_VALUE}) {
+                List<TreeNode> expected = allNodes.subList(0, Math.min(count, allNodes.size()));
+                assertEquals(expected, model.getTopNodes(count));
+                assertEquals(expected, model.getTopNodes(count, false, 4));
+            }
+        }
+    }
+
+    @Test
+    public void testNoSortKeysGivesTreeOrder() {
+        createRandomTree(3, true);
+        List<TreeNode> allNodes = TreeUtils.getNodeList(rootNode);
+        assertEquals(allNodes.subList(0, 20), model.getTopNodes(20));
+        assertEquals(allNodes.subList(0, 20), model.getTopNodes(20, false, 3));
+    }
+
+    @Test
+    public void testFilteredSubtreesExcluded() {
+        model.setSortKeys(new RowSorter.SortKey(SIZE, SortOrder.DESCENDING));
+        assertEquals(List.of(subchild3, subchild2, subchild1), model.getTopNodes(3));
+
+        model.setNodeFilter(node -> node == child1);
+        assertEquals(List.of(child2, child0, rootNode), model.getTopNodes(3));
+        assertEquals(List.of(subchild3, subchild2, subchild1), model.getTopNodes(3, true, 1));
+    }
+
+    @Test
+    public void testFilteredShownRootExcludesTree() {
+        model.setSortKeys(new RowSorter.SortKey(SIZE, SortOrder.DESCENDING));
+        model.setNodeFilter(node -> node == rootNode);
+        assertEquals(List.of(), model.getTopNodes(3));
+        assertEquals(List.of(), model.getTopNodes(3, false, 4));
+        assertEquals(List.of(subchild3, subchild2, subchild1), model.getTopNodes(3, true, 1));
+
+        // The children of a hidden root are shown even if it is filtered, so they are still included:
+        model = new TestTreeTableModel(rootNode, false);
+        model.setSortKeys(new RowSorter.SortKey(SIZE, SortOrder.DESCENDING));
+        model.setNodeFilter(node -> node == rootNode);
+        assertEquals(List.of(subchild3, subchild2, subchild1), model.getTopNodes(3));
+    }
+
+    @Test
+    public void testRevealNode() {
+        model.bindTable(table);
+        assertFalse(model.isVisible(subchild2));
+        assertTrue(model.revealNode(subchild2));
+        assertTrue(model.isVisible(subchild2));
+        assertSame(subchild2, model.getSelectedNode());
+
+        assertFalse(model.revealNode(new DefaultMutableTreeNode("not in tree")));
+        model.setNodeFilter(node -> node == child1);
+        assertFalse(model.revealNode(subchild0));
+    }
+
+    @Test
+    public void testRevealNodeLeavesExpansionIfNotRevealed() {
+        model.setNodeFilter(node -> node == subchild1);
+        assertFalse(model.isExpanded(child1));
+        assertFalse(model.revealNode(subchild1));
+        assertFalse(model.isExpanded(child1));
+
+        model.setNodeFilter(node -> node == child1);
+        assertFalse(model.revealNode(subchild0));
+        assertFalse(model.isExpanded(child1));
+
+        model = new TestTreeTableModel(rootNode, false);
+        model.setNodeFilter(null);
+        assertFalse(model.revealNode(rootNode));
+        assertTrue(model.revealNode(subchild0));
+        assertTrue(model.isExpanded(child1));
+    }
+
+    @Test
+    public void testTopNodesTableModel() {
+        model.bindTable(table);
+        model.setSortKeys(new RowSorter.SortKey(SIZE, SortOrder.DESCENDING));
+        TopNodesTableModel topNodes = new TopNodesTableModel(model, 2);
+        assertEquals(0, topNodes.getRowCount());
+        assertEquals(model.getColumnCount(), topNodes.getColumnCount());
+        assertEquals("header1", topNodes.getColumnName(1));
+        assertSame(model, topNodes.getTreeTableModel());
+
+        topNodes.update();
+        assertEquals(2, topNodes.getRowCount());
+        assertEquals(List.of(subchild3, subchild2), topNodes.getNodes());
+        assertSame(subchild3, topNodes.getNodeAt(0));
+        assertEquals(1003L, topNodes.getValueAt(0, SIZE));
+        assertEquals("subchildren3", topNodes.getValueAt(0, 0));
+        assertEquals(List.of(rootNode, child1, subchild3), topNodes.getPath(0));
+        assertEquals("root / child1 / subchildren3", topNodes.getPathText(0));
+
+        topNodes.setCount(5);
+        topNodes.setParallelism(2);
+        topNodes.setIncludeFiltered(true);
+        assertEquals(5, topNodes.getCount());
+        assertEquals(2, topNodes.getParallelism());
+        assertTrue(topNodes.getIncludeFiltered());
+        topNodes.update();
+        assertEquals(5, topNodes.getRowCount());
+        assertSame(child2, topNodes.getNodeAt(4));
+
+        assertTrue(topNodes.revealInTree(1));
+        assertSame(subchild2, model.getSelectedNode());
+    }
+
+    @Test
+    public void testAggregateSortKey() {
+        model.setAggregateColumn(4, SubtreeAggregate.sum(SIZE));
+        model.setSortKeys(new RowSorter.SortKey(4, SortOrder.DESCENDING));
+        assertEquals(List.of(rootNode, child1, subchild3), model.getTopNodes(3, false, 4));
+    }
+
+    private static long getSize(TreeNode node) {
+        return ((TestTreeTableModel.TestObject) ((DefaultMutableTreeNode) node).getUserObject()).size;
+    }
+
+    private static List<TreeNode> getSortedNodes(TreeTableModel model, Comparator<TreeNode> comparator) {
+        List<TreeNode> nodes = new ArrayList<>(TreeUtils.getNodeList(model.getRoot()));
+        if (!model.getShowRoot()) {
+            nodes.remove(0);
+        }
+        nodes.sort(comparator); // a stable sort keeps equal nodes in tree order.
+        return nodes;
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.tree.DefaultTreeModel;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TreeTableFlightRecorderTest extends BaseTestClass {
+
+    @BeforeEach
+    public void setupRecorder() {
+        model.bindTable(table);
+        TreeTableFlightRecorder.recordEvents(model);
+    }
+
+    @Test
+    public void testConstructNullModel() {
+        assertThrows(IllegalArgumentException.class, () -> new TreeTableFlightRecorder(null));
+    }
+
+    @Test
+    public void testRecordsEvents() throws IOException {
+        List<RecordedEvent> events = record(() -> {
+            model.expandNode(rootNode);
+            model.setSortKeys(new RowSorter.SortKey(0, SortOrder.ASCENDING));
+            model.expandNode(child1);
+            model.setNodeFilter(node -> node == child2);
+        });
+
+        RecordedEvent expand = findEvent(events, "net.byteseek.swing.treetable.Expansion", "EXPAND");
+        assertEquals(0, expand.getInt("nodeDepth"));
+        assertEquals(3, expand.getInt("rowsAffected"));
+        assertEquals(4, expand.getInt("rowCount"));
+        assertEquals(0, expand.getInt("sortKeyCount"));
+
+        RecordedEvent sort = findEvent(events, "net.byteseek.swing.treetable.Sort", "SORT");
+        assertEquals(1, sort.getInt("sortKeyCount"));
+        assertEquals(4, sort.getInt("rowsAffected"));
+
+        RecordedEvent filter = findEvent(events, "net.byteseek.swing.treetable.Filter", "SET_FILTER");
+        assertEquals(7, filter.getInt("rowCount"));
+        assertNotNull(findEvent(events, "net.byteseek.swing.treetable.Filter", "REFRESH_TREE"));
+        assertFalse(filter.getDuration().isNegative());
+    }
+
+    @Test
+    public void testRecordsTreeModelEvents() throws IOException {
+        model.expandNode(rootNode);
+        DefaultTreeModel treeModel = new DefaultTreeModel(rootNode);
+        treeModel.addTreeModelListener(model);
+        List<RecordedEvent> events = record(() -> treeModel.removeNodeFromParent(child0));
+        RecordedEvent removed = findEvent(events, "net.byteseek.swing.treetable.TreeModelChange", "TREE_NODES_REMOVED");
+        assertEquals(0, removed.getInt("nodeDepth"));
+        assertEquals(1, removed.getInt("rowsAffected"));
+    }
+
+    private List<RecordedEvent> record(Runnable actions) throws IOException {
+        Path file = Files.createTempFile("treetable", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("net.byteseek.swing.treetable.Sort");
+            recording.enable("net.byteseek.swing.treetable.Filter");
+            recording.enable("net.byteseek.swing.treetable.Expansion");
+            recording.enable("net.byteseek.swing.treetable.TreeModelChange");
+            recording.start();
+            actions.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(event -> event.getEventType().getName().startsWith("net.byteseek.swing.treetable."))
+                    .collect(Collectors.toList());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private RecordedEvent findEvent(List<RecordedEvent> events, String name, String operation) {
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name) && operation.equals(event.getString("operation"))) {
+                return event;
+            }
+        }
+        fail("No event " + name + " for operation " + operation + " in " + events);
+        return null;
+    }
+}
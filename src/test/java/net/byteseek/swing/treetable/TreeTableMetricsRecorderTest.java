@@ -0,0 +1,186 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.byteseek.swing.treetable.TreeTableMetricsRecorder.Histogram;
+import net.byteseek.swing.treetable.TreeTableModel.MetricsListener.Counter;
+import net.byteseek.swing.treetable.TreeTableModel.MetricsListener.Operation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TreeTableMetricsRecorderTest extends BaseTestClass {
+
+    private TreeTableMetricsRecorder recorder;
+
+    @BeforeEach
+    public void setupRecorder() {
+        model.bindTable(table);
+        recorder = TreeTableMetricsRecorder.recordMetrics(model);
+    }
+
+    @Test
+    public void testAddAndRemoveListeners() {
+        assertEquals(1, model.getMetricsListeners().size());
+        model.addMetricsListener(recorder);
+        assertEquals(1, model.getMetricsListeners().size());
+
+        TreeTableMetricsRecorder another = new TreeTableMetricsRecorder();
+        model.addMetricsListener(another);
+        assertEquals(2, model.getMetricsListeners().size());
+
+        model.removeMetricsListener(recorder);
+        model.removeMetricsListener(another);
+        assertTrue(model.getMetricsListeners().isEmpty());
+        assertNull(model.metricsListeners);
+
+        assertThrows(IllegalArgumentException.class, () -> model.addMetricsListener(null));
+    }
+
+    @Test
+    public void testExpandAndCollapse() {
+        model.expandNode(rootNode);
+        Histogram expand = recorder.getHistogram(Operation.EXPAND);
+        assertEquals(1, expand.getCount());
+        assertEquals(3, expand.getTotalRowsAffected());
+        assertEquals(3, recorder.getCount(Counter.ROWS_INSERTED));
+
+        model.collapseNode(rootNode);
+        Histogram collapse = recorder.getHistogram(Operation.COLLAPSE);
+        assertEquals(1, collapse.getCount());
+        assertEquals(3, collapse.getTotalRowsAffected());
+        assertEquals(3, recorder.getCount(Counter.ROWS_REMOVED));
+    }
+
+    @Test
+    public void testStartedAndCompletedBalanced() {
+        List<Operation> started = new ArrayList<>();
+        List<Operation> completed = new ArrayList<>();
+        model.addMetricsListener(new TreeTableModel.MetricsListener() {
+            @Override
+            public void operationStarted(Operation operation) {
+                started.add(operation);
+            }
+            @Override
+            public void operationCompleted(Operation operation, long durationNanos, int rowCount, int rowsAffected, int nodeDepth) {
+                completed.add(operation);
+                assertTrue(durationNanos >= 0);
+                assertEquals(model.getRowCount(), rowCount);
+            }
+            @Override
+            public void counted(Counter counter, int amount) {
+            }
+        });
+        model.expandNode(rootNode);
+        model.setNodeFilter(node -> node == child2);
+        assertEquals(started.size(), completed.size());
+        assertTrue(completed.contains(Operation.SET_FILTER));
+        assertTrue(completed.contains(Operation.REFRESH_TREE));
+        assertTrue(recorder.getCount(Counter.FILTER_EVALUATIONS) > 0);
+    }
+
+    @Test
+    public void testSortCountsComparisons() {
+        model.expandTree();
+        model.setSortKeys(new RowSorter.SortKey(0, SortOrder.DESCENDING));
+        assertEquals(1, recorder.getHistogram(Operation.SORT).getCount());
+        assertEquals(model.getRowCount(), recorder.getHistogram(Operation.SORT).getTotalRowsAffected());
+        assertTrue(recorder.getCount(Counter.COMPARISONS) > 0);
+        assertTrue(recorder.getCount(Counter.COLUMN_VALUES) > 0);
+
+        ((TreeTableRowSorter) table.getRowSorter()).setRebuildIndices(false);
+        model.collapseNode(child1);
+        assertEquals(1, recorder.getHistogram(Operation.REMOVE_SORT_INDICES).getCount());
+        assertEquals(4, recorder.getHistogram(Operation.REMOVE_SORT_INDICES).getTotalRowsAffected());
+    }
+
+    @Test
+    public void testNoMetricsWhenRemoved() {
+        model.removeMetricsListener(recorder);
+        model.expandTree();
+        model.getValueAt(0, 0);
+        assertEquals(0, recorder.getHistogram(Operation.EXPAND).getCount());
+        assertEquals(0, recorder.getCount(Counter.COLUMN_VALUES));
+    }
+
+    @Test
+    public void testResetRecorder() {
+        model.expandNode(rootNode);
+        model.getValueAt(0, 0);
+        recorder.reset();
+        assertEquals(0, recorder.getHistogram(Operation.EXPAND).getCount());
+        assertEquals(0, recorder.getCount(Counter.COLUMN_VALUES));
+        assertEquals(0, recorder.getCount(Counter.ROWS_INSERTED));
+    }
+
+    @Test
+    public void testHistogram() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMinNanos());
+        assertEquals(0, histogram.getMeanNanos());
+        assertEquals(0, histogram.getPercentileNanos(50));
+
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L, 1);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(1000, histogram.getMinNanos());
+        assertEquals(100000, histogram.getMaxNanos());
+        assertEquals(50500, histogram.getMeanNanos());
+        assertEquals(100, histogram.getTotalRowsAffected());
+
+        long p50 = histogram.getPercentileNanos(50);
+        assertTrue(p50 >= 50000 && p50 < 100000, "p50 within a power of two: " + p50);
+        assertEquals(100000, histogram.getPercentileNanos(100));
+        assertTrue(histogram.getPercentileNanos(0) >= 1000);
+        assertThrows(IllegalArgumentException.class, () -> histogram.getPercentileNanos(101));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void testToString() {
+        model.expandNode(rootNode);
+        String result = recorder.toString();
+        assertTrue(result.contains("EXPAND"));
+        assertTrue(result.contains("ROWS_INSERTED: 3"));
+    }
+}
@@ -49,6 +49,7 @@ import javax.swing.table.TableColumn;
 import javax.swing.table.TableColumnModel;
 import javax.swing.table.TableRowSorter;
 import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreeNode;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
@@ -1531,6 +1532,28 @@ class TreeTableModelTest extends BaseTestClass {
         assertFalse(model.isVisible(child2));
     }
 
+    @Test
+    public void testTreeChangesUpdateExpandedAncestorCounts() {
+        model.expandNode(rootNode);
+        model.expandNode(child1);
+        DefaultTreeModel treeModel = new DefaultTreeModel(rootNode);
+        treeModel.addTreeModelListener(model);
+        assertEquals(7, model.getLastKnownSubTreeCount(rootNode));
+        assertEquals(4, model.getLastKnownSubTreeCount(child1));
+
+        // Ancestors change by the number of rows inserted or removed, not by the new count of the parent:
+        DefaultMutableTreeNode newChild = new DefaultMutableTreeNode(new TestTreeTableModel.TestObject("new", 1, false), false);
+        treeModel.insertNodeInto(newChild, child1, child1.getChildCount());
+        assertEquals(5, model.getLastKnownSubTreeCount(child1));
+        assertEquals(8, model.getLastKnownSubTreeCount(rootNode));
+        assertEquals(model.getRowCount() - 1, model.getLastKnownSubTreeCount(rootNode));
+
+        treeModel.removeNodeFromParent(subchild0);
+        assertEquals(4, model.getLastKnownSubTreeCount(child1));
+        assertEquals(7, model.getLastKnownSubTreeCount(rootNode));
+        assertEquals(model.getRowCount() - 1, model.getLastKnownSubTreeCount(rootNode));
+    }
+
     @Test
     public void testParentNotExpandedChildNotVisible() {
         model = new TestTreeTableModel(rootNode, true);
@@ -1588,6 +1611,52 @@ class TreeTableModelTest extends BaseTestClass {
         assertFalse(model.isExpanded(rootNode));
     }
 
+    @Test
+    public void testExpandAndCollapseVeryDeepTree() {
+        final int depth = 50_000; // deep enough to overflow the call stack if the tree was walked recursively.
+        final DefaultMutableTreeNode deepRoot = buildChain(depth);
+        model = new TestTreeTableModel(deepRoot, true);
+
+        model.expandTree();
+        assertEquals(depth + 1, model.getRowCount());
+        assertEquals(depth, model.getExpandedNodes().size());
+        assertEquals(depth, TreeUtils.getLevel(model.getNodeAtModelIndex(depth)));
+
+        model.refreshTree();
+        assertEquals(depth + 1, model.getRowCount());
+
+        model.collapseChildren(deepRoot);
+        assertEquals(1, model.getRowCount());
+        assertTrue(model.getExpandedNodes().isEmpty());
+
+        model.expandTree(10);
+        assertEquals(11, model.getRowCount());
+    }
+
+    @Test
+    public void testExpandChildrenWithDepthAndPredicate() {
+        createRandomTree(7, true);
+        final Predicate<TreeNode> evenChildren = node -> node.getParent() == null || node.getParent().getIndex(node) % 2 == 0;
+        model.expandChildren(rootNode, 3, evenChildren);
+        for (TreeNode node : TreeUtils.getNodeList(rootNode)) {
+            final boolean shouldExpand = node.getAllowsChildren() && TreeUtils.getLevel(node) < 3
+                    && TreeUtils.getFurthestAncestor(node, evenChildren.negate()) == null && evenChildren.test(node);
+            assertEquals(shouldExpand, model.isExpanded(node), node.toString());
+        }
+    }
+
+    private static DefaultMutableTreeNode buildChain(final int depth) {
+        // Build from the deepest node up, as adding a child to a deep parent checks all of the parent's ancestors.
+        DefaultMutableTreeNode node = new DefaultMutableTreeNode(new TestTreeTableModel.TestObject("level" + depth, depth, true), false);
+        for (int level = depth - 1; level >= 0; level--) {
+            final DefaultMutableTreeNode parent = new DefaultMutableTreeNode(
+                    new TestTreeTableModel.TestObject("level" + level, level, level % 2 == 0));
+            parent.add(node);
+            node = parent;
+        }
+        return node;
+    }
+
     @Test
     public void testGetRoot() {
         //fail("TODO");
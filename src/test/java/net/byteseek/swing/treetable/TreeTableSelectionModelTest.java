@@ -0,0 +1,223 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.swing.ListSelectionModel;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeNode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TreeTableSelectionModelTest extends BaseTestClass {
+
+    private TreeTableSelectionModel selectionModel;
+
+    @BeforeEach
+    public void setupSelection() {
+        model.bindTable(table);
+        model.expandNode(rootNode);
+        selectionModel = (TreeTableSelectionModel) table.getSelectionModel();
+    }
+
+    @Test
+    public void testConstructNullModel() {
+        assertThrows(IllegalArgumentException.class, () -> new TreeTableSelectionModel(null));
+    }
+
+    @Test
+    public void testBindAndUnbindTable() {
+        assertSame(selectionModel, model.getSelectionModel());
+        assertFalse(table.getUpdateSelectionOnSort());
+
+        model.unbindTable();
+        assertFalse(table.getSelectionModel() instanceof TreeTableSelectionModel);
+        assertTrue(table.getUpdateSelectionOnSort());
+    }
+
+    @Test
+    public void testSelectRows() {
+        assertTrue(selectionModel.isSelectionEmpty());
+        assertEquals(-1, selectionModel.getMinSelectionIndex());
+        assertEquals(-1, selectionModel.getMaxSelectionIndex());
+
+        table.setRowSelectionInterval(1, 2); // child0 and child1.
+        assertFalse(selectionModel.isSelectionEmpty());
+        assertEquals(1, selectionModel.getMinSelectionIndex());
+        assertEquals(2, selectionModel.getMaxSelectionIndex());
+        assertArrayEquals(new int[] {1, 2}, table.getSelectedRows());
+        assertEquals(2, selectionModel.getSelectedItemsCount());
+        assertTrue(selectionModel.isSelected(child0));
+        assertTrue(selectionModel.isSelected(child1));
+        assertFalse(selectionModel.isSelected(child2));
+        assertEquals(1, selectionModel.getAnchorSelectionIndex());
+        assertEquals(2, selectionModel.getLeadSelectionIndex());
+
+        table.addRowSelectionInterval(0, 0);
+        assertArrayEquals(new int[] {0, 1, 2}, table.getSelectedRows());
+        assertEquals(0, selectionModel.getMinSelectionIndex());
+
+        table.removeRowSelectionInterval(1, 1);
+        assertArrayEquals(new int[] {0, 2}, table.getSelectedRows());
+
+        table.clearSelection();
+        assertTrue(selectionModel.isSelectionEmpty());
+        assertEquals(0, table.getSelectedRowCount());
+    }
+
+    @Test
+    public void testAddSelectionOutsideRowsKeepsBoundsInRange() {
+        table.setRowSelectionInterval(1, 1);
+        assertEquals(1, selectionModel.getMinSelectionIndex());
+        assertEquals(1, selectionModel.getMaxSelectionIndex());
+
+        selectionModel.addSelectionInterval(2, 10); // only four rows: root and its children.
+        assertEquals(1, selectionModel.getMinSelectionIndex());
+        assertEquals(3, selectionModel.getMaxSelectionIndex());
+
+        selectionModel.addSelectionInterval(-5, 0);
+        assertEquals(0, selectionModel.getMinSelectionIndex());
+        assertEquals(3, selectionModel.getMaxSelectionIndex());
+
+        selectionModel.addSelectionInterval(20, 30);
+        assertEquals(0, selectionModel.getMinSelectionIndex());
+        assertEquals(3, selectionModel.getMaxSelectionIndex());
+        assertArrayEquals(new int[] {0, 1, 2, 3}, table.getSelectedRows());
+    }
+
+    @Test
+    public void testSingleSelectionMode() {
+        selectionModel.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        selectionModel.setSelectionInterval(0, 2);
+        assertArrayEquals(new int[] {2}, table.getSelectedRows());
+        selectionModel.addSelectionInterval(1, 1);
+        assertArrayEquals(new int[] {1}, table.getSelectedRows());
+        assertThrows(IllegalArgumentException.class, () -> selectionModel.setSelectionMode(99));
+    }
+
+    @Test
+    public void testSelectionMovesWithExpandAndCollapse() {
+        table.setRowSelectionInterval(3, 3); // child2 when child1 is collapsed.
+        assertSame(child2, model.getSelectedNode());
+
+        model.expandNode(child1);
+        assertArrayEquals(new int[] {7}, table.getSelectedRows());
+        assertSame(child2, model.getSelectedNode());
+
+        table.addRowSelectionInterval(4, 4); // subchild1
+        assertTrue(selectionModel.isSelected(subchild1));
+
+        model.collapseNode(child1);
+        assertArrayEquals(new int[] {3}, table.getSelectedRows());
+        assertEquals(Collections.singletonList(child2), model.getSelectedNodes()); // only visible nodes in rows.
+        Set<TreeNode> selected = model.getSelectedNodeSet();
+        assertEquals(2, selected.size());
+        assertTrue(selected.contains(subchild1)); // hidden nodes remain selected.
+
+        model.expandNode(child1);
+        assertArrayEquals(new int[] {4, 7}, table.getSelectedRows());
+    }
+
+    @Test
+    public void testSelectionMovesWithSort() {
+        table.setRowSelectionInterval(1, 1); // child0
+        model.setSortKeys(Collections.singletonList(new RowSorter.SortKey(1, SortOrder.DESCENDING)));
+        assertSame(child0, model.getSelectedNode());
+        assertEquals(3, table.getSelectedRow());
+
+        model.expandNode(child1);
+        assertSame(child0, model.getSelectedNode());
+        assertEquals(7, table.getSelectedRow());
+        assertEquals(7, selectionModel.getLeadSelectionIndex());
+    }
+
+    @Test
+    public void testSelectedNodesInTableOrder() {
+        model.setSortKeys(Collections.singletonList(new RowSorter.SortKey(1, SortOrder.DESCENDING)));
+        table.setRowSelectionInterval(1, 3);
+        final List<TreeNode> selected = model.getSelectedNodes();
+        assertEquals(3, selected.size());
+        for (int row = 1; row <= 3; row++) {
+            assertSame(model.getNodeAtTableRow(row), selected.get(row - 1));
+        }
+        assertEquals(new HashSet<>(selected), new HashSet<>(model.getSelectedNodeSet()));
+    }
+
+    @Test
+    public void testRemovedNodesArePruned() {
+        DefaultTreeModel treeModel = new DefaultTreeModel(rootNode);
+        treeModel.addTreeModelListener(model);
+        table.setRowSelectionInterval(1, 2); // child0 and child1
+        treeModel.removeNodeFromParent(child0);
+        List<TreeNode> selected = model.getSelectedNodes();
+        assertEquals(1, selected.size());
+        assertSame(child1, selected.get(0));
+        assertArrayEquals(new int[] {1}, table.getSelectedRows());
+    }
+
+    @Test
+    public void testListenersNotified() {
+        final ListSelectionEvent[] lastEvent = new ListSelectionEvent[1];
+        selectionModel.addListSelectionListener(e -> lastEvent[0] = e);
+        selectionModel.setValueIsAdjusting(true);
+        selectionModel.setSelectionInterval(1, 2);
+        assertTrue(lastEvent[0].getValueIsAdjusting());
+        selectionModel.setValueIsAdjusting(false);
+        assertFalse(lastEvent[0].getValueIsAdjusting());
+        assertEquals(1, lastEvent[0].getFirstIndex());
+        assertEquals(2, lastEvent[0].getLastIndex());
+    }
+
+    @Test
+    public void testLargeSelectionSurvivesExpansion() {
+        createRandomTree(3, true);
+        model.bindTable(table);
+        model.expandTree();
+        model.setSortKeys(Collections.singletonList(new RowSorter.SortKey(1, SortOrder.ASCENDING)));
+        final int rowCount = model.getRowCount();
+        table.setRowSelectionInterval(0, rowCount - 1);
+        model.collapseNode(rootNode);
+        assertEquals(1, table.getSelectedRowCount());
+        model.expandNode(rootNode);
+        assertEquals(rowCount, table.getSelectedRowCount());
+        assertEquals(rowCount, model.getSelectedNodes().size());
+    }
+
+}
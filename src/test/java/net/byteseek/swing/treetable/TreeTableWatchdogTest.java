@@ -0,0 +1,124 @@
+/*
+ * BSD 3-Clause License
+ *
+ * Copyright (c) 2021, Matt Palmer
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.byteseek.swing.treetable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import net.byteseek.swing.treetable.TreeTableModel.MetricsListener.Operation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TreeTableWatchdogTest extends BaseTestClass {
+
+    private List<TreeTableWatchdog.Stall> stalls;
+    private TreeTableWatchdog watchdog;
+
+    @BeforeEach
+    public void setupWatchdog() {
+        model.bindTable(table);
+        stalls = new ArrayList<>();
+    }
+
+    @AfterEach
+    public void closeWatchdog() {
+        if (watchdog != null) {
+            watchdog.close();
+        }
+    }
+
+    @Test
+    public void testInvalidConstruction() {
+        assertThrows(IllegalArgumentException.class, () -> new TreeTableWatchdog(null, 10, stalls::add));
+        assertThrows(IllegalArgumentException.class, () -> new TreeTableWatchdog(model, 10, null));
+        assertThrows(IllegalArgumentException.class, () -> new TreeTableWatchdog(model, -1, stalls::add));
+    }
+
+    @Test
+    public void testWithinBudgetNotReported() {
+        watchdog = TreeTableWatchdog.watch(model, 60000, stalls::add);
+        assertEquals(60000, watchdog.getBudgetMillis());
+        model.expandTree();
+        model.collapseTree();
+        assertTrue(stalls.isEmpty());
+    }
+
+    @Test
+    public void testOverBudgetReportedOnceForNestedOperations() {
+        watchdog = TreeTableWatchdog.watch(model, 0, stalls::add);
+        model.expandTree();
+        assertEquals(1, stalls.size()); // expanding each node is nested in expanding the tree.
+        TreeTableWatchdog.Stall stall = stalls.get(0);
+        assertEquals(Operation.EXPAND_TREE, stall.getOperation());
+        assertEquals(model.getRowCount(), stall.getRowCount());
+        assertEquals(model.getExpandedNodes().size(), stall.getExpandedNodeCount());
+        assertTrue(stall.getDurationNanos() > 0);
+        assertNotNull(stall.getSampledStack());
+    }
+
+    @Test
+    public void testSampledStack() {
+        model.expandTree();
+        watchdog = TreeTableWatchdog.watch(model, 5, stalls::add);
+        model.setNodeFilter(node -> {
+            sleep(20);
+            return false;
+        });
+        assertEquals(1, stalls.size());
+        TreeTableWatchdog.Stall stall = stalls.get(0);
+        assertEquals(Operation.SET_FILTER, stall.getOperation());
+        assertTrue(stall.getDurationNanos() >= 5_000_000L);
+        assertTrue(Arrays.stream(stall.getSampledStack()).anyMatch(
+                element -> element.getClassName().equals(TreeTableModel.class.getName())), stall.toString());
+    }
+
+    @Test
+    public void testClose() {
+        watchdog = TreeTableWatchdog.watch(model, 0, stalls::add);
+        watchdog.close();
+        assertTrue(model.getMetricsListeners().isEmpty());
+        model.expandTree();
+        assertTrue(stalls.isEmpty());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -32,8 +32,13 @@
 package net.byteseek.swing.treetable;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Spliterator;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import javax.swing.JTable;
 import javax.swing.RowSorter;
 import javax.swing.SortOrder;
@@ -47,12 +52,40 @@ import org.junit.jupiter.api.Test;
 
 class TreeUtilsTest extends BaseTestClass {
 
+    private static final int DEEP_TREE_DEPTH = 100_000; // deep enough to overflow the call stack if walked recursively.
+
     @Test
     void buildTree() {
+        // Each number n has children 3n+1 to 3n+3, up to 39.  Only even numbers allow children.
+        final DefaultMutableTreeNode root = TreeUtils.buildTree(0, TreeUtilsTest::getChildNumbers, number -> number % 2 == 0);
+        final List<TreeNode> nodes = TreeUtils.getNodeList(root);
+        for (TreeNode node : nodes) {
+            final int number = TreeUtils.getUserObject(node);
+            assertEquals(number % 2 == 0, node.getAllowsChildren());
+            final List<Integer> expectedChildren = node.getAllowsChildren() ? getChildNumbers(number) : List.of();
+            assertEquals(expectedChildren.size(), node.getChildCount());
+            for (int childIndex = 0; childIndex < node.getChildCount(); childIndex++) {
+                assertEquals(expectedChildren.get(childIndex), TreeUtils.getUserObject(node.getChildAt(childIndex)));
+            }
+        }
+    }
+
+    @Test
+    void buildVeryDeepTree() {
+        final DefaultMutableTreeNode root = TreeUtils.buildTree(0, number -> number < DEEP_TREE_DEPTH ? List.of(number + 1) : List.of());
+        TreeNode node = root;
+        for (int level = 0; level < DEEP_TREE_DEPTH; level++) {
+            assertEquals(1, node.getChildCount());
+            node = node.getChildAt(0);
+        }
+        assertEquals(DEEP_TREE_DEPTH, (int) TreeUtils.getUserObject(node));
+        assertEquals(0, node.getChildCount());
     }
 
     @Test
     void getNodeList() {
+        final DefaultMutableTreeNode root = buildRandomTree(3);
+        assertEquals(Collections.list(root.preorderEnumeration()), TreeUtils.getNodeList(root));
     }
 
     @Test
@@ -81,13 +114,152 @@ class TreeUtilsTest extends BaseTestClass {
 
     @Test
     void walk() {
+        final DefaultMutableTreeNode root = buildRandomTree(5);
+        final List<TreeNode> walked = new ArrayList<>();
+        TreeUtils.walk(root, walked::add);
+        assertEquals(Collections.list(root.preorderEnumeration()), walked);
     }
 
     @Test
     void testWalk() {
+        final DefaultMutableTreeNode root = buildRandomTree(6);
+        final List<TreeNode> walked = new ArrayList<>();
+        TreeUtils.walk(root, walked::add, TreeNode::isLeaf); // children of nodes failing the condition are still walked.
+        final List<TreeNode> expected = new ArrayList<>();
+        for (TreeNode node : Collections.list(root.preorderEnumeration())) {
+            if (node.isLeaf()) {
+                expected.add(node);
+            }
+        }
+        assertEquals(expected, walked);
+    }
+
+    @Test
+    void walkVeryDeepTree() {
+        final DefaultMutableTreeNode root = TreeUtils.buildTree(0, number -> number < DEEP_TREE_DEPTH ? List.of(number + 1) : List.of());
+        final int[] expectedNumber = new int[1];
+        TreeUtils.walk(root, node -> assertEquals(expectedNumber[0]++, (int) TreeUtils.getUserObject(node)));
+        assertEquals(DEEP_TREE_DEPTH + 1, expectedNumber[0]);
+    }
+
+    @Test
+    void depthFirstStream() {
+        final DefaultMutableTreeNode root = buildRandomTree(5);
+        final List<TreeNode> expected = Collections.list(root.preorderEnumeration());
+        assertEquals(expected, TreeUtils.depthFirstStream(root).collect(Collectors.toList()));
+        assertEquals(expected, TreeUtils.depthFirstStream(root).parallel().collect(Collectors.toList()));
+    }
+
+    @Test
+    void depthFirstStreamPrunesSubtrees() {
+        final DefaultMutableTreeNode root = buildRandomTree(5);
+        final Predicate<TreeNode> condition = node -> node.getParent() == null || node.getParent().getIndex(node) % 2 == 0;
+        final List<TreeNode> expected = getIncludedNodes(root, condition);
+        assertEquals(expected, TreeUtils.depthFirstStream(root, condition).collect(Collectors.toList()));
+        assertEquals(expected, TreeUtils.depthFirstStream(root, condition).parallel().collect(Collectors.toList()));
+        assertEquals(0, TreeUtils.depthFirstStream(root, node -> false).count());
+    }
+
+    @Test
+    void depthFirstSplitsBySubtree() {
+        final DefaultMutableTreeNode root = buildRandomTree(6);
+        final List<TreeNode> split = new ArrayList<>();
+        splitAndTraverse(TreeNodeSpliterator.depthFirst(root, null), split);
+        assertEquals(Collections.list(root.preorderEnumeration()), split);
+    }
+
+    @Test
+    void breadthFirstStream() {
+        final DefaultMutableTreeNode root = buildRandomTree(5);
+        final List<TreeNode> expected = Collections.list(root.breadthFirstEnumeration());
+        assertEquals(expected, TreeUtils.breadthFirstStream(root).collect(Collectors.toList()));
+        // Breadth first is not ordered in parallel, but must still give every node once:
+        final List<TreeNode> parallel = TreeUtils.breadthFirstStream(root).parallel().collect(Collectors.toList());
+        assertEquals(expected.size(), parallel.size());
+        assertEquals(new HashSet<>(expected), new HashSet<>(parallel));
+    }
+
+    @Test
+    void breadthFirstStreamPrunesSubtrees() {
+        final DefaultMutableTreeNode root = buildRandomTree(5);
+        final Predicate<TreeNode> condition = node -> node.getParent() == null || node.getParent().getIndex(node) % 2 == 0;
+        final List<TreeNode> expected = new ArrayList<>();
+        for (TreeNode node : Collections.list(root.breadthFirstEnumeration())) {
+            if (isIncluded(node, condition)) {
+                expected.add(node);
+            }
+        }
+        assertEquals(expected, TreeUtils.breadthFirstStream(root, condition).collect(Collectors.toList()));
+        assertEquals(new HashSet<>(expected), TreeUtils.breadthFirstStream(root, condition).parallel().collect(Collectors.toSet()));
+        assertEquals(0, TreeUtils.breadthFirstStream(root, node -> false).count());
+    }
+
+    @Test
+    void streamNullCondition() {
+        final DefaultMutableTreeNode root = buildRandomTree(2);
+        assertThrows(IllegalArgumentException.class, () -> TreeUtils.depthFirstStream(root, null));
+        assertThrows(IllegalArgumentException.class, () -> TreeUtils.breadthFirstStream(root, null));
+    }
+
+    @Test
+    void streamVeryDeepTree() {
+        final DefaultMutableTreeNode root = TreeUtils.buildTree(0, number -> number < DEEP_TREE_DEPTH ? List.of(number + 1) : List.of());
+        assertEquals(DEEP_TREE_DEPTH + 1, TreeUtils.depthFirstStream(root).parallel().count());
+        assertEquals(DEEP_TREE_DEPTH + 1, TreeUtils.breadthFirstStream(root).parallel().count());
+    }
+
+    @Test
+    void streamSizeEstimate() {
+        // A complete tree with 3 children per node, 5 levels deep, has (3^6 - 1) / 2 nodes.
+        final DefaultMutableTreeNode root = TreeUtils.buildTree(0, number -> number < 364 ? List.of(number * 3 + 1, number * 3 + 2, number * 3 + 3) : List.of());
+        assertEquals(1093, TreeUtils.depthFirstStream(root).spliterator().estimateSize());
+        assertEquals(1093, TreeUtils.breadthFirstStream(root).spliterator().estimateSize());
+        final Spliterator<TreeNode> spliterator = TreeNodeSpliterator.depthFirst(root, null);
+        final Spliterator<TreeNode> rootSplit = spliterator.trySplit(); // the root is split off first, by itself.
+        assertEquals(1, rootSplit.estimateSize());
+        final Spliterator<TreeNode> prefix = spliterator.trySplit();    // then its first child, of three.
+        assertEquals(364, prefix.estimateSize());
+        assertEquals(1092, spliterator.estimateSize() + prefix.estimateSize());
     }
 
     @Test
     void findLastConsecutiveIndex() {
     }
+
+    private static void splitAndTraverse(final Spliterator<TreeNode> spliterator, final List<TreeNode> nodes) {
+        final Spliterator<TreeNode> prefix = spliterator.trySplit();
+        if (prefix != null) {
+            splitAndTraverse(prefix, nodes);
+            splitAndTraverse(spliterator, nodes);
+        } else {
+            spliterator.forEachRemaining(nodes::add);
+        }
+    }
+
+    private static List<TreeNode> getIncludedNodes(final TreeNode root, final Predicate<TreeNode> condition) {
+        final List<TreeNode> included = new ArrayList<>();
+        for (TreeNode node : Collections.list(((DefaultMutableTreeNode) root).preorderEnumeration())) {
+            if (isIncluded(node, condition)) {
+                included.add(node);
+            }
+        }
+        return included;
+    }
+
+    private static boolean isIncluded(final TreeNode node, final Predicate<TreeNode> condition) {
+        for (TreeNode ancestor = node; ancestor != null; ancestor = ancestor.getParent()) {
+            if (!condition.test(ancestor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Integer> getChildNumbers(final int number) {
+        final List<Integer> children = new ArrayList<>();
+        for (int child = number * 3 + 1; child <= number * 3 + 3 && child < 40; child++) {
+            children.add(child);
+        }
+        return children;
+    }
 }
\ No newline at end of file